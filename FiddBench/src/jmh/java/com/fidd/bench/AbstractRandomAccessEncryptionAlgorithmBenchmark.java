@@ -3,12 +3,16 @@ package com.fidd.bench;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.ParallelSegmentCipher;
 import com.fidd.core.encryption.xor.XorEncryptionAlgorithm;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Param;
@@ -104,6 +108,81 @@ public abstract class AbstractRandomAccessEncryptionAlgorithmBenchmark {
     }
   }
 
+  /** Whole-section encryption and decryption, as done by packing, unpacking and full-file downloads. */
+  @State(Scope.Thread)
+  public static class SectionState {
+    @Param({"AES_CTR_SEQUENTIAL", "AES_CTR_PARALLEL"})
+    public String algorithm;
+
+    @Param({"1048576", "16777216", "67108864"})
+    public int sectionSize;
+
+    public RandomAccessEncryptionAlgorithm currentAlgorithm;
+    public byte[] keyData;
+    public byte[] plainText;
+    public byte[] cipherText;
+    public ByteArrayInputStream plainTextStream;
+    public ByteArrayInputStream cipherTextStream;
+    public byte[] readBuffer;
+
+    private static final int DETERMINISTIC_RANDOM_SEED = 100;
+    private static final long DETERMINISTIC_KEY_SEED = 200L;
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      currentAlgorithm =
+          switch (algorithm) {
+            case "AES_CTR_SEQUENTIAL" -> new Aes256CtrEncryptionAlgorithm(null);
+            case "AES_CTR_PARALLEL" ->
+                new Aes256CtrEncryptionAlgorithm(
+                    new ParallelSegmentCipher(
+                        ForkJoinPool.commonPool(),
+                        ParallelSegmentCipher.DEFAULT_SEGMENT_SIZE,
+                        2 * ForkJoinPool.getCommonPoolParallelism()));
+            default -> throw new IllegalArgumentException("Unknown algorithm name: " + algorithm);
+          };
+
+      keyData =
+          currentAlgorithm.generateNewKeyData(
+              new DeterministicRandomGeneratorType(DETERMINISTIC_KEY_SEED));
+
+      plainText = new byte[sectionSize];
+      new Random(DETERMINISTIC_RANDOM_SEED).nextBytes(plainText);
+      cipherText = currentAlgorithm.encrypt(keyData, plainText);
+
+      plainTextStream = new ByteArrayInputStream(plainText);
+      cipherTextStream = new ByteArrayInputStream(cipherText);
+      readBuffer = new byte[READ_BUFFER_SIZE];
+    }
+
+    @Setup(Level.Invocation)
+    public void resetStreams() {
+      plainTextStream.reset();
+      cipherTextStream.reset();
+    }
+  }
+
+  @Benchmark
+  public long sectionEncryptBenchmark(SectionState state) {
+    return state.currentAlgorithm.encrypt(
+        state.keyData, List.of(state.plainTextStream), OutputStream.nullOutputStream(), null);
+  }
+
+  @Benchmark
+  public void sectionDecryptedStreamBenchmark(SectionState state, Blackhole blackhole) {
+    try (InputStream resultStream =
+        state.currentAlgorithm.getDecryptedStream(state.keyData, state.cipherTextStream)) {
+      byte[] buffer = state.readBuffer;
+      int read;
+      while ((read = resultStream.read(buffer)) != -1) {
+        blackhole.consume(buffer[read - 1]);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Benchmark
   public byte[] randomAccessDecryptBenchmark(RandomAccessEncryptionState state) {
     return state.currentAlgorithm.randomAccessDecrypt(
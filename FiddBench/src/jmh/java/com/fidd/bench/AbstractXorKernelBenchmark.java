@@ -0,0 +1,80 @@
+package com.fidd.bench;
+
+import com.fidd.core.encryption.XorKernel;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shared JMH benchmark logic for the XOR kernel against the byte-at-a-time loop it replaced.
+ *
+ * <p>Concrete subclasses pick the JVM flags: with and without the Vector API module.
+ */
+public abstract class AbstractXorKernelBenchmark {
+
+  @State(Scope.Thread)
+  public static class XorKernelState {
+    @Param({"1024", "65536", "1048576"})
+    public int payloadSize;
+
+    public byte[] data;
+    public byte[] keystream;
+    public byte[] key;
+    public byte[] expandedKey;
+    public byte[] out;
+
+    private static final int DETERMINISTIC_RANDOM_SEED = 100;
+    private static final int KEY_SIZE = 32;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      Random deterministicRandom = new Random(DETERMINISTIC_RANDOM_SEED);
+      data = new byte[payloadSize];
+      deterministicRandom.nextBytes(data);
+      keystream = new byte[payloadSize];
+      deterministicRandom.nextBytes(keystream);
+      key = new byte[KEY_SIZE];
+      deterministicRandom.nextBytes(key);
+      expandedKey = XorKernel.expandKey(key, XorKernel.EXPANDED_KEY_MIN_LENGTH);
+      out = new byte[payloadSize];
+    }
+  }
+
+  @Benchmark
+  public byte[] repeatingKeyBytewise(XorKernelState state) {
+    byte[] data = state.data;
+    byte[] key = state.key;
+    byte[] out = state.out;
+    for (int i = 0; i < data.length; i++) {
+      out[i] = (byte) (data[i] ^ key[i % key.length]);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public byte[] repeatingKeyKernel(XorKernelState state) {
+    XorKernel.xorRepeating(state.data, 0, state.expandedKey, 0, state.out, 0, state.payloadSize);
+    return state.out;
+  }
+
+  @Benchmark
+  public byte[] keystreamBytewise(XorKernelState state) {
+    byte[] data = state.data;
+    byte[] keystream = state.keystream;
+    byte[] out = state.out;
+    for (int i = 0; i < data.length; i++) {
+      out[i] = (byte) (data[i] ^ keystream[i]);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public byte[] keystreamKernel(XorKernelState state) {
+    XorKernel.xor(state.data, 0, state.keystream, 0, state.out, 0, state.payloadSize);
+    return state.out;
+  }
+}
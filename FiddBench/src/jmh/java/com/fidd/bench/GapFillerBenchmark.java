@@ -0,0 +1,55 @@
+package com.fidd.bench;
+
+import com.fidd.core.random.GapFiller;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Gap filling with the AES-CTR keystream against the per-8KB SecureRandom arrays it replaced. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GapFillerBenchmark {
+  private static final int SECURE_RANDOM_BUFFER_SIZE = 8192;
+
+  @State(Scope.Thread)
+  public static class GapState {
+    @Param({"65536", "1048576", "16777216"})
+    public long gapSize;
+
+    public SecureRandom random;
+    public OutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      random = new SecureRandom();
+      // Both sides produce the bytes in full; only the writing is left out
+      out = OutputStream.nullOutputStream();
+    }
+  }
+
+  @Benchmark
+  public void secureRandomBytes(GapState state) throws IOException {
+    long remaining = state.gapSize;
+    while (remaining > 0) {
+      byte[] randomBytes = new byte[(int) Math.min(SECURE_RANDOM_BUFFER_SIZE, remaining)];
+      state.random.nextBytes(randomBytes);
+      state.out.write(randomBytes);
+      remaining -= randomBytes.length;
+    }
+  }
+
+  @Benchmark
+  public void gapFiller(GapState state) throws IOException {
+    GapFiller.fill(state.out, state.gapSize, state.random);
+  }
+}
@@ -0,0 +1,90 @@
+package com.fidd.bench;
+
+import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.ParallelSegmentCipher;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput of multi-stream AES-CTR section encryption - a metadata container followed by the file, as packing
+ * does it - against the number of threads segments are encrypted on. Parallelism 0 is the sequential cipher.
+ * Speedup is bounded by the cores of the machine; results only mean something where there are several.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SectionEncryptionScalingBenchmark {
+  private static final int HEADER_SIZE = 512;
+
+  @State(Scope.Thread)
+  public static class ScalingState {
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"16777216", "67108864"})
+    public int sectionSize;
+
+    public ForkJoinPool pool;
+    public Aes256CtrEncryptionAlgorithm algorithm;
+    public byte[] keyData;
+    public ByteArrayInputStream header;
+    public ByteArrayInputStream body;
+
+    private static final int DETERMINISTIC_RANDOM_SEED = 100;
+    private static final long DETERMINISTIC_KEY_SEED = 200L;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      if (parallelism == 0) {
+        algorithm = new Aes256CtrEncryptionAlgorithm(null);
+      } else {
+        pool = new ForkJoinPool(parallelism);
+        algorithm =
+            new Aes256CtrEncryptionAlgorithm(
+                new ParallelSegmentCipher(pool, ParallelSegmentCipher.DEFAULT_SEGMENT_SIZE, 2 * parallelism));
+      }
+      keyData =
+          algorithm.generateNewKeyData(new DeterministicRandomGeneratorType(DETERMINISTIC_KEY_SEED));
+
+      Random random = new Random(DETERMINISTIC_RANDOM_SEED);
+      byte[] headerBytes = new byte[HEADER_SIZE];
+      random.nextBytes(headerBytes);
+      byte[] bodyBytes = new byte[sectionSize];
+      random.nextBytes(bodyBytes);
+      header = new ByteArrayInputStream(headerBytes);
+      body = new ByteArrayInputStream(bodyBytes);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetStreams() {
+      header.reset();
+      body.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  @Benchmark
+  public long encryptSection(ScalingState state) {
+    return state.algorithm.encrypt(
+        state.keyData, List.of(state.header, state.body), OutputStream.nullOutputStream(), null);
+  }
+}
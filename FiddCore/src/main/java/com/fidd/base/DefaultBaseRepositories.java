@@ -9,6 +9,7 @@ import com.fidd.core.crc.crc32.Crc32Calculator;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.Aes256CbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256GcmSegmentedEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
 import com.fidd.core.encryption.unencrypted.NoEncryptionAlgorithm;
@@ -48,12 +49,13 @@ public class DefaultBaseRepositories implements BaseRepositories {
     static {
         Aes256CtrEncryptionAlgorithm aes256Ctr = new Aes256CtrEncryptionAlgorithm();
         Aes256CbcEncryptionAlgorithm aes256Cbc = new Aes256CbcEncryptionAlgorithm();
+        Aes256GcmSegmentedEncryptionAlgorithm aes256GcmSegmented = new Aes256GcmSegmentedEncryptionAlgorithm();
         KuznechikCbcEncryptionAlgorithm kuznechikCbc = new KuznechikCbcEncryptionAlgorithm();
         KuznechikCtrEcbEncryptionAlgorithm kuznechikCtr = new KuznechikCtrEcbEncryptionAlgorithm();
         XorEncryptionAlgorithm xor = new XorEncryptionAlgorithm();
         NoEncryptionAlgorithm noEncryption = new NoEncryptionAlgorithm();
-        ENCRYPTION_ALGORITHM_REPO = new MapRepository<>(aes256Ctr.name(), List.of(aes256Ctr, aes256Cbc, kuznechikCbc,
-                kuznechikCtr, xor, noEncryption), noEncryption);
+        ENCRYPTION_ALGORITHM_REPO = new MapRepository<>(aes256Ctr.name(), List.of(aes256Ctr, aes256Cbc, aes256GcmSegmented,
+                kuznechikCbc, kuznechikCtr, xor, noEncryption), noEncryption);
 
         YamlFiddKeySerializer yamlFiddKeySerializer = new YamlFiddKeySerializer();
         FIDD_KEY_FORMAT_REPO = new MapRepository<>(yamlFiddKeySerializer.name(), List.of(yamlFiddKeySerializer));
@@ -3,7 +3,9 @@ package com.fidd.common.streamchain;
 import com.fidd.common.streamchain.chain.InputBufferChain;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 
 public class BufferChainInputStream extends InputStream {
 
@@ -17,27 +19,26 @@ public class BufferChainInputStream extends InputStream {
     }
 
     @Override
-    public int read() {
-        // TODO: improve infinite loop?
-        while (true) { // This method blocks until input data is available
-            byte[] buf = ensureBuffer();
-            if (buf == null) { return -1; }
-            if (position < buf.length) {
-                return buf[position++] & 0xFF;
-            }
-        }
+    public int read() throws IOException {
+        byte[] buf = awaitBuffer();
+        if (buf == null) { return -1; }
+        return buf[position++] & 0xFF;
     }
 
+    /** Blocks until data arrives, the chain ends or the stream is closed: a non-empty read never returns 0 */
     @Override
-    public int read(byte[] b, int off, int len) {
+    public int read(byte[] b, int off, int len) throws IOException {
         if (b == null) {
             throw new NullPointerException();
         }
         if (off < 0 || len < 0 || off + len > b.length) {
             throw new IndexOutOfBoundsException();
         }
+        if (len == 0) {
+            return 0;
+        }
 
-        byte[] buf = ensureBuffer();
+        byte[] buf = awaitBuffer();
         if (buf == null) {
             return -1;
         }
@@ -51,6 +52,19 @@ public class BufferChainInputStream extends InputStream {
         return toCopy;
     }
 
+    /** Buffer with unread data, or null at the end of the chain; waits while the chain is still active */
+    private @Nullable byte[] awaitBuffer() throws InterruptedIOException {
+        while (true) {
+            byte[] buf = ensureBuffer();
+            if (buf == null || position < buf.length) {
+                return buf;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+        }
+    }
+
     // EOF check is here
     private @Nullable byte[] ensureBuffer() {
         // If no current buffer or it's exhausted, fetch next
@@ -74,10 +88,10 @@ public class BufferChainInputStream extends InputStream {
     // ------------------------------ rogHoTa ------------------------------
 
     @Override
-    public long skip(long n) {
+    public long skip(long n) throws IOException {
         long skipped = 0;
         while (n > 0) {
-            byte[] buf = ensureBuffer();
+            byte[] buf = awaitBuffer();
             if (buf == null) {
                 break;
             }
@@ -103,6 +117,7 @@ public class BufferChainInputStream extends InputStream {
 
     @Override
     public void close() {
-        // Nothing to close unless your BufferChain needs cleanup
+        current = null;
+        chain.cancel();
     }
 }
@@ -18,17 +18,22 @@ public class BufferChainOutputStream extends OutputStream implements OutputBuffe
             while (!lock.compareAndSet(false, true));
         }
 
+        public boolean tryLock() {
+            return lock.compareAndSet(false, true);
+        }
+
         public void unlock() {
             lock.compareAndSet(true, false);
         }
     }
 
     private final OutputBufferChain chain;
-    private final int bufferSize;
+    private int bufferSize;
+    private final int maxBufferSize;
     private @Nullable Long dataLimitBytes;
 
     private SpinLock bufferLock;
-    private final byte[] buffer;
+    private byte[] buffer;
     private int position;
 
     private volatile boolean closed = false;
@@ -38,11 +43,23 @@ public class BufferChainOutputStream extends OutputStream implements OutputBuffe
     }
 
     public BufferChainOutputStream(OutputBufferChain chain, int bufferSize, @Nullable Long dataLimitBytes) {
+        this(chain, bufferSize, bufferSize, dataLimitBytes);
+    }
+
+    /**
+     * Buffer starts at bufferSize, so that the first bytes reach the reader quickly, and doubles
+     * with every full flush up to maxBufferSize, so that long streams are passed in large chunks.
+     */
+    public BufferChainOutputStream(OutputBufferChain chain, int bufferSize, int maxBufferSize, @Nullable Long dataLimitBytes) {
         if (bufferSize <= 0) {
             throw new IllegalArgumentException("bufferSize must be > 0");
         }
+        if (maxBufferSize < bufferSize) {
+            throw new IllegalArgumentException("maxBufferSize must be >= bufferSize");
+        }
         this.chain = chain;
         this.bufferSize = bufferSize;
+        this.maxBufferSize = maxBufferSize;
         this.dataLimitBytes = dataLimitBytes;
         this.buffer = new byte[bufferSize];
         this.bufferLock = new SpinLock();
@@ -160,15 +177,43 @@ public class BufferChainOutputStream extends OutputStream implements OutputBuffe
         }
     }
 
+    @Override
+    public boolean tryFlushBuffer() {
+        if (!bufferLock.tryLock()) {
+            return false;
+        }
+        try {
+            flushBufferInternal();
+            return true;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
     protected void flushBufferInternal() {
         if (position > 0) {
-            byte[] out = new byte[position];
-            System.arraycopy(buffer, 0, out, 0, position);
-            chain.addBuffer(out);
+            if (position == buffer.length) {
+                // Full buffer is handed over as is, no need to copy
+                chain.addBuffer(buffer);
+                growBuffer();
+            } else {
+                byte[] out = new byte[position];
+                System.arraycopy(buffer, 0, out, 0, position);
+                chain.addBuffer(out);
+            }
             position = 0;
         }
     }
 
+    protected void growBuffer() {
+        long nextSize = Math.min(maxBufferSize, 2L * bufferSize);
+        if (dataLimitBytes != null) {
+            nextSize = Math.max(1, Math.min(nextSize, dataLimitBytes));
+        }
+        bufferSize = (int) nextSize;
+        buffer = new byte[bufferSize];
+    }
+
     protected void ensureOpen() {
         if (closed) {
             throw new OutputStreamLimitReachedException("Stream is closed");
@@ -0,0 +1,193 @@
+package com.fidd.common.streamchain.chain;
+
+import com.fidd.common.streamchain.OutputStreamLimitReachedException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BufferChain that holds at most maxBufferedBytes (plus one buffer) of unread data.
+ * The producer blocks in addBuffer() until the reader catches up, and fails with
+ * OutputStreamLimitReachedException once the reader has cancelled the chain.
+ * pollBuffer() waits briefly for data instead of letting the reader spin.
+ */
+public class BoundedBufferChain implements BufferChain {
+    public static final long DEFAULT_POLL_WAIT_MILLIS = 20;
+
+    protected final long maxBufferedBytes;
+    protected final long pollWaitMillis;
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition notEmpty = lock.newCondition();
+    protected final Condition notFull = lock.newCondition();
+    protected final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    protected long bufferedBytes;
+
+    protected volatile @Nullable BufferFlusher flusher;
+    protected volatile boolean closed;
+    protected volatile boolean cancelled;
+    protected volatile @Nullable Throwable failure;
+    protected volatile @Nullable Runnable onCancel;
+    /** Reader thread flushing the writer's partial buffer; it must not block in addBuffer() */
+    protected volatile @Nullable Thread flushingReader;
+
+    public BoundedBufferChain(long maxBufferedBytes) {
+        this(maxBufferedBytes, DEFAULT_POLL_WAIT_MILLIS);
+    }
+
+    public BoundedBufferChain(long maxBufferedBytes, long pollWaitMillis) {
+        if (maxBufferedBytes <= 0) {
+            throw new IllegalArgumentException("maxBufferedBytes must be > 0");
+        }
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.pollWaitMillis = pollWaitMillis;
+    }
+
+    @Override
+    public void addBuffer(byte[] buffer) {
+        lock.lock();
+        try {
+            // An empty queue always accepts a buffer, so the reader never waits on a producer that waits on the reader
+            while (!cancelled && bufferedBytes > 0 && bufferedBytes + buffer.length > maxBufferedBytes
+                    && flushingReader != Thread.currentThread()) {
+                notFull.await();
+            }
+            if (cancelled) {
+                throw new OutputStreamLimitReachedException("Reader closed the stream");
+            }
+            queue.add(buffer);
+            bufferedBytes += buffer.length;
+            notEmpty.signalAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OutputStreamLimitReachedException("Interrupted");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected @Nullable byte[] pollQueue() {
+        lock.lock();
+        try {
+            byte[] buffer = queue.poll();
+            if (buffer != null) {
+                bufferedBytes -= buffer.length;
+                notFull.signalAll();
+            }
+            return buffer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public @Nullable byte[] pollBuffer() {
+        byte[] nextBuffer = pollQueue();
+        if (nextBuffer == null) {
+            BufferFlusher flusher = this.flusher;
+            // The writer may be blocked in addBuffer() holding its own lock, so don't wait for it
+            if (flusher != null) {
+                flushingReader = Thread.currentThread();
+                try {
+                    if (flusher.tryFlushBuffer()) {
+                        nextBuffer = pollQueue();
+                    }
+                } finally {
+                    flushingReader = null;
+                }
+            }
+        }
+        if (nextBuffer == null && !closed) {
+            lock.lock();
+            try {
+                if (queue.isEmpty() && !closed) {
+                    notEmpty.await(pollWaitMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+            nextBuffer = pollQueue();
+        }
+        if (nextBuffer == null && closed) {
+            Throwable failure = this.failure;
+            if (failure != null) {
+                throw new UncheckedIOException(failure instanceof IOException ioe ? ioe : new IOException(failure));
+            }
+        }
+        return nextBuffer;
+    }
+
+    /** Approximation */
+    @Override
+    public long available() {
+        lock.lock();
+        try {
+            return bufferedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Closes the chain so that the reader gets an error after the data received so far */
+    public void fail(Throwable failure) {
+        this.failure = failure;
+        close();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void setOnCancel(@Nullable Runnable onCancel) {
+        this.onCancel = onCancel;
+        if (cancelled && onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            closed = true;
+            queue.clear();
+            bufferedBytes = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Runnable onCancel = this.onCancel;
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    @Override
+    public void attachBufferFlusher(BufferFlusher flusher) {
+        this.flusher = flusher;
+    }
+}
@@ -9,4 +9,7 @@ public interface InputBufferChain {
     @Nullable byte[] pollBuffer();
     long available();
     boolean isClosed();
+
+    /** Reader is done with the stream; the chain may drop pending data and stop its producer */
+    default void cancel() {}
 }
@@ -3,6 +3,12 @@ package com.fidd.common.streamchain.chain;
 public interface OutputBufferChain {
     interface BufferFlusher {
         void flushBuffer();
+
+        /** Flushes only if that doesn't require waiting for the writer; returns false if skipped */
+        default boolean tryFlushBuffer() {
+            flushBuffer();
+            return true;
+        }
     }
 
     void addBuffer(byte[] buffer);
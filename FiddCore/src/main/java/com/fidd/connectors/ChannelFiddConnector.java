@@ -0,0 +1,12 @@
+package com.fidd.connectors;
+
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Connectors backed by local files can hand out message chunks as channels, so that callers move
+ * the data with channel and ByteBuffer operations instead of copying it through heap arrays.
+ */
+public interface ChannelFiddConnector {
+    /** Chunk of the message file as a channel; the caller closes it */
+    ReadableByteChannel getFiddMessageChunkChannel(long messageNumber, long offset, long length);
+}
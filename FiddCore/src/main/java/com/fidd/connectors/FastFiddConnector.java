@@ -1,15 +1,25 @@
 package com.fidd.connectors;
 
+import com.fidd.core.common.ConcatInputStream;
+import org.immutables.value.Value;
+
 import javax.annotation.Nullable;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Batched counterparts of FiddConnector calls, for connectors where a round trip is expensive.
+ * Method names differ from FiddConnector where return types do, so a connector can implement both.
+ */
 public interface FastFiddConnector {
+    @Value.Immutable
     interface MessageNumberAndLength {
         long messageNumber();
         long messageLength();
     }
 
+    @Value.Immutable
     interface PageResult<T> {
         List<T> items();
         int page();
@@ -17,25 +27,46 @@ public interface FastFiddConnector {
         boolean last();
     }
 
+    @Value.Immutable
     interface Chunk {
         long offset();
         long length();
+
+        static Chunk of(long offset, long length) {
+            return ImmutableChunk.builder().offset(offset).length(length).build();
+        }
     }
 
     /** Descending order */
-    List<MessageNumberAndLength> getMessageNumbersTail(int count);
+    List<MessageNumberAndLength> getMessageNumbersAndLengthsTail(int count);
     /** Descending order */
-    List<MessageNumberAndLength> getMessageNumbersBefore(long messageNumber, int count, boolean inclusive);
+    List<MessageNumberAndLength> getMessageNumbersAndLengthsBefore(long messageNumber, int count, boolean inclusive);
     /** Descending order */
-    List<MessageNumberAndLength> getMessageNumbersBetween(long latestMessage, boolean inclusiveLatest,
-                                                          long earliestMessage, boolean inclusiveEarliest, int count, boolean getLatest);
+    List<MessageNumberAndLength> getMessageNumbersAndLengthsBetween(long latestMessage, boolean inclusiveLatest,
+                                                                    long earliestMessage, boolean inclusiveEarliest, int count, boolean getLatest);
 
-    PageResult<byte[]> listFiddKeys(long messageNumber, byte[] footprint, int page);//Size according to the connector
+    /** Encrypted Fidd Keys matching the footprint, longest match first. Page size according to the connector */
+    PageResult<byte[]> listFiddKeys(long messageNumber, byte[] footprint, int page);
     @Nullable byte[] getUnencryptedFiddKey(long messageNumber);
 
-    PageResult<byte[]> getFiddKeySignatures(long messageNumber, int index, int page);
-    PageResult<byte[]> getFiddMessageSignatures(long messageNumber, int index, int page);
+    PageResult<byte[]> getFiddKeySignatures(long messageNumber, int page);
+    PageResult<byte[]> getFiddMessageSignatures(long messageNumber, int page);
 
-    /** Concatenated */
+    /** Concatenated; chunks are expected to lie within the message file */
     InputStream getFiddMessageChunks(long messageNumber, List<Chunk> chunks);
+
+    /** Concatenated chunks of a plain FiddConnector, each chunk is requested when the previous one is read to the end */
+    static InputStream sequentialChunks(FiddConnector fiddConnector, long messageNumber, List<Chunk> chunks) {
+        Iterator<Chunk> iterator = chunks.iterator();
+        return ConcatInputStream.lazy(new Iterator<>() {
+            @Override
+            public boolean hasNext() { return iterator.hasNext(); }
+
+            @Override
+            public InputStream next() {
+                Chunk chunk = iterator.next();
+                return fiddConnector.getFiddMessageChunk(messageNumber, chunk.offset(), chunk.length());
+            }
+        });
+    }
 }
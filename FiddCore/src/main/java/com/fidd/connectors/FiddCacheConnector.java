@@ -7,6 +7,8 @@ import java.util.List;
 
 public interface FiddCacheConnector extends FiddConnector {
     InputStream getFiddMessageChunk(long messageNumber, long offset, long length, boolean tryCache);
+    /** Concatenated; batched if the underlying connector is a FastFiddConnector */
+    InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks, boolean tryCache);
 
     List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint, boolean tryCache) throws IOException;
     @Nullable byte[] getFiddKey(long messageNumber, byte[] key, boolean tryCache);
@@ -1,6 +1,10 @@
 package com.fidd.connectors.base;
 
+import com.fidd.connectors.FastFiddConnector;
 import com.fidd.connectors.FiddConnector;
+import com.fidd.connectors.ImmutableMessageNumberAndLength;
+import com.fidd.connectors.ImmutablePageResult;
+import com.google.common.primitives.ImmutableLongArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,10 +15,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,8 +25,10 @@ import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_KEY_FILE_NAME;
 import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_MESSAGE_FILE_NAME;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public abstract class BaseDirectoryConnector implements FiddConnector {
+public abstract class BaseDirectoryConnector implements FiddConnector, FastFiddConnector {
     final static Logger LOGGER = LoggerFactory.getLogger(BaseDirectoryConnector.class);
+    /** messageLength of a message folder without a message file */
+    protected static final long NO_MESSAGE_FILE = -1;
     final static String PATH_SEPARATOR = "/";
 
     // Regex: fidd.key.<digits>.sign
@@ -33,6 +36,8 @@ public abstract class BaseDirectoryConnector implements FiddConnector {
     // Regex: fidd.message.<digits>.sign
     public final static Pattern FIDD_MESSAGE_SIGNATURE_PATTERN = Pattern.compile("fidd\\.message\\.(\\d+)\\.sign");
 
+    public final static int DEFAULT_PAGE_SIZE = 100;
+
     protected abstract List<String> getListing(String fiddPath, boolean isDirectory) throws IOException;
     protected abstract String fiddFolderPath();
     protected abstract boolean pathExists(String path) throws IOException;
@@ -49,100 +54,43 @@ public abstract class BaseDirectoryConnector implements FiddConnector {
         return getListing(fiddPath, false);
     }
 
-    protected TreeMap<Long, Long> getMessagesNumberMap(String fiddPath) {
-        return getMessagesNumberMap(fiddPath, (o1, o2) -> Long.compare(o2, o1));
-    }
-
-    protected TreeMap<Long, Long> getMessagesNumberMapEarliestFirst(String fiddPath) {
-        return getMessagesNumberMap(fiddPath, Long::compare);
+    protected static long[] parseMessageNumbers(List<String> subDirectoryList) {
+        ImmutableLongArray.Builder messages = ImmutableLongArray.builder();
+        for (String path : subDirectoryList) {
+            try {
+                messages.add(Long.parseLong(getFileName(path)));
+            } catch(Exception e) {
+                LOGGER.debug("Fidd subfolder is not a message / message number parse error", e);
+            }
+        }
+        return messages.build().toArray();
     }
 
-    protected TreeMap<Long, Long> getMessagesNumberMap(String fiddPath, Comparator<Long> comparator) {
-        TreeMap<Long, Long> messages = new TreeMap<>(comparator);
+    protected long[] listMessageNumbers(String fiddPath) {
         try {
-            List<String> subDirectoryList = getSubDirectoryListing(fiddPath);
-            for (String path : subDirectoryList) {
-                try {
-                    Long msgNum = Long.parseLong(getFileName(path));
-                    messages.put(msgNum, msgNum);
-                } catch(Exception e) {
-                    LOGGER.debug("Fidd subfolder is not a message / message number parse error", e);
-                }
-            }
+            return parseMessageNumbers(getSubDirectoryListing(fiddPath));
         } catch (IOException e) {
             System.err.println("Error reading directory: " + e.getMessage());
+            return new long[0];
         }
+    }
 
-        return messages;
+    /**
+     * Message numbers under fiddPath. By default the index is rebuilt from a directory listing on every call;
+     * connectors that can track changes of the fidd folder override this to return a maintained index.
+     */
+    protected MessageNumberIndex getMessageNumberIndex(String fiddPath) {
+        return new MessageNumberIndex(listMessageNumbers(fiddPath));
     }
 
     public List<Long> getMessagesTail(String fiddPath, @Nullable Long startKey, int count, boolean inclusive) {
-        TreeMap<Long, Long> messages = getMessagesNumberMap(fiddPath);
-        if (messages.isEmpty()) { return List.of(); }
-
-        if (startKey == null) { startKey = messages.firstKey(); }
-        SortedMap<Long, Long> tailMap = messages.tailMap(startKey, inclusive);
-
-        List<Long> result = new ArrayList<>();
-        int index = 0;
-        for (Long key : tailMap.keySet()) {
-            if (index < count) {
-                result.add(key);
-                index++;
-            } else {
-                break;
-            }
-        }
-
-        return result;
+        return getMessageNumberIndex(fiddPath).tail(startKey, count, inclusive);
     }
 
     protected List<Long> getMessageNumbersBetween(String fiddPath, long latestMessage, boolean inclusiveLatest,
                                                          long earliestMessage, boolean inclusiveEarliest, int count, boolean getLatest) {
-        List<Long> result = new ArrayList<>();
-        int addedCount = 0;
-
-        if (getLatest) {
-            TreeMap<Long, Long> messages = getMessagesNumberMap(fiddPath);
-            SortedMap<Long, Long> tailMap = messages.tailMap(latestMessage, inclusiveLatest);
-            for (Long key : tailMap.keySet()) {
-                if (addedCount >= count) {
-                    break;
-                }
-                if (key > earliestMessage) {
-                    result.add(key);
-                    addedCount++;
-                } else if (key == earliestMessage) {
-                    if (inclusiveEarliest) {
-                        result.add(key);
-                        addedCount++;
-                    }
-                } else {
-                    break;
-                }
-            }
-        } else {
-            TreeMap<Long, Long> messages = getMessagesNumberMapEarliestFirst(fiddPath);
-            SortedMap<Long, Long> tailMap = messages.tailMap(earliestMessage, inclusiveEarliest);
-            for (Long key : tailMap.keySet()) {
-                if (addedCount >= count) {
-                    break;
-                }
-                if (key < latestMessage) {
-                    result.add(0, key);
-                    addedCount++;
-                } else if (key == latestMessage) {
-                    if (inclusiveLatest) {
-                        result.add(0, key);
-                        addedCount++;
-                    }
-                } else {
-                    break;
-                }
-            }
-        }
-
-        return result;
+        return getMessageNumberIndex(fiddPath).between(latestMessage, inclusiveLatest,
+                earliestMessage, inclusiveEarliest, count, getLatest);
     }
 
     @Override
@@ -338,4 +286,116 @@ public abstract class BaseDirectoryConnector implements FiddConnector {
             throw new RuntimeException(e);
         }
     }
+
+    // ------------------------------------------------------------
+    // FastFiddConnector
+    // ------------------------------------------------------------
+
+    /** Page size of listFiddKeys and signature pages */
+    protected int pageSize() { return DEFAULT_PAGE_SIZE; }
+
+    /** Length of the message file, NO_MESSAGE_FILE if the message folder has none (yet) */
+    protected long messageLength(long messageNumber) throws IOException {
+        String messageFilePath = messageFilePath(messageNumber);
+        if (!pathExists(messageFilePath) || !pathIsRegularFile(messageFilePath)) {
+            return NO_MESSAGE_FILE;
+        }
+        return size(messageFilePath);
+    }
+
+    /**
+     * Messages with their lengths. Messages whose file isn't there yet are left out; any other failure to get
+     * a length is thrown, instead of quietly returning fewer messages.
+     */
+    protected List<MessageNumberAndLength> withLengths(List<Long> messageNumbers) {
+        long[] lengths = new long[messageNumbers.size()];
+        try {
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = messageLength(messageNumbers.get(i));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return withLengths(messageNumbers, lengths);
+    }
+
+    protected static List<MessageNumberAndLength> withLengths(List<Long> messageNumbers, long[] lengths) {
+        List<MessageNumberAndLength> result = new ArrayList<>(messageNumbers.size());
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] == NO_MESSAGE_FILE) {
+                LOGGER.debug("Fidd message file not there yet, skipping message " + messageNumbers.get(i));
+                continue;
+            }
+            result.add(ImmutableMessageNumberAndLength.builder()
+                    .messageNumber(messageNumbers.get(i))
+                    .messageLength(lengths[i])
+                    .build());
+        }
+        return result;
+    }
+
+    @Override
+    public List<MessageNumberAndLength> getMessageNumbersAndLengthsTail(int count) {
+        return withLengths(getMessageNumbersTail(count));
+    }
+
+    @Override
+    public List<MessageNumberAndLength> getMessageNumbersAndLengthsBefore(long messageNumber, int count, boolean inclusive) {
+        return withLengths(getMessageNumbersBefore(messageNumber, count, inclusive));
+    }
+
+    @Override
+    public List<MessageNumberAndLength> getMessageNumbersAndLengthsBetween(long latestMessage, boolean inclusiveLatest,
+                                                                           long earliestMessage, boolean inclusiveEarliest,
+                                                                           int count, boolean getLatest) {
+        return withLengths(getMessageNumbersBetween(latestMessage, inclusiveLatest, earliestMessage, inclusiveEarliest,
+                count, getLatest));
+    }
+
+    protected interface PageItemLoader {
+        @Nullable byte[] load(int index);
+    }
+
+    protected PageResult<byte[]> loadPage(int totalCount, int page, PageItemLoader loader) {
+        int pageSize = pageSize();
+        long from = Math.max(0, (long) page * pageSize);
+        int to = (int) Math.min(totalCount, from + pageSize);
+        List<byte[]> items = new ArrayList<>();
+        for (int i = (int) Math.min(from, totalCount); i < to; i++) {
+            byte[] item = loader.load(i);
+            if (item != null) { items.add(item); }
+        }
+        return ImmutablePageResult.<byte[]>builder()
+                .items(items)
+                .page(page)
+                .pageSize(pageSize)
+                .last(to >= totalCount)
+                .build();
+    }
+
+    @Override
+    public PageResult<byte[]> listFiddKeys(long messageNumber, byte[] footprint, int page) {
+        try {
+            List<byte[]> candidates = getFiddKeyCandidates(messageNumber, footprint);
+            return loadPage(candidates.size(), page, i -> getFiddKey(messageNumber, candidates.get(i)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public PageResult<byte[]> getFiddKeySignatures(long messageNumber, int page) {
+        return loadPage(getFiddKeySignatureCount(messageNumber), page, i -> getFiddKeySignature(messageNumber, i));
+    }
+
+    @Override
+    public PageResult<byte[]> getFiddMessageSignatures(long messageNumber, int page) {
+        return loadPage(getFiddMessageSignatureCount(messageNumber), page, i -> getFiddMessageSignature(messageNumber, i));
+    }
+
+    /** Chunks are opened one after another, as the previous one is read to the end */
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<Chunk> chunks) {
+        return FastFiddConnector.sequentialChunks(this, messageNumber, chunks);
+    }
 }
@@ -0,0 +1,99 @@
+package com.fidd.connectors.base;
+
+import com.fidd.common.streamchain.BufferChainInputStream;
+import com.fidd.common.streamchain.BufferChainOutputStream;
+import com.fidd.common.streamchain.OutputStreamLimitReachedException;
+import com.fidd.common.streamchain.chain.BoundedBufferChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking downloads of remote connectors on a bounded pool of daemon threads and exposes
+ * each download as an InputStream. A download can run at most maxBufferedBytes ahead of its reader,
+ * and is stopped once the reader closes the stream - also if it is still waiting in the queue.
+ */
+public class DownloadScheduler {
+    final static Logger LOGGER = LoggerFactory.getLogger(DownloadScheduler.class);
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 4L * 1024 * 1024;
+    public static final int MIN_BUFFER_SIZE = 16 * 1024;
+    public static final int MAX_BUFFER_SIZE = 256 * 1024;
+
+    public interface Download {
+        /** Writes the data into the given stream; writes fail with OutputStreamLimitReachedException once the reader is done */
+        void download(OutputStream os) throws Exception;
+    }
+
+    private static volatile @Nullable DownloadScheduler shared;
+
+    public static DownloadScheduler shared() {
+        DownloadScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (DownloadScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    scheduler = new DownloadScheduler(DEFAULT_PARALLELISM, DEFAULT_MAX_BUFFERED_BYTES);
+                    shared = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    protected final ThreadPoolExecutor executor;
+    protected final long maxBufferedBytes;
+
+    public DownloadScheduler(int parallelism, long maxBufferedBytes) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "fidd-download-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /** @return stream of at most length bytes produced by download */
+    public InputStream stream(long length, Download download) {
+        BoundedBufferChain chain = new BoundedBufferChain(maxBufferedBytes);
+        BufferChainInputStream is = new BufferChainInputStream(chain);
+        int bufferSize = (int) Math.max(1, Math.min(MIN_BUFFER_SIZE, length));
+        BufferChainOutputStream os = new BufferChainOutputStream(chain, bufferSize, Math.max(bufferSize, MAX_BUFFER_SIZE), length);
+
+        Future<?> future = executor.submit(() -> {
+            if (chain.isCancelled()) { return; }
+            try {
+                download.download(os);
+                os.close();
+            } catch (OutputStreamLimitReachedException e) {
+                // This is our exception, we already got the chunk or the reader closed the stream, ignore
+            } catch (Exception e) {
+                LOGGER.debug("Download failed", e);
+                if (!chain.isClosed()) { chain.fail(e); }
+            }
+        });
+        chain.setOnCancel(() -> future.cancel(true));
+
+        return is;
+    }
+
+    public int getQueuedDownloads() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveDownloads() {
+        return executor.getActiveCount();
+    }
+}
@@ -0,0 +1,125 @@
+package com.fidd.connectors.base;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sorted set of message numbers, kept as an ascending primitive long[].
+ * Writers replace the array under a lock; readers work on the current immutable snapshot without locking,
+ * so tail and range queries cost one binary search plus the page size.
+ */
+public class MessageNumberIndex {
+    private static final long[] EMPTY = new long[0];
+
+    private volatile long[] numbers = EMPTY;
+
+    public MessageNumberIndex() {}
+
+    public MessageNumberIndex(long[] numbers) {
+        replaceAll(numbers);
+    }
+
+    public int size() {
+        return numbers.length;
+    }
+
+    public boolean contains(long messageNumber) {
+        return Arrays.binarySearch(numbers, messageNumber) >= 0;
+    }
+
+    public synchronized void replaceAll(long[] messageNumbers) {
+        long[] sorted = messageNumbers.clone();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[unique - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        numbers = unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+
+    public synchronized boolean add(long messageNumber) {
+        long[] current = numbers;
+        int index = Arrays.binarySearch(current, messageNumber);
+        if (index >= 0) { return false; }
+
+        int insertAt = -index - 1;
+        long[] updated = new long[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = messageNumber;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        numbers = updated;
+        return true;
+    }
+
+    public synchronized boolean remove(long messageNumber) {
+        long[] current = numbers;
+        int index = Arrays.binarySearch(current, messageNumber);
+        if (index < 0) { return false; }
+
+        long[] updated = new long[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        numbers = updated;
+        return true;
+    }
+
+    /** Index of the largest number <= key (< key if not inclusive), -1 if none */
+    static int floorIndex(long[] numbers, long key, boolean inclusive) {
+        int index = Arrays.binarySearch(numbers, key);
+        if (index >= 0) { return inclusive ? index : index - 1; }
+        return -index - 2;
+    }
+
+    /** Index of the smallest number >= key (> key if not inclusive), numbers.length if none */
+    static int ceilingIndex(long[] numbers, long key, boolean inclusive) {
+        int index = Arrays.binarySearch(numbers, key);
+        if (index >= 0) { return inclusive ? index : index + 1; }
+        return -index - 1;
+    }
+
+    /**
+     * Up to count message numbers, latest first, starting at startKey.
+     * If startKey is null, starts at the latest message.
+     */
+    public List<Long> tail(@Nullable Long startKey, int count, boolean inclusive) {
+        long[] snapshot = numbers;
+        if (snapshot.length == 0 || count <= 0) { return List.of(); }
+
+        long start = startKey == null ? snapshot[snapshot.length - 1] : startKey;
+        List<Long> result = new ArrayList<>();
+        for (int i = floorIndex(snapshot, start, inclusive); i >= 0 && result.size() < count; i--) {
+            result.add(snapshot[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Up to count message numbers between earliestMessage and latestMessage, latest first.
+     * If getLatest, the page is taken from the latest end of the range, otherwise from the earliest end.
+     */
+    public List<Long> between(long latestMessage, boolean inclusiveLatest,
+                              long earliestMessage, boolean inclusiveEarliest, int count, boolean getLatest) {
+        long[] snapshot = numbers;
+        if (count <= 0) { return List.of(); }
+
+        int from = ceilingIndex(snapshot, earliestMessage, inclusiveEarliest);
+        int to = floorIndex(snapshot, latestMessage, inclusiveLatest);
+        List<Long> result = new ArrayList<>();
+        if (getLatest) {
+            for (int i = to; i >= from && result.size() < count; i--) {
+                result.add(snapshot[i]);
+            }
+        } else {
+            for (int i = from; i <= to && result.size() < count; i++) {
+                result.add(snapshot[i]);
+            }
+            Collections.reverse(result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+package com.fidd.connectors.cache.base;
+
+import com.fidd.connectors.FastFiddConnector;
+import com.fidd.connectors.FiddConnector;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caches message file data as fixed-size blocks aligned to the message file.
+ * A requested range is assembled from cached blocks, and only the missing blocks are fetched -
+ * in one batch, as contiguous runs.
+ */
+public abstract class BaseBlockCacheConnector extends BaseNoOpCacheConnector {
+    public record BlockKey(long messageNumber, long blockIndex) { }
+
+    protected final int blockSize;
+    protected final long maxCachedRangeBytes;
+    protected final SingleFlight<BlockKey, byte[]> blockFlights = new SingleFlight<>();
+
+    public BaseBlockCacheConnector(FiddConnector fiddConnector, int blockSize, long maxCachedRangeBytes) {
+        super(fiddConnector);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be > 0");
+        }
+        this.blockSize = blockSize;
+        this.maxCachedRangeBytes = maxCachedRangeBytes;
+    }
+
+    /** Block hits and misses; a coalesced block was awaited from a concurrent fetch */
+    public CacheCounters getBlockCounters() {
+        return blockFlights.getCounters();
+    }
+
+    /** Returns null if the block is not cached */
+    protected abstract @Nullable byte[] getCachedBlock(long messageNumber, long blockIndex);
+    /** Only full blocks, and the last block of the message file, are cached */
+    protected abstract void cacheBlock(long messageNumber, long blockIndex, byte[] block);
+
+    @Override
+    public InputStream getFiddMessageChunk(long messageNumber, long offset, long length, boolean tryCache) {
+        if (!tryCache || length > maxCachedRangeBytes) {
+            return super.getFiddMessageChunk(messageNumber, offset, length);
+        } else {
+            return new ByteArrayInputStream(readRanges(messageNumber,
+                    List.of(FastFiddConnector.Chunk.of(offset, length))).get(0));
+        }
+    }
+
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks, boolean tryCache) {
+        long totalLength = chunks.stream().mapToLong(FastFiddConnector.Chunk::length).sum();
+        if (!tryCache || totalLength > maxCachedRangeBytes) {
+            return super.getFiddMessageChunks(messageNumber, chunks);
+        }
+
+        List<InputStream> streams = new ArrayList<>(chunks.size());
+        for (byte[] range : readRanges(messageNumber, chunks)) {
+            streams.add(new ByteArrayInputStream(range));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /** Ranges are clipped to the message size */
+    protected List<byte[]> readRanges(long messageNumber, List<FastFiddConnector.Chunk> ranges) {
+        long messageSize = getFiddMessageSize(messageNumber, true);
+
+        // 1. Blocks covering all ranges, taken from the cache where possible.
+        // Missing blocks are either claimed by this call, or awaited if another call is already fetching them
+        Map<Long, byte[]> blocks = new HashMap<>();
+        TreeMap<Long, CompletableFuture<byte[]>> claimedBlocks = new TreeMap<>();
+        Map<Long, CompletableFuture<byte[]>> awaitedBlocks = new HashMap<>();
+        for (FastFiddConnector.Chunk range : ranges) {
+            long end = Math.min(range.offset() + range.length(), messageSize);
+            for (long blockIndex = range.offset() / blockSize; blockIndex * blockSize < end; blockIndex++) {
+                if (blocks.containsKey(blockIndex) || claimedBlocks.containsKey(blockIndex)
+                        || awaitedBlocks.containsKey(blockIndex)) { continue; }
+                byte[] block = getCachedBlock(messageNumber, blockIndex);
+                if (block != null) {
+                    blockFlights.getCounters().recordHit();
+                    blocks.put(blockIndex, block);
+                    continue;
+                }
+
+                BlockKey key = new BlockKey(messageNumber, blockIndex);
+                CompletableFuture<byte[]> flight = new CompletableFuture<>();
+                CompletableFuture<byte[]> existing = blockFlights.claim(key, flight);
+                if (existing != null) {
+                    blockFlights.getCounters().recordCoalesced();
+                    awaitedBlocks.put(blockIndex, existing);
+                } else if ((block = getCachedBlock(messageNumber, blockIndex)) != null) {
+                    // Fetched by a flight that completed between the cache check and the claim
+                    blockFlights.release(key, flight);
+                    blockFlights.getCounters().recordHit();
+                    blocks.put(blockIndex, block);
+                } else {
+                    blockFlights.getCounters().recordMiss();
+                    claimedBlocks.put(blockIndex, flight);
+                }
+            }
+        }
+
+        // 2. Claimed blocks, fetched in one batch of contiguous runs
+        if (!claimedBlocks.isEmpty()) {
+            try {
+                fetchBlocks(messageNumber, claimedBlocks.navigableKeySet(), messageSize, blocks);
+            } catch (RuntimeException | Error e) {
+                claimedBlocks.values().forEach(flight -> flight.completeExceptionally(e));
+                throw e;
+            } finally {
+                for (Map.Entry<Long, CompletableFuture<byte[]>> claimed : claimedBlocks.entrySet()) {
+                    byte[] block = blocks.get(claimed.getKey());
+                    if (block != null) {
+                        claimed.getValue().complete(block);
+                    } else {
+                        claimed.getValue().completeExceptionally(new IllegalStateException("Block not fetched"));
+                    }
+                    blockFlights.release(new BlockKey(messageNumber, claimed.getKey()), claimed.getValue());
+                }
+            }
+        }
+        // Awaited only after completing the claimed ones, so that two calls never wait for each other
+        for (Map.Entry<Long, CompletableFuture<byte[]>> awaited : awaitedBlocks.entrySet()) {
+            blocks.put(awaited.getKey(), SingleFlight.await(awaited.getValue()));
+        }
+
+        // 3. Ranges assembled from blocks
+        List<byte[]> result = new ArrayList<>(ranges.size());
+        for (FastFiddConnector.Chunk range : ranges) {
+            long end = Math.min(range.offset() + range.length(), messageSize);
+            byte[] data = new byte[(int) Math.max(0, end - range.offset())];
+            int copied = 0;
+            while (copied < data.length) {
+                long position = range.offset() + copied;
+                byte[] block = checkNotNull(blocks.get(position / blockSize));
+                int positionInBlock = (int) (position % blockSize);
+                int toCopy = Math.min(data.length - copied, block.length - positionInBlock);
+                if (toCopy <= 0) {
+                    // Message file is shorter than its reported size
+                    data = Arrays.copyOf(data, copied);
+                    break;
+                }
+                System.arraycopy(block, positionInBlock, data, copied, toCopy);
+                copied += toCopy;
+            }
+            result.add(data);
+        }
+        return result;
+    }
+
+    protected void fetchBlocks(long messageNumber, SortedSet<Long> missingBlocks, long messageSize, Map<Long, byte[]> blocks) {
+        List<FastFiddConnector.Chunk> runs = new ArrayList<>();
+        List<Long> runFirstBlocks = new ArrayList<>();
+        long runStart = -1;
+        long previous = -1;
+        for (long blockIndex : missingBlocks) {
+            if (runStart < 0 || blockIndex != previous + 1) {
+                if (runStart >= 0) { addRun(runs, runFirstBlocks, runStart, previous, messageSize); }
+                runStart = blockIndex;
+            }
+            previous = blockIndex;
+        }
+        addRun(runs, runFirstBlocks, runStart, previous, messageSize);
+
+        try (InputStream stream = super.getFiddMessageChunks(messageNumber, runs)) {
+            for (int i = 0; i < runs.size(); i++) {
+                long runEnd = runs.get(i).offset() + runs.get(i).length();
+                for (long blockIndex = runFirstBlocks.get(i); blockIndex * blockSize < runEnd; blockIndex++) {
+                    int expectedLength = (int) (Math.min(runEnd, (blockIndex + 1) * blockSize) - blockIndex * blockSize);
+                    byte[] block = stream.readNBytes(expectedLength);
+                    blocks.put(blockIndex, block);
+                    if (block.length == expectedLength) {
+                        cacheBlock(messageNumber, blockIndex, block);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void addRun(List<FastFiddConnector.Chunk> runs, List<Long> runFirstBlocks,
+                          long firstBlock, long lastBlock, long messageSize) {
+        long start = firstBlock * blockSize;
+        long end = Math.min((lastBlock + 1) * blockSize, messageSize);
+        runs.add(FastFiddConnector.Chunk.of(start, end - start));
+        runFirstBlocks.add(firstBlock);
+    }
+}
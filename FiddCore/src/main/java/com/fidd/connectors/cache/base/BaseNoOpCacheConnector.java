@@ -1,5 +1,6 @@
 package com.fidd.connectors.cache.base;
 
+import com.fidd.connectors.FastFiddConnector;
 import com.fidd.connectors.FiddCacheConnector;
 import com.fidd.connectors.FiddConnector;
 
@@ -55,6 +56,16 @@ public class BaseNoOpCacheConnector implements FiddCacheConnector {
         return fiddConnector.getFiddMessageChunk(messageNumber, offset, length);
     }
 
+    public InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks) {
+        if (fiddConnector instanceof FiddCacheConnector) {
+            return ((FiddCacheConnector) fiddConnector).getFiddMessageChunks(messageNumber, chunks, true);
+        } else if (fiddConnector instanceof FastFiddConnector) {
+            return ((FastFiddConnector) fiddConnector).getFiddMessageChunks(messageNumber, chunks);
+        } else {
+            return FastFiddConnector.sequentialChunks(fiddConnector, messageNumber, chunks);
+        }
+    }
+
     @Override
     public int getFiddKeySignatureCount(long messageNumber) {
         return fiddConnector.getFiddKeySignatureCount(messageNumber);
@@ -83,6 +94,12 @@ public class BaseNoOpCacheConnector implements FiddCacheConnector {
         return getFiddMessageChunk(messageNumber, offset, length);
     }
 
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks, boolean tryCache) {
+        // no-op ignores tryCache parameter
+        return getFiddMessageChunks(messageNumber, chunks);
+    }
+
     @Override
     public List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint, boolean tryCache) throws IOException {
         // no-op ignores tryCache parameter
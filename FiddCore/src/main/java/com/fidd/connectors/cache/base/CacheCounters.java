@@ -0,0 +1,23 @@
+package com.fidd.connectors.cache.base;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Hit, miss and coalesced request counts of a cache. A coalesced request waited for an identical in-flight miss. */
+public class CacheCounters {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public void recordHit() { hits.increment(); }
+    public void recordMiss() { misses.increment(); }
+    public void recordCoalesced() { coalesced.increment(); }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public long coalesced() { return coalesced.sum(); }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits() + ", misses=" + misses() + ", coalesced=" + coalesced();
+    }
+}
@@ -0,0 +1,77 @@
+package com.fidd.connectors.cache.base;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent loads of the same key: the first caller loads, the others wait for its result.
+ * Nothing is kept once a load completes - storing the result is up to the cache.
+ */
+public class SingleFlight<K, V> {
+    protected final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    protected final CacheCounters counters = new CacheCounters();
+
+    public CacheCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @param cached returns the cached value, or null on a miss
+     * @param loader loads the value and stores it in the cache
+     */
+    public @Nullable V load(K key, Supplier<V> cached, Supplier<V> loader) {
+        V value = cached.get();
+        if (value != null) {
+            counters.recordHit();
+            return value;
+        }
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = claim(key, flight);
+        if (existing != null) {
+            counters.recordCoalesced();
+            return await(existing);
+        }
+        try {
+            // The previous flight could have completed between the cache check and the claim
+            value = cached.get();
+            if (value != null) {
+                counters.recordHit();
+            } else {
+                counters.recordMiss();
+                value = loader.get();
+            }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            release(key, flight);
+        }
+    }
+
+    /** @return the flight already in progress for the key, or null if the caller's flight was registered and must be completed */
+    public @Nullable CompletableFuture<V> claim(K key, CompletableFuture<V> flight) {
+        return inFlight.putIfAbsent(key, flight);
+    }
+
+    public void release(K key, CompletableFuture<V> flight) {
+        inFlight.remove(key, flight);
+    }
+
+    /** Waits for a flight owned by another caller, rethrowing its failure */
+    public static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) { throw runtimeException; }
+            if (cause instanceof Error error) { throw error; }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.fidd.connectors.cache.disk;
+
+import com.fidd.connectors.FastFiddConnector;
+import com.fidd.connectors.FiddConnector;
+import com.fidd.connectors.cache.base.BaseBlockCacheConnector;
+import com.fidd.core.connection.FiddConnection;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Persistent cache of message file blocks, keys, sizes and signatures, meant to sit between
+ * a remote connector and RamCacheConnector. Entries are files under {@code <cacheDirectory>/<source>/<messageNumber>/},
+ * where source is a hash of the wrapped connector's URL, so that connections sharing a cache directory never see
+ * each other's messages. The least recently used entries are deleted once the cache grows over its budget.
+ * <p>
+ * The LRU index is rebuilt from the source directory on startup, ordered by the files' last-modified times,
+ * which are bumped on hits at most once per TOUCH_INTERVAL_MILLIS - so a restarted session picks up both the entries
+ * and their recency, to that precision.
+ * <p>
+ * Only what can't change once published is persisted: full blocks, keys, non-empty key candidates and signatures.
+ * Message numbers, signature counts and empty key candidates always come from the wrapped connector, and message
+ * sizes and the short last block of a message are only kept in memory for the session.
+ */
+public class DiskCacheConnector extends BaseBlockCacheConnector {
+    final static Logger LOGGER = LoggerFactory.getLogger(DiskCacheConnector.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_DISK_CACHE_BYTES = 4L * 1024 * 1024 * 1024;
+    public static final long DEFAULT_MAX_CACHED_RANGE_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MESSAGE_SIZE_CACHE_CAPACITY = 10_000;
+    public static final long TOUCH_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+    static final String UNENCRYPTED_FIDD_KEY_ENTRY = "fidd.key";
+    static final String FIDD_KEY_ENTRY_PREFIX = "key.";
+    static final String FIDD_KEY_CANDIDATES_ENTRY_PREFIX = "candidates.";
+    static final String KEY_SIGNATURE_ENTRY_PREFIX = "fidd.key.sign.";
+    static final String MESSAGE_SIGNATURE_ENTRY_PREFIX = "fidd.message.sign.";
+    static final String BLOCK_ENTRY_PREFIX = "block.";
+
+    /** Entry size, and when its file's last-modified time was last bumped */
+    protected record IndexEntry(long size, long touchedMillis) { }
+
+    /** Directory of the wrapped connector's entries */
+    protected final Path cacheDirectory;
+    protected final long maxCacheBytes;
+    protected final Cache<Long, Long> fiddMessageSizeCache;
+
+    /** Relative entry path to its index entry, in access order; guarded by itself */
+    protected final LinkedHashMap<Path, IndexEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+    protected long cachedBytes;
+
+    public static DiskCacheConnector of(FiddConnector fiddConnector, URL source, FiddConnection.CacheSettings cacheSettings) {
+        Long diskCacheBytes = cacheSettings.diskCacheBytes();
+        return new DiskCacheConnector(fiddConnector, source.toString(),
+                Path.of(checkNotNull(cacheSettings.diskCacheDirectory())),
+                DEFAULT_BLOCK_SIZE,
+                diskCacheBytes == null ? DEFAULT_DISK_CACHE_BYTES : diskCacheBytes,
+                DEFAULT_MAX_CACHED_RANGE_BYTES);
+    }
+
+    /**
+     * @param source identity of the wrapped connector, normally its URL; entries are kept apart per source,
+     *               and maxCacheBytes is the budget of this source's entries
+     */
+    public DiskCacheConnector(FiddConnector fiddConnector, String source, Path cacheDirectory, int blockSize,
+                              long maxCacheBytes, long maxCachedRangeBytes) {
+        super(fiddConnector, blockSize, maxCachedRangeBytes);
+        this.cacheDirectory = cacheDirectory.resolve(sourceDirectoryName(source));
+        this.maxCacheBytes = maxCacheBytes;
+        this.fiddMessageSizeCache = Caffeine.newBuilder()
+                .maximumSize(DEFAULT_MESSAGE_SIZE_CACHE_CAPACITY)
+                .build();
+        try {
+            Files.createDirectories(this.cacheDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        loadIndex();
+    }
+
+    /** Stable across sessions, and safe as a file name whatever the source */
+    protected static String sourceDirectoryName(String source) {
+        byte[] hash = Hashing.sha256().hashString(source, StandardCharsets.UTF_8).asBytes();
+        return hex(Arrays.copyOf(hash, 16));
+    }
+
+    protected void loadIndex() {
+        record Entry(Path path, long size, FileTime lastModified) { }
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(cacheDirectory, 2)) {
+            for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+                Path path = it.next();
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) { continue; }
+                if (path.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+                    // Left over from an interrupted write
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                entries.add(new Entry(cacheDirectory.relativize(path), attributes.size(), attributes.lastModifiedTime()));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error reading disk cache directory {}, starting with an empty index", cacheDirectory, e);
+        }
+
+        entries.sort(Comparator.comparing(Entry::lastModified));
+        synchronized (index) {
+            for (Entry entry : entries) {
+                index.put(entry.path(), new IndexEntry(entry.size(), entry.lastModified().toMillis()));
+                cachedBytes += entry.size();
+            }
+        }
+        evict();
+    }
+
+    public long getCachedBytes() {
+        synchronized (index) {
+            return cachedBytes;
+        }
+    }
+
+    protected static Path entryPath(long messageNumber, String name) {
+        return Path.of(Long.toString(messageNumber), name);
+    }
+
+    protected static String hex(byte[] bytes) {
+        return BaseEncoding.base16().lowerCase().encode(bytes);
+    }
+
+    /** Returns null on a miss */
+    protected @Nullable byte[] readEntry(Path entry) {
+        long now = System.currentTimeMillis();
+        boolean touch = false;
+        synchronized (index) {
+            IndexEntry indexEntry = index.get(entry);
+            if (indexEntry == null) { return null; }
+            if (now - indexEntry.touchedMillis() >= TOUCH_INTERVAL_MILLIS) {
+                index.put(entry, new IndexEntry(indexEntry.size(), now));
+                touch = true;
+            }
+        }
+        Path file = cacheDirectory.resolve(entry);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            if (touch) {
+                // Recency for the next session; within a session the index keeps it
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+            return data;
+        } catch (NoSuchFileException e) {
+            // Evicted concurrently, or deleted from outside
+            removeFromIndex(entry);
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Error reading disk cache entry {}", file, e);
+            return null;
+        }
+    }
+
+    protected void writeEntry(Path entry, byte[] data) {
+        Path file = cacheDirectory.resolve(entry);
+        Path tempFile = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + TEMP_FILE_SUFFIX);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(tempFile, data);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The cache is best effort: a failed write is only a future miss
+            LOGGER.warn("Error writing disk cache entry {}", file, e);
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) { }
+            return;
+        }
+
+        synchronized (index) {
+            IndexEntry previous = index.put(entry, new IndexEntry(data.length, System.currentTimeMillis()));
+            cachedBytes += data.length - (previous == null ? 0 : previous.size());
+        }
+        evict();
+    }
+
+    protected void removeFromIndex(Path entry) {
+        synchronized (index) {
+            IndexEntry removed = index.remove(entry);
+            if (removed != null) { cachedBytes -= removed.size(); }
+        }
+    }
+
+    protected void evict() {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (index) {
+            Iterator<Map.Entry<Path, IndexEntry>> it = index.entrySet().iterator();
+            while (cachedBytes > maxCacheBytes && it.hasNext()) {
+                Map.Entry<Path, IndexEntry> eldest = it.next();
+                cachedBytes -= eldest.getValue().size();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (Path entry : evicted) {
+            Path file = cacheDirectory.resolve(entry);
+            try {
+                Files.deleteIfExists(file);
+                deleteIfEmpty(checkNotNull(file.getParent()));
+            } catch (IOException e) {
+                LOGGER.warn("Error evicting disk cache entry {}", file, e);
+            }
+        }
+    }
+
+    protected void deleteIfEmpty(Path messageDirectory) {
+        try (Stream<Path> files = Files.list(messageDirectory)) {
+            if (files.findAny().isEmpty()) {
+                Files.deleteIfExists(messageDirectory);
+            }
+        } catch (IOException ignored) {
+            // Not empty or already gone - either is fine
+        }
+    }
+
+    protected static byte[] serializeList(List<byte[]> elements) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(elements.size());
+            for (byte[] element : elements) {
+                out.writeInt(element.length);
+                out.write(element);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static List<byte[]> deserializeList(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int count = in.readInt();
+        List<byte[]> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] element = new byte[in.readInt()];
+            in.readFully(element);
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    protected Path blockEntry(long messageNumber, long blockIndex) {
+        // Block size is part of the name, so a changed block size never mixes up blocks
+        return entryPath(messageNumber, BLOCK_ENTRY_PREFIX + blockSize + "." + blockIndex);
+    }
+
+    @Override
+    protected @Nullable byte[] getCachedBlock(long messageNumber, long blockIndex) {
+        return readEntry(blockEntry(messageNumber, blockIndex));
+    }
+
+    @Override
+    protected void cacheBlock(long messageNumber, long blockIndex, byte[] block) {
+        if (block.length < blockSize) {
+            // Last block of the message file, which may still be growing
+            return;
+        }
+        writeEntry(blockEntry(messageNumber, blockIndex), block);
+    }
+
+    @Override
+    public InputStream getFiddMessageChunk(long messageNumber, long offset, long length) {
+        return getFiddMessageChunk(messageNumber, offset, length, true);
+    }
+
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks) {
+        return getFiddMessageChunks(messageNumber, chunks, true);
+    }
+
+    @Override
+    public List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint, boolean tryCache) throws IOException {
+        if (!tryCache) {
+            return super.getFiddKeyCandidates(messageNumber, footprint);
+        }
+        Path entry = entryPath(messageNumber, FIDD_KEY_CANDIDATES_ENTRY_PREFIX + hex(footprint));
+        byte[] cached = readEntry(entry);
+        if (cached != null) {
+            return deserializeList(cached);
+        }
+        List<byte[]> keyCandidates = super.getFiddKeyCandidates(messageNumber, footprint);
+        if (!keyCandidates.isEmpty()) {
+            // No candidates may only mean the key isn't published yet
+            writeEntry(entry, serializeList(keyCandidates));
+        }
+        return keyCandidates;
+    }
+
+    @Override
+    public List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint) throws IOException {
+        return getFiddKeyCandidates(messageNumber, footprint, true);
+    }
+
+    @Override
+    public @Nullable byte[] getFiddKey(long messageNumber, byte[] key, boolean tryCache) {
+        if (!tryCache) {
+            return super.getFiddKey(messageNumber, key);
+        }
+        Path entry = entryPath(messageNumber, FIDD_KEY_ENTRY_PREFIX + hex(key));
+        byte[] fiddKey = readEntry(entry);
+        if (fiddKey == null) {
+            fiddKey = super.getFiddKey(messageNumber, key);
+            if (fiddKey != null) {
+                writeEntry(entry, fiddKey);
+            }
+        }
+        return fiddKey;
+    }
+
+    @Override
+    public @Nullable byte[] getFiddKey(long messageNumber, byte[] key) {
+        return getFiddKey(messageNumber, key, true);
+    }
+
+    @Override
+    public @Nullable byte[] getUnencryptedFiddKey(long messageNumber, boolean tryCache) {
+        if (!tryCache) {
+            return super.getUnencryptedFiddKey(messageNumber);
+        }
+        Path entry = entryPath(messageNumber, UNENCRYPTED_FIDD_KEY_ENTRY);
+        byte[] unencryptedFiddKey = readEntry(entry);
+        if (unencryptedFiddKey == null) {
+            unencryptedFiddKey = super.getUnencryptedFiddKey(messageNumber);
+            if (unencryptedFiddKey != null) {
+                writeEntry(entry, unencryptedFiddKey);
+            }
+        }
+        return unencryptedFiddKey;
+    }
+
+    @Override
+    public @Nullable byte[] getUnencryptedFiddKey(long messageNumber) {
+        return getUnencryptedFiddKey(messageNumber, true);
+    }
+
+    @Override
+    public long getFiddMessageSize(long messageNumber, boolean tryCache) {
+        if (!tryCache) {
+            return super.getFiddMessageSize(messageNumber);
+        }
+        // Only kept for the session - the message file may still be growing
+        return fiddMessageSizeCache.get(messageNumber, super::getFiddMessageSize);
+    }
+
+    @Override
+    public long getFiddMessageSize(long messageNumber) {
+        return getFiddMessageSize(messageNumber, true);
+    }
+
+    protected byte[] getSignature(long messageNumber, String entryPrefix, int index, boolean key) {
+        Path entry = entryPath(messageNumber, entryPrefix + index);
+        byte[] signature = readEntry(entry);
+        if (signature == null) {
+            signature = key ? super.getFiddKeySignature(messageNumber, index)
+                    : super.getFiddMessageSignature(messageNumber, index);
+            writeEntry(entry, signature);
+        }
+        return signature;
+    }
+
+    @Override
+    public int getFiddKeySignatureCount(long messageNumber, boolean tryCache) {
+        // Not cached - signatures may be added later
+        return super.getFiddKeySignatureCount(messageNumber);
+    }
+
+    @Override
+    public int getFiddKeySignatureCount(long messageNumber) {
+        return getFiddKeySignatureCount(messageNumber, true);
+    }
+
+    @Override
+    public byte[] getFiddKeySignature(long messageNumber, int index, boolean tryCache) {
+        return tryCache ? getSignature(messageNumber, KEY_SIGNATURE_ENTRY_PREFIX, index, true)
+                : super.getFiddKeySignature(messageNumber, index);
+    }
+
+    @Override
+    public byte[] getFiddKeySignature(long messageNumber, int index) {
+        return getFiddKeySignature(messageNumber, index, true);
+    }
+
+    @Override
+    public int getFiddMessageSignatureCount(long messageNumber, boolean tryCache) {
+        // Not cached - signatures may be added later
+        return super.getFiddMessageSignatureCount(messageNumber);
+    }
+
+    @Override
+    public int getFiddMessageSignatureCount(long messageNumber) {
+        return getFiddMessageSignatureCount(messageNumber, true);
+    }
+
+    @Override
+    public byte[] getFiddMessageSignature(long messageNumber, int index, boolean tryCache) {
+        return tryCache ? getSignature(messageNumber, MESSAGE_SIGNATURE_ENTRY_PREFIX, index, false)
+                : super.getFiddMessageSignature(messageNumber, index);
+    }
+
+    @Override
+    public byte[] getFiddMessageSignature(long messageNumber, int index) {
+        return getFiddMessageSignature(messageNumber, index, true);
+    }
+}
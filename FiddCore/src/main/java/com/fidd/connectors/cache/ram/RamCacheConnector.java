@@ -1,22 +1,46 @@
 package com.fidd.connectors.cache.ram;
 
 import com.fidd.connectors.FiddConnector;
-import com.fidd.connectors.cache.base.BaseNoOpCacheConnector;
+import com.fidd.connectors.cache.base.BaseBlockCacheConnector;
+import com.fidd.connectors.cache.base.CacheCounters;
+import com.fidd.connectors.cache.base.SingleFlight;
+import com.fidd.core.connection.FiddConnection;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 
-public class RamCacheConnector extends BaseNoOpCacheConnector {
-    protected record SimpleKey(long messageNumber, long offset, long length) { }
-    protected record MessageElementKey(long messageNumber, byte[] element) { }
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps message file blocks in memory, bounded by their total size, and keys, sizes and signatures by count.
+ */
+public class RamCacheConnector extends BaseBlockCacheConnector {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_CHUNK_CACHE_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_CACHED_RANGE_BYTES = 4L * 1024 * 1024;
+    public static final long DEFAULT_ELEMENT_CACHE_CAPACITY = 1024;
+    /** Approximate per-entry overhead added to the block size when weighing cache entries */
+    static final int BLOCK_ENTRY_OVERHEAD = 64;
+
+    protected record MessageElementKey(long messageNumber, byte[] element) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MessageElementKey other
+                    && messageNumber == other.messageNumber && Arrays.equals(element, other.element);
+        }
 
-    protected final Cache<SimpleKey, byte[]> chunkCache;
-    protected final long maxChunkSize;
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(messageNumber) + Arrays.hashCode(element);
+        }
+    }
+
+    protected final Cache<BlockKey, byte[]> blockCache;
 
     protected final Cache<MessageElementKey, List<byte[]>> fiddKeyCandidatesCache;
 
@@ -26,14 +50,31 @@ public class RamCacheConnector extends BaseNoOpCacheConnector {
 
     protected final Cache<Long, Long> fiddMessageSizeCache;
 
-    public RamCacheConnector(FiddConnector fiddConnector, long chunkCacheCapacity, long maxChunkSize,
+    protected final SingleFlight<MessageElementKey, List<byte[]>> fiddKeyCandidatesFlights = new SingleFlight<>();
+    protected final SingleFlight<MessageElementKey, byte[]> fiddKeyFlights = new SingleFlight<>();
+    protected final SingleFlight<Long, byte[]> unencryptedFiddKeyFlights = new SingleFlight<>();
+    protected final SingleFlight<Long, Long> fiddMessageSizeFlights = new SingleFlight<>();
+
+    public static RamCacheConnector of(FiddConnector fiddConnector, @Nullable FiddConnection.CacheSettings cacheSettings) {
+        Integer blockSize = cacheSettings == null ? null : cacheSettings.blockSize();
+        Long chunkCacheBytes = cacheSettings == null ? null : cacheSettings.chunkCacheBytes();
+        Long maxCachedRangeBytes = cacheSettings == null ? null : cacheSettings.maxCachedRangeBytes();
+        return new RamCacheConnector(fiddConnector,
+                blockSize == null ? DEFAULT_BLOCK_SIZE : blockSize,
+                chunkCacheBytes == null ? DEFAULT_CHUNK_CACHE_BYTES : chunkCacheBytes,
+                maxCachedRangeBytes == null ? DEFAULT_MAX_CACHED_RANGE_BYTES : maxCachedRangeBytes,
+                DEFAULT_ELEMENT_CACHE_CAPACITY, DEFAULT_ELEMENT_CACHE_CAPACITY,
+                DEFAULT_ELEMENT_CACHE_CAPACITY, DEFAULT_ELEMENT_CACHE_CAPACITY);
+    }
+
+    public RamCacheConnector(FiddConnector fiddConnector, int blockSize, long chunkCacheBytes, long maxCachedRangeBytes,
                              long fiddKeyCandidatesCacheCapacity, long fiddKeyCacheCapacity,
                              long unencryptedFiddKeyCacheCapacity, long fiddMessageSizeCacheCapacity) {
-        super(fiddConnector);
-        chunkCache = Caffeine.newBuilder()
-                .maximumSize(chunkCacheCapacity)
+        super(fiddConnector, blockSize, maxCachedRangeBytes);
+        blockCache = Caffeine.newBuilder()
+                .maximumWeight(chunkCacheBytes)
+                .weigher((BlockKey key, byte[] block) -> block.length + BLOCK_ENTRY_OVERHEAD)
                 .build();
-        this.maxChunkSize = maxChunkSize;
 
         fiddKeyCandidatesCache = Caffeine.newBuilder()
                 .maximumSize(fiddKeyCandidatesCacheCapacity)
@@ -49,41 +90,50 @@ public class RamCacheConnector extends BaseNoOpCacheConnector {
                 .build();
     }
 
+    public CacheCounters getFiddKeyCandidatesCounters() {
+        return fiddKeyCandidatesFlights.getCounters();
+    }
+
+    public CacheCounters getFiddKeyCounters() {
+        return fiddKeyFlights.getCounters();
+    }
+
+    public CacheCounters getUnencryptedFiddKeyCounters() {
+        return unencryptedFiddKeyFlights.getCounters();
+    }
+
+    public CacheCounters getFiddMessageSizeCounters() {
+        return fiddMessageSizeFlights.getCounters();
+    }
+
     @Override
-    public InputStream getFiddMessageChunk(long messageNumber, long offset, long length, boolean tryCache) {
-        boolean doCache = tryCache;
-        doCache = doCache && (length - offset < maxChunkSize);
-        if (!doCache) {
-            return super.getFiddMessageChunk(messageNumber, offset, length);
-        } else {
-            SimpleKey cacheKey = new SimpleKey(messageNumber, offset, length);
-            byte[] buffer = chunkCache.getIfPresent(cacheKey);
-            if (buffer == null) {
-                InputStream stream = super.getFiddMessageChunk(messageNumber, offset, length);
-                try (stream) {
-                    buffer = stream.readAllBytes();
-                    chunkCache.put(cacheKey, buffer);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+    protected @Nullable byte[] getCachedBlock(long messageNumber, long blockIndex) {
+        return blockCache.getIfPresent(new BlockKey(messageNumber, blockIndex));
+    }
 
-            return new ByteArrayInputStream(buffer);
-        }
+    @Override
+    protected void cacheBlock(long messageNumber, long blockIndex, byte[] block) {
+        blockCache.put(new BlockKey(messageNumber, blockIndex), block);
     }
 
     @Override
     public List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint, boolean tryCache) throws IOException {
-        if (tryCache) {
+        if (!tryCache) {
             return super.getFiddKeyCandidates(messageNumber, footprint);
-        } else {
-            MessageElementKey cacheKey = new MessageElementKey(messageNumber, footprint);
-            List<byte[]> keyCandidates = fiddKeyCandidatesCache.getIfPresent(cacheKey);
-            if (keyCandidates == null) {
-                keyCandidates = super.getFiddKeyCandidates(messageNumber, footprint);
-                fiddKeyCandidatesCache.put(cacheKey, keyCandidates);
-            }
-            return keyCandidates;
+        }
+        MessageElementKey cacheKey = new MessageElementKey(messageNumber, footprint);
+        try {
+            return checkNotNull(fiddKeyCandidatesFlights.load(cacheKey, () -> fiddKeyCandidatesCache.getIfPresent(cacheKey), () -> {
+                try {
+                    List<byte[]> keyCandidates = super.getFiddKeyCandidates(messageNumber, footprint);
+                    fiddKeyCandidatesCache.put(cacheKey, keyCandidates);
+                    return keyCandidates;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
@@ -94,19 +144,17 @@ public class RamCacheConnector extends BaseNoOpCacheConnector {
 
     @Override
     public @Nullable byte[] getFiddKey(long messageNumber, byte[] key, boolean tryCache) {
-        if (tryCache) {
+        if (!tryCache) {
             return super.getFiddKey(messageNumber, key);
-        } else {
-            MessageElementKey cacheKey = new MessageElementKey(messageNumber, key);
-            byte[] fiddKey = fiddKeyCache.getIfPresent(cacheKey);
-            if (fiddKey == null) {
-                fiddKey = super.getFiddKey(messageNumber, key);
-                if (fiddKey != null) {
-                    fiddKeyCache.put(cacheKey, fiddKey);
-                }
+        }
+        MessageElementKey cacheKey = new MessageElementKey(messageNumber, key);
+        return fiddKeyFlights.load(cacheKey, () -> fiddKeyCache.getIfPresent(cacheKey), () -> {
+            byte[] fiddKey = super.getFiddKey(messageNumber, key);
+            if (fiddKey != null) {
+                fiddKeyCache.put(cacheKey, fiddKey);
             }
             return fiddKey;
-        }
+        });
     }
 
     @Override
@@ -118,16 +166,14 @@ public class RamCacheConnector extends BaseNoOpCacheConnector {
     public @Nullable byte[] getUnencryptedFiddKey(long messageNumber, boolean tryCache) {
         if (!tryCache) {
             return super.getUnencryptedFiddKey(messageNumber);
-        } else {
-            byte[] unencryptedFiddKey = unencryptedFiddKeyCache.getIfPresent(messageNumber);
-            if (unencryptedFiddKey == null) {
-                unencryptedFiddKey = super.getUnencryptedFiddKey(messageNumber);
-                if (unencryptedFiddKey != null) {
-                    unencryptedFiddKeyCache.put(messageNumber, unencryptedFiddKey);
-                }
+        }
+        return unencryptedFiddKeyFlights.load(messageNumber, () -> unencryptedFiddKeyCache.getIfPresent(messageNumber), () -> {
+            byte[] unencryptedFiddKey = super.getUnencryptedFiddKey(messageNumber);
+            if (unencryptedFiddKey != null) {
+                unencryptedFiddKeyCache.put(messageNumber, unencryptedFiddKey);
             }
             return unencryptedFiddKey;
-        }
+        });
     }
 
     @Override
@@ -139,14 +185,12 @@ public class RamCacheConnector extends BaseNoOpCacheConnector {
     public long getFiddMessageSize(long messageNumber, boolean tryCache) {
         if (!tryCache) {
             return super.getFiddMessageSize(messageNumber);
-        } else {
-            Long size = fiddMessageSizeCache.getIfPresent(messageNumber);
-            if (size == null) {
-                size = super.getFiddMessageSize(messageNumber);
-                fiddMessageSizeCache.put(messageNumber, size);
-            }
-            return size;
         }
+        return checkNotNull(fiddMessageSizeFlights.load(messageNumber, () -> fiddMessageSizeCache.getIfPresent(messageNumber), () -> {
+            long size = super.getFiddMessageSize(messageNumber);
+            fiddMessageSizeCache.put(messageNumber, size);
+            return size;
+        }));
     }
 
     @Override
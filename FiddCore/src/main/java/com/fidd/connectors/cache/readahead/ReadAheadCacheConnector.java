@@ -0,0 +1,336 @@
+package com.fidd.connectors.cache.readahead;
+
+import com.fidd.connectors.FastFiddConnector;
+import com.fidd.connectors.FiddCacheConnector;
+import com.fidd.connectors.cache.base.BaseNoOpCacheConnector;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Detects sequential reads of a section - as issued by media players - and prefetches the data ahead of
+ * the reader into the wrapped cache connector, so that the next read is a cache hit instead of a remote round trip.
+ * <p>
+ * Only reads made through getFiddMessageChunkWithReadAhead take part in detection. The prefetch window follows
+ * the observed consumption rate, and a read that doesn't continue the previous one (a seek) stops prefetching
+ * and drops the prefetches that haven't started yet.
+ */
+public class ReadAheadCacheConnector extends BaseNoOpCacheConnector {
+    final static Logger LOGGER = LoggerFactory.getLogger(ReadAheadCacheConnector.class);
+
+    public static final int DEFAULT_PARALLELISM = 2;
+    public static final long DEFAULT_MIN_WINDOW = 512L * 1024;
+    public static final long DEFAULT_MAX_WINDOW = 16L * 1024 * 1024;
+    public static final long DEFAULT_PREFETCH_CHUNK_SIZE = 1024L * 1024;
+    /** The window holds this much of the data at the observed consumption rate */
+    public static final Duration DEFAULT_LEAD_TIME = Duration.ofSeconds(4);
+    /** A read starting at most this far past the end of the previous one is still sequential */
+    public static final long SEQUENTIAL_GAP = 256L * 1024;
+    /** Weight of the latest sample in the consumption rate average */
+    static final double RATE_SMOOTHING = 0.3;
+
+    private static volatile @Nullable ExecutorService sharedExecutor;
+
+    public static ExecutorService sharedExecutor() {
+        ExecutorService executor = sharedExecutor;
+        if (executor == null) {
+            synchronized (ReadAheadCacheConnector.class) {
+                executor = sharedExecutor;
+                if (executor == null) {
+                    AtomicInteger threadCounter = new AtomicInteger();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                                Thread thread = new Thread(runnable, "fidd-read-ahead-" + threadCounter.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                    sharedExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    protected record StreamKey(long messageNumber, long readAheadLimit) { }
+
+    /** Read position and prefetch state of one sequential reader; guarded by itself */
+    protected static class ReadStream {
+        long lastOffset = -1;
+        long nextOffset = -1;
+        long lastReadNanos;
+        int sequentialReads;
+        double bytesPerSecond;
+        long prefetchedUntil;
+        final List<Future<?>> prefetches = new ArrayList<>();
+
+        boolean continues(long offset) {
+            return nextOffset >= 0 && offset >= lastOffset && offset <= nextOffset + SEQUENTIAL_GAP;
+        }
+
+        void seek() {
+            sequentialReads = 0;
+            bytesPerSecond = 0;
+            prefetchedUntil = 0;
+            cancelPrefetches();
+        }
+
+        void cancelPrefetches() {
+            for (Future<?> prefetch : prefetches) {
+                prefetch.cancel(false);
+            }
+            prefetches.clear();
+        }
+    }
+
+    protected final FiddCacheConnector cacheConnector;
+    protected final ExecutorService executor;
+    protected final long minWindow;
+    protected final long maxWindow;
+    protected final long prefetchChunkSize;
+    protected final Duration leadTime;
+
+    protected final Cache<StreamKey, ReadStream> streams = Caffeine.newBuilder()
+            .maximumSize(256)
+            .expireAfterAccess(Duration.ofMinutes(5))
+            .build();
+
+    public ReadAheadCacheConnector(FiddCacheConnector cacheConnector) {
+        this(cacheConnector, sharedExecutor(), DEFAULT_MIN_WINDOW, DEFAULT_MAX_WINDOW,
+                DEFAULT_PREFETCH_CHUNK_SIZE, DEFAULT_LEAD_TIME);
+    }
+
+    public ReadAheadCacheConnector(FiddCacheConnector cacheConnector, ExecutorService executor,
+                                   long minWindow, long maxWindow, long prefetchChunkSize, Duration leadTime) {
+        super(cacheConnector);
+        this.cacheConnector = cacheConnector;
+        this.executor = executor;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.prefetchChunkSize = prefetchChunkSize;
+        this.leadTime = leadTime;
+    }
+
+    /**
+     * Reads a chunk as part of a sequential read of the region ending at readAheadLimit (normally the end of
+     * a section), and prefetches beyond it if the reads so far were sequential. Prefetches never cross readAheadLimit.
+     * <p>
+     * Reads longer than prefetchChunkSize - open-ended ranges from media players in particular - are served as
+     * a series of prefetchChunkSize reads through the cache, each opened once the previous one is consumed. Each
+     * of them advances the read position, and meets the blocks prefetched for it.
+     */
+    public InputStream getFiddMessageChunkWithReadAhead(long messageNumber, long offset, long length, long readAheadLimit) {
+        if (length <= prefetchChunkSize) {
+            return readChunk(messageNumber, offset, length, readAheadLimit);
+        }
+        return new ChunkedReadStream(messageNumber, offset, length, readAheadLimit);
+    }
+
+    protected InputStream readChunk(long messageNumber, long offset, long length, long readAheadLimit) {
+        InputStream chunk = cacheConnector.getFiddMessageChunk(messageNumber, offset, length, true);
+        try {
+            readAhead(messageNumber, offset, length, readAheadLimit);
+        } catch (Exception e) {
+            // Read-ahead is an optimization, the read itself already succeeded
+            LOGGER.debug("Read-ahead failed for message {}", messageNumber, e);
+        }
+        return chunk;
+    }
+
+    /** A long read as consecutive readChunk calls; the first chunk is opened right away, so its errors surface there */
+    protected class ChunkedReadStream extends InputStream {
+        private final long messageNumber;
+        private final long end;
+        private final long readAheadLimit;
+        private long position;
+        private long chunkEnd;
+        private @Nullable InputStream chunk;
+
+        protected ChunkedReadStream(long messageNumber, long offset, long length, long readAheadLimit) {
+            this.messageNumber = messageNumber;
+            this.end = offset + length;
+            this.readAheadLimit = readAheadLimit;
+            this.position = offset;
+            openChunk();
+        }
+
+        private void openChunk() {
+            chunkEnd = Math.min(end, position + prefetchChunkSize);
+            chunk = readChunk(messageNumber, position, chunkEnd - position, readAheadLimit);
+        }
+
+        /**
+         * Called once the chunk returns -1; a read of 0 only means it has nothing yet and is retried.
+         * @return false once the range is done, or the message file ended before it
+         */
+        private boolean nextChunk() throws IOException {
+            InputStream finished = checkNotNull(chunk);
+            chunk = null;
+            finished.close();
+            if (position < chunkEnd || position >= end) {
+                return false;
+            }
+            openChunk();
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (chunk != null) {
+                int b = chunk.read();
+                if (b >= 0) {
+                    position++;
+                    return b;
+                }
+                if (!nextChunk()) { break; }
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) { return 0; }
+            while (chunk != null) {
+                int read = chunk.read(b, off, len);
+                if (read > 0) {
+                    position += read;
+                    return read;
+                }
+                if (read < 0 && !nextChunk()) { break; }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (chunk != null) {
+                chunk.close();
+                chunk = null;
+            }
+        }
+    }
+
+    protected void readAhead(long messageNumber, long offset, long length, long readAheadLimit) {
+        ReadStream stream = streams.get(new StreamKey(messageNumber, readAheadLimit), key -> new ReadStream());
+        long end = offset + length;
+        long now = System.nanoTime();
+        synchronized (stream) {
+            if (stream.continues(offset)) {
+                stream.sequentialReads++;
+                long elapsedNanos = now - stream.lastReadNanos;
+                // Since the previous read the reader has consumed what that read returned
+                long advanced = stream.nextOffset - stream.lastOffset;
+                if (elapsedNanos > 0 && advanced > 0) {
+                    double rate = advanced * 1_000_000_000.0 / elapsedNanos;
+                    stream.bytesPerSecond = stream.bytesPerSecond == 0 ? rate
+                            : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * stream.bytesPerSecond;
+                }
+            } else if (stream.nextOffset >= 0) {
+                stream.seek();
+            }
+            stream.lastOffset = offset;
+            stream.nextOffset = end;
+            stream.lastReadNanos = now;
+
+            if (stream.sequentialReads == 0) { return; }
+
+            long limit = Math.min(readAheadLimit, cacheConnector.getFiddMessageSize(messageNumber, true));
+            long window = window(stream, length);
+            long target = Math.min(end + window, limit);
+            long from = Math.max(stream.prefetchedUntil, end);
+            // Top up only once less than half of the window is left, so prefetches go out in batches
+            if (target <= from || stream.prefetchedUntil - end > window / 2) { return; }
+
+            stream.prefetches.removeIf(Future::isDone);
+            for (long chunkOffset = from; chunkOffset < target; chunkOffset += prefetchChunkSize) {
+                long chunkLength = Math.min(prefetchChunkSize, target - chunkOffset);
+                long prefetchOffset = chunkOffset;
+                stream.prefetches.add(executor.submit(() -> prefetch(messageNumber, prefetchOffset, chunkLength)));
+            }
+            stream.prefetchedUntil = Math.max(stream.prefetchedUntil, target);
+        }
+    }
+
+    /** Bytes to keep prefetched ahead of the reader */
+    protected long window(ReadStream stream, long readLength) {
+        double leadSeconds = leadTime.toNanos() / 1_000_000_000.0;
+        long window = Math.max((long) (stream.bytesPerSecond * leadSeconds), 2 * readLength);
+        return Math.max(minWindow, Math.min(maxWindow, window));
+    }
+
+    protected void prefetch(long messageNumber, long offset, long length) {
+        try (InputStream chunk = cacheConnector.getFiddMessageChunk(messageNumber, offset, length, true)) {
+            chunk.transferTo(OutputStream.nullOutputStream());
+        } catch (Exception e) {
+            LOGGER.debug("Prefetch of message {} [{}, {}) failed", messageNumber, offset, offset + length, e);
+        }
+    }
+
+    @Override
+    public InputStream getFiddMessageChunk(long messageNumber, long offset, long length, boolean tryCache) {
+        return cacheConnector.getFiddMessageChunk(messageNumber, offset, length, tryCache);
+    }
+
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<FastFiddConnector.Chunk> chunks, boolean tryCache) {
+        return cacheConnector.getFiddMessageChunks(messageNumber, chunks, tryCache);
+    }
+
+    @Override
+    public List<byte[]> getFiddKeyCandidates(long messageNumber, byte[] footprint, boolean tryCache) throws IOException {
+        return cacheConnector.getFiddKeyCandidates(messageNumber, footprint, tryCache);
+    }
+
+    @Override
+    public @Nullable byte[] getFiddKey(long messageNumber, byte[] key, boolean tryCache) {
+        return cacheConnector.getFiddKey(messageNumber, key, tryCache);
+    }
+
+    @Override
+    public @Nullable byte[] getUnencryptedFiddKey(long messageNumber, boolean tryCache) {
+        return cacheConnector.getUnencryptedFiddKey(messageNumber, tryCache);
+    }
+
+    @Override
+    public long getFiddMessageSize(long messageNumber, boolean tryCache) {
+        return cacheConnector.getFiddMessageSize(messageNumber, tryCache);
+    }
+
+    @Override
+    public int getFiddKeySignatureCount(long messageNumber, boolean tryCache) {
+        return cacheConnector.getFiddKeySignatureCount(messageNumber, tryCache);
+    }
+
+    @Override
+    public byte[] getFiddKeySignature(long messageNumber, int index, boolean tryCache) {
+        return cacheConnector.getFiddKeySignature(messageNumber, index, tryCache);
+    }
+
+    @Override
+    public int getFiddMessageSignatureCount(long messageNumber, boolean tryCache) {
+        return cacheConnector.getFiddMessageSignatureCount(messageNumber, tryCache);
+    }
+
+    @Override
+    public byte[] getFiddMessageSignature(long messageNumber, int index, boolean tryCache) {
+        return cacheConnector.getFiddMessageSignature(messageNumber, index, tryCache);
+    }
+}
@@ -0,0 +1,174 @@
+package com.fidd.connectors.folder;
+
+import com.fidd.core.common.PositionalByteChannel;
+import com.fidd.core.common.PositionalInputStream;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps read-only FileChannels open across chunk requests so that range reads of the same
+ * file don't reopen it. Reads are positional, so a single channel serves concurrent readers.
+ * Optionally, reads are served from MappedByteBuffer regions of the file instead of read syscalls.
+ * Idle channels are closed after a timeout; a channel evicted while streams are still reading
+ * from it is closed when the last of those streams is closed.
+ */
+public class FileChannelPool implements Closeable {
+    final static Logger LOGGER = LoggerFactory.getLogger(FileChannelPool.class);
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+    public static final long DEFAULT_MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    protected static class SharedChannel {
+        final FileChannel channel;
+        final long size;
+        // Pool holds one reference while the channel is cached, each open stream holds another
+        final AtomicInteger references = new AtomicInteger(1);
+        final ConcurrentHashMap<Long, MappedByteBuffer> mappedRegions = new ConcurrentHashMap<>();
+
+        SharedChannel(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        boolean acquire() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) { return false; }
+                if (references.compareAndSet(current, current + 1)) { return true; }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                mappedRegions.clear();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error closing file channel", e);
+                }
+            }
+        }
+    }
+
+    protected final Cache<Path, SharedChannel> channels;
+    protected final @Nullable Long mappedRegionSize;
+
+    public FileChannelPool() {
+        this(DEFAULT_MAX_OPEN_FILES, DEFAULT_IDLE_TIMEOUT, null);
+    }
+
+    /**
+     * @param mappedRegionSize if not null, reads are served from memory-mapped regions of this size
+     */
+    public FileChannelPool(int maxOpenFiles, Duration idleTimeout, @Nullable Long mappedRegionSize) {
+        if (mappedRegionSize != null && (mappedRegionSize <= 0 || mappedRegionSize > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Mapped region size out of range: " + mappedRegionSize);
+        }
+        this.mappedRegionSize = mappedRegionSize;
+        this.channels = Caffeine.newBuilder()
+                .maximumSize(maxOpenFiles)
+                .expireAfterAccess(idleTimeout)
+                .scheduler(Scheduler.systemScheduler())
+                .executor(Runnable::run)
+                .<Path, SharedChannel>removalListener((path, sharedChannel, cause) -> {
+                    if (sharedChannel != null) { sharedChannel.release(); }
+                })
+                .build();
+    }
+
+    protected SharedChannel openChannel(Path path) {
+        try {
+            if (!Files.isRegularFile(path)) {
+                throw new FileNotFoundException("File not found: " + path);
+            }
+            return new SharedChannel(FileChannel.open(path, StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected SharedChannel acquire(Path path) throws IOException {
+        while (true) {
+            SharedChannel sharedChannel;
+            try {
+                sharedChannel = channels.get(path, this::openChannel);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (sharedChannel.acquire()) {
+                return sharedChannel;
+            }
+            // Evicted and closed between lookup and acquire - open again
+            channels.asMap().remove(path, sharedChannel);
+        }
+    }
+
+    public InputStream getSubInputStream(Path path, long offset, long length) throws IOException {
+        SharedChannel sharedChannel = acquire(path);
+        PositionalInputStream.PositionalReader reader = mappedRegionSize == null
+                ? (position, b, off, len) -> readChannel(sharedChannel, position, b, off, len)
+                : (position, b, off, len) -> readMapped(sharedChannel, mappedRegionSize, position, b, off, len);
+        return new PositionalInputStream(reader, offset, length, sharedChannel::release);
+    }
+
+    /** Range of the file as a channel; reads go straight from the file into the caller's buffers */
+    public PositionalByteChannel getSubChannel(Path path, long offset, long length) throws IOException {
+        SharedChannel sharedChannel = acquire(path);
+        return new PositionalByteChannel(sharedChannel.channel, offset, length, sharedChannel::release);
+    }
+
+    protected static int readChannel(SharedChannel sharedChannel, long position, byte[] b, int off, int len)
+            throws IOException {
+        return sharedChannel.channel.read(ByteBuffer.wrap(b, off, len), position);
+    }
+
+    protected static int readMapped(SharedChannel sharedChannel, long regionSize, long position, byte[] b, int off, int len)
+            throws IOException {
+        if (position >= sharedChannel.size) { return -1; }
+
+        long regionIndex = position / regionSize;
+        MappedByteBuffer region = sharedChannel.mappedRegions.get(regionIndex);
+        if (region == null) {
+            long regionStart = regionIndex * regionSize;
+            long regionLength = Math.min(regionSize, sharedChannel.size - regionStart);
+            region = sharedChannel.channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+            MappedByteBuffer existing = sharedChannel.mappedRegions.putIfAbsent(regionIndex, region);
+            if (existing != null) { region = existing; }
+        }
+
+        int positionInRegion = (int) (position - regionIndex * regionSize);
+        int toRead = Math.min(len, region.capacity() - positionInRegion);
+        region.get(positionInRegion, b, off, toRead);
+        return toRead;
+    }
+
+    public void invalidate(Path path) {
+        channels.invalidate(path);
+    }
+
+    @Override
+    public void close() {
+        channels.invalidateAll();
+        channels.cleanUp();
+    }
+}
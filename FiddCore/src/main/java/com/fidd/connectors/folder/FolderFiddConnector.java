@@ -1,34 +1,43 @@
 package com.fidd.connectors.folder;
 
+import com.fidd.connectors.ChannelFiddConnector;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.connectors.base.BaseDirectoryConnector;
-import com.fidd.core.common.SubFileInputStream;
+import com.fidd.connectors.base.MessageNumberIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
-public class FolderFiddConnector extends BaseDirectoryConnector implements FiddConnector {
+public class FolderFiddConnector extends BaseDirectoryConnector implements FiddConnector, ChannelFiddConnector, Closeable {
     public final static Logger LOGGER = LoggerFactory.getLogger(FolderFiddConnector.class);
 
     protected final String fiddFolderPath;
     protected final Path fiddFolder;
+    protected final FileChannelPool channelPool;
+    protected @Nullable WatchedMessageNumberIndex messageNumberIndex;
 
     public FolderFiddConnector(URL fiddFolderUrl) {
         try {
             Path fiddFolder = new File(fiddFolderUrl.toURI()).toPath();
             this.fiddFolder = fiddFolder;
             this.fiddFolderPath = fiddFolder.toAbsolutePath().toString();
+            this.channelPool = new FileChannelPool();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -37,11 +46,17 @@ public class FolderFiddConnector extends BaseDirectoryConnector implements FiddC
     public FolderFiddConnector(String fiddFolderPath) {
         this.fiddFolderPath = fiddFolderPath;
         this.fiddFolder = Paths.get(fiddFolderPath);
+        this.channelPool = new FileChannelPool();
     }
 
     public FolderFiddConnector(Path fiddFolder) {
+        this(fiddFolder, new FileChannelPool());
+    }
+
+    public FolderFiddConnector(Path fiddFolder, FileChannelPool channelPool) {
         this.fiddFolder = fiddFolder;
         this.fiddFolderPath = fiddFolder.toAbsolutePath().toString();
+        this.channelPool = channelPool;
     }
 
     @Override
@@ -67,6 +82,29 @@ public class FolderFiddConnector extends BaseDirectoryConnector implements FiddC
     @Override
     protected String fiddFolderPath() { return fiddFolder.toString(); }
 
+    @Override
+    protected MessageNumberIndex getMessageNumberIndex(String fiddPath) {
+        if (!fiddPath.equals(fiddFolderPath())) {
+            return super.getMessageNumberIndex(fiddPath);
+        }
+
+        WatchedMessageNumberIndex index;
+        synchronized (this) {
+            index = messageNumberIndex;
+            if (index == null || !index.isValid()) {
+                try {
+                    index = new WatchedMessageNumberIndex(fiddFolder, () -> listMessageNumbers(fiddPath));
+                    messageNumberIndex = index;
+                } catch (IOException e) {
+                    LOGGER.debug("Can't watch fidd folder, falling back to listing", e);
+                    return super.getMessageNumberIndex(fiddPath);
+                }
+            }
+        }
+        index.refresh();
+        return index;
+    }
+
     @Override
     protected boolean pathExists(String path) {
         return Files.exists(Path.of(path));
@@ -89,6 +127,40 @@ public class FolderFiddConnector extends BaseDirectoryConnector implements FiddC
 
     @Override
     protected InputStream getSubInpuStream(String path, long offset, long length) throws IOException {
-        return SubFileInputStream.of(Path.of(path).toFile(), offset, length);
+        return channelPool.getSubInputStream(Path.of(path), offset, length);
+    }
+
+    @Override
+    public InputStream getFiddMessageChunk(long messageNumber, long offset, long length) {
+        // The pool checks the file once when opening the channel, no need to stat it on every chunk
+        try {
+            return getSubInpuStream(messageFilePath(messageNumber), offset, length);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            throw new RuntimeException(new FileNotFoundException("Message file not found: " + messageNumber));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ReadableByteChannel getFiddMessageChunkChannel(long messageNumber, long offset, long length) {
+        try {
+            return channelPool.getSubChannel(Path.of(messageFilePath(messageNumber)), offset, length);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            throw new RuntimeException(new FileNotFoundException("Message file not found: " + messageNumber));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (messageNumberIndex != null) {
+                messageNumberIndex.close();
+                messageNumberIndex = null;
+            }
+        }
+        channelPool.close();
     }
 }
@@ -0,0 +1,136 @@
+package com.fidd.connectors.folder;
+
+import com.fidd.connectors.base.MessageNumberIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * MessageNumberIndex of a fidd folder, kept fresh by a WatchService.
+ * The folder is scanned once; after that, pending create/delete events are applied on each refresh(),
+ * which is called before every query. A full rescan only happens if the watch service overflows.
+ */
+public class WatchedMessageNumberIndex extends MessageNumberIndex implements Closeable {
+    final static Logger LOGGER = LoggerFactory.getLogger(WatchedMessageNumberIndex.class);
+
+    protected final Path fiddFolder;
+    protected final Supplier<long[]> scanner;
+    protected final WatchService watchService;
+    protected volatile boolean valid = true;
+
+    public WatchedMessageNumberIndex(Path fiddFolder, Supplier<long[]> scanner) throws IOException {
+        this.fiddFolder = fiddFolder;
+        this.scanner = scanner;
+        this.watchService = fiddFolder.getFileSystem().newWatchService();
+        try {
+            // Register before the initial scan, so that messages added during the scan aren't missed
+            fiddFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        replaceAll(scanner.get());
+    }
+
+    /** False once the watched folder is gone or the index is closed; such index has to be recreated. */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public synchronized void refresh() {
+        if (!valid) { return; }
+
+        try {
+            applyPending(watchService.poll());
+        } catch (ClosedWatchServiceException e) {
+            valid = false;
+        }
+    }
+
+    /**
+     * Waits up to timeout for the folder to change, then applies the pending changes as refresh() does.
+     * Lets tests wait for the watcher instead of polling refresh().
+     * @return false if nothing changed within timeout, or the index is no longer valid
+     */
+    boolean awaitRefresh(Duration timeout) throws InterruptedException {
+        if (!valid) { return false; }
+
+        try {
+            WatchKey key = watchService.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (key == null) { return false; }
+            // The folder has a single key, which isn't queued again until reset, so no refresh() can get ahead
+            synchronized (this) {
+                applyPending(key);
+            }
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            valid = false;
+            return false;
+        }
+    }
+
+    /** Applies the events of key and of the keys queued after it; called under the lock */
+    protected void applyPending(@Nullable WatchKey key) {
+        boolean rescan = false;
+        for (; key != null; key = watchService.poll()) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    rescan = true;
+                } else if (!rescan && event.context() instanceof Path name) {
+                    applyEvent(event.kind(), name);
+                }
+            }
+            if (!key.reset()) {
+                LOGGER.warn("Fidd folder is no longer watched: {}", fiddFolder);
+                close();
+                return;
+            }
+        }
+
+        if (rescan) {
+            LOGGER.debug("Watch service overflow, rescanning fidd folder {}", fiddFolder);
+            replaceAll(scanner.get());
+        }
+    }
+
+    protected void applyEvent(WatchEvent.Kind<?> kind, Path name) {
+        long messageNumber;
+        try {
+            messageNumber = Long.parseLong(name.toString());
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Fidd subfolder is not a message / message number parse error", e);
+            return;
+        }
+
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            if (Files.isDirectory(fiddFolder.resolve(name))) {
+                add(messageNumber);
+            }
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            remove(messageNumber);
+        }
+    }
+
+    @Override
+    public void close() {
+        valid = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing watch service", e);
+        }
+    }
+}
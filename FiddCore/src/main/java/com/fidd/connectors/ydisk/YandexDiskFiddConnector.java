@@ -1,12 +1,13 @@
 package com.fidd.connectors.ydisk;
 
-import com.fidd.common.streamchain.BufferChainInputStream;
-import com.fidd.common.streamchain.BufferChainOutputStream;
-import com.fidd.common.streamchain.OutputStreamLimitReachedException;
-import com.fidd.common.streamchain.chain.BufferChain;
-import com.fidd.common.streamchain.chain.ConcurrentBufferChain;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.connectors.base.BaseDirectoryConnector;
+import com.fidd.connectors.base.DownloadScheduler;
+import com.fidd.connectors.base.MessageNumberIndex;
+import com.fidd.core.common.ConcatInputStream;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.squareup.okhttp.OkHttpClient;
 import com.yandex.disk.rest.Credentials;
 import com.yandex.disk.rest.DownloadListener;
 import com.yandex.disk.rest.ResourcesArgs;
@@ -15,48 +16,138 @@ import com.yandex.disk.rest.exceptions.ServerException;
 import com.yandex.disk.rest.exceptions.ServerIOException;
 import com.yandex.disk.rest.exceptions.http.HttpCodeException;
 import com.yandex.disk.rest.json.Resource;
+import com.yandex.disk.rest.json.ResourceList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class YandexDiskFiddConnector extends BaseDirectoryConnector implements FiddConnector {
     public final static Logger LOGGER = LoggerFactory.getLogger(YandexDiskFiddConnector.class);
-    public static final long BUFFER_SIZE = 1024;
+    public static final int LISTING_PAGE_SIZE = 1000;
+    public static final int LATEST_MESSAGES_PAGE_SIZE = 20;
+    public static final String LISTING_FIELDS =
+            "_embedded.items.name,_embedded.items.path,_embedded.items.type,_embedded.items.size,_embedded.items.modified";
+    public static final String STAT_FIELDS = "type,size,modified";
+    public static final String SORT_LATEST_CREATED_FIRST = "-" + ResourcesArgs.Sort.created;
+
+    /** Stats are reused within this time, so that e.g. exists + isRegularFile + size of one path is one request */
+    public static final Duration STAT_CACHE_TTL = Duration.ofSeconds(5);
+    public static final int STAT_CACHE_SIZE = 10000;
+    /** Message number index is updated from the latest created folders, and fully re-listed after this time */
+    public static final Duration FULL_LISTING_INTERVAL = Duration.ofMinutes(5);
+    public static final int STAT_PARALLELISM = 8;
+
+    /** Runs the message file stats of withLengths; short requests, kept apart from the downloads' queue */
+    protected static final ThreadPoolExecutor STAT_EXECUTOR = statExecutor();
+
+    private static ThreadPoolExecutor statExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(STAT_PARALLELISM, STAT_PARALLELISM, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "fidd-ydisk-stat-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** @param modifiedMillis last modification time, 0 if the server didn't say */
+    protected record PathStat(boolean exists, boolean isFile, long size, long modifiedMillis) {
+        static final PathStat NOT_FOUND = new PathStat(false, false, 0, 0);
+
+        static PathStat of(Resource resource) {
+            Date modified = resource.getModified();
+            return new PathStat(true, "file".equals(resource.getType()), resource.getSize(),
+                    modified == null ? 0 : modified.getTime());
+        }
+    }
+
+    /** Message number index and when its full listing was fetched; replaced as a whole */
+    protected record ListedIndex(MessageNumberIndex index, long listedAtNanos) {}
 
     final String user;
     final String token;
     final RestClient client;
     final String fiddFolderPath;
+    final Cache<String, PathStat> statCache;
+    final DownloadScheduler downloadScheduler;
+
+    protected volatile @Nullable ListedIndex listedIndex;
 
     public YandexDiskFiddConnector(URL fiddFolderUrl) {
+        this(fiddFolderUrl, null, DownloadScheduler.shared());
+    }
+
+    /**
+     * @param serverUrl Disk REST API server to use instead of the default one
+     * @param downloadScheduler runs chunk downloads; usually shared between connectors to bound the number of downloads
+     */
+    public YandexDiskFiddConnector(URL fiddFolderUrl, @Nullable String serverUrl, DownloadScheduler downloadScheduler) {
         try {
             String userInfo = fiddFolderUrl.getUserInfo();
             String[] userInfoParts = userInfo.split(":");
             user = userInfoParts[0];
             token = userInfoParts[1];
             fiddFolderPath = fiddFolderUrl.getPath();
-            client = new RestClient(new Credentials(user, token));
+            Credentials credentials = new Credentials(user, token);
+            client = serverUrl == null
+                    ? new RestClient(credentials)
+                    : new RestClient(credentials, new OkHttpClient(), serverUrl);
+            statCache = Caffeine.newBuilder()
+                    .maximumSize(STAT_CACHE_SIZE)
+                    .expireAfterWrite(STAT_CACHE_TTL)
+                    .build();
+            this.downloadScheduler = downloadScheduler;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    // TODO: listing speed can be improved with sort, offset, limit parameters of the request
+    protected List<Resource> listResources(String path, @Nullable String sort, int offset, int limit) throws IOException {
+        ResourcesArgs.Builder args = new ResourcesArgs.Builder()
+                .setPath(path)
+                .setOffset(offset)
+                .setLimit(limit)
+                .setFields(LISTING_FIELDS);
+        if (sort != null) { args.setSort(sort); }
+        try {
+            ResourceList resourceList = client.getResources(args.build()).getResourceList();
+            List<Resource> items = resourceList == null ? null : resourceList.getItems();
+            if (items == null) { return List.of(); }
+            // Listing already tells us everything stat() would ask for
+            for (Resource resource : items) {
+                statCache.put(resource.getPath().getPath(), PathStat.of(resource));
+            }
+            return items;
+        } catch (ServerIOException e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
     protected List<String> getListing(String fiddPath, boolean isDirectory) throws IOException {
-        ResourcesArgs rootDirSubdirArgs = new ResourcesArgs.Builder().setPath("/").build();
-        try {
-            List<String> result = new ArrayList<>();
-            Resource resources = client.getResources(rootDirSubdirArgs);
-            for (Resource resource : resources.getResourceList().getItems()) {
+        List<String> result = new ArrayList<>();
+        for (int offset = 0; ; offset += LISTING_PAGE_SIZE) {
+            List<Resource> page = listResources(fiddPath, null, offset, LISTING_PAGE_SIZE);
+            for (Resource resource : page) {
                 if (isDirectory && "dir".equals(resource.getType())) {
                     // Add dir
                     result.add(resource.getPath().getPath());
@@ -65,30 +156,115 @@ public class YandexDiskFiddConnector extends BaseDirectoryConnector implements F
                     result.add(resource.getPath().getPath());
                 }
             }
-            return result;
-        } catch (ServerIOException e) {
-            throw new IOException(e);
+            if (page.size() < LISTING_PAGE_SIZE) {
+                return result;
+            }
         }
     }
 
+    /**
+     * Disk can only sort folder names as strings, so numeric order of messages can't come from the server.
+     * Instead, the index is built from one full listing and then topped up with the most recently created
+     * folders until a known message is met; deleted messages are dropped on the next full listing.
+     * Listings run without a lock: a full one is published as a new ListedIndex once fetched, and top-ups
+     * go through MessageNumberIndex's own locking, so readers never wait on the network.
+     */
     @Override
-    protected String fiddFolderPath() { return fiddFolderPath; }
+    protected MessageNumberIndex getMessageNumberIndex(String fiddPath) {
+        if (!fiddPath.equals(fiddFolderPath)) {
+            return super.getMessageNumberIndex(fiddPath);
+        }
+
+        ListedIndex listed = listedIndex;
+        try {
+            long now = System.nanoTime();
+            if (listed == null || now - listed.listedAtNanos() > FULL_LISTING_INTERVAL.toNanos()) {
+                listed = new ListedIndex(new MessageNumberIndex(parseMessageNumbers(getSubDirectoryListing(fiddPath))), now);
+                listedIndex = listed;
+            } else {
+                addLatestMessages(fiddPath, listed.index());
+            }
+            return listed.index();
+        } catch (IOException e) {
+            if (listed == null) {
+                LOGGER.warn("Error listing messages in {}, no message index yet", fiddPath, e);
+                return new MessageNumberIndex();
+            }
+            LOGGER.warn("Error listing messages in {}, serving the index fully listed {}s ago", fiddPath,
+                    Duration.ofNanos(System.nanoTime() - listed.listedAtNanos()).toSeconds(), e);
+            return listed.index();
+        }
+    }
 
-    protected List<Resource> getSingleItemResources(String path) throws ServerIOException, IOException {
-        ResourcesArgs singlePathArgs = new ResourcesArgs.Builder().setPath(path).setLimit(1).setFields("name,type,size").build();
-        Resource resource = client.getResources(singlePathArgs);
-        return List.of(resource);
+    protected void addLatestMessages(String fiddPath, MessageNumberIndex index) throws IOException {
+        for (int offset = 0; ; offset += LATEST_MESSAGES_PAGE_SIZE) {
+            List<Resource> page = listResources(fiddPath, SORT_LATEST_CREATED_FIRST, offset, LATEST_MESSAGES_PAGE_SIZE);
+            boolean reachedKnownMessage = false;
+            for (Resource resource : page) {
+                if (!"dir".equals(resource.getType())) { continue; }
+                try {
+                    if (!index.add(Long.parseLong(resource.getName()))) {
+                        reachedKnownMessage = true;
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Fidd subfolder is not a message / message number parse error", e);
+                }
+            }
+            if (reachedKnownMessage || page.size() < LATEST_MESSAGES_PAGE_SIZE) {
+                return;
+            }
+        }
     }
 
-    // TODO: Those methods can be combined into 1 request
     @Override
-    protected boolean pathExists(String path) throws IOException {
+    protected String fiddFolderPath() { return fiddFolderPath; }
+
+    /**
+     * The fidd folder listing has no message file sizes, so each message takes a stat; they run concurrently,
+     * about one round trip in all instead of one per message. Stats left by earlier listings cost nothing.
+     */
+    @Override
+    protected List<MessageNumberAndLength> withLengths(List<Long> messageNumbers) {
+        List<Future<Long>> futures = new ArrayList<>(messageNumbers.size());
+        long[] lengths = new long[messageNumbers.size()];
+        try {
+            for (long messageNumber : messageNumbers) {
+                futures.add(STAT_EXECUTOR.submit(() -> messageLength(messageNumber)));
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = futures.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // Failed partway: the remaining stats are of no use
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return withLengths(messageNumbers, lengths);
+    }
+
+    /** Type and size of a path in one request, cached for STAT_CACHE_TTL */
+    protected PathStat stat(String path) throws IOException {
+        PathStat stat = statCache.getIfPresent(path);
+        if (stat == null) {
+            stat = fetchStat(path);
+            statCache.put(path, stat);
+        }
+        return stat;
+    }
+
+    protected PathStat fetchStat(String path) throws IOException {
+        ResourcesArgs singlePathArgs = new ResourcesArgs.Builder().setPath(path).setLimit(1).setFields(STAT_FIELDS).build();
         try {
-            List<Resource> items = getSingleItemResources(path);
-            return !items.isEmpty();
+            return PathStat.of(client.getResources(singlePathArgs));
         } catch (HttpCodeException e) {
             if (e.getCode() == 404) {
-                return false;
+                return PathStat.NOT_FOUND;
             } else {
                 throw new IOException(e);
             }
@@ -97,26 +273,23 @@ public class YandexDiskFiddConnector extends BaseDirectoryConnector implements F
         }
     }
 
+    @Override
+    protected boolean pathExists(String path) throws IOException {
+        return stat(path).exists();
+    }
+
     @Override
     protected boolean pathIsRegularFile(String path) throws IOException {
-        try {
-            List<Resource> items = getSingleItemResources(path);
-            if (items.isEmpty()) { throw new FileNotFoundException(); }
-            return "file".equals(items.get(0).getType());
-        } catch (ServerIOException e) {
-            throw new IOException(e);
-        }
+        PathStat stat = stat(path);
+        if (!stat.exists()) { throw new FileNotFoundException(); }
+        return stat.isFile();
     }
 
     @Override
     protected long size(String path) throws IOException {
-        try {
-            List<Resource> items = getSingleItemResources(path);
-            if (items.isEmpty()) { throw new FileNotFoundException(); }
-            return items.get(0).getSize();
-        } catch (ServerIOException e) {
-            throw new IOException(e);
-        }
+        PathStat stat = stat(path);
+        if (!stat.exists()) { throw new FileNotFoundException(); }
+        return stat.size();
     }
 
     @Override
@@ -139,34 +312,40 @@ public class YandexDiskFiddConnector extends BaseDirectoryConnector implements F
 
     /**
      * DownloadListener.getLocalLength looks like offset to me
-     * Length (Data limit) can be controlled by throwing an exception from OutputStream
+     * Length (Data limit) is controlled by the output stream throwing an exception once it got enough data
      */
     @Override
     protected InputStream getSubInpuStream(String path, long offset, long length) throws IOException {
-        BufferChain chain = new ConcurrentBufferChain();
-        BufferChainInputStream is = new BufferChainInputStream(chain);
-        BufferChainOutputStream os = new BufferChainOutputStream(chain, (int)BUFFER_SIZE, length);
-
-        // TODO YaDisk Client is blocking, mb use Scheduler here?
-        new Thread(() -> {
-            try {
-                client.downloadFile(path, new DownloadListener() {
-                    @Override
-                    public long getLocalLength() { return offset; }
-
-                    @Override
-                    public OutputStream getOutputStream(boolean append) throws IOException {
-                        return os;
-                    }
-                });
-            } catch (OutputStreamLimitReachedException e) {
-                // This is our exception, we already got the chunk, ignore
-                //LOGGER.debug("getSubInputStream", e);
-            } catch (IOException | ServerException e) {
-                LOGGER.debug("getSubInputStream", e);
-            }
-        }).start();
+        return downloadScheduler.stream(length, os ->
+            client.downloadFile(path, new DownloadListener() {
+                @Override
+                public long getLocalLength() { return offset; }
 
-        return is;
+                @Override
+                public OutputStream getOutputStream(boolean append) throws IOException {
+                    return os;
+                }
+            }));
+    }
+
+    /** All chunks are scheduled for download at once, instead of one round trip after another */
+    @Override
+    public InputStream getFiddMessageChunks(long messageNumber, List<Chunk> chunks) {
+        List<InputStream> streams = new ArrayList<>(chunks.size());
+        try {
+            for (Chunk chunk : chunks) {
+                streams.add(getFiddMessageChunk(messageNumber, chunk.offset(), chunk.length()));
+            }
+        } catch (RuntimeException e) {
+            for (InputStream stream : streams) {
+                try {
+                    stream.close();
+                } catch (IOException ce) {
+                    e.addSuppressed(ce);
+                }
+            }
+            throw e;
+        }
+        return new ConcatInputStream(streams);
     }
 }
@@ -0,0 +1,104 @@
+package com.fidd.core.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Helpers for channel-based encryption methods. The stream adapters don't close the channel they wrap,
+ * so stream-based implementations that close their streams can serve channel-based calls, whose channels
+ * stay owned by the caller.
+ */
+public class ChannelStreams {
+    public static InputStream inputStream(ReadableByteChannel channel) {
+        return new InputStream() {
+            private final InputStream in = Channels.newInputStream(channel);
+
+            @Override
+            public int read() throws IOException { return in.read(); }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException { return in.read(b, off, len); }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    public static OutputStream outputStream(WritableByteChannel channel) {
+        return new OutputStream() {
+            private final OutputStream out = Channels.newOutputStream(channel);
+
+            @Override
+            public void write(int b) throws IOException { out.write(b); }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    /**
+     * Copies up to limit bytes from in to out. A file range is handed to FileChannel.transferTo, anything else
+     * goes through a pooled direct buffer.
+     * @return bytes copied
+     */
+    public static long copy(ReadableByteChannel in, WritableByteChannel out, long limit) throws IOException {
+        if (in instanceof PositionalByteChannel positionalChannel) {
+            return positionalChannel.transferTo(out, limit);
+        }
+        DirectBufferPool pool = DirectBufferPool.shared();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long total = 0;
+            while (total < limit) {
+                buffer.clear();
+                int read = readFully(in, buffer, limit - total);
+                if (read <= 0) { break; }
+                buffer.flip();
+                writeFully(out, buffer);
+                total += read;
+            }
+            return total;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /** Writes all remaining bytes of buffer; a non-blocking channel would spin, these are expected to block */
+    public static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads from channel into buffer until it is full, limit bytes were read or the channel ends.
+     * @return bytes read, or -1 if the channel ended before anything was read
+     */
+    public static int readFully(ReadableByteChannel channel, ByteBuffer buffer, long limit) throws IOException {
+        int oldLimit = buffer.limit();
+        if (limit < buffer.remaining()) {
+            buffer.limit(buffer.position() + (int) limit);
+        }
+        try {
+            int total = 0;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    return total == 0 ? -1 : total;
+                }
+                total += read;
+            }
+            return total;
+        } finally {
+            buffer.limit(oldLimit);
+        }
+    }
+}
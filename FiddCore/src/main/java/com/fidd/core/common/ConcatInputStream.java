@@ -0,0 +1,100 @@
+package com.fidd.core.common;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Streams read one after another. Unlike SequenceInputStream, a stream only ends at -1: a read that
+ * returns 0 is retried on the same stream, so a stalled stream isn't cut short with the next one's bytes
+ * read in its place. Each stream is closed once read to the end.
+ */
+public class ConcatInputStream extends InputStream {
+    private final Iterator<? extends InputStream> streams;
+    /** Whether close() also closes the streams not reached yet; false if next() would open them */
+    private final boolean closeUnread;
+    private @Nullable InputStream current;
+
+    /** Concatenation of streams already open; closing it closes all of them */
+    public ConcatInputStream(List<? extends InputStream> streams) {
+        this(streams.iterator(), true);
+    }
+
+    protected ConcatInputStream(Iterator<? extends InputStream> streams, boolean closeUnread) {
+        this.streams = streams;
+        this.closeUnread = closeUnread;
+        this.current = streams.hasNext() ? streams.next() : null;
+    }
+
+    /** Concatenation of streams opened by next() as they are reached; closing it doesn't open the rest */
+    public static ConcatInputStream lazy(Iterator<? extends InputStream> streams) {
+        return new ConcatInputStream(streams, false);
+    }
+
+    private void nextStream() throws IOException {
+        InputStream finished = Objects.requireNonNull(current);
+        current = null;
+        finished.close();
+        current = streams.hasNext() ? streams.next() : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (current != null) {
+            int b = current.read();
+            if (b != -1) {
+                return b;
+            }
+            nextStream();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        while (current != null) {
+            int read = current.read(b, off, len);
+            if (read > 0) {
+                return read;
+            }
+            if (read < 0) {
+                nextStream();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        InputStream stream = current;
+        current = null;
+        while (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+            stream = closeUnread && streams.hasNext() ? streams.next() : null;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
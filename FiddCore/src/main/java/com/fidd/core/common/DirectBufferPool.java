@@ -0,0 +1,56 @@
+package com.fidd.core.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized direct ByteBuffers. Allocating a direct buffer is expensive and its memory is only
+ * freed by the GC, so channel transfers borrow one from here and give it back when done.
+ * Buffers beyond maxPooled are simply dropped on release.
+ */
+public class DirectBufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /** @return a cleared buffer of bufferSize capacity */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer doesn't belong to this pool");
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.add(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -24,8 +24,19 @@ public class FiddKeyUtil {
 
     public static @Nullable byte[] loadFiddKeyBytes(BaseRepositories baseRepositories, long messageNumber, FiddConnector fiddConnector,
                                                     X509Certificate userCert, PrivateKey privateKey) throws Exception {
+        String footprint = createLookupFootprint(baseRepositories, messageNumber, fiddConnector, userCert);
+        return loadFiddKeyBytes(messageNumber, fiddConnector, footprint, privateKey);
+    }
+
+    public static String createLookupFootprint(BaseRepositories baseRepositories, long messageNumber,
+                                               FiddConnector fiddConnector, X509Certificate userCert) throws Exception {
         long messageLength = fiddConnector.getFiddMessageSize(messageNumber);
-        String footprint = FiddKeyLookup.createLookupFootprint(baseRepositories, userCert, messageNumber, messageLength);
+        return FiddKeyLookup.createLookupFootprint(baseRepositories, userCert, messageNumber, messageLength);
+    }
+
+    /** Same as above, for callers that already have the lookup footprint (e.g. cached) */
+    public static @Nullable byte[] loadFiddKeyBytes(long messageNumber, FiddConnector fiddConnector,
+                                                    String footprint, PrivateKey privateKey) throws Exception {
         List<byte[]> candidates = fiddConnector.getFiddKeyCandidates(messageNumber, footprint.getBytes(StandardCharsets.UTF_8));
         for (byte[] candidate : candidates) {
             try {
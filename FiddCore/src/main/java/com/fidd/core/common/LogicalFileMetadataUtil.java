@@ -1,6 +1,7 @@
 package com.fidd.core.common;
 
 import com.fidd.base.BaseRepositories;
+import com.fidd.connectors.FastFiddConnector;
 import com.fidd.connectors.FiddCacheConnector;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.core.encryption.EncryptionAlgorithm;
@@ -18,6 +19,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -49,7 +52,6 @@ public class LogicalFileMetadataUtil {
                            long messageNumber, FiddKey.Section logicalFileSection,
                            MetadataContainerSerializer metadataContainerSerializer,
                            boolean throwOnValidationFailure) throws IOException {
-        MetadataContainerSerializer.MetadataContainerAndLength metadataContainerAndLength = null;
         InputStream sectionInputStream;
         Integer headerLength = logicalFileSection.headerLength();
         if (fiddConnector instanceof FiddCacheConnector && headerLength != null) {
@@ -60,6 +62,60 @@ public class LogicalFileMetadataUtil {
                     logicalFileSection.sectionOffset(), headerLength != null ? headerLength : logicalFileSection.sectionLength());
         }
 
+        return readLogicalFileMetadata(baseRepositories, encryptionAlgorithm, logicalFileSection,
+                metadataContainerSerializer, sectionInputStream, throwOnValidationFailure);
+    }
+
+    /**
+     * Metadata of all logical files of a message. If every section has headerLength, and the connector
+     * can batch (FiddCacheConnector or FastFiddConnector), all headers are fetched in one getFiddMessageChunks call.
+     */
+    public static List<Pair<LogicalFileMetadata, MetadataContainerSerializer.MetadataContainerAndLength>>
+    getLogicalFileMetadata(BaseRepositories baseRepositories, FiddConnector fiddConnector, boolean tryCache, long messageNumber,
+                           List<FiddKey.Section> logicalFileSections) throws IOException {
+        boolean canBatch = (fiddConnector instanceof FiddCacheConnector || fiddConnector instanceof FastFiddConnector)
+                && logicalFileSections.stream().allMatch(section -> section.headerLength() != null);
+
+        List<Pair<LogicalFileMetadata, MetadataContainerSerializer.MetadataContainerAndLength>> result = new ArrayList<>();
+        if (!canBatch) {
+            for (FiddKey.Section logicalFileSection : logicalFileSections) {
+                result.add(checkNotNull(getLogicalFileMetadata(baseRepositories, fiddConnector, tryCache, messageNumber,
+                        logicalFileSection)));
+            }
+            return result;
+        }
+
+        List<FastFiddConnector.Chunk> headerChunks = new ArrayList<>();
+        for (FiddKey.Section logicalFileSection : logicalFileSections) {
+            headerChunks.add(FastFiddConnector.Chunk.of(logicalFileSection.sectionOffset(),
+                    checkNotNull(logicalFileSection.headerLength())));
+        }
+
+        MetadataContainerSerializer metadataContainerSerializer =
+                checkNotNull(baseRepositories.metadataContainerFormatRepo().get(METADATA_CONTAINER_SERIALIZER_FORMAT));
+        try (InputStream headersInputStream = fiddConnector instanceof FiddCacheConnector
+                ? ((FiddCacheConnector) fiddConnector).getFiddMessageChunks(messageNumber, headerChunks, tryCache)
+                : ((FastFiddConnector) fiddConnector).getFiddMessageChunks(messageNumber, headerChunks)) {
+            for (FiddKey.Section logicalFileSection : logicalFileSections) {
+                String encryptionAlgorithmName = logicalFileSection.encryptionAlgorithm();
+                EncryptionAlgorithm encryptionAlgorithm = baseRepositories.encryptionAlgorithmRepo().get(encryptionAlgorithmName);
+                if (encryptionAlgorithm == null) {
+                    throw new RuntimeException("EncryptionAlgorithm " + encryptionAlgorithmName + " not supported - can't process Logical file");
+                }
+
+                byte[] header = headersInputStream.readNBytes(checkNotNull(logicalFileSection.headerLength()));
+                result.add(checkNotNull(readLogicalFileMetadata(baseRepositories, encryptionAlgorithm, logicalFileSection,
+                        metadataContainerSerializer, new ByteArrayInputStream(header), true)));
+            }
+        }
+        return result;
+    }
+
+    protected static @Nullable Pair<LogicalFileMetadata, MetadataContainerSerializer.MetadataContainerAndLength>
+    readLogicalFileMetadata(BaseRepositories baseRepositories, EncryptionAlgorithm encryptionAlgorithm,
+                            FiddKey.Section logicalFileSection, MetadataContainerSerializer metadataContainerSerializer,
+                            InputStream sectionInputStream, boolean throwOnValidationFailure) throws IOException {
+        MetadataContainerSerializer.MetadataContainerAndLength metadataContainerAndLength = null;
         try (sectionInputStream) {
             byte[] cumul = new byte[0];
             int bufferSize = (int)Math.min(4096L, logicalFileSection.sectionLength());
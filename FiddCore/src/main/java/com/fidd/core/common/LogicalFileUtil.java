@@ -1,7 +1,9 @@
 package com.fidd.core.common;
 
 import com.fidd.base.BaseRepositories;
+import com.fidd.connectors.ChannelFiddConnector;
 import com.fidd.connectors.FiddConnector;
+import com.fidd.connectors.cache.readahead.ReadAheadCacheConnector;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
 import com.fidd.core.fiddkey.FiddKey;
@@ -9,6 +11,10 @@ import com.fidd.core.fiddkey.FiddKey;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.InvalidAlgorithmParameterException;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -30,11 +36,111 @@ public class LogicalFileUtil {
         }
         byte[] keyData = section.encryptionKeyData() == null ? new byte[0] : section.encryptionKeyData();
 
+        // fileOffset is the length of the decrypted metadata container, a plaintext position already
+        long plaintextOffset = fileOffset + dataOffset;
+        long chunkOffset = chunkOffset(encryptionAlgorithm, section, plaintextOffset);
+        long chunkLength = chunkLength(encryptionAlgorithm, section, plaintextOffset, dataLength);
+        InputStream chunk = fiddConnector instanceof ReadAheadCacheConnector readAheadConnector
+                // Chunked reads are how players stream a logical file - read ahead up to the end of its section
+                ? readAheadConnector.getFiddMessageChunkWithReadAhead(messageNumber, chunkOffset, chunkLength,
+                        section.sectionOffset() + section.sectionLength())
+                : fiddConnector.getFiddMessageChunk(messageNumber, chunkOffset, chunkLength);
+
         return checkNotNull(encryptionAlgorithm).getRandomAccessDecryptedStream(keyData,
-                encryptionAlgorithm.ciphertextPosToPlaintextPos(fileOffset) + dataOffset, dataLength,
-                fiddConnector.getFiddMessageChunk(messageNumber,
-                        section.sectionOffset() + fileOffset + encryptionAlgorithm.plaintextPosToCiphertextPos(dataOffset),
-                        encryptionAlgorithm.plaintextLengthToCiphertextLength(dataLength)));
+                plaintextOffset, dataLength, chunk);
+    }
+
+    private static long chunkOffset(RandomAccessEncryptionAlgorithm encryptionAlgorithm, FiddKey.Section section,
+                                    long plaintextOffset) {
+        return section.sectionOffset() + encryptionAlgorithm.ciphertextRangeStart(plaintextOffset);
+    }
+
+    /** Ciphertext needed for the range; never past the end of the section, padded modes rely on seeing it end */
+    private static long chunkLength(RandomAccessEncryptionAlgorithm encryptionAlgorithm, FiddKey.Section section,
+                                    long plaintextOffset, long dataLength) {
+        long rangeStart = encryptionAlgorithm.ciphertextRangeStart(plaintextOffset);
+        return Math.max(0, Math.min(encryptionAlgorithm.ciphertextRangeLength(plaintextOffset, dataLength),
+                section.sectionLength() - rangeStart));
+    }
+
+    /** Plaintext length of the logical file starting at fileOffset of the section. For padded algorithms
+     * this decrypts the last block of the section to learn the padding length. */
+    public static long getLogicalFileLength(BaseRepositories baseRepositories, FiddConnector fiddConnector,
+                                            long messageNumber, FiddKey.Section section, long fileOffset) throws IOException {
+        EncryptionAlgorithm baseEncryptionAlgorithm =
+                checkNotNull(baseRepositories.encryptionAlgorithmRepo().get(section.encryptionAlgorithm()));
+        if (!(baseEncryptionAlgorithm instanceof RandomAccessEncryptionAlgorithm encryptionAlgorithm)
+                || encryptionAlgorithm.paddingBlockSize() == 0) {
+            return baseEncryptionAlgorithm.ciphertextLengthToPlaintextLength(section.sectionLength()) - fileOffset;
+        }
+        int blockSize = encryptionAlgorithm.paddingBlockSize();
+        long lastBlockOffset = Math.max(0, section.sectionLength() - blockSize);
+        try (InputStream lastBlock = getLogicalFileInputStreamChunk(baseRepositories, fiddConnector, messageNumber,
+                section, 0, lastBlockOffset, blockSize)) {
+            return lastBlockOffset + lastBlock.readAllBytes().length - fileOffset;
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Channel counterpart of getLogicalFileInputStreamChunk: decrypts the chunk straight into out.
+     * Connectors backed by local files hand over a file channel, so unencrypted ranges can be transferred by the OS.
+     * @return bytes written to out */
+    public static long writeLogicalFileChunk(BaseRepositories baseRepositories, FiddConnector fiddConnector,
+                                             long messageNumber, FiddKey.Section section, long fileOffset, long dataOffset,
+                                             long dataLength, WritableByteChannel out) throws IOException, InvalidAlgorithmParameterException {
+        EncryptionAlgorithm baseEncryptionAlgorithm =
+                baseRepositories.encryptionAlgorithmRepo().get(section.encryptionAlgorithm());
+        if (!(baseEncryptionAlgorithm instanceof RandomAccessEncryptionAlgorithm encryptionAlgorithm)) {
+            throw new InvalidAlgorithmParameterException("EncryptionAlgorithm " + section.encryptionAlgorithm() +
+                    " does not support random access required for chunked reads.");
+        }
+        byte[] keyData = section.encryptionKeyData() == null ? new byte[0] : section.encryptionKeyData();
+
+        long plaintextOffset = fileOffset + dataOffset;
+        long chunkOffset = chunkOffset(encryptionAlgorithm, section, plaintextOffset);
+        long chunkLength = chunkLength(encryptionAlgorithm, section, plaintextOffset, dataLength);
+        ReadableByteChannel chunk;
+        if (fiddConnector instanceof ReadAheadCacheConnector readAheadConnector) {
+            chunk = Channels.newChannel(readAheadConnector.getFiddMessageChunkWithReadAhead(messageNumber, chunkOffset,
+                    chunkLength, section.sectionOffset() + section.sectionLength()));
+        } else if (fiddConnector instanceof ChannelFiddConnector channelConnector) {
+            chunk = channelConnector.getFiddMessageChunkChannel(messageNumber, chunkOffset, chunkLength);
+        } else {
+            chunk = Channels.newChannel(fiddConnector.getFiddMessageChunk(messageNumber, chunkOffset, chunkLength));
+        }
+
+        CountingWritableByteChannel countingOut = new CountingWritableByteChannel(out);
+        try (chunk) {
+            encryptionAlgorithm.randomAccessDecrypt(keyData, plaintextOffset, dataLength, chunk, countingOut);
+        }
+        return countingOut.count;
+    }
+
+    private static class CountingWritableByteChannel implements WritableByteChannel {
+        private final WritableByteChannel channel;
+        private long count;
+
+        CountingWritableByteChannel(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = channel.write(src);
+            count += written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 
     public static InputStream getLogicalFileInputStream(BaseRepositories baseRepositories, FiddConnector fiddConnector,
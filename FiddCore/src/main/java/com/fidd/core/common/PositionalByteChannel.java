@@ -0,0 +1,88 @@
+package com.fidd.core.common;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel counterpart of PositionalInputStream: reads the [offset, offset + length) range of a FileChannel
+ * with positional reads, straight into the caller's buffers. transferTo() hands the range to
+ * FileChannel.transferTo, which the OS can serve without copying through the JVM.
+ */
+public class PositionalByteChannel implements ReadableByteChannel {
+    private final FileChannel channel;
+    private final @Nullable Closeable onClose;
+    private final long end;
+    private long position;
+    private boolean closed;
+
+    public PositionalByteChannel(FileChannel channel, long offset, long length, @Nullable Closeable onClose) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Negative offset or length: " + offset + ", " + length);
+        }
+        this.channel = channel;
+        this.onClose = onClose;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (closed) { throw new ClosedChannelException(); }
+        if (position >= end) { return -1; }
+        if (!dst.hasRemaining()) { return 0; }
+
+        int oldLimit = dst.limit();
+        if (end - position < dst.remaining()) {
+            dst.limit(dst.position() + (int) (end - position));
+        }
+        try {
+            int read = channel.read(dst, position);
+            if (read > 0) { position += read; }
+            return read;
+        } finally {
+            dst.limit(oldLimit);
+        }
+    }
+
+    /** Writes up to count bytes of the rest of the range to target. @return bytes transferred */
+    public long transferTo(WritableByteChannel target, long count) throws IOException {
+        if (closed) { throw new ClosedChannelException(); }
+        long transferEnd = count >= end - position ? end : position + count;
+        long total = 0;
+        while (position < transferEnd) {
+            long transferred = channel.transferTo(position, transferEnd - position, target);
+            if (transferred <= 0) {
+                // Past the end of the file
+                break;
+            }
+            position += transferred;
+            total += transferred;
+        }
+        return total;
+    }
+
+    public long remaining() {
+        return Math.max(0, end - position);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
+    }
+}
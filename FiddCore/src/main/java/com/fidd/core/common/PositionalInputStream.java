@@ -0,0 +1,76 @@
+package com.fidd.core.common;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream over the [offset, offset + length) range of a positional source.
+ * Reads never move a shared file pointer, so any number of these streams can read
+ * the same underlying channel concurrently; skip() is O(1).
+ */
+public class PositionalInputStream extends InputStream {
+    public interface PositionalReader {
+        /** @return number of bytes read, or -1 if position is at or past the end of the source */
+        int read(long position, byte[] b, int off, int len) throws IOException;
+    }
+
+    private final PositionalReader reader;
+    private final @Nullable Closeable onClose;
+    private final long end;
+    private long position;
+    private boolean closed;
+
+    public PositionalInputStream(PositionalReader reader, long offset, long length, @Nullable Closeable onClose) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Negative offset or length: " + offset + ", " + length);
+        }
+        this.reader = reader;
+        this.onClose = onClose;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) { throw new IOException("Stream closed"); }
+        if (len == 0) { return 0; }
+        if (position >= end) { return -1; }
+
+        int toRead = (int) Math.min(len, end - position);
+        int read = reader.read(position, b, off, toRead);
+        if (read > 0) { position += read; }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) { return 0; }
+        long skipped = Math.min(n, end - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, end - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
+    }
+}
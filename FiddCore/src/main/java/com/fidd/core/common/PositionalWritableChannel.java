@@ -0,0 +1,61 @@
+package com.fidd.core.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Write counterpart of PositionalByteChannel: fills the [offset, offset + length) range of a FileChannel
+ * with positional writes. Several of these can write disjoint ranges of one file from different threads;
+ * closing one leaves the FileChannel open.
+ */
+public class PositionalWritableChannel implements WritableByteChannel {
+    private final FileChannel channel;
+    private final long offset;
+    private final long end;
+    private long position;
+    private boolean closed;
+
+    public PositionalWritableChannel(FileChannel channel, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Negative offset or length: " + offset + ", " + length);
+        }
+        this.channel = channel;
+        this.offset = offset;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (closed) { throw new ClosedChannelException(); }
+        if (src.remaining() > end - position) {
+            throw new IOException("Write of " + src.remaining() + " bytes overflows the range at " + position
+                    + ", " + (end - position) + " bytes left");
+        }
+        int total = 0;
+        while (src.hasRemaining()) {
+            int written = channel.write(src, position);
+            position += written;
+            total += written;
+        }
+        return total;
+    }
+
+    /** @return bytes written so far */
+    public long written() {
+        return position - offset;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -16,11 +16,30 @@ import static com.fidd.core.subscription.SubscriberList.Subscriber.compactLines;
 @JsonDeserialize(as = ImmutableFiddConnection.class)
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public interface FiddConnection {
+    /** Per-connection cache sizes; null values fall back to the connector defaults */
+    @Value.Immutable
+    @JsonSerialize(as = ImmutableCacheSettings.class)
+    @JsonDeserialize(as = ImmutableCacheSettings.class)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    interface CacheSettings {
+        /** Size of cached message file blocks, ranges are read in whole blocks */
+        @Nullable Integer blockSize();
+        /** Total size of cached message file blocks */
+        @Nullable Long chunkCacheBytes();
+        /** Larger ranges bypass the chunk cache */
+        @Nullable Long maxCachedRangeBytes();
+        /** Directory of the persistent disk cache, no disk cache if null */
+        @Nullable String diskCacheDirectory();
+        /** Total size of the disk cache */
+        @Nullable Long diskCacheBytes();
+    }
+
     String name();
     String connectorType();
     URL url();
     @Nullable String publicKeyFormat();
     @Nullable byte[] publicKeyBytes();
+    @Nullable CacheSettings cacheSettings();
 
     /** JavaFX needs "get" methods for PropertyValueFactory */
     @JsonIgnore default String getName() { return name(); }
@@ -35,6 +54,13 @@ public interface FiddConnection {
 
     static FiddConnection of(String connectorType, String name, URL url,
                              @Nullable String publicKeyFormat, @Nullable byte[] publicKeyBytes
+    ) {
+        return of(connectorType, name, url, publicKeyFormat, publicKeyBytes, null);
+    }
+
+    static FiddConnection of(String connectorType, String name, URL url,
+                             @Nullable String publicKeyFormat, @Nullable byte[] publicKeyBytes,
+                             @Nullable CacheSettings cacheSettings
     ) {
         ImmutableFiddConnection.Builder builder = ImmutableFiddConnection.builder()
                 .connectorType(connectorType)
@@ -43,6 +69,7 @@ public interface FiddConnection {
 
         if (publicKeyFormat != null) { builder.publicKeyFormat(publicKeyFormat); }
         if (publicKeyBytes != null) { builder.publicKeyBytes(publicKeyBytes); }
+        if (cacheSettings != null) { builder.cacheSettings(cacheSettings); }
 
         return builder.build();
     }
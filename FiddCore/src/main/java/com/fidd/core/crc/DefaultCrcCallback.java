@@ -2,6 +2,7 @@ package com.fidd.core.crc;
 
 import com.fidd.core.encryption.EncryptionAlgorithm;
 
+import java.nio.ByteBuffer;
 import java.util.zip.Checksum;
 
 import static com.fidd.core.crc.CrcCalculator.toBytes;
@@ -18,6 +19,18 @@ public class DefaultCrcCallback implements EncryptionAlgorithm.CrcCallback {
         checksum.update(b);
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) {
+        checksum.update(b, off, len);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        int position = buffer.position();
+        checksum.update(buffer);
+        buffer.position(position);
+    }
+
     @Override
     public void write(int b) {
         checksum.update(b);
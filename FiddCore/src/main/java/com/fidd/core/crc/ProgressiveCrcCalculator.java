@@ -1,12 +1,31 @@
 package com.fidd.core.crc;
 
+import com.fidd.core.common.DirectBufferPool;
 import com.fidd.core.common.LimitedInputStream;
+import com.fidd.core.encryption.EncryptionAlgorithm;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ProgressiveCrcCalculator {
+    /** Chunks are grouped into tasks of at least this many bytes, so small chunk sizes don't flood the pool */
+    static final long MIN_TASK_BYTES = 4L * 1024 * 1024;
+
+    /** Feeds bytes [position, position + length) of the data to callbacks. Called from several threads at once. */
+    public interface RegionReader {
+        void read(long position, long length, List<EncryptionAlgorithm.CrcCallback> callbacks) throws IOException;
+    }
+
     public static byte[] calculateProgressiveCrc(InputStream dataStream, long chunkSize, CrcCalculator crcCalculator) throws IOException {
         if (chunkSize <= 0) { throw new IllegalArgumentException("chunkSize must be positive"); }
 
@@ -31,4 +50,106 @@ public class ProgressiveCrcCalculator {
 
         return progressiveCrc.toByteArray();
     }
+
+    /** Parallel counterpart of calculateProgressiveCrc for a whole file, see calculateProgressiveCrcs */
+    public static byte[] calculateProgressiveCrc(FileChannel channel, long chunkSize, CrcCalculator crcCalculator,
+                                                 ForkJoinPool pool) throws IOException {
+        return calculateProgressiveCrcs(channel, chunkSize, List.of(crcCalculator), pool).get(0);
+    }
+
+    /**
+     * Progressive CRCs of a whole file, read with positional FileChannel reads on pool; each chunk is read
+     * once for all calculators.
+     * @return one progressive CRC per calculator, same as calculateProgressiveCrc would give
+     */
+    public static List<byte[]> calculateProgressiveCrcs(FileChannel channel, long chunkSize,
+                                                        List<CrcCalculator> crcCalculators, ForkJoinPool pool) throws IOException {
+        return calculateProgressiveCrcs(fileChannelReader(channel), channel.size(), chunkSize, crcCalculators, pool);
+    }
+
+    /**
+     * Progressive CRCs of length bytes served by reader. Chunks are independent, so runs of them are
+     * checksummed on pool and the CRCs put together in order.
+     * @return one progressive CRC per calculator, same as calculateProgressiveCrc would give
+     */
+    public static List<byte[]> calculateProgressiveCrcs(RegionReader reader, long length, long chunkSize,
+                                                        List<CrcCalculator> crcCalculators, ForkJoinPool pool) throws IOException {
+        if (chunkSize <= 0) { throw new IllegalArgumentException("chunkSize must be positive"); }
+        long chunkCount = (length + chunkSize - 1) / chunkSize;
+        if (chunkCount > Integer.MAX_VALUE) { throw new IllegalArgumentException("chunkSize too small for " + length + " bytes"); }
+
+        byte[][][] crcs = new byte[crcCalculators.size()][(int) chunkCount][];
+        long chunksPerTask = Math.max(1, MIN_TASK_BYTES / chunkSize);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        for (long firstChunk = 0; firstChunk < chunkCount; firstChunk += chunksPerTask) {
+            long from = firstChunk;
+            long to = Math.min(chunkCount, firstChunk + chunksPerTask);
+            tasks.add(pool.submit(() -> {
+                for (long chunk = from; chunk < to && !abandoned.get(); chunk++) {
+                    List<EncryptionAlgorithm.CrcCallback> callbacks = new ArrayList<>(crcCalculators.size());
+                    for (CrcCalculator crcCalculator : crcCalculators) {
+                        callbacks.add(crcCalculator.newCrcCallback());
+                    }
+                    long position = chunk * chunkSize;
+                    try {
+                        reader.read(position, Math.min(chunkSize, length - position), callbacks);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    for (int i = 0; i < callbacks.size(); i++) {
+                        crcs[i][(int) chunk] = callbacks.get(i).getCrc();
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // If a task failed, the rest stop at their next chunk; wait for them all, since the caller
+            // closes what reader reads from once this returns. cancel() wouldn't stop a running task
+            abandoned.set(true);
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+
+        List<byte[]> progressiveCrcs = new ArrayList<>(crcs.length);
+        for (byte[][] chunkCrcs : crcs) {
+            ByteArrayOutputStream progressiveCrc = new ByteArrayOutputStream();
+            for (byte[] crc : chunkCrcs) {
+                progressiveCrc.writeBytes(crc);
+            }
+            progressiveCrcs.add(progressiveCrc.toByteArray());
+        }
+        return progressiveCrcs;
+    }
+
+    /** Positional reads through pooled direct buffers; the channel's own position is left alone */
+    public static RegionReader fileChannelReader(FileChannel channel) {
+        return (position, length, callbacks) -> {
+            DirectBufferPool pool = DirectBufferPool.shared();
+            ByteBuffer buffer = pool.acquire();
+            try {
+                long end = position + length;
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("File ended at " + position + ", expected " + end + " bytes");
+                    }
+                    buffer.flip();
+                    EncryptionAlgorithm.CrcCallback.writeAll(callbacks, buffer);
+                    position += read;
+                }
+            } finally {
+                pool.release(buffer);
+            }
+        };
+    }
 }
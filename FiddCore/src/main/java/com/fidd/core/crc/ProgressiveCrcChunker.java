@@ -0,0 +1,66 @@
+package com.fidd.core.crc;
+
+import com.fidd.core.encryption.EncryptionAlgorithm;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Progressive CRC of data that is fed in pieces: a CRC per chunkSize bytes, concatenated, exactly as
+ * ProgressiveCrcCalculator.calculateProgressiveCrc gives for the whole data. Lets a single pass over
+ * a file feed the progressive CRCs alongside everything else that reads it.
+ */
+public class ProgressiveCrcChunker implements EncryptionAlgorithm.CrcCallback {
+    private final CrcCalculator crcCalculator;
+    private final long chunkSize;
+    private final ByteArrayOutputStream progressiveCrc = new ByteArrayOutputStream();
+    private @Nullable EncryptionAlgorithm.CrcCallback chunkCrc;
+    private long chunkBytes;
+
+    public ProgressiveCrcChunker(CrcCalculator crcCalculator, long chunkSize) {
+        if (chunkSize <= 0) { throw new IllegalArgumentException("chunkSize must be positive"); }
+        this.crcCalculator = crcCalculator;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (chunkCrc == null) {
+                chunkCrc = crcCalculator.newCrcCallback();
+            }
+            int n = (int) Math.min(len, chunkSize - chunkBytes);
+            chunkCrc.write(b, off, n);
+            chunkBytes += n;
+            off += n;
+            len -= n;
+            if (chunkBytes == chunkSize) {
+                progressiveCrc.writeBytes(chunkCrc.getCrc());
+                chunkCrc = null;
+                chunkBytes = 0;
+            }
+        }
+    }
+
+    /** @return progressive CRC of everything written so far, the last chunk possibly partial */
+    @Override
+    public byte[] getCrc() {
+        if (chunkCrc == null) {
+            return progressiveCrc.toByteArray();
+        }
+        ByteArrayOutputStream withPartialChunk = new ByteArrayOutputStream();
+        withPartialChunk.writeBytes(progressiveCrc.toByteArray());
+        withPartialChunk.writeBytes(chunkCrc.getCrc());
+        return withPartialChunk.toByteArray();
+    }
+}
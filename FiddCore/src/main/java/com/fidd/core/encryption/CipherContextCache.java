@@ -0,0 +1,59 @@
+package com.fidd.core.encryption;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread-safe cache of prepared cipher contexts - parsed key material, key specs, expanded
+ * key schedules - keyed by section key data. Serving many ranges of the same section then only parses
+ * and expands its key once. Contexts must be safe to share between threads.
+ */
+public class CipherContextCache<C> {
+    public static final int DEFAULT_MAXIMUM_SIZE = 256;
+    public static final Duration DEFAULT_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(10);
+
+    protected record KeyData(byte[] data) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyData other && Arrays.equals(data, other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(data);
+        }
+    }
+
+    protected final Function<byte[], C> factory;
+    protected final Cache<KeyData, C> contexts;
+
+    public CipherContextCache(Function<byte[], C> factory) {
+        this(factory, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public CipherContextCache(Function<byte[], C> factory, long maximumSize) {
+        this.factory = factory;
+        this.contexts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(DEFAULT_EXPIRE_AFTER_ACCESS)
+                .build();
+    }
+
+    public C get(byte[] keyData) {
+        C context = contexts.getIfPresent(new KeyData(keyData));
+        if (context != null) {
+            return context;
+        }
+        // The caller may reuse its array, so the cached key gets its own copy
+        byte[] copy = keyData.clone();
+        return contexts.get(new KeyData(copy), key -> factory.apply(copy));
+    }
+
+    public long size() {
+        return contexts.estimatedSize();
+    }
+}
@@ -1,22 +1,70 @@
 package com.fidd.core.encryption;
 
 import com.fidd.core.NamedEntry;
+import com.fidd.core.common.ChannelStreams;
 import com.fidd.core.random.RandomGeneratorType;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.List;
 
 public interface EncryptionAlgorithm extends NamedEntry {
     // TODO: this may be impossible to calculate precisely for some algorithms, e.g. AES/CBC/PKCS5Padding
     default long plaintextLengthToCiphertextLength(long plaintextLength) { return plaintextLength; }
+    /** Inverse of plaintextLengthToCiphertextLength, for algorithms where it is exact */
+    default long ciphertextLengthToPlaintextLength(long ciphertextLength) { return ciphertextLength; }
 
     String UNENCRYPTED = "UNENCRYPTED";
 
+    /**
+     * Receives the ciphertext as it is written. The buffers passed in are only valid for the duration of
+     * the call: algorithms hand over their working buffers as they are, without copying them.
+     */
     interface CrcCallback {
         void write(byte[] b);
         void write(int b);
         byte[] getCrc();
+
+        /** Default copies the range if it isn't the whole array; implementations override it to avoid that */
+        default void write(byte[] b, int off, int len) {
+            write(off == 0 && len == b.length ? b : Arrays.copyOfRange(b, off, off + len));
+        }
+
+        /** Takes the remaining bytes of buffer, leaving its position where it was */
+        default void write(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.duplicate().get(chunk);
+                write(chunk);
+            }
+        }
+
+        /** Feeds b[off, off + len) to every callback; no-op for a null or empty list */
+        static void writeAll(@Nullable List<CrcCallback> callbacks, byte[] b, int off, int len) {
+            if (callbacks == null || len <= 0) {
+                return;
+            }
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).write(b, off, len);
+            }
+        }
+
+        /** Feeds the remaining bytes of buffer to every callback, leaving its position where it was */
+        static void writeAll(@Nullable List<CrcCallback> callbacks, ByteBuffer buffer) {
+            if (callbacks == null || !buffer.hasRemaining()) {
+                return;
+            }
+            for (int i = 0; i < callbacks.size(); i++) {
+                callbacks.get(i).write(buffer);
+            }
+        }
     }
 
     byte[] generateNewKeyData(RandomGeneratorType random);
@@ -33,4 +81,20 @@ public interface EncryptionAlgorithm extends NamedEntry {
     long decrypt(byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial);
 
     InputStream getDecryptedStream(byte[] keyData, InputStream stream);
+
+    // Channel counterparts of the stream methods. Channels are not closed, they stay with the caller.
+    // Defaults adapt the stream methods; algorithms override them to work on ByteBuffers directly.
+
+    /** @return Bytes written to channel ciphertext */
+    default long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                         @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+        return encrypt(keyData, plaintexts.stream().map(ChannelStreams::inputStream).toList(),
+                ChannelStreams.outputStream(ciphertext),
+                ciphertextCrcCallbacks == null ? List.of() : ciphertextCrcCallbacks);
+    }
+
+    /** @return Bytes written to channel plaintext */
+    default long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+        return decrypt(keyData, ChannelStreams.inputStream(ciphertext), ChannelStreams.outputStream(plaintext), false);
+    }
 }
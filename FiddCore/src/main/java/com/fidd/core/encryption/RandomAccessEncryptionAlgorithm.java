@@ -1,14 +1,60 @@
 package com.fidd.core.encryption;
 
+import com.fidd.core.common.ChannelStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public interface RandomAccessEncryptionAlgorithm extends EncryptionAlgorithm {
     default long plaintextPosToCiphertextPos(long plaintextOffset) { return plaintextOffset; }
     default long ciphertextPosToPlaintextPos(long ciphertextOffset) { return ciphertextOffset; }
 
+    /** Where the ciphertext passed to randomAccessDecrypt for a range starting at plaintextOffset begins.
+     * Chained modes start earlier than plaintextPosToCiphertextPos, at the block the range depends on. */
+    default long ciphertextRangeStart(long plaintextOffset) { return plaintextPosToCiphertextPos(plaintextOffset); }
+    /** Ciphertext bytes from ciphertextRangeStart needed to decrypt the range; may be cut short by the end of the section */
+    default long ciphertextRangeLength(long plaintextOffset, long plaintextLength) {
+        return plaintextLengthToCiphertextLength(plaintextLength);
+    }
+    /** Block size of trailing padding, 0 if none. The plaintext length of padded ciphertext is only known
+     * after decrypting its last block. */
+    default int paddingBlockSize() { return 0; }
+
+    /** @param ciphertext whole ciphertext of the section */
     byte[] randomAccessDecrypt(byte[] keyData, byte[] ciphertext, long plaintextOffset, long plaintextLength);
+    /** ciphertextAtOffset starts at ciphertextRangeStart(plaintextOffset) */
     void randomAccessDecrypt(byte[] keyData, long plaintextOffset, long plaintextLength, InputStream ciphertextAtOffset, OutputStream plaintext);
 
     InputStream getRandomAccessDecryptedStream(byte[] keyData, long plaintextOffset, long plaintextLength, InputStream ciphertextAtOffset);
+
+    /**
+     * Decrypts plaintextLength bytes starting at plaintextOffset from the channel positioned at the matching
+     * ciphertext offset. Channels are not closed.
+     */
+    default void randomAccessDecrypt(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                     ReadableByteChannel ciphertextAtOffset, WritableByteChannel plaintext) {
+        randomAccessDecrypt(keyData, plaintextOffset, plaintextLength,
+                ChannelStreams.inputStream(ciphertextAtOffset), ChannelStreams.outputStream(plaintext));
+    }
+
+    /**
+     * Decrypts the remaining bytes of ciphertextAtOffset, which start at plaintextOffset, into plaintext.
+     * Both buffers' positions advance; plaintext needs room for plaintextLength bytes.
+     */
+    default void randomAccessDecrypt(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                     ByteBuffer ciphertextAtOffset, ByteBuffer plaintext) {
+        byte[] ciphertext = new byte[ciphertextAtOffset.remaining()];
+        ciphertextAtOffset.get(ciphertext);
+        try (InputStream decrypted = getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength,
+                new ByteArrayInputStream(ciphertext))) {
+            plaintext.put(decrypted.readAllBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
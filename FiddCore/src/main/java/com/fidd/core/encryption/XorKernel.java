@@ -0,0 +1,122 @@
+package com.fidd.core.encryption;
+
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * XOR of byte ranges a long word at a time, shared by the XOR algorithm and the CTR keystreams.
+ *
+ * <p>When the JVM runs with {@code --add-modules jdk.incubator.vector}, the bulk of each range goes
+ * through the Vector API at the platform's preferred vector width instead; words and then single bytes
+ * finish the tail. The vector class is compiled separately and looked up reflectively, so building and
+ * running without the module needs no flags; without it the vector class is never loaded.
+ */
+public final class XorKernel {
+    /** Length repeating keys are expanded to, so the XOR runs in long stretches between wraps */
+    public static final int EXPANDED_KEY_MIN_LENGTH = 1024;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final String VECTOR_XOR_KERNEL = "com.fidd.core.encryption.VectorXorKernel";
+    /** VectorXorKernel.xor; null when jdk.incubator.vector isn't in the boot layer */
+    private static final @Nullable MethodHandle VECTOR_XOR = vectorXor();
+    /** Shorter ranges aren't worth the vector setup */
+    private static final int VECTOR_MIN_LENGTH = 64;
+
+    private XorKernel() {}
+
+    private static @Nullable MethodHandle vectorXor() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName(VECTOR_XOR_KERNEL), "xor",
+                    MethodType.methodType(int.class, byte[].class, int.class, byte[].class, int.class,
+                            byte[].class, int.class, int.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // The module is there, but not the vector class - stay on the scalar path
+            return null;
+        }
+    }
+
+    /** @return whether the Vector API path is in use */
+    public static boolean vectorized() {
+        return VECTOR_XOR != null;
+    }
+
+    /** out = a ^ b over len bytes; out may be the same range as a or b. */
+    public static void xor(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        int i = 0;
+        if (VECTOR_XOR != null && len >= VECTOR_MIN_LENGTH) {
+            i = xorVectors(a, aOff, b, bOff, out, outOff, len);
+        }
+        xorWords(a, aOff, b, bOff, out, outOff, i, len);
+    }
+
+    /**
+     * Vector part of xor(): whole vectors from the start of the range; only when vectorized().
+     * @return bytes done. Package-private for tests of both paths.
+     */
+    static int xorVectors(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        MethodHandle vectorXor = VECTOR_XOR;
+        if (vectorXor == null) {
+            throw new IllegalStateException("Vector API path not in use");
+        }
+        try {
+            return (int) vectorXor.invokeExact(a, aOff, b, bOff, out, outOff, len);
+        } catch (Throwable e) {
+            Throwables.throwIfUnchecked(e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Scalar part of xor(), from index i on. Package-private for tests of both paths. */
+    static void xorWords(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int i, int len) {
+        for (; i <= len - Long.BYTES; i += Long.BYTES) {
+            LONGS.set(out, outOff + i, (long) LONGS.get(a, aOff + i) ^ (long) LONGS.get(b, bOff + i));
+        }
+        for (; i < len; i++) {
+            out[outOff + i] = (byte) (a[aOff + i] ^ b[bOff + i]);
+        }
+    }
+
+    /**
+     * out[i] = in[i] ^ key[(keyPos + i) mod key.length] over len bytes. The key is wrapped once per
+     * pass over it rather than per byte; pass an {@link #expandKey expanded} key for short keys.
+     */
+    public static void xorRepeating(byte[] in, int inOff, byte[] key, long keyPos, byte[] out, int outOff, int len) {
+        int k = (int) (keyPos % key.length);
+        while (len > 0) {
+            int n = Math.min(len, key.length - k);
+            xor(in, inOff, key, k, out, outOff, n);
+            inOff += n;
+            outOff += n;
+            len -= n;
+            k = 0;
+        }
+    }
+
+    /**
+     * @return key repeated a whole number of times to at least minLength bytes, or key itself if it is
+     * that long already. Positions modulo the expanded length select the same key bytes.
+     */
+    public static byte[] expandKey(byte[] key, int minLength) {
+        if (key.length == 0) {
+            throw new IllegalArgumentException("Empty key");
+        }
+        if (key.length >= minLength) {
+            return key;
+        }
+        int copies = (minLength + key.length - 1) / key.length;
+        byte[] expanded = new byte[copies * key.length];
+        for (int i = 0; i < copies; i++) {
+            System.arraycopy(key, 0, expanded, i * key.length, key.length);
+        }
+        return expanded;
+    }
+}
@@ -1,5 +1,8 @@
 package com.fidd.core.encryption.aes256;
 
+import com.fidd.core.common.ChannelStreams;
+import com.fidd.core.common.DirectBufferPool;
+import com.fidd.core.encryption.CipherContextCache;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.random.RandomGeneratorType;
 import com.flower.crypt.Cryptor;
@@ -12,14 +15,46 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
 import java.util.List;
 
 abstract class Aes256Base implements EncryptionAlgorithm {
     public static final int AES_BUFFER_SIZE = 1024;
+    /** Room left in direct output buffers for a block held back by the cipher plus padding */
+    private static final int AES_OUTPUT_RESERVE = 32;
 
     abstract String keySpec();
     abstract String transform();
 
+    /** Parsed section key; immutable, shared between threads */
+    protected record AesContext(SecretKeySpec key, byte[] iv) { }
+
+    protected final CipherContextCache<AesContext> contexts = new CipherContextCache<>(keyData -> {
+        Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
+        return new AesContext(new SecretKeySpec(keyAndIv.aes256Key(), keySpec()), keyAndIv.aes256Iv());
+    });
+
+    // Reused by operations that finish within the call. Re-initializing a Cipher with the key it already
+    // has skips the key expansion. Streams handed out to callers get a Cipher of their own.
+    private final ThreadLocal<Cipher> threadCiphers = ThreadLocal.withInitial(this::newCipher);
+
+    protected Cipher newCipher() {
+        try {
+            return Cipher.getInstance(transform());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected Cipher threadCipher(int mode, AesContext context, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = threadCiphers.get();
+        cipher.init(mode, context.key(), new IvParameterSpec(iv));
+        return cipher;
+    }
+
     @Override
     public byte[] generateNewKeyData(RandomGeneratorType random) {
         byte[] aesKey = Cryptor.generateAESKeyRaw(random.generator());
@@ -29,10 +64,9 @@ abstract class Aes256Base implements EncryptionAlgorithm {
 
     @Override
     public byte[] encrypt(byte[] keyData, byte[] plaintext) {
-        Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyAndIv.aes256Key(), keySpec());
+        AesContext context = contexts.get(keyData);
         try {
-            return Cryptor.encryptAES(plaintext, secretKeySpec, transform(), keyAndIv.aes256Iv());
+            return threadCipher(Cipher.ENCRYPT_MODE, context, context.iv()).doFinal(plaintext);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -40,10 +74,9 @@ abstract class Aes256Base implements EncryptionAlgorithm {
 
     @Override
     public byte[] decrypt(byte[] keyData, byte[] ciphertext) {
-        Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyAndIv.aes256Key(), keySpec());
+        AesContext context = contexts.get(keyData);
         try {
-            return Cryptor.decryptAES(ciphertext, secretKeySpec, transform(), keyAndIv.aes256Iv());
+            return threadCipher(Cipher.DECRYPT_MODE, context, context.iv()).doFinal(ciphertext);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -52,33 +85,30 @@ abstract class Aes256Base implements EncryptionAlgorithm {
     @Override
     public long encrypt(byte[] keyData, List<InputStream> plaintexts, OutputStream ciphertext,
                         @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
-        Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyAndIv.aes256Key(), keySpec());
+        AesContext context = contexts.get(keyData);
         long totalBytesWritten = 0;
 
         if (!plaintexts.isEmpty()) {
             try {
-                Cipher cipher = Cipher.getInstance(transform());
-                cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, new IvParameterSpec(keyAndIv.aes256Iv()));
+                // Plaintext streams may be decrypting streams themselves, so no thread Cipher here
+                Cipher cipher = newCipher();
+                cipher.init(Cipher.ENCRYPT_MODE, context.key(), new IvParameterSpec(context.iv()));
+                byte[] buffer = new byte[AES_BUFFER_SIZE];
+                byte[] output = new byte[cipher.getOutputSize(AES_BUFFER_SIZE)];
                 for (InputStream plaintext : plaintexts) {
-                    byte[] buffer = new byte[AES_BUFFER_SIZE];
                     int bytesRead;
 
                     while ((bytesRead = plaintext.read(buffer)) != -1) {
-                        byte[] output = cipher.update(buffer, 0, bytesRead);
-                        if (output != null) {
-                            ciphertext.write(output);
-                            if (ciphertextCrcCallbacks != null) { ciphertextCrcCallbacks.forEach(c -> c.write(output)); }
-                            totalBytesWritten += output.length;
-                        }
+                        int outputLength = cipher.update(buffer, 0, bytesRead, output, 0);
+                        ciphertext.write(output, 0, outputLength);
+                        CrcCallback.writeAll(ciphertextCrcCallbacks, output, 0, outputLength);
+                        totalBytesWritten += outputLength;
                     }
                 }
-                byte[] finalOutput = cipher.doFinal();
-                if (finalOutput != null) {
-                    ciphertext.write(finalOutput);
-                    if (ciphertextCrcCallbacks != null) { ciphertextCrcCallbacks.forEach(c -> c.write(finalOutput)); }
-                    totalBytesWritten += finalOutput.length;
-                }
+                int finalLength = cipher.doFinal(output, 0);
+                ciphertext.write(output, 0, finalLength);
+                CrcCallback.writeAll(ciphertextCrcCallbacks, output, 0, finalLength);
+                totalBytesWritten += finalLength;
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -89,15 +119,14 @@ abstract class Aes256Base implements EncryptionAlgorithm {
 
     @Override
     public long decrypt(byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
-        Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyAndIv.aes256Key(), keySpec());
+        AesContext context = contexts.get(keyData);
         long totalBytesWritten = 0;
 
         try (ciphertext; plaintext) {
             Cipher cipher;
             try {
-                cipher = Cipher.getInstance(transform());
-                cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(keyAndIv.aes256Iv()));
+                cipher = newCipher();
+                cipher.init(Cipher.DECRYPT_MODE, context.key(), new IvParameterSpec(context.iv()));
 
                 byte[] buffer = new byte[AES_BUFFER_SIZE];
                 int bytesRead;
@@ -134,11 +163,10 @@ abstract class Aes256Base implements EncryptionAlgorithm {
     @Override
     public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
         try {
-            Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(keyAndIv.aes256Key(), keySpec());
+            AesContext context = contexts.get(keyData);
 
-            final Cipher cipher = Cipher.getInstance(transform());
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(keyAndIv.aes256Iv()));
+            final Cipher cipher = newCipher();
+            cipher.init(Cipher.DECRYPT_MODE, context.key(), new IvParameterSpec(context.iv()));
 
             // Wrap the input stream with decryption
             return new CipherInputStream(stream, cipher);
@@ -147,5 +175,77 @@ abstract class Aes256Base implements EncryptionAlgorithm {
         }
     }
 
+    @Override
+    public long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                        @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+        if (plaintexts.isEmpty()) {
+            return 0;
+        }
+        AesContext context = contexts.get(keyData);
+        try {
+            Cipher cipher = newCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, context.key(), new IvParameterSpec(context.iv()));
+            return transfer(cipher, plaintexts, Long.MAX_VALUE, ciphertext, ciphertextCrcCallbacks);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+        AesContext context = contexts.get(keyData);
+        try {
+            Cipher cipher = newCipher();
+            cipher.init(Cipher.DECRYPT_MODE, context.key(), new IvParameterSpec(context.iv()));
+            return transfer(cipher, List.of(ciphertext), Long.MAX_VALUE, plaintext, null);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs up to limit bytes of the input channels through cipher with Cipher.update(ByteBuffer, ByteBuffer)
+     * on pooled direct buffers, then finishes it with doFinal.
+     * @return bytes written to out
+     */
+    protected static long transfer(Cipher cipher, List<ReadableByteChannel> in, long limit, WritableByteChannel out,
+                                   @Nullable List<CrcCallback> crcCallbacks) throws IOException, GeneralSecurityException {
+        DirectBufferPool pool = DirectBufferPool.shared();
+        ByteBuffer input = pool.acquire();
+        ByteBuffer output = pool.acquire();
+        try {
+            long remaining = limit;
+            long written = 0;
+            for (ReadableByteChannel channel : in) {
+                while (remaining > 0) {
+                    input.clear().limit(input.capacity() - AES_OUTPUT_RESERVE);
+                    int read = ChannelStreams.readFully(channel, input, remaining);
+                    if (read <= 0) { break; }
+                    remaining -= read;
+
+                    input.flip();
+                    output.clear();
+                    cipher.update(input, output);
+                    written += drain(output, out, crcCallbacks);
+                }
+            }
+            input.clear().limit(0);
+            output.clear();
+            cipher.doFinal(input, output);
+            written += drain(output, out, crcCallbacks);
+            return written;
+        } finally {
+            pool.release(input);
+            pool.release(output);
+        }
+    }
 
+    private static int drain(ByteBuffer output, WritableByteChannel out, @Nullable List<CrcCallback> crcCallbacks)
+            throws IOException {
+        output.flip();
+        int length = output.remaining();
+        CrcCallback.writeAll(crcCallbacks, output);
+        ChannelStreams.writeFully(out, output);
+        return length;
+    }
 }
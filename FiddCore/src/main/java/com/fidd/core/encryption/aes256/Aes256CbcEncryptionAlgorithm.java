@@ -1,8 +1,50 @@
 package com.fidd.core.encryption.aes256;
 
-public class Aes256CbcEncryptionAlgorithm extends Aes256Base {
+import com.fidd.core.common.ChannelStreams;
+import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+
+import javax.annotation.Nullable;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+
+/**
+ * AES-256 in CBC mode with PKCS#5 padding. Ranges are decrypted starting from the ciphertext block
+ * preceding them, see {@link CbcRangeInputStream}. Encryption is inherently sequential; decryption of
+ * whole sections runs in parallel segments of {@link ParallelSegmentCipher}, each seeded with the ciphertext block
+ * before it. Pass null segmentCipher for strictly sequential processing.
+ */
+public class Aes256CbcEncryptionAlgorithm extends Aes256Base implements RandomAccessEncryptionAlgorithm {
     public static final String AES = "AES";
     public static final String AES_CBC_PKCS_5_PADDING = "AES/CBC/PKCS5Padding";
+    public static final String AES_CBC_NO_PADDING = "AES/CBC/NoPadding";
+
+    private final @Nullable ParallelSegmentCipher segmentCipher;
+    // Segment transforms run on pool threads and finish within the call
+    private final ThreadLocal<Cipher> noPaddingCiphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(AES_CBC_NO_PADDING);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    public Aes256CbcEncryptionAlgorithm() {
+        this(ParallelSegmentCipher.defaultInstance());
+    }
+
+    public Aes256CbcEncryptionAlgorithm(@Nullable ParallelSegmentCipher segmentCipher) {
+        this.segmentCipher = segmentCipher;
+    }
 
     @Override public String keySpec() { return AES; }
     @Override public String transform() { return AES_CBC_PKCS_5_PADDING; }
@@ -11,4 +53,130 @@ public class Aes256CbcEncryptionAlgorithm extends Aes256Base {
     public String name() {
         return "AES-256-CBC";
     }
+
+    /** CBC decryption of a segment; the first segment of a section chains from the key's IV. */
+    ParallelSegmentCipher.ChainedSegmentTransform decryptTransform(byte[] keyData) {
+        AesContext context = contexts.get(keyData);
+        return (position, previousBlock, in, inOff, out, outOff, len) -> {
+            if (len % BLOCK_SIZE != 0) {
+                throw new IllegalArgumentException("CBC ciphertext is not a whole number of blocks");
+            }
+            try {
+                Cipher cipher = noPaddingCiphers.get();
+                cipher.init(Cipher.DECRYPT_MODE, context.key(),
+                        new IvParameterSpec(previousBlock == null ? context.iv() : previousBlock));
+                cipher.doFinal(in, inOff, len, out, outOff);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    @Override
+    public byte[] decrypt(byte[] keyData, byte[] ciphertext) {
+        if (segmentCipher == null || ciphertext.length <= segmentCipher.segmentSize()) {
+            return super.decrypt(keyData, ciphertext);
+        }
+        byte[] padded = segmentCipher.transform(ciphertext, 0, decryptTransform(keyData));
+        try {
+            return Arrays.copyOf(padded, padded.length - Pkcs7.paddingLength(padded, padded.length));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long decrypt(byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
+        // Partial reads of truncated sections keep the sequential path, which tolerates a missing final block
+        if (segmentCipher == null || allowPartial) {
+            return super.decrypt(keyData, ciphertext, plaintext, allowPartial);
+        }
+        try (ciphertext; plaintext) {
+            Pkcs7.UnpaddingOutputStream unpadded = new Pkcs7.UnpaddingOutputStream(plaintext);
+            segmentCipher.transform(ciphertext, unpadded, 0, decryptTransform(keyData), null);
+            return unpadded.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+        if (segmentCipher == null) {
+            return super.decrypt(keyData, ciphertext, plaintext);
+        }
+        return decrypt(keyData, ChannelStreams.inputStream(ciphertext), ChannelStreams.outputStream(plaintext), false);
+    }
+
+    @Override
+    public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
+        if (segmentCipher == null) {
+            return super.getDecryptedStream(keyData, stream);
+        }
+        return new Pkcs7.UnpaddingInputStream(segmentCipher.transformingStream(stream, 0, decryptTransform(keyData)));
+    }
+
+    @Override
+    public long plaintextLengthToCiphertextLength(long plaintextLength) {
+        return CbcRangeInputStream.paddedLength(plaintextLength);
+    }
+
+    @Override
+    public long ciphertextRangeStart(long plaintextOffset) {
+        return CbcRangeInputStream.ciphertextRangeStart(plaintextOffset);
+    }
+
+    @Override
+    public long ciphertextRangeLength(long plaintextOffset, long plaintextLength) {
+        return CbcRangeInputStream.ciphertextRangeLength(plaintextOffset, plaintextLength);
+    }
+
+    @Override
+    public int paddingBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public byte[] randomAccessDecrypt(byte[] keyData, byte[] ciphertext, long plaintextOffset, long plaintextLength) {
+        CbcRangeInputStream.checkRange(plaintextOffset, plaintextLength);
+        int from = (int) Math.min(ciphertextRangeStart(plaintextOffset), ciphertext.length);
+        try (InputStream in = getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength,
+                new ByteArrayInputStream(ciphertext, from, ciphertext.length - from))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void randomAccessDecrypt(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                    InputStream ciphertextAtOffset, OutputStream plaintext) {
+        try (InputStream in = getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength, ciphertextAtOffset)) {
+            in.transferTo(plaintext);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public InputStream getRandomAccessDecryptedStream(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                                      InputStream ciphertextAtOffset) {
+        AesContext context = contexts.get(keyData);
+        return new CbcRangeInputStream(ciphertextAtOffset, context.iv(), plaintextOffset, plaintextLength, iv -> {
+            try {
+                // Handed out to the caller, so a Cipher of its own
+                Cipher cipher = Cipher.getInstance(AES_CBC_NO_PADDING);
+                cipher.init(Cipher.DECRYPT_MODE, context.key(), new IvParameterSpec(iv));
+                return (in, inOff, len, out, outOff) -> {
+                    try {
+                        cipher.update(in, inOff, len, out, outOff);
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException(e);
+                    }
+                };
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
 }
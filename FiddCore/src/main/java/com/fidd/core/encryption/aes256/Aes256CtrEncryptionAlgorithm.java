@@ -1,21 +1,44 @@
 package com.fidd.core.encryption.aes256;
 
+import com.fidd.core.common.ChannelStreams;
 import com.fidd.core.common.SubInputStream;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import javax.annotation.Nullable;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.List;
 
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * AES-256 in CTR mode. Sections larger than one segment of {@link ParallelSegmentCipher} are encrypted and decrypted
+ * in parallel segments, each with its own counter; pass null segmentCipher for strictly sequential processing.
+ * The default constructor is sequential on single-core machines.
+ */
 public class Aes256CtrEncryptionAlgorithm extends Aes256Base implements RandomAccessEncryptionAlgorithm {
   public static final String AES = "AES";
   public static final String AES_CTR_NO_PADDING = "AES/CTR/NoPadding";
-  private static final int BLOCK_SIZE = 16;
+
+  private final @Nullable ParallelSegmentCipher segmentCipher;
+
+  public Aes256CtrEncryptionAlgorithm() {
+    this(ParallelSegmentCipher.defaultInstance());
+  }
+
+  public Aes256CtrEncryptionAlgorithm(@Nullable ParallelSegmentCipher segmentCipher) {
+    this.segmentCipher = segmentCipher;
+  }
 
   @Override public String keySpec() { return AES; }
   @Override public String transform() { return AES_CTR_NO_PADDING; }
@@ -26,11 +49,125 @@ public class Aes256CtrEncryptionAlgorithm extends Aes256Base implements RandomAc
     return "AES-256-CTR";
   }
 
+  /** CTR keystream applied at any stream position; encryption and decryption are the same. */
+  ParallelSegmentCipher.SegmentTransform segmentTransform(byte[] keyData) {
+    AesContext context = contexts.get(keyData);
+    return (position, in, inOff, out, outOff, len) -> {
+      try {
+        Cipher cipher = threadCipher(Cipher.ENCRYPT_MODE, context, addToIv128(context.iv(), position / BLOCK_SIZE));
+        int offsetInBlock = (int) (position % BLOCK_SIZE);
+        if (offsetInBlock > 0) {
+          cipher.update(new byte[offsetInBlock]);
+        }
+        cipher.doFinal(in, inOff, len, out, outOff);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException(e);
+      }
+    };
+  }
+
+  private boolean isParallel(long length) {
+    return segmentCipher != null && length > segmentCipher.segmentSize();
+  }
+
+  @Override
+  public byte[] encrypt(byte[] keyData, byte[] plaintext) {
+    if (!isParallel(plaintext.length)) {
+      return super.encrypt(keyData, plaintext);
+    }
+    return checkNotNull(segmentCipher).transform(plaintext, 0, segmentTransform(keyData));
+  }
+
+  @Override
+  public byte[] decrypt(byte[] keyData, byte[] ciphertext) {
+    if (!isParallel(ciphertext.length)) {
+      return super.decrypt(keyData, ciphertext);
+    }
+    return checkNotNull(segmentCipher).transform(ciphertext, 0, segmentTransform(keyData));
+  }
+
+  @Override
+  public long encrypt(byte[] keyData, List<InputStream> plaintexts, OutputStream ciphertext,
+                      @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+    if (segmentCipher == null) {
+      return super.encrypt(keyData, plaintexts, ciphertext, ciphertextCrcCallbacks);
+    }
+    try {
+      return segmentCipher.transform(ParallelSegmentCipher.concat(plaintexts), ciphertext, 0,
+          segmentTransform(keyData), ciphertextCrcCallbacks);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public long decrypt(byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
+    if (segmentCipher == null) {
+      return super.decrypt(keyData, ciphertext, plaintext, allowPartial);
+    }
+    // CTR has no padding, so there is no partial final block to tolerate
+    try (ciphertext; plaintext) {
+      return segmentCipher.transform(ciphertext, plaintext, 0, segmentTransform(keyData), null);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                      @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+    if (segmentCipher == null) {
+      return super.encrypt(keyData, plaintexts, ciphertext, ciphertextCrcCallbacks);
+    }
+    return encrypt(keyData, plaintexts.stream().map(ChannelStreams::inputStream).toList(),
+        ChannelStreams.outputStream(ciphertext), ciphertextCrcCallbacks);
+  }
+
+  @Override
+  public long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+    if (segmentCipher == null) {
+      return super.decrypt(keyData, ciphertext, plaintext);
+    }
+    return decrypt(keyData, ChannelStreams.inputStream(ciphertext), ChannelStreams.outputStream(plaintext), false);
+  }
+
+  @Override
+  public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
+    if (segmentCipher == null) {
+      return super.getDecryptedStream(keyData, stream);
+    }
+    return segmentCipher.transformingStream(stream, 0, segmentTransform(keyData));
+  }
+
   @Override
   public byte[] randomAccessDecrypt(byte[] keyData,
                                     byte[] ciphertext,
                                     long plaintextOffset,
                                     long plaintextLength) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+    if (!isParallel(plaintextLength)) {
+      // Straight from the array, same bounds as a ByteArrayInputStream over it
+      int from = (int) Math.min(plaintextOffset, ciphertext.length);
+      int length = (int) Math.min(plaintextLength, ciphertext.length - from);
+      if (length == 0) {
+        return new byte[0];
+      }
+      AesContext context = contexts.get(keyData);
+      try {
+        Cipher cipher = threadCipher(Cipher.DECRYPT_MODE, context,
+            addToIv128(context.iv(), plaintextOffset / BLOCK_SIZE));
+        int offsetInBlock = (int) (plaintextOffset % BLOCK_SIZE);
+        if (offsetInBlock > 0) {
+          cipher.update(new byte[offsetInBlock]);
+        }
+        return cipher.doFinal(ciphertext, from, length);
+      } catch (GeneralSecurityException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
     InputStream inputStream = new ByteArrayInputStream(ciphertext,
             (int)plaintextPosToCiphertextPos(plaintextOffset),
             (int)plaintextLengthToCiphertextLength(plaintextLength));
@@ -67,6 +204,67 @@ public class Aes256CtrEncryptionAlgorithm extends Aes256Base implements RandomAc
     }
   }
 
+  @Override
+  public void randomAccessDecrypt(byte[] keyData,
+                                  long plaintextOffset,
+                                  long plaintextLength,
+                                  ReadableByteChannel ciphertextAtOffset,
+                                  WritableByteChannel plaintext) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+    if (plaintextLength == 0) return;
+    if (isParallel(plaintextLength)) {
+      randomAccessDecrypt(keyData, plaintextOffset, plaintextLength,
+          ChannelStreams.inputStream(ciphertextAtOffset), ChannelStreams.outputStream(plaintext));
+      return;
+    }
+
+    AesContext context = contexts.get(keyData);
+    try {
+      // The channels may be backed by user code running other ciphers, so no thread Cipher here
+      Cipher cipher = newCipher();
+      cipher.init(Cipher.DECRYPT_MODE, context.key(),
+          new IvParameterSpec(addToIv128(context.iv(), plaintextOffset / BLOCK_SIZE)));
+      int offsetInBlock = (int) (plaintextOffset % BLOCK_SIZE);
+      if (offsetInBlock > 0) {
+        cipher.update(new byte[offsetInBlock]);
+      }
+      transfer(cipher, List.of(ciphertextAtOffset), plaintextLength, plaintext, null);
+    } catch (IOException | GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void randomAccessDecrypt(byte[] keyData,
+                                  long plaintextOffset,
+                                  long plaintextLength,
+                                  ByteBuffer ciphertextAtOffset,
+                                  ByteBuffer plaintext) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+    int length = (int) Math.min(plaintextLength, ciphertextAtOffset.remaining());
+    if (length == 0) return;
+
+    AesContext context = contexts.get(keyData);
+    try {
+      Cipher cipher = threadCipher(Cipher.DECRYPT_MODE, context,
+          addToIv128(context.iv(), plaintextOffset / BLOCK_SIZE));
+      int offsetInBlock = (int) (plaintextOffset % BLOCK_SIZE);
+      if (offsetInBlock > 0) {
+        cipher.update(new byte[offsetInBlock]);
+      }
+      ByteBuffer in = ciphertextAtOffset.duplicate();
+      in.limit(in.position() + length);
+      cipher.doFinal(in, plaintext);
+      ciphertextAtOffset.position(in.position());
+    } catch (GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public InputStream getRandomAccessDecryptedStream(byte[] keyData,
                                                     long plaintextOffset,
@@ -79,17 +277,25 @@ public class Aes256CtrEncryptionAlgorithm extends Aes256Base implements RandomAc
       return InputStream.nullInputStream();
     }
 
-    Aes256KeyAndIv keyAndIv = Aes256KeyAndIv.deserialize(keyData);
-    SecretKeySpec key = new SecretKeySpec(keyAndIv.aes256Key(), AES);
+    if (isParallel(plaintextLength)) {
+      try {
+        return new SubInputStream(checkNotNull(segmentCipher).transformingStream(ciphertextAtOffset, plaintextOffset,
+            segmentTransform(keyData)), 0, plaintextLength);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    AesContext context = contexts.get(keyData);
 
     final long startBlock = plaintextOffset / BLOCK_SIZE;
     final int startOffsetInBlock = (int) (plaintextOffset % BLOCK_SIZE);
 
     try {
-      byte[] ivForBlock = addToIv128(keyAndIv.aes256Iv(), startBlock);
+      byte[] ivForBlock = addToIv128(context.iv(), startBlock);
 
-      Cipher cipher = Cipher.getInstance(AES_CTR_NO_PADDING);
-      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivForBlock));
+      Cipher cipher = newCipher();
+      cipher.init(Cipher.DECRYPT_MODE, context.key(), new IvParameterSpec(ivForBlock));
 
       if (startOffsetInBlock > 0) {
         byte[] skip = new byte[startOffsetInBlock];
@@ -0,0 +1,254 @@
+package com.fidd.core.encryption.aes256;
+
+import com.fidd.core.common.ChannelStreams;
+import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import javax.annotation.Nullable;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AES-256-GCM over fixed-size segments, STREAM construction: the plaintext is cut into segments of
+ * {@link #SEGMENT_SIZE} bytes, each encrypted and authenticated on its own as ciphertext || tag. The
+ * nonce of a segment is the first 7 bytes of the key's IV, the segment index (4 bytes, big-endian)
+ * and a flag marking the final segment, so segments can't be reordered, dropped or cut off at the
+ * end without failing authentication.
+ *
+ * <p>A plaintext range needs only the segments it touches, see {@link GcmSegmentInputStream}: every
+ * read is authenticated on the fly, with no extra I/O, and tampering is reported on exactly the
+ * segments served.
+ */
+public class Aes256GcmSegmentedEncryptionAlgorithm extends Aes256Base implements RandomAccessEncryptionAlgorithm {
+  public static final String AES = "AES";
+  public static final String AES_GCM_NO_PADDING = "AES/GCM/NoPadding";
+  public static final int SEGMENT_SIZE = 64 * 1024;
+  public static final int TAG_SIZE = 16;
+  private static final int NONCE_PREFIX_SIZE = 7;
+  private static final long MAX_SEGMENTS = 0xFFFFFFFFL;
+
+  private final int segmentSize;
+
+  public Aes256GcmSegmentedEncryptionAlgorithm() {
+    this(SEGMENT_SIZE);
+  }
+
+  /** The segment size is part of the format; sections only decrypt with the size they were encrypted with. */
+  Aes256GcmSegmentedEncryptionAlgorithm(int segmentSize) {
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("segmentSize must be positive");
+    }
+    this.segmentSize = segmentSize;
+  }
+
+  @Override public String keySpec() { return AES; }
+  @Override public String transform() { return AES_GCM_NO_PADDING; }
+
+  @Override
+  public String name() {
+    return "AES-256-GCM-SEGMENTED";
+  }
+
+  private int ciphertextSegmentSize() {
+    return segmentSize + TAG_SIZE;
+  }
+
+  private static byte[] nonce(byte[] iv, long segmentIndex, boolean last) {
+    if (segmentIndex > MAX_SEGMENTS) {
+      throw new IllegalArgumentException("Too many segments for one section");
+    }
+    byte[] nonce = new byte[12];
+    System.arraycopy(iv, 0, nonce, 0, NONCE_PREFIX_SIZE);
+    nonce[7] = (byte) (segmentIndex >>> 24);
+    nonce[8] = (byte) (segmentIndex >>> 16);
+    nonce[9] = (byte) (segmentIndex >>> 8);
+    nonce[10] = (byte) segmentIndex;
+    nonce[11] = (byte) (last ? 1 : 0);
+    return nonce;
+  }
+
+  private static GCMParameterSpec segmentSpec(AesContext context, long segmentIndex, boolean last) {
+    return new GCMParameterSpec(TAG_SIZE * 8, nonce(context.iv(), segmentIndex, last));
+  }
+
+  /** Decryptor with a Cipher of its own, so it may be handed out with a stream */
+  private GcmSegmentInputStream.SegmentDecryptor segmentDecryptor(byte[] keyData) {
+    AesContext context = contexts.get(keyData);
+    Cipher cipher = newCipher();
+    return (segmentIndex, last, in, inOff, len, out, outOff) -> {
+      cipher.init(Cipher.DECRYPT_MODE, context.key(), segmentSpec(context, segmentIndex, last));
+      return cipher.doFinal(in, inOff, len, out, outOff);
+    };
+  }
+
+  private GcmSegmentInputStream decryptingStream(byte[] keyData, InputStream ciphertext, boolean allowPartial) {
+    return new GcmSegmentInputStream(ciphertext, 0, 0, Long.MAX_VALUE, segmentSize, TAG_SIZE,
+        true, allowPartial, segmentDecryptor(keyData));
+  }
+
+  @Override
+  public long plaintextLengthToCiphertextLength(long plaintextLength) {
+    long segments = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+    return plaintextLength + segments * TAG_SIZE;
+  }
+
+  @Override
+  public long ciphertextLengthToPlaintextLength(long ciphertextLength) {
+    long segments = (ciphertextLength + ciphertextSegmentSize() - 1) / ciphertextSegmentSize();
+    return Math.max(0, ciphertextLength - segments * TAG_SIZE);
+  }
+
+  @Override
+  public long plaintextPosToCiphertextPos(long plaintextOffset) {
+    return plaintextOffset / segmentSize * ciphertextSegmentSize() + plaintextOffset % segmentSize;
+  }
+
+  @Override
+  public long ciphertextPosToPlaintextPos(long ciphertextOffset) {
+    return ciphertextOffset / ciphertextSegmentSize() * segmentSize
+        + Math.min(ciphertextOffset % ciphertextSegmentSize(), segmentSize);
+  }
+
+  @Override
+  public long ciphertextRangeStart(long plaintextOffset) {
+    return plaintextOffset / segmentSize * ciphertextSegmentSize();
+  }
+
+  @Override
+  public long ciphertextRangeLength(long plaintextOffset, long plaintextLength) {
+    if (plaintextLength == 0) {
+      return 0;
+    }
+    long lastSegment = (plaintextOffset + plaintextLength - 1) / segmentSize;
+    return (lastSegment + 1) * ciphertextSegmentSize() - ciphertextRangeStart(plaintextOffset);
+  }
+
+  @Override
+  public byte[] encrypt(byte[] keyData, byte[] plaintext) {
+    ByteArrayOutputStream ciphertext = new ByteArrayOutputStream(
+        (int) plaintextLengthToCiphertextLength(plaintext.length));
+    encrypt(keyData, List.of(new ByteArrayInputStream(plaintext)), ciphertext, null);
+    return ciphertext.toByteArray();
+  }
+
+  @Override
+  public byte[] decrypt(byte[] keyData, byte[] ciphertext) {
+    try (InputStream plaintext = decryptingStream(keyData, new ByteArrayInputStream(ciphertext), false)) {
+      return plaintext.readAllBytes();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public long encrypt(byte[] keyData, List<InputStream> plaintexts, OutputStream ciphertext,
+                      @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+    if (plaintexts.isEmpty()) {
+      return 0;
+    }
+    AesContext context = contexts.get(keyData);
+    try {
+      // Plaintext streams may be decrypting streams themselves, so no thread Cipher here
+      Cipher cipher = newCipher();
+      InputStream plaintext = new SequenceInputStream(Collections.enumeration(plaintexts));
+      byte[] current = new byte[segmentSize];
+      byte[] next = new byte[segmentSize];
+      byte[] output = new byte[ciphertextSegmentSize()];
+      long totalBytesWritten = 0;
+
+      int currentLength = plaintext.readNBytes(current, 0, segmentSize);
+      for (long segmentIndex = 0; ; segmentIndex++) {
+        // One segment of lookahead tells whether the current one is final
+        int nextLength = currentLength < segmentSize ? 0 : plaintext.readNBytes(next, 0, segmentSize);
+        boolean last = nextLength == 0;
+
+        cipher.init(Cipher.ENCRYPT_MODE, context.key(), segmentSpec(context, segmentIndex, last));
+        int outputLength = cipher.doFinal(current, 0, currentLength, output, 0);
+        ciphertext.write(output, 0, outputLength);
+        CrcCallback.writeAll(ciphertextCrcCallbacks, output, 0, outputLength);
+        totalBytesWritten += outputLength;
+        if (last) {
+          return totalBytesWritten;
+        }
+
+        byte[] swap = current;
+        current = next;
+        next = swap;
+        currentLength = nextLength;
+      }
+    } catch (IOException | GeneralSecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public long decrypt(byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
+    try (InputStream in = decryptingStream(keyData, ciphertext, allowPartial); plaintext) {
+      return in.transferTo(plaintext);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
+    return decryptingStream(keyData, stream, false);
+  }
+
+  @Override
+  public long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                      @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+    return encrypt(keyData, plaintexts.stream().map(ChannelStreams::inputStream).toList(),
+        ChannelStreams.outputStream(ciphertext), ciphertextCrcCallbacks);
+  }
+
+  @Override
+  public long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+    return decrypt(keyData, ChannelStreams.inputStream(ciphertext), ChannelStreams.outputStream(plaintext), false);
+  }
+
+  @Override
+  public byte[] randomAccessDecrypt(byte[] keyData, byte[] ciphertext, long plaintextOffset, long plaintextLength) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+    int from = (int) Math.min(ciphertextRangeStart(plaintextOffset), ciphertext.length);
+    int length = (int) Math.min(ciphertextRangeLength(plaintextOffset, plaintextLength), ciphertext.length - from);
+    try (InputStream in = getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength,
+        new ByteArrayInputStream(ciphertext, from, length))) {
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void randomAccessDecrypt(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                  InputStream ciphertextAtOffset, OutputStream plaintext) {
+    try (InputStream in = getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength, ciphertextAtOffset)) {
+      in.transferTo(plaintext);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public InputStream getRandomAccessDecryptedStream(byte[] keyData, long plaintextOffset, long plaintextLength,
+                                                    InputStream ciphertextAtOffset) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+    return new GcmSegmentInputStream(ciphertextAtOffset, plaintextOffset / segmentSize,
+        (int) (plaintextOffset % segmentSize), plaintextLength, segmentSize, TAG_SIZE,
+        false, false, segmentDecryptor(keyData));
+  }
+}
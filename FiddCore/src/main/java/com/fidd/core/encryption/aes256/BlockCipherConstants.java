@@ -0,0 +1,6 @@
+package com.fidd.core.encryption.aes256;
+
+/** Shared by the ciphers and modes in this package: AES and Kuznechik both work on 128-bit blocks */
+public interface BlockCipherConstants {
+  int BLOCK_SIZE = 16;
+}
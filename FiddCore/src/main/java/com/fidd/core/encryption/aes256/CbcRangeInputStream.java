@@ -0,0 +1,177 @@
+package com.fidd.core.encryption.aes256;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Function;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decrypts a plaintext range of a CBC-encrypted, PKCS#7-padded section. Decryption of block i only
+ * needs ciphertext block i - 1 as its IV, so the ciphertext is read from the block preceding the range
+ * (or from the section start, with the key's IV) - see {@link #ciphertextRangeStart}.
+ *
+ * <p>The last block read is held back until the ciphertext is known to continue. If the ciphertext
+ * ends instead, that block is the final one and its padding is stripped; ranges running past the
+ * end of the plaintext are cut short there. For that the ciphertext has to run either one block
+ * past the range or to the end of the section - see {@link #ciphertextRangeLength}.
+ */
+class CbcRangeInputStream extends InputStream {
+  private static final int BUFFER_SIZE = 8192;
+
+  /** Sequential CBC decryption of whole blocks, continuing from the previous call */
+  interface BlockDecryptor {
+    void decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws IOException;
+  }
+
+  static long ciphertextRangeStart(long plaintextOffset) {
+    long block = plaintextOffset / BLOCK_SIZE;
+    return block == 0 ? 0 : (block - 1) * BLOCK_SIZE;
+  }
+
+  static long ciphertextRangeLength(long plaintextOffset, long plaintextLength) {
+    if (plaintextLength == 0) {
+      return 0;
+    }
+    long lastBlock = (plaintextOffset + plaintextLength - 1) / BLOCK_SIZE;
+    // One block beyond the range tells whether the range's last block carries the padding
+    return (lastBlock + 2) * BLOCK_SIZE - ciphertextRangeStart(plaintextOffset);
+  }
+
+  /** PKCS#7 always adds 1 to BLOCK_SIZE bytes, a whole block when the plaintext is block aligned */
+  static long paddedLength(long plaintextLength) {
+    return (plaintextLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+  }
+
+  static void checkRange(long plaintextOffset, long plaintextLength) {
+    if (plaintextOffset < 0 || plaintextLength < 0) {
+      throw new IllegalArgumentException("offset/length must be non-negative");
+    }
+  }
+
+  private final InputStream ciphertext;
+  private final Function<byte[], BlockDecryptor> decryptorFactory;
+  /** Created once the IV is known: at construction if the range starts in the first block, else on first fill */
+  private @Nullable BlockDecryptor decryptor;
+
+  private final byte[] cipherBuffer = new byte[BUFFER_SIZE];
+  private final byte[] plainBuffer = new byte[BUFFER_SIZE];
+  private int plainPos;
+  private int plainLimit;
+  /** Ciphertext held back in cipherBuffer[0, carry) until the next read */
+  private int carry;
+
+  private int skip;
+  private long remaining;
+  /** Blocks decrypted so far, and the index of the block holding the last byte of the range */
+  private long blocksDecrypted;
+  private final long lastRangeBlock;
+  private boolean started;
+  private boolean ended;
+
+  /**
+   * @param ciphertextAtRangeStart ciphertext from {@link #ciphertextRangeStart}(plaintextOffset) on
+   * @param keyIv IV of the section, used when the range starts in the first block
+   * @param decryptorFactory CBC decryptor starting from the given IV
+   */
+  CbcRangeInputStream(InputStream ciphertextAtRangeStart, byte[] keyIv, long plaintextOffset, long plaintextLength,
+                      Function<byte[], BlockDecryptor> decryptorFactory) {
+    checkRange(plaintextOffset, plaintextLength);
+    this.ciphertext = ciphertextAtRangeStart;
+    this.decryptorFactory = decryptorFactory;
+    this.skip = (int) (plaintextOffset % BLOCK_SIZE);
+    this.remaining = plaintextLength;
+    this.lastRangeBlock = plaintextLength == 0 ? 0
+        : (plaintextLength - 1 + plaintextOffset % BLOCK_SIZE) / BLOCK_SIZE;
+    this.started = plaintextOffset < BLOCK_SIZE;
+    if (started) {
+      decryptor = decryptorFactory.apply(keyIv);
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    int r = read(one, 0, 1);
+    return r == -1 ? -1 : one[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (remaining == 0) {
+      return -1;
+    }
+    while (plainPos == plainLimit) {
+      if (ended) {
+        return -1;
+      }
+      fill();
+    }
+    int n = (int) Math.min(Math.min(len, plainLimit - plainPos), remaining);
+    System.arraycopy(plainBuffer, plainPos, b, off, n);
+    plainPos += n;
+    remaining -= n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(plainLimit - plainPos, remaining);
+  }
+
+  private void fill() throws IOException {
+    if (!started) {
+      byte[] iv = ciphertext.readNBytes(BLOCK_SIZE);
+      if (iv.length < BLOCK_SIZE) {
+        // Range starts past the end of the section
+        ended = true;
+        return;
+      }
+      decryptor = decryptorFactory.apply(iv);
+      started = true;
+    }
+    BlockDecryptor decryptor = checkNotNull(this.decryptor);
+
+    int read = ciphertext.readNBytes(cipherBuffer, carry, cipherBuffer.length - carry);
+    int total = carry + read;
+    boolean eof = total < cipherBuffer.length;
+    int toDecrypt;
+    if (eof) {
+      if (total % BLOCK_SIZE != 0) {
+        throw new IOException("CBC ciphertext is not a whole number of blocks");
+      }
+      toDecrypt = total;
+      carry = 0;
+      ended = true;
+    } else {
+      toDecrypt = total - BLOCK_SIZE;
+    }
+
+    decryptor.decrypt(cipherBuffer, 0, toDecrypt, plainBuffer, 0);
+    blocksDecrypted += toDecrypt / BLOCK_SIZE;
+    int plaintextEnd = toDecrypt;
+    // The ciphertext may end one block past the range instead of at the end of the section,
+    // only a final block within the range is known to be padded
+    if (eof && toDecrypt > 0 && blocksDecrypted - 1 <= lastRangeBlock) {
+      plaintextEnd -= Pkcs7.paddingLength(plainBuffer, toDecrypt);
+    }
+    if (!eof) {
+      System.arraycopy(cipherBuffer, toDecrypt, cipherBuffer, 0, BLOCK_SIZE);
+      carry = BLOCK_SIZE;
+    }
+
+    plainPos = Math.min(skip, plaintextEnd);
+    skip -= plainPos;
+    plainLimit = plaintextEnd;
+  }
+
+  @Override
+  public void close() throws IOException {
+    ciphertext.close();
+  }
+}
@@ -0,0 +1,151 @@
+package com.fidd.core.encryption.aes256;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import javax.crypto.AEADBadTagException;
+
+/**
+ * Decrypts and authenticates a run of segments of a segmented AEAD section, see {@link
+ * Aes256GcmSegmentedEncryptionAlgorithm}. Every segment is verified before any of its plaintext is
+ * returned, so a reader only ever sees authentic data of the segments it reads.
+ *
+ * <p>A short segment is the final one. A full segment at the end of the ciphertext may be final as
+ * well, or be followed by more segments past the range read: it is tried as a non-final segment
+ * first, then as the final one. Whole sections must end with the final segment, which detects
+ * truncation at a segment boundary.
+ */
+class GcmSegmentInputStream extends InputStream {
+  /** Authenticated decryption of one segment */
+  interface SegmentDecryptor {
+    /**
+     * @return plaintext length
+     * @throws AEADBadTagException if the segment is not authentic for this index and final flag
+     */
+    int decrypt(long segmentIndex, boolean last, byte[] in, int inOff, int len, byte[] out, int outOff)
+        throws GeneralSecurityException;
+  }
+
+  private final InputStream ciphertext;
+  private final SegmentDecryptor decryptor;
+  private final int tagSize;
+  private final boolean wholeSection;
+  private final boolean allowPartial;
+
+  private final byte[] cipherBuffer;
+  private final byte[] plainBuffer;
+  private int plainPos;
+  private int plainLimit;
+
+  private long segmentIndex;
+  private long segmentsRead;
+  private int skip;
+  private long remaining;
+  private boolean sawFinal;
+  private boolean ended;
+
+  /**
+   * @param ciphertextAtSegment ciphertext from the start of segment firstSegment on
+   * @param skip plaintext bytes of the first segment to skip
+   * @param length plaintext bytes to return at most
+   * @param wholeSection the ciphertext runs to the end of the section, so it has to end with the final segment
+   * @param allowPartial tolerate a truncated section: stop quietly at the first segment that is incomplete
+   */
+  GcmSegmentInputStream(InputStream ciphertextAtSegment, long firstSegment, int skip, long length,
+                        int segmentSize, int tagSize, boolean wholeSection, boolean allowPartial,
+                        SegmentDecryptor decryptor) {
+    this.ciphertext = ciphertextAtSegment;
+    this.decryptor = decryptor;
+    this.tagSize = tagSize;
+    this.wholeSection = wholeSection;
+    this.allowPartial = allowPartial;
+    this.cipherBuffer = new byte[segmentSize + tagSize];
+    this.plainBuffer = new byte[segmentSize];
+    this.segmentIndex = firstSegment;
+    this.skip = skip;
+    this.remaining = length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    int r = read(one, 0, 1);
+    return r == -1 ? -1 : one[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (remaining == 0) {
+      return -1;
+    }
+    while (plainPos == plainLimit) {
+      if (ended) {
+        return -1;
+      }
+      fill();
+    }
+    int n = (int) Math.min(Math.min(len, plainLimit - plainPos), remaining);
+    System.arraycopy(plainBuffer, plainPos, b, off, n);
+    plainPos += n;
+    remaining -= n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(plainLimit - plainPos, remaining);
+  }
+
+  private void fill() throws IOException {
+    int read = ciphertext.readNBytes(cipherBuffer, 0, cipherBuffer.length);
+    if (read == 0) {
+      ended = true;
+      // A range that starts past the end of the section reads nothing at all
+      if (!sawFinal && !allowPartial && (wholeSection || segmentsRead > 0)) {
+        throw new IOException("Segmented ciphertext is truncated: final segment missing");
+      }
+      return;
+    }
+    if (sawFinal) {
+      throw new IOException("Segmented ciphertext continues past its final segment");
+    }
+
+    try {
+      if (read == cipherBuffer.length) {
+        try {
+          plainLimit = decryptor.decrypt(segmentIndex, false, cipherBuffer, 0, read, plainBuffer, 0);
+        } catch (AEADBadTagException e) {
+          plainLimit = decryptor.decrypt(segmentIndex, true, cipherBuffer, 0, read, plainBuffer, 0);
+          sawFinal = true;
+        }
+      } else {
+        if (read < tagSize) {
+          throw new AEADBadTagException("Segment shorter than its tag");
+        }
+        plainLimit = decryptor.decrypt(segmentIndex, true, cipherBuffer, 0, read, plainBuffer, 0);
+        sawFinal = true;
+      }
+    } catch (GeneralSecurityException e) {
+      if (allowPartial) {
+        // Incomplete segment of a truncated section
+        ended = true;
+        plainPos = plainLimit = 0;
+        return;
+      }
+      throw new IOException("Segment " + segmentIndex + " failed authentication", e);
+    }
+    segmentIndex++;
+    segmentsRead++;
+
+    plainPos = Math.min(skip, plainLimit);
+    skip -= plainPos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    ciphertext.close();
+  }
+}
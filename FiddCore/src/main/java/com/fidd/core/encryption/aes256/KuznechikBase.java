@@ -1,5 +1,6 @@
 package com.fidd.core.encryption.aes256;
 
+import com.fidd.core.encryption.CipherContextCache;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.random.RandomGeneratorType;
 import java.io.IOException;
@@ -21,6 +22,14 @@ public abstract class KuznechikBase implements EncryptionAlgorithm {
 
   abstract PaddedBufferedBlockCipher newCipher();
 
+  /** Parsed key and IV per section; BouncyCastle only reads them, so they are shared */
+  protected final CipherContextCache<ParametersWithIV> contexts =
+      new CipherContextCache<>(
+          keyData -> {
+            KeyAndIv keyAndIv = KeyAndIv.deserialize(keyData);
+            return new ParametersWithIV(new KeyParameter(keyAndIv.key32()), keyAndIv.iv16());
+          });
+
   public record KeyAndIv(byte[] key32, byte[] iv16) {
     public static byte[] serialize(KeyAndIv keyAndIv) {
       byte[] serialized = new byte[KEY_SIZE + IV_SIZE];
@@ -46,18 +55,13 @@ public abstract class KuznechikBase implements EncryptionAlgorithm {
       return 0;
     }
     out.write(buffer, 0, len);
-    if (crcCallbacks != null) {
-      byte[] outSlice = Arrays.copyOf(buffer, len);
-      crcCallbacks.forEach(c -> c.write(outSlice));
-    }
+    CrcCallback.writeAll(crcCallbacks, buffer, 0, len);
     return len;
   }
 
   private PaddedBufferedBlockCipher initCipher(boolean forEncryption, byte[] keyData) {
-    KeyAndIv keyAndIv = KeyAndIv.deserialize(keyData);
     PaddedBufferedBlockCipher cipher = newCipher();
-    cipher.init(
-        forEncryption, new ParametersWithIV(new KeyParameter(keyAndIv.key32()), keyAndIv.iv16()));
+    cipher.init(forEncryption, contexts.get(keyData));
     return cipher;
   }
 
@@ -107,8 +111,8 @@ public abstract class KuznechikBase implements EncryptionAlgorithm {
       byte[] outBuf = new byte[cipher.getOutputSize(BUFFER_SIZE)];
       long total = 0;
 
+      byte[] buffer = new byte[BUFFER_SIZE];
       for (InputStream plaintext : plaintexts) {
-        byte[] buffer = new byte[BUFFER_SIZE];
         int read;
         while ((read = plaintext.read(buffer)) != -1) {
           int produced = cipher.processBytes(buffer, 0, read, outBuf, 0);
@@ -1,17 +1,179 @@
 package com.fidd.core.encryption.aes256;
 
+import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.engines.GOST3412_2015Engine;
-import org.bouncycastle.crypto.modes.G3413CBCBlockCipher;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PKCS7Padding;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+
+/**
+ * Kuznechik in CBC mode with PKCS#7 padding. Ranges are decrypted starting from the ciphertext block
+ * preceding them, see {@link CbcRangeInputStream}. Whole sections are decrypted in parallel segments
+ * of {@link ParallelSegmentCipher}; pass null segmentCipher for strictly sequential processing.
+ */
+public class KuznechikCbcEncryptionAlgorithm extends KuznechikBase
+    implements RandomAccessEncryptionAlgorithm {
+  private final @Nullable ParallelSegmentCipher segmentCipher;
+
+  public KuznechikCbcEncryptionAlgorithm() {
+    this(ParallelSegmentCipher.defaultInstance());
+  }
+
+  public KuznechikCbcEncryptionAlgorithm(@Nullable ParallelSegmentCipher segmentCipher) {
+    this.segmentCipher = segmentCipher;
+  }
 
-public class KuznechikCbcEncryptionAlgorithm extends KuznechikBase {
   @Override
   PaddedBufferedBlockCipher newCipher() {
-    return new PaddedBufferedBlockCipher(new G3413CBCBlockCipher(new GOST3412_2015Engine()));
+    // GOST 34.13 CBC with a full 128-bit register is plain CBC. BouncyCastle's G3413CBCBlockCipher
+    // loses chaining state when data is fed in more than two processBytes calls, so use the generic mode.
+    return new PaddedBufferedBlockCipher(
+        CBCBlockCipher.newInstance(new GOST3412_2015Engine()), new PKCS7Padding());
   }
 
   @Override
   public String name() {
     return "KUZNECHIK-CBC";
   }
+
+  private static BlockCipher newCbcDecryptor(ParametersWithIV context, byte[] iv) {
+    BlockCipher cipher = CBCBlockCipher.newInstance(new GOST3412_2015Engine());
+    cipher.init(false, new ParametersWithIV(context.getParameters(), iv));
+    return cipher;
+  }
+
+  /** CBC decryption of a segment; the first segment of a section chains from the key's IV. */
+  ParallelSegmentCipher.ChainedSegmentTransform decryptTransform(byte[] keyData) {
+    ParametersWithIV context = contexts.get(keyData);
+    return (position, previousBlock, in, inOff, out, outOff, len) -> {
+      if (len % BLOCK_SIZE != 0) {
+        throw new IllegalArgumentException("CBC ciphertext is not a whole number of blocks");
+      }
+      BlockCipher cipher =
+          newCbcDecryptor(context, previousBlock == null ? context.getIV() : previousBlock);
+      for (int i = 0; i < len; i += BLOCK_SIZE) {
+        cipher.processBlock(in, inOff + i, out, outOff + i);
+      }
+    };
+  }
+
+  @Override
+  public byte[] decrypt(byte[] keyData, byte[] ciphertext) {
+    if (segmentCipher == null || ciphertext.length <= segmentCipher.segmentSize()) {
+      return super.decrypt(keyData, ciphertext);
+    }
+    byte[] padded = segmentCipher.transform(ciphertext, 0, decryptTransform(keyData));
+    try {
+      return Arrays.copyOf(padded, padded.length - Pkcs7.paddingLength(padded, padded.length));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public long decrypt(
+      byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
+    // Partial reads of truncated sections keep the sequential path, which tolerates a missing final block
+    if (segmentCipher == null || allowPartial) {
+      return super.decrypt(keyData, ciphertext, plaintext, allowPartial);
+    }
+    try (ciphertext;
+        plaintext) {
+      Pkcs7.UnpaddingOutputStream unpadded = new Pkcs7.UnpaddingOutputStream(plaintext);
+      segmentCipher.transform(ciphertext, unpadded, 0, decryptTransform(keyData), null);
+      return unpadded.finish();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
+    if (segmentCipher == null) {
+      return super.getDecryptedStream(keyData, stream);
+    }
+    return new Pkcs7.UnpaddingInputStream(
+        segmentCipher.transformingStream(stream, 0, decryptTransform(keyData)));
+  }
+
+  @Override
+  public long plaintextLengthToCiphertextLength(long plaintextLength) {
+    return CbcRangeInputStream.paddedLength(plaintextLength);
+  }
+
+  @Override
+  public long ciphertextRangeStart(long plaintextOffset) {
+    return CbcRangeInputStream.ciphertextRangeStart(plaintextOffset);
+  }
+
+  @Override
+  public long ciphertextRangeLength(long plaintextOffset, long plaintextLength) {
+    return CbcRangeInputStream.ciphertextRangeLength(plaintextOffset, plaintextLength);
+  }
+
+  @Override
+  public int paddingBlockSize() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  public byte[] randomAccessDecrypt(
+      byte[] keyData, byte[] ciphertext, long plaintextOffset, long plaintextLength) {
+    CbcRangeInputStream.checkRange(plaintextOffset, plaintextLength);
+    int from = (int) Math.min(ciphertextRangeStart(plaintextOffset), ciphertext.length);
+    try (InputStream in =
+        getRandomAccessDecryptedStream(
+            keyData,
+            plaintextOffset,
+            plaintextLength,
+            new ByteArrayInputStream(ciphertext, from, ciphertext.length - from))) {
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void randomAccessDecrypt(
+      byte[] keyData,
+      long plaintextOffset,
+      long plaintextLength,
+      InputStream ciphertextAtOffset,
+      OutputStream plaintext) {
+    try (InputStream in =
+        getRandomAccessDecryptedStream(keyData, plaintextOffset, plaintextLength, ciphertextAtOffset)) {
+      in.transferTo(plaintext);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public InputStream getRandomAccessDecryptedStream(
+      byte[] keyData, long plaintextOffset, long plaintextLength, InputStream ciphertextAtOffset) {
+    ParametersWithIV context = contexts.get(keyData);
+    return new CbcRangeInputStream(
+        ciphertextAtOffset,
+        context.getIV(),
+        plaintextOffset,
+        plaintextLength,
+        iv -> {
+          BlockCipher cipher = newCbcDecryptor(context, iv);
+          return (in, inOff, len, out, outOff) -> {
+            for (int i = 0; i < len; i += BLOCK_SIZE) {
+              cipher.processBlock(in, inOff + i, out, outOff + i);
+            }
+          };
+        });
+  }
 }
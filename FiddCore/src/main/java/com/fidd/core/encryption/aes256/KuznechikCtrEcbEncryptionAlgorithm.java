@@ -1,9 +1,12 @@
 package com.fidd.core.encryption.aes256;
 
 import com.fidd.core.common.SubInputStream;
+import com.fidd.core.encryption.CipherContextCache;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import com.fidd.core.encryption.XorKernel;
 import com.fidd.core.random.RandomGeneratorType;
 import com.flower.crypt.Cryptor;
+import com.google.common.primitives.Longs;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,19 +15,36 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
-import org.bouncycastle.crypto.engines.GOST3412_2015Engine;
-import org.bouncycastle.crypto.params.KeyParameter;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Manual CTR implementation on top of Kuznechik ECB block primitive.
  *
  * <p>Counter block layout is fixed as {@code nonce8 || counter64be}. This gives explicit counter
  * control and O(1) random-access positioning by block index.
+ *
+ * <p>The keystream is generated a batch of blocks at a time by the table-driven {@link
+ * KuznechikEngine} and XORed by {@link XorKernel}. Blocks are
+ * independent, so sections larger than one segment of {@link ParallelSegmentCipher} are processed in parallel
+ * segments; pass null segmentCipher for strictly sequential processing.
  */
 public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
-  private static final int BLOCK_SIZE = 16;
   private static final int NONCE_SIZE = 8;
   private static final int BUFFER_SIZE = 8192;
+  /** Keystream blocks generated per batch */
+  private static final int KEYSTREAM_BATCH_BLOCKS = 256;
+
+  private final @Nullable ParallelSegmentCipher segmentCipher;
+
+  public KuznechikCtrEcbEncryptionAlgorithm() {
+    this(ParallelSegmentCipher.defaultInstance());
+  }
+
+  public KuznechikCtrEcbEncryptionAlgorithm(@Nullable ParallelSegmentCipher segmentCipher) {
+    this.segmentCipher = segmentCipher;
+  }
 
   @Override
   public String name() {
@@ -60,45 +80,55 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
   }
 
   private static final class CtrKeystream {
-    private final GOST3412_2015Engine ecb;
-    private final byte[] counterBlock = new byte[BLOCK_SIZE];
-    private final byte[] ksBlock = new byte[BLOCK_SIZE];
+    private final KuznechikEngine ecb;
+    private final long nonce;
+    private final byte[] ks = new byte[KEYSTREAM_BATCH_BLOCKS * BLOCK_SIZE];
 
     private long counter;
-    private int ksPos = BLOCK_SIZE;
+    private int ksLength;
+    private int ksPos;
 
-    private CtrKeystream(GOST3412_2015Engine ecb, byte[] nonce8, long plaintextOffset) {
-      this.ecb = ecb;
-      System.arraycopy(nonce8, 0, counterBlock, 0, NONCE_SIZE);
+    private CtrKeystream(CtrContext context, long plaintextOffset) {
+      this.ecb = context.engine();
+      this.nonce = context.nonce();
 
       long startBlock = plaintextOffset / BLOCK_SIZE;
       int offsetInBlock = (int) (plaintextOffset % BLOCK_SIZE);
 
       counter = startBlock;
       if (offsetInBlock > 0) {
-        refill();
+        refill(1);
         ksPos = offsetInBlock;
       }
     }
 
     private byte nextByte() {
-      if (ksPos == BLOCK_SIZE) {
-        refill();
+      if (ksPos == ksLength) {
+        refill(1);
       }
-      return ksBlock[ksPos++];
+      return ks[ksPos++];
     }
 
-    private void refill() {
-      encodeCounter64Be(counterBlock, counter);
-      ecb.processBlock(counterBlock, 0, ksBlock, 0);
-      ksPos = 0;
-      counter++;
+    /** out = in ^ keystream for the next len bytes; in and out may be the same range. */
+    private void xor(byte[] in, int inOff, byte[] out, int outOff, int len) {
+      while (len > 0) {
+        if (ksPos == ksLength) {
+          refill(Math.min(KEYSTREAM_BATCH_BLOCKS, (len + BLOCK_SIZE - 1) / BLOCK_SIZE));
+        }
+        int n = Math.min(len, ksLength - ksPos);
+        XorKernel.xor(in, inOff, ks, ksPos, out, outOff, n);
+        ksPos += n;
+        inOff += n;
+        outOff += n;
+        len -= n;
+      }
     }
 
-    private static void encodeCounter64Be(byte[] counterBlock, long counter) {
-      for (int i = 0; i < NONCE_SIZE; i++) {
-        counterBlock[NONCE_SIZE + i] = (byte) (counter >>> (56 - (i * 8)));
-      }
+    private void refill(int blocks) {
+      ecb.encryptCounterBlocks(nonce, counter, blocks, ks, 0);
+      counter += blocks;
+      ksLength = blocks * BLOCK_SIZE;
+      ksPos = 0;
     }
   }
 
@@ -126,9 +156,7 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
       if (r <= 0) {
         return r;
       }
-      for (int i = 0; i < r; i++) {
-        b[off + i] = (byte) (b[off + i] ^ keystream.nextByte());
-      }
+      keystream.xor(b, off, b, off, r);
       return r;
     }
 
@@ -138,17 +166,26 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
     }
   }
 
-  private static GOST3412_2015Engine newEcbEncryptEngine(byte[] key32) {
-    GOST3412_2015Engine ecb = new GOST3412_2015Engine();
-    ecb.init(true, new KeyParameter(key32));
-    return ecb;
+  /** Expanded key and nonce of a section; immutable, shared between threads */
+  private record CtrContext(KuznechikEngine engine, long nonce) { }
+
+  private final CipherContextCache<CtrContext> contexts =
+      new CipherContextCache<>(
+          keyData -> {
+            KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
+            return new CtrContext(
+                new KuznechikEngine(keyAndNonce.key32), Longs.fromByteArray(keyAndNonce.nonce8));
+          });
+
+  /** CTR keystream applied at any stream position, one engine per segment. */
+  ParallelSegmentCipher.SegmentTransform segmentTransform(byte[] keyData) {
+    CtrContext context = contexts.get(keyData);
+    return (position, in, inOff, out, outOff, len) ->
+        new CtrKeystream(context, position).xor(in, inOff, out, outOff, len);
   }
 
-  private static void xorInto(
-      byte[] in, int inOff, byte[] out, int outOff, int len, CtrKeystream keystream) {
-    for (int i = 0; i < len; i++) {
-      out[outOff + i] = (byte) (in[inOff + i] ^ keystream.nextByte());
-    }
+  private boolean isParallel(long length) {
+    return segmentCipher != null && length > segmentCipher.segmentSize();
   }
 
   private byte[] xorAtOffset(byte[] keyData, byte[] input, long plaintextOffset) {
@@ -159,12 +196,12 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
       return input;
     }
 
-    KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
-    byte[] out = new byte[input.length];
     try {
-      GOST3412_2015Engine ecb = newEcbEncryptEngine(keyAndNonce.key32);
-      CtrKeystream keystream = new CtrKeystream(ecb, keyAndNonce.nonce8, plaintextOffset);
-      xorInto(input, 0, out, 0, input.length, keystream);
+      if (isParallel(input.length)) {
+        return checkNotNull(segmentCipher).transform(input, plaintextOffset, segmentTransform(keyData));
+      }
+      byte[] out = new byte[input.length];
+      segmentTransform(keyData).transform(plaintextOffset, input, 0, out, 0, input.length);
       return out;
     } catch (Exception e) {
       throw new RuntimeException(e);
@@ -199,10 +236,13 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
       return 0;
     }
 
-    KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
+    CtrContext context = contexts.get(keyData);
     try (ciphertext) {
-      GOST3412_2015Engine ecb = newEcbEncryptEngine(keyAndNonce.key32);
-      CtrKeystream keystream = new CtrKeystream(ecb, keyAndNonce.nonce8, 0);
+      if (segmentCipher != null) {
+        return segmentCipher.transform(ParallelSegmentCipher.concat(plaintexts),
+            ciphertext, 0, segmentTransform(keyData), ciphertextCrcCallbacks);
+      }
+      CtrKeystream keystream = new CtrKeystream(context, 0);
 
       long total = 0;
       byte[] inBuf = new byte[BUFFER_SIZE];
@@ -211,12 +251,9 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
       for (InputStream in : plaintexts) {
         int r;
         while ((r = in.read(inBuf)) != -1) {
-          xorInto(inBuf, 0, outBuf, 0, r, keystream);
+          keystream.xor(inBuf, 0, outBuf, 0, r);
           ciphertext.write(outBuf, 0, r);
-          if (ciphertextCrcCallbacks != null) {
-            byte[] outSlice = Arrays.copyOf(outBuf, r);
-            ciphertextCrcCallbacks.forEach(c -> c.write(outSlice));
-          }
+          CrcCallback.writeAll(ciphertextCrcCallbacks, outBuf, 0, r);
           total += r;
         }
       }
@@ -229,20 +266,24 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
   @Override
   public long decrypt(
       byte[] keyData, InputStream ciphertext, OutputStream plaintext, boolean allowPartial) {
-    KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
+    CtrContext context = contexts.get(keyData);
     long total = 0;
 
     try (ciphertext;
         plaintext) {
-      GOST3412_2015Engine ecb = newEcbEncryptEngine(keyAndNonce.key32);
-      CtrKeystream keystream = new CtrKeystream(ecb, keyAndNonce.nonce8, 0);
+      // Partial decryption needs the count of bytes written before a failure, which only the
+      // sequential loop keeps
+      if (segmentCipher != null && !allowPartial) {
+        return segmentCipher.transform(ciphertext, plaintext, 0, segmentTransform(keyData), null);
+      }
+      CtrKeystream keystream = new CtrKeystream(context, 0);
 
       byte[] inBuf = new byte[BUFFER_SIZE];
       byte[] outBuf = new byte[BUFFER_SIZE];
 
       int r;
       while ((r = ciphertext.read(inBuf)) != -1) {
-        xorInto(inBuf, 0, outBuf, 0, r, keystream);
+        keystream.xor(inBuf, 0, outBuf, 0, r);
         plaintext.write(outBuf, 0, r);
         total += r;
       }
@@ -257,10 +298,12 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
 
   @Override
   public InputStream getDecryptedStream(byte[] keyData, InputStream stream) {
-    KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
+    if (segmentCipher != null) {
+      return segmentCipher.transformingStream(stream, 0, segmentTransform(keyData));
+    }
+    CtrContext context = contexts.get(keyData);
     try {
-      GOST3412_2015Engine ecb = newEcbEncryptEngine(keyAndNonce.key32);
-      return new XorCtrInputStream(stream, new CtrKeystream(ecb, keyAndNonce.nonce8, 0));
+      return new XorCtrInputStream(stream, new CtrKeystream(context, 0));
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -276,12 +319,18 @@ public class KuznechikCtrEcbEncryptionAlgorithm implements RandomAccessEncryptio
       return InputStream.nullInputStream();
     }
 
-    KeyAndNonce keyAndNonce = KeyAndNonce.deserialize(keyData);
+    CtrContext context = contexts.get(keyData);
     try {
-      GOST3412_2015Engine ecb = newEcbEncryptEngine(keyAndNonce.key32);
+      if (isParallel(plaintextLength)) {
+        return new SubInputStream(
+            checkNotNull(segmentCipher)
+                .transformingStream(ciphertextAtOffset, plaintextOffset, segmentTransform(keyData)),
+            0,
+            plaintextLength);
+      }
       InputStream pt =
           new XorCtrInputStream(
-              ciphertextAtOffset, new CtrKeystream(ecb, keyAndNonce.nonce8, plaintextOffset));
+              ciphertextAtOffset, new CtrKeystream(context, plaintextOffset));
       return new SubInputStream(pt, 0, plaintextLength);
     } catch (Exception e) {
       throw new RuntimeException(e);
@@ -0,0 +1,343 @@
+package com.fidd.core.encryption.aes256;
+
+import com.fidd.core.encryption.EncryptionAlgorithm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.annotation.Nullable;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+
+/**
+ * Runs a block cipher mode transform over a stream in fixed-size segments on a fork-join pool. CTR keystream
+ * at any position only depends on the position, so segments are independent; the output is written
+ * in order, with at most maxSegmentsInFlight segments buffered.
+ *
+ * <p>Streams that fit into a single segment are transformed on the calling thread. Transforms write
+ * into a separate output buffer: JCE ciphers copy the input first when asked to work in place.
+ *
+ * <p>CBC decryption parallelizes the same way - a block only depends on the ciphertext block before it -
+ * through {@link ChainedSegmentTransform}, which also gets the input block preceding the segment.
+ */
+public class ParallelSegmentCipher {
+  public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+  /** Transforms len bytes of in into out; position is the stream position of in[inOff]. */
+  public interface SegmentTransform {
+    void transform(long position, byte[] in, int inOff, byte[] out, int outOff, int len);
+  }
+
+  /**
+   * Segment transform of a chained mode: previousBlock holds the BLOCK_SIZE input bytes preceding
+   * in[inOff], null at the start of the stream.
+   */
+  public interface ChainedSegmentTransform {
+    void transform(long position, @Nullable byte[] previousBlock, byte[] in, int inOff, byte[] out, int outOff,
+                   int len);
+  }
+
+  private static ChainedSegmentTransform chained(SegmentTransform transform) {
+    return (position, previousBlock, in, inOff, out, outOff, len) ->
+        transform.transform(position, in, inOff, out, outOff, len);
+  }
+
+  private static @Nullable byte[] lastBlock(byte[] in, int length) {
+    return length < BLOCK_SIZE ? null : Arrays.copyOfRange(in, length - BLOCK_SIZE, length);
+  }
+
+  private static volatile @Nullable ParallelSegmentCipher defaultInstance;
+
+  /**
+   * Shared instance on the common pool, or null if the common pool has a single thread - then segments
+   * would only be processed one after another, with the pipeline overhead on top.
+   */
+  public static @Nullable ParallelSegmentCipher defaultInstance() {
+    if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+      return null;
+    }
+    ParallelSegmentCipher instance = defaultInstance;
+    if (instance == null) {
+      synchronized (ParallelSegmentCipher.class) {
+        instance = defaultInstance;
+        if (instance == null) {
+          instance = new ParallelSegmentCipher(ForkJoinPool.commonPool(), DEFAULT_SEGMENT_SIZE,
+              2 * ForkJoinPool.getCommonPoolParallelism());
+          defaultInstance = instance;
+        }
+      }
+    }
+    return instance;
+  }
+
+  private final ForkJoinPool pool;
+  private final int segmentSize;
+  private final int maxSegmentsInFlight;
+
+  public ParallelSegmentCipher(ForkJoinPool pool, int segmentSize, int maxSegmentsInFlight) {
+    if (segmentSize <= 0 || segmentSize % BLOCK_SIZE != 0) {
+      throw new IllegalArgumentException("segmentSize must be a positive multiple of the block size");
+    }
+    if (maxSegmentsInFlight <= 0) {
+      throw new IllegalArgumentException("maxSegmentsInFlight must be > 0");
+    }
+    this.pool = pool;
+    this.segmentSize = segmentSize;
+    this.maxSegmentsInFlight = maxSegmentsInFlight;
+  }
+
+  public int segmentSize() {
+    return segmentSize;
+  }
+
+  private static final class Segment {
+    final byte[] in;
+    final byte[] buf;
+    final int length;
+    @Nullable final ForkJoinTask<?> task;
+
+    Segment(byte[] in, byte[] buf, int length, @Nullable ForkJoinTask<?> task) {
+      this.in = in;
+      this.buf = buf;
+      this.length = length;
+      this.task = task;
+    }
+
+    void await() throws IOException {
+      if (task == null) {
+        return;
+      }
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for a segment", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtimeException) { throw runtimeException; }
+        throw new IOException(cause);
+      }
+    }
+
+    void cancel() {
+      if (task != null) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private Segment submit(ChainedSegmentTransform transform, long position, @Nullable byte[] previousBlock,
+                         byte[] in, byte[] out, int length) {
+    return new Segment(in, out, length,
+        pool.submit(() -> transform.transform(position, previousBlock, in, 0, out, 0, length)));
+  }
+
+  private static void writeSegment(Segment segment, OutputStream out,
+                                   @Nullable List<EncryptionAlgorithm.CrcCallback> crcCallbacks) throws IOException {
+    out.write(segment.buf, 0, segment.length);
+    EncryptionAlgorithm.CrcCallback.writeAll(crcCallbacks, segment.buf, 0, segment.length);
+  }
+
+  /**
+   * Concatenation of ins for transform. Unlike a bare SequenceInputStream, it leaves each of them open once
+   * read to the end: plaintexts handed to encrypt stay with the caller.
+   */
+  public static InputStream concat(List<InputStream> ins) {
+    List<InputStream> nonClosing = new ArrayList<>(ins.size());
+    for (InputStream in : ins) {
+      nonClosing.add(new FilterInputStream(in) {
+        @Override
+        public void close() { }
+      });
+    }
+    return new SequenceInputStream(Collections.enumeration(nonClosing));
+  }
+
+  /**
+   * Transforms in into out, starting at stream position startPosition.
+   *
+   * @return bytes written
+   */
+  public long transform(InputStream in, OutputStream out, long startPosition, SegmentTransform transform,
+                        @Nullable List<EncryptionAlgorithm.CrcCallback> crcCallbacks) throws IOException {
+    return transform(in, out, startPosition, chained(transform), crcCallbacks);
+  }
+
+  /**
+   * Transforms in into out with a chained transform; in starts at stream position startPosition,
+   * the first segment gets a null previousBlock.
+   *
+   * @return bytes written
+   */
+  public long transform(InputStream in, OutputStream out, long startPosition, ChainedSegmentTransform transform,
+                        @Nullable List<EncryptionAlgorithm.CrcCallback> crcCallbacks) throws IOException {
+    ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+    ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+    long position = startPosition;
+    byte[] previousBlock = null;
+    try {
+      while (true) {
+        byte[] input = freeBuffers.isEmpty() ? new byte[segmentSize] : freeBuffers.poll();
+        int length = in.readNBytes(input, 0, segmentSize);
+        if (length == 0) { break; }
+
+        byte[] output = freeBuffers.isEmpty() ? new byte[segmentSize] : freeBuffers.poll();
+        boolean last = length < segmentSize;
+        if (last && inFlight.isEmpty()) {
+          // Fits into a single segment, no point in a pool round trip
+          transform.transform(position, previousBlock, input, 0, output, 0, length);
+          writeSegment(new Segment(input, output, length, null), out, crcCallbacks);
+          position += length;
+          break;
+        }
+
+        inFlight.add(submit(transform, position, previousBlock, input, output, length));
+        // Copied, the input buffer is reused once its segment is written
+        previousBlock = lastBlock(input, length);
+        position += length;
+        if (inFlight.size() >= maxSegmentsInFlight) {
+          Segment head = inFlight.poll();
+          head.await();
+          writeSegment(head, out, crcCallbacks);
+          freeBuffers.add(head.in);
+          freeBuffers.add(head.buf);
+        }
+        if (last) { break; }
+      }
+
+      while (!inFlight.isEmpty()) {
+        Segment head = inFlight.poll();
+        head.await();
+        writeSegment(head, out, crcCallbacks);
+      }
+    } finally {
+      inFlight.forEach(Segment::cancel);
+    }
+    return position - startPosition;
+  }
+
+  /** Transforms a whole array, splitting it into segments. */
+  public byte[] transform(byte[] data, long startPosition, SegmentTransform transform) {
+    return transform(data, startPosition, chained(transform));
+  }
+
+  /** Transforms a whole array with a chained transform, splitting it into segments. */
+  public byte[] transform(byte[] data, long startPosition, ChainedSegmentTransform transform) {
+    byte[] result = new byte[data.length];
+    if (data.length <= segmentSize) {
+      transform.transform(startPosition, null, data, 0, result, 0, data.length);
+      return result;
+    }
+    ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[(data.length + segmentSize - 1) / segmentSize];
+    for (int i = 0; i < tasks.length; i++) {
+      int off = i * segmentSize;
+      int len = Math.min(segmentSize, data.length - off);
+      byte[] previousBlock = off == 0 ? null : Arrays.copyOfRange(data, off - BLOCK_SIZE, off);
+      tasks[i] = pool.submit(() -> transform.transform(startPosition + off, previousBlock, data, off, result, off, len));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+    return result;
+  }
+
+  /**
+   * Stream of the transformed data of in. Segments are read and submitted ahead of the reader,
+   * starting with one and growing up to maxSegmentsInFlight, so the first bytes are not delayed
+   * by a full pipeline fill.
+   */
+  public InputStream transformingStream(InputStream in, long startPosition, SegmentTransform transform) {
+    return new TransformingInputStream(in, startPosition, chained(transform));
+  }
+
+  /** Stream of the transformed data of in, with a chained transform. */
+  public InputStream transformingStream(InputStream in, long startPosition, ChainedSegmentTransform transform) {
+    return new TransformingInputStream(in, startPosition, transform);
+  }
+
+  private final class TransformingInputStream extends InputStream {
+    private final InputStream in;
+    private final ChainedSegmentTransform transform;
+    private final ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+    private long position;
+    private @Nullable byte[] previousBlock;
+    private int segmentsDelivered;
+    private boolean sourceDone;
+    private @Nullable Segment current;
+    private int currentPos;
+
+    TransformingInputStream(InputStream in, long startPosition, ChainedSegmentTransform transform) {
+      this.in = in;
+      this.position = startPosition;
+      this.transform = transform;
+    }
+
+    private void fill() throws IOException {
+      int target = Math.min(maxSegmentsInFlight, segmentsDelivered + 1);
+      while (!sourceDone && inFlight.size() < target) {
+        byte[] input = new byte[segmentSize];
+        int length = in.readNBytes(input, 0, segmentSize);
+        if (length < segmentSize) { sourceDone = true; }
+        if (length == 0) { break; }
+        inFlight.add(submit(transform, position, previousBlock, input, new byte[segmentSize], length));
+        previousBlock = lastBlock(input, length);
+        position += length;
+      }
+    }
+
+    /** @return Segment with unread bytes at currentPos, or null at the end of the source */
+    private @Nullable Segment nextSegment() throws IOException {
+      Segment segment = current;
+      while (segment == null || currentPos >= segment.length) {
+        fill();
+        segment = inFlight.poll();
+        if (segment == null) { return null; }
+        segment.await();
+        current = segment;
+        currentPos = 0;
+        segmentsDelivered++;
+      }
+      return segment;
+    }
+
+    @Override
+    public int read() throws IOException {
+      Segment segment = nextSegment();
+      if (segment == null) { return -1; }
+      return segment.buf[currentPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) { return 0; }
+      Segment segment = nextSegment();
+      if (segment == null) { return -1; }
+      int n = Math.min(len, segment.length - currentPos);
+      System.arraycopy(segment.buf, currentPos, b, off, n);
+      currentPos += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return current == null ? 0 : current.length - currentPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+      inFlight.forEach(Segment::cancel);
+      inFlight.clear();
+      in.close();
+    }
+  }
+}
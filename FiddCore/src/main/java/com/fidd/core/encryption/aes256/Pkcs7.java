@@ -0,0 +1,146 @@
+package com.fidd.core.encryption.aes256;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.fidd.core.encryption.aes256.BlockCipherConstants.BLOCK_SIZE;
+
+/**
+ * PKCS#7 padding removal for CBC plaintext that was decrypted without padding handling, e.g. in
+ * parallel segments. Both streams hold back the last block until the data is known to end.
+ */
+final class Pkcs7 {
+
+  private Pkcs7() {}
+
+  /** @return padding length of the plaintext ending at end */
+  static int paddingLength(byte[] plaintext, int end) throws IOException {
+    if (end < BLOCK_SIZE) {
+      throw new IOException("CBC plaintext shorter than a block");
+    }
+    int padding = plaintext[end - 1] & 0xFF;
+    if (padding < 1 || padding > BLOCK_SIZE) {
+      throw new IOException("Bad CBC padding");
+    }
+    for (int i = end - padding; i < end - 1; i++) {
+      if ((plaintext[i] & 0xFF) != padding) {
+        throw new IOException("Bad CBC padding");
+      }
+    }
+    return padding;
+  }
+
+  /** Passes everything but the padding through; call finish() once all data is written. */
+  static class UnpaddingOutputStream extends FilterOutputStream {
+    private final byte[] tail = new byte[BLOCK_SIZE];
+    private int tailLength;
+    private long written;
+
+    UnpaddingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int emit = tailLength + len - BLOCK_SIZE;
+      if (emit <= 0) {
+        System.arraycopy(b, off, tail, tailLength, len);
+        tailLength += len;
+        return;
+      }
+      int fromTail = Math.min(emit, tailLength);
+      int fromInput = emit - fromTail;
+      out.write(tail, 0, fromTail);
+      out.write(b, off, fromInput);
+      written += emit;
+
+      int keptTail = tailLength - fromTail;
+      System.arraycopy(tail, fromTail, tail, 0, keptTail);
+      System.arraycopy(b, off + fromInput, tail, keptTail, len - fromInput);
+      tailLength = BLOCK_SIZE;
+    }
+
+    /** Writes the last block without its padding. @return plaintext bytes written in total */
+    long finish() throws IOException {
+      int padding = paddingLength(tail, tailLength);
+      out.write(tail, 0, tailLength - padding);
+      written += tailLength - padding;
+      tailLength = 0;
+      return written;
+    }
+  }
+
+  /** Reads in without the padding at its end. */
+  static class UnpaddingInputStream extends InputStream {
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192 + BLOCK_SIZE];
+    private int pos;
+    private int limit;
+    /** End of the data that can be returned: limit less the held back block, or less the padding at the end */
+    private int readable;
+    private boolean eof;
+
+    UnpaddingInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    private boolean fill() throws IOException {
+      while (pos == readable) {
+        if (eof) {
+          return false;
+        }
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+          eof = true;
+          readable = limit - paddingLength(buffer, limit);
+        } else {
+          limit += read;
+          readable = Math.max(0, limit - BLOCK_SIZE);
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return buffer[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int n = Math.min(len, readable - pos);
+      System.arraycopy(buffer, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return readable - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
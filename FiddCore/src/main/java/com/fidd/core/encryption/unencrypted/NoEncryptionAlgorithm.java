@@ -1,5 +1,7 @@
 package com.fidd.core.encryption.unencrypted;
 
+import com.fidd.core.common.ChannelStreams;
+import com.fidd.core.common.DirectBufferPool;
 import com.fidd.core.common.SubInputStream;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
@@ -9,6 +11,9 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.List;
 
@@ -76,7 +81,77 @@ public class NoEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
         }
     }
 
+    @Override
+    public long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                        @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+        if (ciphertextCrcCallbacks != null && !ciphertextCrcCallbacks.isEmpty()) {
+            return copyWithCrcs(plaintexts, ciphertext, ciphertextCrcCallbacks);
+        }
+        try {
+            long bytesWritten = 0;
+            for (ReadableByteChannel plaintext : plaintexts) {
+                bytesWritten += ChannelStreams.copy(plaintext, ciphertext, Long.MAX_VALUE);
+            }
+            return bytesWritten;
+        } catch (IOException e) {
+            throw new RuntimeException("Channel processing failed", e);
+        }
+    }
+
+    @Override
+    public long decrypt(byte[] keyData, ReadableByteChannel ciphertext, WritableByteChannel plaintext) {
+        try {
+            return ChannelStreams.copy(ciphertext, plaintext, Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new RuntimeException("Channel processing failed", e);
+        }
+    }
+
+    @Override
+    public void randomAccessDecrypt(byte[] keyData, long offset, long length,
+                                    ReadableByteChannel ciphertextAtOffset, WritableByteChannel plaintext) {
+        try {
+            // File ranges go through FileChannel.transferTo
+            ChannelStreams.copy(ciphertextAtOffset, plaintext, length);
+        } catch (IOException e) {
+            throw new RuntimeException("Channel processing failed", e);
+        }
+    }
+
+    @Override
+    public void randomAccessDecrypt(byte[] keyData, long offset, long length,
+                                    ByteBuffer ciphertextAtOffset, ByteBuffer plaintext) {
+        ByteBuffer in = ciphertextAtOffset.duplicate();
+        in.limit(in.position() + (int) Math.min(length, in.remaining()));
+        plaintext.put(in);
+        ciphertextAtOffset.position(in.position());
+    }
+
     // --- Helper methods ---
+    /** Copies through a pooled direct buffer that the CRC callbacks read in place */
+    private static long copyWithCrcs(List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                                     List<CrcCallback> ciphertextCrcCallbacks) {
+        DirectBufferPool pool = DirectBufferPool.shared();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long bytesWritten = 0;
+            for (ReadableByteChannel plaintext : plaintexts) {
+                int read;
+                while ((read = ChannelStreams.readFully(plaintext, buffer.clear(), Long.MAX_VALUE)) > 0) {
+                    buffer.flip();
+                    CrcCallback.writeAll(ciphertextCrcCallbacks, buffer);
+                    ChannelStreams.writeFully(ciphertext, buffer);
+                    bytesWritten += read;
+                }
+            }
+            return bytesWritten;
+        } catch (IOException e) {
+            throw new RuntimeException("Channel processing failed", e);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
     private long processStream(int length, InputStream in, OutputStream out,
                                @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
         try {
@@ -89,10 +164,7 @@ public class NoEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
 
                 out.write(buffer, 0, read);
 
-                if (ciphertextCrcCallbacks != null) {
-                    byte[] chunk = Arrays.copyOf(buffer, read);
-                    ciphertextCrcCallbacks.forEach(c -> c.write(chunk)); // process chunk
-                }
+                CrcCallback.writeAll(ciphertextCrcCallbacks, buffer, 0, read); // process chunk
 
                 total += read;
                 if (length != -1 && total >= length) {
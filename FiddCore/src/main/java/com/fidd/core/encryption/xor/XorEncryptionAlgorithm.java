@@ -2,6 +2,7 @@ package com.fidd.core.encryption.xor;
 
 import com.fidd.core.common.SubInputStream;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import com.fidd.core.encryption.XorKernel;
 import com.fidd.core.random.RandomGeneratorType;
 
 import javax.annotation.Nullable;
@@ -41,7 +42,7 @@ public class XorEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
                         @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
         long bytesWritten = 0;
         for (InputStream plaintext : plaintexts) {
-            bytesWritten += processStream(keyData, (int)(bytesWritten % keyData.length), -1, plaintext,
+            bytesWritten += processStream(keyData, bytesWritten, -1, plaintext,
                     ciphertext, ciphertextCrcCallbacks);
         }
         return bytesWritten;
@@ -63,13 +64,13 @@ public class XorEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
     public byte[] randomAccessDecrypt(byte[] keyData, byte[] ciphertext, long offset, long length) {
         // Decrypt only a slice of the ciphertext
         byte[] slice = Arrays.copyOfRange(ciphertext, (int) offset, (int) (offset + length));
-        return xorWithKey(slice, keyData, (int)(offset % keyData.length));
+        return xorWithKey(slice, keyData, offset);
     }
 
     @Override
     public void randomAccessDecrypt(byte[] keyData, long offset, long length, InputStream ciphertextAtOffset, OutputStream plaintext) {
         // For simplicity, just reuse the stream processor
-        processStream(keyData, (int)(offset % keyData.length), (int)length, ciphertextAtOffset, plaintext, null);
+        processStream(keyData, offset, length, ciphertextAtOffset, plaintext, null);
     }
 
     @Override
@@ -82,38 +83,32 @@ public class XorEncryptionAlgorithm implements RandomAccessEncryptionAlgorithm {
     }
 
     // --- Helper methods ---
-    private byte[] xorWithKey(byte[] data, byte[] key, int keyOffset) {
+    private byte[] xorWithKey(byte[] data, byte[] key, long keyPos) {
         byte[] result = new byte[data.length];
-        for (int i = 0; i < data.length; i++) {
-            result[i] = (byte) (data[i] ^ key[(keyOffset + i) % key.length]);
-        }
+        XorKernel.xorRepeating(data, 0, XorKernel.expandKey(key, Math.min(data.length, XorKernel.EXPANDED_KEY_MIN_LENGTH)),
+                keyPos, result, 0, data.length);
         return result;
     }
 
-    private long processStream(byte[] keyData, int keyOffset, int length, InputStream in, OutputStream out,
+    private long processStream(byte[] keyData, long keyPos, long length, InputStream in, OutputStream out,
                                @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
         try {
             byte[] buffer = new byte[8192]; // 8 KB buffer
+            byte[] key = XorKernel.expandKey(keyData, XorKernel.EXPANDED_KEY_MIN_LENGTH);
             long total = 0;
             int read;
 
             while ((read = in.read(buffer, 0,
-                    (length != -1) ? Math.min(buffer.length, length - (int) total) : buffer.length)) != -1) {
+                    (length != -1) ? (int) Math.min(buffer.length, length - total) : buffer.length)) != -1) {
 
                 // XOR transform in-place
-                for (int j = 0; j < read; j++) {
-                    buffer[j] = (byte) (buffer[j] ^ keyData[(keyOffset + (int) total + j) % keyData.length]);
-                }
+                XorKernel.xorRepeating(buffer, 0, key, keyPos + total, buffer, 0, read);
 
                 // Write transformed bytes
                 out.write(buffer, 0, read);
 
                 // CRC callback
-                if (ciphertextCrcCallbacks != null) {
-                    // If callback only supports write(byte[]):
-                    byte[] chunk = Arrays.copyOf(buffer, read);
-                    ciphertextCrcCallbacks.forEach(c -> c.write(chunk));
-                }
+                CrcCallback.writeAll(ciphertextCrcCallbacks, buffer, 0, read);
 
                 total += read;
                 if (length != -1 && total >= length) {
@@ -1,5 +1,7 @@
 package com.fidd.core.encryption.xor;
 
+import com.fidd.core.encryption.XorKernel;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -9,14 +11,13 @@ public class XorInputStream extends InputStream {
     private long keyPos;
 
     public XorInputStream(InputStream wrapped, byte[] key) {
-        this.wrapped = wrapped;
-        this.key = key;
-        this.keyPos = 0;
+        this(wrapped, key, 0);
     }
 
     public XorInputStream(InputStream wrapped, byte[] key, long keyPos) {
         this.wrapped = wrapped;
-        this.key = key;
+        // A whole number of key repetitions, so positions select the same key bytes
+        this.key = XorKernel.expandKey(key, XorKernel.EXPANDED_KEY_MIN_LENGTH);
         this.keyPos = keyPos;
     }
 
@@ -27,7 +28,7 @@ public class XorInputStream extends InputStream {
             return -1;
         }
         // XOR with current key byte
-        int result = (b ^ key[(int)keyPos & (key.length - 1)]) & 0xFF;
+        int result = (b ^ key[(int) (keyPos % key.length)]) & 0xFF;
         keyPos++;
         return result;
     }
@@ -38,9 +39,7 @@ public class XorInputStream extends InputStream {
         if (count == -1) {
             return -1;
         }
-        for (int i = 0; i < count; i++) {
-            buf[off + i] = (byte) (buf[off + i] ^ key[(int)((keyPos + i) % key.length)]);
-        }
+        XorKernel.xorRepeating(buf, off, key, keyPos, buf, off, count);
         keyPos += count;
         return count;
     }
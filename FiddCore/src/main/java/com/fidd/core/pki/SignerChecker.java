@@ -3,12 +3,43 @@ package com.fidd.core.pki;
 import com.fidd.core.NamedEntry;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 
 public interface SignerChecker extends NamedEntry {
+    /** Signature over data that is fed in pieces, e.g. while it is being written elsewhere */
+    interface StreamingSigner {
+        void update(byte[] data, int off, int len);
+
+        /** Feeds the buffer's remaining bytes; its position is left as it was */
+        default void update(ByteBuffer data) {
+            if (data.hasArray()) {
+                update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            } else {
+                byte[] copy = new byte[data.remaining()];
+                data.duplicate().get(copy);
+                update(copy, 0, copy.length);
+            }
+        }
+
+        byte[] sign();
+    }
+
+    /** Verification of a signature over data that is fed in pieces, e.g. while it is being decrypted */
+    interface StreamingVerifier {
+        void update(byte[] data, int off, int len);
+        boolean verify(byte[] signature);
+    }
+
     byte[] signData(byte[] data, PrivateKey privateKey);
     byte[] signData(InputStream data, PrivateKey privateKey);
     boolean verifySignature(byte[] data, byte[] sign, PublicKey publicKey);
     boolean verifySignature(InputStream data, byte[] sign, PublicKey publicKey);
+
+    /** @return signer whose sign() equals signData over everything passed to update() */
+    StreamingSigner newStreamingSigner(PrivateKey privateKey);
+
+    /** @return verifier whose verify() equals verifySignature over everything passed to update() */
+    StreamingVerifier newStreamingVerifier(PublicKey publicKey);
 }
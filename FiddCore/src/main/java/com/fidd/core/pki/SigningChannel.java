@@ -0,0 +1,43 @@
+package com.fidd.core.pki;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Passes writes through to a channel and feeds every byte written to the signers on the way, so a file
+ * can be signed while it's written instead of being read back afterwards.
+ */
+public class SigningChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final List<SignerChecker.StreamingSigner> signers;
+
+    public SigningChannel(WritableByteChannel channel, List<SignerChecker.StreamingSigner> signers) {
+        this.channel = channel;
+        this.signers = signers;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int start = src.position();
+        int written = channel.write(src);
+        if (written > 0) {
+            ByteBuffer writtenBytes = src.duplicate().position(start).limit(start + written);
+            for (int i = 0; i < signers.size(); i++) {
+                signers.get(i).update(writtenBytes);
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -5,13 +5,18 @@ import com.flower.crypt.PkiUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.Signature;
 import java.security.SignatureException;
 
 public class SHA256WithRSASignerChecker implements SignerChecker {
+    /** What PkiUtil signs with; the streaming signer and verifier use it directly */
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
     @Override
     public byte[] signData(byte[] data, PrivateKey privateKey) {
         try {
@@ -48,6 +53,73 @@ public class SHA256WithRSASignerChecker implements SignerChecker {
         }
     }
 
+    @Override
+    public StreamingSigner newStreamingSigner(PrivateKey privateKey) {
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(privateKey);
+            return new StreamingSigner() {
+                @Override
+                public void update(byte[] data, int off, int len) {
+                    try {
+                        signature.update(data, off, len);
+                    } catch (SignatureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public void update(ByteBuffer data) {
+                    try {
+                        signature.update(data.duplicate());
+                    } catch (SignatureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public byte[] sign() {
+                    try {
+                        return signature.sign();
+                    } catch (SignatureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public StreamingVerifier newStreamingVerifier(PublicKey publicKey) {
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(publicKey);
+            return new StreamingVerifier() {
+                @Override
+                public void update(byte[] data, int off, int len) {
+                    try {
+                        signature.update(data, off, len);
+                    } catch (SignatureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public boolean verify(byte[] sign) {
+                    try {
+                        return signature.verify(sign);
+                    } catch (SignatureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public String name() {
         return "SHA256WithRSA";
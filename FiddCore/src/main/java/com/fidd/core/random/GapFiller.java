@@ -0,0 +1,67 @@
+package com.fidd.core.random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Filler for the gaps between sections: an AES-256-CTR keystream under a key and IV drawn from the caller's
+ * generator. Only SEED_LENGTH bytes per gap come from that generator, however long the gap; without the
+ * seed the keystream can't be told apart from random bytes. Each thread keeps its own cipher and buffers.
+ */
+public final class GapFiller {
+    public static final int SEED_LENGTH = 32 + 16;
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String AES = "AES";
+    private static final String AES_CTR_NO_PADDING = "AES/CTR/NoPadding";
+    private static final ThreadLocal<GapFiller> THREAD_FILLERS = ThreadLocal.withInitial(GapFiller::new);
+
+    private final Cipher cipher;
+    private final byte[] seed = new byte[SEED_LENGTH];
+    private final byte[] zeros = new byte[BUFFER_SIZE];
+    private final byte[] keystream = new byte[BUFFER_SIZE];
+
+    private GapFiller() {
+        try {
+            cipher = Cipher.getInstance(AES_CTR_NO_PADDING);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Writes length bytes of filler to out; draws the seed from seedSource unless length is 0 */
+    public static void fill(OutputStream out, long length, RandomGenerator seedSource) throws IOException {
+        if (length < 0) { throw new IllegalArgumentException("Negative length: " + length); }
+        if (length == 0) { return; }
+        THREAD_FILLERS.get().write(out, length, seedSource);
+    }
+
+    private void write(OutputStream out, long length, RandomGenerator seedSource) throws IOException {
+        seedSource.nextBytes(seed);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, 0, 32, AES), new IvParameterSpec(seed, 32, 16));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        } finally {
+            Arrays.fill(seed, (byte) 0);
+        }
+
+        while (length > 0) {
+            int n = (int) Math.min(BUFFER_SIZE, length);
+            try {
+                // CTR encryption of zeros is the keystream itself
+                cipher.update(zeros, 0, n, keystream, 0);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+            out.write(keystream, 0, n);
+            length -= n;
+        }
+    }
+}
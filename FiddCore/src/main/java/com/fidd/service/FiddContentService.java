@@ -3,7 +3,10 @@ package com.fidd.service;
 import com.fidd.core.fiddfile.FiddFileMetadata;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 public interface FiddContentService {
@@ -19,9 +22,28 @@ public interface FiddContentService {
     @Nullable FiddFileMetadata getFiddFileMetadata(long messageNumber);
     @Nullable List<LogicalFileInfo> getLogicalFileInfos(long messageNumber);
 
+    /** Plaintext length of the logical file; padded algorithms need a look at the end of its section */
+    default long getLogicalFileLength(long messageNumber, LogicalFileInfo logicalFileInfo) {
+        return logicalFileInfo.section().sectionLength() - logicalFileInfo.fileOffset();
+    }
+
     @Nullable InputStream readLogicalFile(long messageNumber, LogicalFileInfo logicalFileInfo);
     @Nullable InputStream readLogicalFileChunk(long messageNumber, LogicalFileInfo logicalFileInfo, long offset, long length);
 
+    /** Writes the chunk to out instead of handing out a stream; out is not closed.
+     * @return bytes written, -1 if the chunk is not available */
+    default long readLogicalFileChunk(long messageNumber, LogicalFileInfo logicalFileInfo, long offset, long length,
+                                      WritableByteChannel out) {
+        try (InputStream chunk = readLogicalFileChunk(messageNumber, logicalFileInfo, offset, length)) {
+            if (chunk == null) {
+                return -1;
+            }
+            return chunk.transferTo(Channels.newOutputStream(out));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // ---------------------------------------------
     //    TODO: Validations; CRC; progressive CRC
     // ---------------------------------------------
@@ -4,8 +4,10 @@ import com.fidd.base.BaseRepositories;
 import com.fidd.connectors.FiddCacheConnector;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.connectors.cache.ram.RamCacheConnector;
+import com.fidd.connectors.cache.readahead.ReadAheadCacheConnector;
 import com.fidd.core.common.FiddKeyUtil;
 import com.fidd.core.common.LogicalFileMetadataUtil;
+import com.fidd.core.common.LogicalFileUtil;
 import com.fidd.core.fiddfile.FiddFileMetadata;
 import com.fidd.core.fiddkey.FiddKey;
 import com.fidd.core.logicalfile.LogicalFileMetadata;
@@ -13,6 +15,8 @@ import com.fidd.core.metadata.MetadataContainer;
 import com.fidd.core.metadata.MetadataContainerSerializer;
 import com.fidd.service.FiddContentService;
 import com.fidd.service.LogicalFileInfo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Supplier;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -20,14 +24,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import static com.fidd.core.common.FiddFileMetadataUtil.loadFiddFileMetadata;
 import static com.fidd.core.common.LogicalFileUtil.getLogicalFileInputStream;
 import static com.fidd.core.common.LogicalFileUtil.getLogicalFileInputStreamChunk;
+import static com.fidd.core.common.LogicalFileUtil.writeLogicalFileChunk;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class WrapperFiddContentService implements FiddContentService {
@@ -36,20 +43,43 @@ public class WrapperFiddContentService implements FiddContentService {
     // TODO: hardcoding this to "BLOBS" for now
     final static String METADATA_CONTAINER_SERIALIZER_FORMAT = "BLOBS";
 
+    public final static long DEFAULT_FIDD_KEY_CACHE_CAPACITY = 1024;
+
+    /** `certificate` is null for FiddKeys loaded unencrypted, X509Certificate equality is by encoded form */
+    protected record FiddKeyCacheKey(long messageNumber, @Nullable X509Certificate certificate) { }
+
     protected final BaseRepositories baseRepositories;
     protected final FiddCacheConnector fiddConnector;
     protected final Supplier<Pair<X509Certificate, PrivateKey>> keySupplier;
 
+    /** Decrypted and deserialized FiddKeys - saves RSA private key decrypt and YAML parsing on repeated reads */
+    protected final Cache<FiddKeyCacheKey, FiddKey> fiddKeyCache;
+    /** Lookup footprints - saves RSA public key operation, also for messages without a key for this subscriber */
+    protected final Cache<FiddKeyCacheKey, String> lookupFootprintCache;
+    protected volatile @Nullable Pair<X509Certificate, PrivateKey> cachedKeyPair;
+
     public WrapperFiddContentService(BaseRepositories baseRepositories, FiddConnector fiddConnector,
                                      Supplier<Pair<X509Certificate, PrivateKey>> keySupplier) {
+        this(baseRepositories, fiddConnector, keySupplier, DEFAULT_FIDD_KEY_CACHE_CAPACITY);
+    }
+
+    public WrapperFiddContentService(BaseRepositories baseRepositories, FiddConnector fiddConnector,
+                                     Supplier<Pair<X509Certificate, PrivateKey>> keySupplier,
+                                     long fiddKeyCacheCapacity) {
         this.baseRepositories = baseRepositories;
         if (fiddConnector instanceof FiddCacheConnector) {
             this.fiddConnector = (FiddCacheConnector) fiddConnector;
         } else {
-            this.fiddConnector = new RamCacheConnector(fiddConnector, 1024, 100024,
-                    1024, 1024, 1024, 1024);
+            this.fiddConnector = new ReadAheadCacheConnector(RamCacheConnector.of(fiddConnector, null));
         }
         this.keySupplier = keySupplier;
+
+        this.fiddKeyCache = Caffeine.newBuilder()
+                .maximumSize(fiddKeyCacheCapacity)
+                .build();
+        this.lookupFootprintCache = Caffeine.newBuilder()
+                .maximumSize(fiddKeyCacheCapacity)
+                .build();
     }
 
     @Override
@@ -69,13 +99,48 @@ public class WrapperFiddContentService implements FiddContentService {
                 inclusiveEarliest, count, getLatest);
     }
 
+    /** Drops cached FiddKeys and lookup footprints if the user's key pair has changed since the last call */
+    protected @Nullable Pair<X509Certificate, PrivateKey> currentKeyPair() {
+        Pair<X509Certificate, PrivateKey> pair = keySupplier.get();
+        if (!Objects.equals(pair, cachedKeyPair)) {
+            synchronized (this) {
+                if (!Objects.equals(pair, cachedKeyPair)) {
+                    LOGGER.info("Key pair changed, invalidating FiddKey cache");
+                    fiddKeyCache.invalidateAll();
+                    lookupFootprintCache.invalidateAll();
+                    cachedKeyPair = pair;
+                }
+            }
+        }
+        return pair;
+    }
+
     protected @Nullable FiddKey loadFiddKey(long messageNumber) throws Exception {
+        Pair<X509Certificate, PrivateKey> pair = currentKeyPair();
+        FiddKeyCacheKey cacheKey = new FiddKeyCacheKey(messageNumber, pair == null ? null : pair.getLeft());
+        FiddKey fiddKey = fiddKeyCache.getIfPresent(cacheKey);
+        if (fiddKey == null) {
+            fiddKey = loadFiddKey(messageNumber, pair);
+            if (fiddKey != null) {
+                fiddKeyCache.put(cacheKey, fiddKey);
+            }
+        }
+        return fiddKey;
+    }
+
+    protected @Nullable FiddKey loadFiddKey(long messageNumber, @Nullable Pair<X509Certificate, PrivateKey> pair) throws Exception {
         LOGGER.info("Loading FiddKey for message #" + messageNumber);
         byte[] fiddKeyBytes = null;
-        Pair<X509Certificate, PrivateKey> pair = keySupplier.get();
         if (pair != null) {
-            fiddKeyBytes = FiddKeyUtil.loadFiddKeyBytes(baseRepositories, messageNumber, fiddConnector,
-                    pair.getLeft(), checkNotNull(pair.getRight()));
+            X509Certificate userCert = pair.getLeft();
+            FiddKeyCacheKey footprintKey = new FiddKeyCacheKey(messageNumber, userCert);
+            String footprint = lookupFootprintCache.getIfPresent(footprintKey);
+            if (footprint == null) {
+                footprint = FiddKeyUtil.createLookupFootprint(baseRepositories, messageNumber, fiddConnector, userCert);
+                lookupFootprintCache.put(footprintKey, footprint);
+            }
+            fiddKeyBytes = FiddKeyUtil.loadFiddKeyBytes(messageNumber, fiddConnector, footprint,
+                    checkNotNull(pair.getRight()));
         }
         if (fiddKeyBytes == null) {
             fiddKeyBytes = FiddKeyUtil.loadDefaultFiddKeyBytes(messageNumber, fiddConnector);
@@ -112,17 +177,19 @@ public class WrapperFiddContentService implements FiddContentService {
             FiddKey fiddKey = loadFiddKey(messageNumber);
             if (fiddKey == null) { return null; }
 
-            // 2. Load LogicalFileInfo Sections
+            // 2. Load LogicalFileInfo Sections - all headers in one batch
+            List<Pair<LogicalFileMetadata, MetadataContainerSerializer.MetadataContainerAndLength>> logicalFileMetadatas =
+                    LogicalFileMetadataUtil.getLogicalFileMetadata(baseRepositories,
+                            fiddConnector, true, messageNumber,
+                            fiddKey.logicalFiles());
+
             List<LogicalFileInfo> logicalFileInfo = new ArrayList<>();
             for (int i = 0; i < fiddKey.logicalFiles().size(); i++) {
-                LOGGER.info("Getting LogicalFileMetadata for Section #" + (i+1) + " (Logical File #" + i + ")");
                 FiddKey.Section logicalFileSection = fiddKey.logicalFiles().get(i);
                 Pair<LogicalFileMetadata, MetadataContainerSerializer.MetadataContainerAndLength> logicalFileMetadataAndContainer =
-                     LogicalFileMetadataUtil.getLogicalFileMetadata(baseRepositories,
-                            fiddConnector, true, messageNumber,
-                            logicalFileSection);
+                        logicalFileMetadatas.get(i);
 
-                logicalFileInfo.add(LogicalFileInfo.of(checkNotNull(logicalFileMetadataAndContainer).getLeft(),
+                logicalFileInfo.add(LogicalFileInfo.of(logicalFileMetadataAndContainer.getLeft(),
                         logicalFileSection,
                         logicalFileMetadataAndContainer.getRight().lengthBytes()
                     ));
@@ -134,6 +201,16 @@ public class WrapperFiddContentService implements FiddContentService {
         }
     }
 
+    @Override
+    public long getLogicalFileLength(long messageNumber, LogicalFileInfo LogicalFileInfo) {
+        try {
+            return LogicalFileUtil.getLogicalFileLength(baseRepositories, fiddConnector,
+                    messageNumber, LogicalFileInfo.section(), LogicalFileInfo.fileOffset());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public @Nullable InputStream readLogicalFile(long messageNumber, LogicalFileInfo LogicalFileInfo) {
         try {
@@ -156,4 +233,17 @@ public class WrapperFiddContentService implements FiddContentService {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public long readLogicalFileChunk(long messageNumber, LogicalFileInfo LogicalFileInfo, long offset, long length,
+                                     WritableByteChannel out) {
+        try {
+            LOGGER.info("Writing LogicalFileChunk " + messageNumber + " / " + LogicalFileInfo.metadata().filePath() +
+                    " from: " + offset + " size: " + length);
+            return writeLogicalFileChunk(baseRepositories, fiddConnector,
+                    messageNumber, LogicalFileInfo.section(), LogicalFileInfo.fileOffset(), offset, length, out);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
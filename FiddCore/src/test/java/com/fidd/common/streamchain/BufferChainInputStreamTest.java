@@ -4,11 +4,13 @@ import com.fidd.common.streamchain.chain.InputBufferChain;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayDeque;
 import java.util.Queue;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class BufferChainInputStreamTest {
     static class TestChain implements InputBufferChain {
@@ -165,4 +167,41 @@ class BufferChainInputStreamTest {
             assertEquals(-1, in.read());
         }
     }
+
+    @Test
+    void testReadWaitsThroughEmptyPolls() throws IOException {
+        // No data on the first polls of an open chain, as when a download stalls
+        TestChain chain = new TestChain() {
+            int emptyPolls = 3;
+
+            @Override
+            public byte[] pollBuffer() {
+                if (emptyPolls > 0) {
+                    emptyPolls--;
+                    return null;
+                }
+                close();
+                return super.pollBuffer();
+            }
+        }.add("abc".getBytes());
+
+        try (BufferChainInputStream in = new BufferChainInputStream(chain)) {
+            byte[] target = new byte[10];
+            assertEquals(3, in.read(target, 0, 10));
+            assertEquals(-1, in.read(target, 0, 10));
+            assertEquals(0, in.read(target, 0, 0));
+        }
+    }
+
+    @Test
+    void testInterruptedReadFails() {
+        TestChain chain = new TestChain();
+
+        Thread.currentThread().interrupt();
+        try (BufferChainInputStream in = new BufferChainInputStream(chain)) {
+            assertThrows(InterruptedIOException.class, () -> in.read(new byte[10], 0, 10));
+        } finally {
+            Thread.interrupted();
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package com.fidd.connectors.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DownloadSchedulerTest {
+    private static final int CHUNK = 4096;
+
+    private static void awaitCondition(AtomicBoolean condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.get(); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void testStreamIsLimitedToLength() throws IOException {
+        DownloadScheduler scheduler = new DownloadScheduler(2, 1024 * 1024);
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) { data[i] = (byte) i; }
+
+        try (InputStream in = scheduler.stream(50_000, os -> os.write(data))) {
+            byte[] expected = new byte[50_000];
+            System.arraycopy(data, 0, expected, 0, expected.length);
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testClosingStreamStopsDownload() throws IOException, InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(2, 64 * 1024);
+        AtomicLong written = new AtomicLong();
+        AtomicBoolean finished = new AtomicBoolean();
+
+        InputStream in = scheduler.stream(Long.MAX_VALUE, os -> {
+            try {
+                byte[] chunk = new byte[CHUNK];
+                while (true) {
+                    os.write(chunk);
+                    written.addAndGet(CHUNK);
+                }
+            } finally {
+                finished.set(true);
+            }
+        });
+        assertEquals(CHUNK, in.readNBytes(CHUNK).length);
+
+        // Producer can't run ahead of the reader by more than the buffer limit plus one buffer
+        Thread.sleep(200);
+        assertTrue(written.get() <= 64 * 1024 + DownloadScheduler.MAX_BUFFER_SIZE + 2L * CHUNK);
+
+        in.close();
+        awaitCondition(finished);
+        assertTrue(finished.get());
+    }
+
+    @Test
+    void testParallelismIsBoundedAndQueuedDownloadsAreCancelled() throws IOException, InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(2, 64 * 1024);
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<InputStream> streams = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            streams.add(scheduler.stream(10, os -> {
+                started.incrementAndGet();
+                release.await(10, TimeUnit.SECONDS);
+                os.write(new byte[10]);
+            }));
+        }
+        Thread.sleep(200);
+        assertEquals(2, started.get());
+        assertEquals(3, scheduler.getQueuedDownloads());
+
+        // Readers of queued downloads give up before those start
+        for (int i = 2; i < 5; i++) {
+            streams.get(i).close();
+        }
+        release.countDown();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(10, streams.get(i).readAllBytes().length);
+            streams.get(i).close();
+        }
+        Thread.sleep(200);
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    void testDownloadFailureReachesReader() {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 64 * 1024);
+        InputStream in = scheduler.stream(1000, os -> {
+            os.write(new byte[10]);
+            throw new IOException("connection reset");
+        });
+
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, in::readAllBytes);
+        assertEquals("connection reset", e.getCause().getMessage());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
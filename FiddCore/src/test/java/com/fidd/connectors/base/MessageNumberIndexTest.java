@@ -0,0 +1,60 @@
+package com.fidd.connectors.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageNumberIndexTest {
+    @Test
+    void testReplaceAllSortsAndDeduplicates() {
+        MessageNumberIndex index = new MessageNumberIndex(new long[] { 30, 10, 20, 10, 30 });
+        assertEquals(3, index.size());
+        assertEquals(List.of(30L, 20L, 10L), index.tail(null, 10, true));
+    }
+
+    @Test
+    void testAddRemove() {
+        MessageNumberIndex index = new MessageNumberIndex();
+        assertTrue(index.add(20));
+        assertTrue(index.add(10));
+        assertTrue(index.add(30));
+        assertFalse(index.add(20));
+        assertEquals(List.of(30L, 20L, 10L), index.tail(null, 10, true));
+
+        assertTrue(index.remove(20));
+        assertFalse(index.remove(20));
+        assertFalse(index.contains(20));
+        assertEquals(List.of(30L, 10L), index.tail(null, 10, true));
+    }
+
+    @Test
+    void testTail() {
+        MessageNumberIndex index = new MessageNumberIndex(new long[] { 1, 2, 3, 5, 8 });
+        assertEquals(List.of(8L, 5L), index.tail(null, 2, true));
+        assertEquals(List.of(5L, 3L), index.tail(null, 2, false));
+        assertEquals(List.of(5L, 3L, 2L), index.tail(5L, 3, true));
+        assertEquals(List.of(3L, 2L, 1L), index.tail(5L, 3, false));
+        assertEquals(List.of(3L, 2L), index.tail(4L, 2, false));
+        assertEquals(List.of(), index.tail(1L, 2, false));
+        assertEquals(List.of(8L), index.tail(100L, 1, false));
+        assertEquals(List.of(), index.tail(null, 0, true));
+        assertEquals(List.of(), new MessageNumberIndex().tail(null, 5, true));
+    }
+
+    @Test
+    void testBetween() {
+        MessageNumberIndex index = new MessageNumberIndex(new long[] { 60, 70, 80, 90, 100 });
+        assertEquals(List.of(90L, 80L), index.between(100, false, 70, false, 10, true));
+        assertEquals(List.of(90L), index.between(100, false, 70, false, 1, true));
+        assertEquals(List.of(80L), index.between(100, false, 70, false, 1, false));
+        assertEquals(List.of(100L, 90L, 80L, 70L), index.between(100, true, 70, true, 10, false));
+        assertEquals(List.of(100L, 90L, 80L), index.between(105, false, 65, false, 3, true));
+        assertEquals(List.of(80L, 70L), index.between(105, false, 65, false, 2, false));
+        assertEquals(List.of(), index.between(70, false, 90, false, 10, true));
+        assertEquals(List.of(), index.between(95, true, 91, true, 10, false));
+    }
+}
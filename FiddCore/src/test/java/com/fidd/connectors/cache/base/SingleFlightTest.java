@@ -0,0 +1,103 @@
+package com.fidd.connectors.cache.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+    private static void awaitCoalesced(SingleFlight<?, ?> singleFlight, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getCounters().coalesced() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, singleFlight.getCounters().coalesced());
+    }
+
+    @Test
+    void testConcurrentLoadsShareOneFetch() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicReference<String> cache = new AtomicReference<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future<?>[4];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executor.submit(() -> singleFlight.load("key", cache::get, () -> {
+                    loads.incrementAndGet();
+                    try {
+                        assertTrue(release.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    cache.set("value");
+                    return "value";
+                }));
+            }
+            awaitCoalesced(singleFlight, 3);
+            release.countDown();
+
+            for (Future<?> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getCounters().misses());
+
+        assertEquals("value", singleFlight.load("key", cache::get, () -> "other"));
+        assertEquals(1, singleFlight.getCounters().hits());
+    }
+
+    @Test
+    void testFailureIsSharedAndNotRemembered() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("backend down");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> owner = executor.submit(() -> singleFlight.load("key", () -> null, () -> {
+                try {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                throw failure;
+            }));
+            awaitMiss(singleFlight);
+            Future<String> waiter = executor.submit(() -> singleFlight.load("key", () -> null, () -> "unexpected"));
+            awaitCoalesced(singleFlight, 1);
+            release.countDown();
+
+            assertSame(failure, assertThrows(Exception.class, () -> owner.get(5, TimeUnit.SECONDS)).getCause());
+            assertSame(failure, assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The next load starts a new flight
+        assertEquals("value", singleFlight.load("key", () -> null, () -> "value"));
+    }
+
+    private static void awaitMiss(SingleFlight<?, ?> singleFlight) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getCounters().misses() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.fidd.connectors.cache.disk;
+
+import com.fidd.connectors.FiddConnector;
+import com.fidd.connectors.cache.ram.RamCacheConnector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DiskCacheConnectorTest {
+    private static final int BLOCK_SIZE = 16;
+    private static final int MESSAGE_SIZE = 100;
+    private static final String SOURCE = "https://example.com/fidd";
+
+    @TempDir
+    Path temp;
+
+    private byte[] message;
+    private FiddConnector remote;
+
+    @BeforeEach
+    void setup() throws IOException {
+        message = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        remote = mock(FiddConnector.class);
+        when(remote.getFiddMessageSize(1L)).thenReturn((long) MESSAGE_SIZE);
+        when(remote.getFiddMessageChunk(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(1);
+            int length = (int) (long) invocation.getArgument(2);
+            return new ByteArrayInputStream(message, offset, length);
+        });
+        when(remote.getUnencryptedFiddKey(1L)).thenReturn("key".getBytes(StandardCharsets.UTF_8));
+        when(remote.getFiddKeySignatureCount(1L)).thenReturn(2);
+        when(remote.getFiddKeySignature(1L, 1)).thenReturn("sign1".getBytes(StandardCharsets.UTF_8));
+        when(remote.getFiddKeyCandidates(1L, new byte[] { 1, 2 })).thenReturn(List.of(new byte[] { 3 }, new byte[] { 4, 5 }));
+    }
+
+    private DiskCacheConnector connector(long maxCacheBytes) {
+        return new DiskCacheConnector(remote, SOURCE, temp.resolve("cache"), BLOCK_SIZE, maxCacheBytes, 1024);
+    }
+
+    private Path blockFile(DiskCacheConnector cache, long blockIndex) {
+        return cache.cacheDirectory.resolve("1").resolve(DiskCacheConnector.BLOCK_ENTRY_PREFIX + BLOCK_SIZE + "." + blockIndex);
+    }
+
+    private static byte[] read(InputStream stream) throws IOException {
+        try (stream) {
+            return stream.readAllBytes();
+        }
+    }
+
+    @Test
+    void testEntriesSurviveRestart() throws IOException {
+        DiskCacheConnector first = connector(1024 * 1024);
+        assertArrayEquals(Arrays.copyOfRange(message, 10, 70), read(first.getFiddMessageChunk(1, 10, 60, true)));
+        assertArrayEquals("key".getBytes(StandardCharsets.UTF_8), first.getUnencryptedFiddKey(1));
+        assertEquals(2, first.getFiddKeySignatureCount(1));
+        assertArrayEquals("sign1".getBytes(StandardCharsets.UTF_8), first.getFiddKeySignature(1, 1));
+        assertEquals(2, first.getFiddKeyCandidates(1, new byte[] { 1, 2 }).size());
+
+        DiskCacheConnector second = connector(1024 * 1024);
+        assertEquals(first.getCachedBytes(), second.getCachedBytes());
+        assertArrayEquals(Arrays.copyOfRange(message, 20, 60), read(second.getFiddMessageChunk(1, 20, 40, true)));
+        assertEquals(MESSAGE_SIZE, second.getFiddMessageSize(1));
+        assertArrayEquals("key".getBytes(StandardCharsets.UTF_8), second.getUnencryptedFiddKey(1));
+        assertEquals(2, second.getFiddKeySignatureCount(1));
+        assertArrayEquals("sign1".getBytes(StandardCharsets.UTF_8), second.getFiddKeySignature(1, 1));
+        List<byte[]> candidates = second.getFiddKeyCandidates(1, new byte[] { 1, 2 });
+        assertArrayEquals(new byte[] { 4, 5 }, candidates.get(1));
+
+        // Everything the second session needed was on disk, except what may still change
+        verify(remote, times(2)).getFiddMessageSize(1L);
+        verify(remote, times(1)).getFiddMessageChunk(anyLong(), anyLong(), anyLong());
+        verify(remote, times(1)).getUnencryptedFiddKey(1L);
+        verify(remote, times(2)).getFiddKeySignatureCount(1L);
+        verify(remote, times(1)).getFiddKeySignature(anyLong(), anyInt());
+        verify(remote, times(1)).getFiddKeyCandidates(anyLong(), any());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        // Two blocks
+        DiskCacheConnector cache = connector(2 * BLOCK_SIZE);
+
+        read(cache.getFiddMessageChunk(1, 0, 32, true));
+        read(cache.getFiddMessageChunk(1, 0, 1, true));
+        read(cache.getFiddMessageChunk(1, 48, 16, true));
+        assertTrue(cache.getCachedBytes() <= 2 * BLOCK_SIZE);
+
+        // Block 1 was the least recently used one
+        assertTrue(Files.exists(blockFile(cache, 0)));
+        assertFalse(Files.exists(blockFile(cache, 1)));
+        assertTrue(Files.exists(blockFile(cache, 3)));
+    }
+
+    @Test
+    void testShortLastBlockIsNotPersisted() throws IOException {
+        DiskCacheConnector first = connector(1024 * 1024);
+        assertArrayEquals(Arrays.copyOfRange(message, 80, MESSAGE_SIZE), read(first.getFiddMessageChunk(1, 80, 20, true)));
+        assertTrue(Files.exists(blockFile(first, 5)));
+        assertFalse(Files.exists(blockFile(first, 6)));
+
+        // The message file grew since; the next session reads past the old end
+        byte[] grown = new byte[MESSAGE_SIZE + 10];
+        for (int i = 0; i < grown.length; i++) {
+            grown[i] = (byte) i;
+        }
+        message = grown;
+        when(remote.getFiddMessageSize(1L)).thenReturn((long) grown.length);
+
+        DiskCacheConnector second = connector(1024 * 1024);
+        assertArrayEquals(Arrays.copyOfRange(grown, 80, grown.length),
+                read(second.getFiddMessageChunk(1, 80, grown.length - 80, true)));
+    }
+
+    @Test
+    void testLeftoverTempFilesAreRemovedOnStartup() throws IOException {
+        Path messageDirectory = temp.resolve("cache").resolve(DiskCacheConnector.sourceDirectoryName(SOURCE)).resolve("1");
+        Files.createDirectories(messageDirectory);
+        Path leftover = messageDirectory.resolve(DiskCacheConnector.UNENCRYPTED_FIDD_KEY_ENTRY + ".7"
+                + DiskCacheConnector.TEMP_FILE_SUFFIX);
+        Files.write(leftover, new byte[] { 1, 2, 3 });
+
+        DiskCacheConnector cache = connector(1024);
+        assertFalse(Files.exists(leftover));
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    void testMissingUnencryptedKeyIsNotCached() {
+        DiskCacheConnector cache = connector(1024);
+        assertNull(cache.getUnencryptedFiddKey(2));
+        assertNull(cache.getUnencryptedFiddKey(2));
+        verify(remote, times(2)).getUnencryptedFiddKey(2L);
+    }
+
+    @Test
+    void testEmptyKeyCandidatesAreNotCached() throws IOException {
+        when(remote.getFiddKeyCandidates(2L, new byte[] { 1, 2 })).thenReturn(List.of());
+        DiskCacheConnector cache = connector(1024);
+        assertTrue(cache.getFiddKeyCandidates(2, new byte[] { 1, 2 }).isEmpty());
+        assertTrue(cache.getFiddKeyCandidates(2, new byte[] { 1, 2 }).isEmpty());
+        verify(remote, times(2)).getFiddKeyCandidates(2L, new byte[] { 1, 2 });
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    void testSourcesAreKeptApart() throws IOException {
+        FiddConnector otherRemote = mock(FiddConnector.class);
+        when(otherRemote.getFiddMessageSize(1L)).thenReturn((long) MESSAGE_SIZE);
+        when(otherRemote.getFiddMessageChunk(anyLong(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(new byte[(int) (long) invocation.getArgument(2)]));
+
+        DiskCacheConnector cache = connector(1024 * 1024);
+        DiskCacheConnector other = new DiskCacheConnector(otherRemote, "https://example.org/fidd", temp.resolve("cache"),
+                BLOCK_SIZE, 1024 * 1024, 1024);
+        assertArrayEquals(Arrays.copyOfRange(message, 0, 32), read(cache.getFiddMessageChunk(1, 0, 32, true)));
+        // Same message number, same cache directory - but another source
+        assertArrayEquals(new byte[32], read(other.getFiddMessageChunk(1, 0, 32, true)));
+        assertArrayEquals(Arrays.copyOfRange(message, 0, 32), read(connector(1024 * 1024).getFiddMessageChunk(1, 0, 32, true)));
+    }
+
+    @Test
+    void testHitsBumpLastModifiedTimeOncePerInterval() throws IOException {
+        read(connector(1024).getFiddMessageChunk(1, 0, 16, true));
+        DiskCacheConnector cache = connector(1024);
+        Path block = blockFile(cache, 0);
+        FileTime written = Files.getLastModifiedTime(block);
+
+        // Recently written - a hit leaves the file alone
+        read(cache.getFiddMessageChunk(1, 0, 16, true));
+        assertEquals(written, Files.getLastModifiedTime(block));
+
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 2 * DiskCacheConnector.TOUCH_INTERVAL_MILLIS);
+        Files.setLastModifiedTime(block, old);
+        DiskCacheConnector restarted = connector(1024);
+        read(restarted.getFiddMessageChunk(1, 0, 16, true));
+        assertTrue(Files.getLastModifiedTime(block).compareTo(old) > 0);
+    }
+
+    @Test
+    void testStacksUnderRamCache() throws IOException {
+        RamCacheConnector ram = RamCacheConnector.of(connector(1024 * 1024), null);
+        assertArrayEquals(Arrays.copyOfRange(message, 5, 95), read(ram.getFiddMessageChunk(1, 5, 90, true)));
+
+        RamCacheConnector restarted = RamCacheConnector.of(connector(1024 * 1024), null);
+        assertArrayEquals(Arrays.copyOfRange(message, 5, 95), read(restarted.getFiddMessageChunk(1, 5, 90, true)));
+        // Only the short last block, which isn't persisted, is fetched again
+        verify(remote, times(2)).getFiddMessageChunk(anyLong(), anyLong(), anyLong());
+        verify(remote, times(1)).getFiddMessageChunk(1L, 96L, 4L);
+        verify(remote, never()).getFiddMessageChunk(1L, 5L, 90L);
+    }
+}
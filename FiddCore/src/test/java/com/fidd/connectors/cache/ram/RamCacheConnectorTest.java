@@ -0,0 +1,197 @@
+package com.fidd.connectors.cache.ram;
+
+import com.fidd.connectors.FastFiddConnector;
+import com.fidd.connectors.FiddConnector;
+import com.fidd.connectors.folder.FolderFiddConnector;
+import com.fidd.core.connection.ImmutableCacheSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_MESSAGE_FILE_NAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RamCacheConnectorTest {
+    private static final int BLOCK_SIZE = 16;
+    private static final int MESSAGE_SIZE = 100;
+
+    @TempDir
+    Path temp;
+
+    private byte[] message;
+    private FolderFiddConnector folderConnector;
+
+    @BeforeEach
+    void setup() throws IOException {
+        message = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        Path messageFolder = temp.resolve("1");
+        Files.createDirectories(messageFolder);
+        Files.write(messageFolder.resolve(FIDD_MESSAGE_FILE_NAME), message);
+        folderConnector = spy(new FolderFiddConnector(temp));
+    }
+
+    private RamCacheConnector connector(long chunkCacheBytes, long maxCachedRangeBytes) {
+        return RamCacheConnector.of(folderConnector, ImmutableCacheSettings.builder()
+                .blockSize(BLOCK_SIZE)
+                .chunkCacheBytes(chunkCacheBytes)
+                .maxCachedRangeBytes(maxCachedRangeBytes)
+                .build());
+    }
+
+    private static byte[] read(InputStream stream) throws IOException {
+        try (stream) {
+            return stream.readAllBytes();
+        }
+    }
+
+    @Test
+    void testOverlappingRangesReuseCachedBlocks() throws IOException {
+        RamCacheConnector cache = connector(1024 * 1024, 1024);
+
+        assertArrayEquals(Arrays.copyOfRange(message, 10, 40), read(cache.getFiddMessageChunk(1, 10, 30, true)));
+        // Blocks 0..2 are fetched as one run
+        verify(folderConnector, times(1)).getFiddMessageChunks(eq(1L), eq(List.of(FastFiddConnector.Chunk.of(0, 48))));
+
+        // Fully covered by cached blocks
+        assertArrayEquals(Arrays.copyOfRange(message, 20, 45), read(cache.getFiddMessageChunk(1, 20, 25, true)));
+        verify(folderConnector, times(1)).getFiddMessageChunks(anyLong(), anyList());
+
+        // Only the missing block 3 is fetched
+        assertArrayEquals(Arrays.copyOfRange(message, 40, 60), read(cache.getFiddMessageChunk(1, 40, 20, true)));
+        verify(folderConnector, times(1)).getFiddMessageChunks(eq(1L), eq(List.of(FastFiddConnector.Chunk.of(48, 16))));
+        verify(folderConnector, times(2)).getFiddMessageChunks(anyLong(), anyList());
+    }
+
+    @Test
+    void testRangesAreClippedToMessageSize() throws IOException {
+        RamCacheConnector cache = connector(1024 * 1024, 1024);
+
+        assertArrayEquals(Arrays.copyOfRange(message, 90, 100), read(cache.getFiddMessageChunk(1, 90, 50, true)));
+        // Last block is short
+        verify(folderConnector, times(1)).getFiddMessageChunks(eq(1L), eq(List.of(FastFiddConnector.Chunk.of(80, 20))));
+        assertEquals(0, read(cache.getFiddMessageChunk(1, 100, 10, true)).length);
+    }
+
+    @Test
+    void testBatchFetchesMissingBlocksAsRuns() throws IOException {
+        RamCacheConnector cache = connector(1024 * 1024, 1024);
+        read(cache.getFiddMessageChunk(1, 32, 16, true));
+
+        byte[] result = read(cache.getFiddMessageChunks(1,
+                List.of(FastFiddConnector.Chunk.of(5, 10), FastFiddConnector.Chunk.of(30, 40)), true));
+
+        byte[] expected = new byte[50];
+        System.arraycopy(message, 5, expected, 0, 10);
+        System.arraycopy(message, 30, expected, 10, 40);
+        assertArrayEquals(expected, result);
+        // Block 2 was cached, blocks 0..1 and 3..4 are fetched in one batch
+        verify(folderConnector, times(1)).getFiddMessageChunks(eq(1L), eq(List.of(
+                FastFiddConnector.Chunk.of(0, 32), FastFiddConnector.Chunk.of(48, 32))));
+    }
+
+    @Test
+    void testCacheIsBoundedByBytes() throws IOException {
+        long twoBlocks = 2 * (BLOCK_SIZE + RamCacheConnector.BLOCK_ENTRY_OVERHEAD);
+        RamCacheConnector cache = connector(twoBlocks, 1024);
+
+        assertArrayEquals(message, read(cache.getFiddMessageChunk(1, 0, MESSAGE_SIZE, true)));
+        cache.blockCache.cleanUp();
+
+        long cachedBytes = cache.blockCache.asMap().values().stream()
+                .mapToLong(block -> block.length + RamCacheConnector.BLOCK_ENTRY_OVERHEAD).sum();
+        assertTrue(cachedBytes <= twoBlocks);
+    }
+
+    @Test
+    void testLargeRangesBypassCache() throws IOException {
+        RamCacheConnector cache = connector(1024 * 1024, 32);
+
+        assertArrayEquals(Arrays.copyOfRange(message, 0, 64), read(cache.getFiddMessageChunk(1, 0, 64, true)));
+        assertArrayEquals(Arrays.copyOfRange(message, 0, 64), read(cache.getFiddMessageChunk(1, 0, 64, true)));
+
+        verify(folderConnector, times(2)).getFiddMessageChunk(1, 0, 64);
+        assertEquals(0, cache.blockCache.estimatedSize());
+    }
+
+    @Test
+    void testConcurrentMissesShareOneFetch() throws Exception {
+        FiddConnector slow = mock(FiddConnector.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(slow.getFiddMessageSize(1L)).thenReturn((long) MESSAGE_SIZE);
+        when(slow.getFiddMessageChunk(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            int offset = (int) (long) invocation.getArgument(1);
+            int length = (int) (long) invocation.getArgument(2);
+            return new ByteArrayInputStream(message, offset, length);
+        });
+        RamCacheConnector cache = RamCacheConnector.of(slow, ImmutableCacheSettings.builder().blockSize(BLOCK_SIZE).build());
+        cache.getFiddMessageSize(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = executor.submit(() -> read(cache.getFiddMessageChunk(1, 0, 32, true)));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.getBlockCounters().misses() < 2 && System.nanoTime() < deadline) { Thread.sleep(1); }
+            // Block 1 is in flight for the first read, block 2 is fetched by the second one
+            Future<byte[]> second = executor.submit(() -> read(cache.getFiddMessageChunk(1, 16, 32, true)));
+            while (cache.getBlockCounters().coalesced() < 1 && System.nanoTime() < deadline) { Thread.sleep(1); }
+            release.countDown();
+
+            assertArrayEquals(Arrays.copyOfRange(message, 0, 32), first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(Arrays.copyOfRange(message, 16, 48), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(3, cache.getBlockCounters().misses());
+        assertEquals(1, cache.getBlockCounters().coalesced());
+        verify(slow, times(1)).getFiddMessageChunk(1, 0, 32);
+        verify(slow, times(1)).getFiddMessageChunk(1, 32, 16);
+    }
+
+    @Test
+    void testKeysAreCached() throws IOException {
+        FiddConnector backend = mock(FiddConnector.class);
+        when(backend.getFiddKey(eq(1L), any())).thenReturn(new byte[] { 7 });
+        when(backend.getFiddKeyCandidates(eq(1L), any())).thenReturn(List.of(new byte[] { 8 }));
+        RamCacheConnector cache = RamCacheConnector.of(backend, null);
+
+        // Equal key contents, different arrays
+        assertArrayEquals(new byte[] { 7 }, cache.getFiddKey(1, new byte[] { 1, 2 }));
+        assertArrayEquals(new byte[] { 7 }, cache.getFiddKey(1, new byte[] { 1, 2 }));
+        assertEquals(1, cache.getFiddKeyCandidates(1, new byte[] { 3 }).size());
+        assertEquals(1, cache.getFiddKeyCandidates(1, new byte[] { 3 }).size());
+
+        verify(backend, times(1)).getFiddKey(eq(1L), any());
+        verify(backend, times(1)).getFiddKeyCandidates(eq(1L), any());
+        assertEquals(1, cache.getFiddKeyCounters().hits());
+        assertEquals(1, cache.getFiddKeyCounters().misses());
+    }
+}
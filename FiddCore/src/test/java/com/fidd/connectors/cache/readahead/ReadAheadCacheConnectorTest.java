@@ -0,0 +1,164 @@
+package com.fidd.connectors.cache.readahead;
+
+import com.fidd.connectors.FiddCacheConnector;
+import com.fidd.connectors.cache.ram.RamCacheConnector;
+import com.fidd.connectors.folder.FolderFiddConnector;
+import com.fidd.core.connection.ImmutableCacheSettings;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_MESSAGE_FILE_NAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReadAheadCacheConnectorTest {
+    private static final long KB = 1024;
+    private static final long MESSAGE_SIZE = 100 * 1024 * KB;
+
+    private FiddCacheConnector cache;
+    private ReadAheadCacheConnector readAhead;
+
+    @BeforeEach
+    void setup() {
+        cache = mock(FiddCacheConnector.class);
+        when(cache.getFiddMessageSize(eq(1L), eq(true))).thenReturn(MESSAGE_SIZE);
+        when(cache.getFiddMessageChunk(anyLong(), anyLong(), anyLong(), eq(true)))
+                .thenAnswer(invocation -> new ByteArrayInputStream(new byte[0]));
+        // Prefetches run on the calling thread
+        readAhead = new ReadAheadCacheConnector(cache, MoreExecutors.newDirectExecutorService(),
+                256 * KB, 1024 * KB, 128 * KB, Duration.ZERO);
+    }
+
+    @Test
+    void testSequentialReadsArePrefetched() {
+        readAhead.getFiddMessageChunkWithReadAhead(1, 0, 64 * KB, MESSAGE_SIZE);
+        // Single read - no pattern yet
+        verify(cache, times(1)).getFiddMessageChunk(anyLong(), anyLong(), anyLong(), eq(true));
+
+        readAhead.getFiddMessageChunkWithReadAhead(1, 64 * KB, 64 * KB, MESSAGE_SIZE);
+        // Window of 256K after the read, in 128K chunks
+        verify(cache, times(1)).getFiddMessageChunk(1, 128 * KB, 128 * KB, true);
+        verify(cache, times(1)).getFiddMessageChunk(1, 256 * KB, 128 * KB, true);
+
+        // Still more than half of the window ahead - nothing new
+        readAhead.getFiddMessageChunkWithReadAhead(1, 128 * KB, 64 * KB, MESSAGE_SIZE);
+        verify(cache, times(5)).getFiddMessageChunk(anyLong(), anyLong(), anyLong(), eq(true));
+
+        // Topped up from where the previous prefetch stopped
+        readAhead.getFiddMessageChunkWithReadAhead(1, 192 * KB, 128 * KB, MESSAGE_SIZE);
+        verify(cache, times(1)).getFiddMessageChunk(1, 384 * KB, 128 * KB, true);
+        verify(cache, times(1)).getFiddMessageChunk(1, 512 * KB, 64 * KB, true);
+    }
+
+    @Test
+    void testSeekStopsPrefetching() {
+        readAhead.getFiddMessageChunkWithReadAhead(1, 0, 64 * KB, MESSAGE_SIZE);
+        readAhead.getFiddMessageChunkWithReadAhead(1, 10 * 1024 * KB, 64 * KB, MESSAGE_SIZE);
+        readAhead.getFiddMessageChunkWithReadAhead(1, 5 * 1024 * KB, 64 * KB, MESSAGE_SIZE);
+
+        verify(cache, times(3)).getFiddMessageChunk(anyLong(), anyLong(), anyLong(), eq(true));
+    }
+
+    @Test
+    void testPrefetchStopsAtReadAheadLimit() {
+        long sectionEnd = 200 * KB;
+        readAhead.getFiddMessageChunkWithReadAhead(1, 0, 64 * KB, sectionEnd);
+        readAhead.getFiddMessageChunkWithReadAhead(1, 64 * KB, 64 * KB, sectionEnd);
+
+        verify(cache, times(1)).getFiddMessageChunk(1, 128 * KB, 72 * KB, true);
+        verify(cache, times(3)).getFiddMessageChunk(anyLong(), anyLong(), anyLong(), eq(true));
+    }
+
+    @Test
+    void testWindowFollowsConsumptionRate() {
+        ReadAheadCacheConnector rateBased = new ReadAheadCacheConnector(cache, MoreExecutors.newDirectExecutorService(),
+                256 * KB, 4096 * KB, 128 * KB, Duration.ofSeconds(2));
+        ReadAheadCacheConnector.ReadStream stream = new ReadAheadCacheConnector.ReadStream();
+
+        stream.bytesPerSecond = 512 * KB;
+        assertEquals(1024 * KB, rateBased.window(stream, 64 * KB));
+
+        stream.bytesPerSecond = 16;
+        assertEquals(256 * KB, rateBased.window(stream, 64 * KB));
+
+        stream.bytesPerSecond = 100 * 1024 * KB;
+        assertEquals(4096 * KB, rateBased.window(stream, 64 * KB));
+    }
+
+    @Test
+    void testZeroReadsDontEndAChunkedRead() throws IOException {
+        byte[] message = new byte[(int) (300 * KB)];
+        new Random(1).nextBytes(message);
+        // Every chunk returns 0 on every other read, as a remote stream waiting for data might
+        when(cache.getFiddMessageChunk(eq(1L), anyLong(), anyLong(), eq(true))).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(1);
+            int length = (int) (long) invocation.getArgument(2);
+            return new FilterInputStream(new ByteArrayInputStream(message, offset, length)) {
+                boolean stall = true;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    stall = !stall;
+                    return stall ? 0 : super.read(b, off, len);
+                }
+            };
+        });
+
+        try (InputStream stream = readAhead.getFiddMessageChunkWithReadAhead(1, 0, message.length, message.length)) {
+            assertArrayEquals(message, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void testOpenEndedReadIsServedFromPrefetchedBlocks(@TempDir Path temp) throws IOException {
+        byte[] message = new byte[(int) (8 * 1024 * KB)];
+        new Random(1).nextBytes(message);
+        Path messageFolder = temp.resolve("1");
+        Files.createDirectories(messageFolder);
+        Files.write(messageFolder.resolve(FIDD_MESSAGE_FILE_NAME), message);
+        FolderFiddConnector folderConnector = spy(new FolderFiddConnector(temp));
+
+        // Default 4MB maxCachedRangeBytes - less than the open-ended read below
+        RamCacheConnector ramCache = RamCacheConnector.of(folderConnector, ImmutableCacheSettings.builder()
+                .chunkCacheBytes(64 * 1024 * KB)
+                .build());
+        ReadAheadCacheConnector connector = new ReadAheadCacheConnector(ramCache, MoreExecutors.newDirectExecutorService(),
+                2048 * KB, 2048 * KB, 256 * KB, Duration.ZERO);
+
+        // A media player asks for everything from 0 to the end of the file
+        try (InputStream stream = connector.getFiddMessageChunkWithReadAhead(1, 0, message.length, message.length)) {
+            // The second 256K chunk continues the first one, and prefetches [512K, 2.5M)
+            assertArrayEquals(Arrays.copyOfRange(message, 0, (int) (512 * KB)), stream.readNBytes((int) (512 * KB)));
+            clearInvocations(folderConnector);
+
+            // More than half of the window stays ahead of these reads - all of them are cache hits
+            assertArrayEquals(Arrays.copyOfRange(message, (int) (512 * KB), (int) (1280 * KB)),
+                    stream.readNBytes((int) (768 * KB)));
+            verify(folderConnector, never()).getFiddMessageChunk(anyLong(), anyLong(), anyLong());
+
+            // The rest still reads to the end of the message
+            assertArrayEquals(Arrays.copyOfRange(message, (int) (1280 * KB), message.length), stream.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.fidd.connectors.folder;
+
+import com.fidd.core.common.PositionalByteChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileChannelPoolTest {
+    @TempDir
+    Path temp;
+
+    private Path createFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) { data[i] = (byte) i; }
+        Path file = temp.resolve("fidd.message");
+        Files.write(file, data);
+        return file;
+    }
+
+    private static byte[] expected(long offset, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) { data[i] = (byte) (offset + i); }
+        return data;
+    }
+
+    @Test
+    void testConcurrentStreamsShareOneChannel() throws IOException {
+        Path file = createFile(1000);
+        try (FileChannelPool pool = new FileChannelPool()) {
+            try (InputStream in1 = pool.getSubInputStream(file, 10, 100);
+                 InputStream in2 = pool.getSubInputStream(file, 500, 200)) {
+                assertSame(pool.channels.getIfPresent(file), pool.channels.getIfPresent(file));
+                assertEquals(3, pool.channels.getIfPresent(file).references.get());
+
+                // Interleaved reads don't affect each other's position
+                assertArrayEquals(expected(10, 50), in1.readNBytes(50));
+                assertArrayEquals(expected(500, 50), in2.readNBytes(50));
+                assertArrayEquals(expected(60, 50), in1.readAllBytes());
+                assertArrayEquals(expected(550, 150), in2.readAllBytes());
+            }
+            assertEquals(1, pool.channels.getIfPresent(file).references.get());
+        }
+    }
+
+    @Test
+    void testRangePastEndOfFile() throws IOException {
+        Path file = createFile(100);
+        try (FileChannelPool pool = new FileChannelPool();
+             InputStream in = pool.getSubInputStream(file, 90, 50)) {
+            assertArrayEquals(expected(90, 10), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testSkip() throws IOException {
+        Path file = createFile(100);
+        try (FileChannelPool pool = new FileChannelPool();
+             InputStream in = pool.getSubInputStream(file, 10, 50)) {
+            assertEquals(20, in.skip(20));
+            assertEquals(30, in.read());
+            assertEquals(29, in.skip(100));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void testMappedReadsAcrossRegions() throws IOException {
+        Path file = createFile(1000);
+        try (FileChannelPool pool = new FileChannelPool(4, Duration.ofMinutes(1), 64L);
+             InputStream in = pool.getSubInputStream(file, 50, 900)) {
+            assertArrayEquals(expected(50, 900), in.readAllBytes());
+            assertEquals(15, pool.channels.getIfPresent(file).mappedRegions.size());
+        }
+    }
+
+    @Test
+    void testEvictedChannelStaysOpenUntilStreamClosed() throws IOException {
+        Path file = createFile(100);
+        try (FileChannelPool pool = new FileChannelPool()) {
+            InputStream in = pool.getSubInputStream(file, 0, 100);
+            FileChannelPool.SharedChannel sharedChannel = pool.channels.getIfPresent(file);
+
+            pool.invalidate(file);
+            assertTrue(sharedChannel.channel.isOpen());
+            assertArrayEquals(expected(0, 100), in.readAllBytes());
+
+            in.close();
+            assertFalse(sharedChannel.channel.isOpen());
+
+            // Next request opens a new channel
+            try (InputStream in2 = pool.getSubInputStream(file, 0, 10)) {
+                assertArrayEquals(expected(0, 10), in2.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testMissingFile() {
+        try (FileChannelPool pool = new FileChannelPool()) {
+            assertThrows(FileNotFoundException.class, () -> pool.getSubInputStream(temp.resolve("missing"), 0, 10));
+        }
+    }
+
+    @Test
+    void testConnectorReadsThroughPool() throws IOException {
+        Path msg = temp.resolve("1");
+        Files.createDirectories(msg);
+        Files.write(msg.resolve("fidd.message"), "abcdef".getBytes());
+
+        FileChannelPool pool = new FileChannelPool();
+        FolderFiddConnector fidd = new FolderFiddConnector(temp, pool);
+        try (InputStream in = fidd.getFiddMessageChunk(1, 2, 3)) {
+            assertEquals("cde", new String(in.readAllBytes()));
+        }
+        assertEquals(1, pool.channels.estimatedSize());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> fidd.getFiddMessageChunk(2, 0, 1));
+        assertTrue(e.getCause() instanceof FileNotFoundException);
+        pool.close();
+    }
+
+    @Test
+    void testSubChannelReadAndTransfer() throws IOException {
+        Path file = createFile(1000);
+        try (FileChannelPool pool = new FileChannelPool()) {
+            try (PositionalByteChannel channel = pool.getSubChannel(file, 100, 300)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(50);
+                assertEquals(50, channel.read(buffer));
+                byte[] head = new byte[50];
+                buffer.flip().get(head);
+                assertArrayEquals(expected(100, 50), head);
+                assertEquals(250, channel.remaining());
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(250, channel.transferTo(Channels.newChannel(out), Long.MAX_VALUE));
+                assertArrayEquals(expected(150, 250), out.toByteArray());
+                assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+                assertEquals(2, pool.channels.getIfPresent(file).references.get());
+            }
+            assertEquals(1, pool.channels.getIfPresent(file).references.get());
+        }
+    }
+}
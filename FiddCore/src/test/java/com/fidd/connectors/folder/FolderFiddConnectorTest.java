@@ -1,5 +1,6 @@
 package com.fidd.connectors.folder;
 
+import com.fidd.connectors.FastFiddConnector;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -9,10 +10,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.List;
 
 import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_KEY_FILE_NAME;
 import static com.fidd.connectors.folder.FolderFiddConstants.ENCRYPTED_FIDD_KEY_SUBFOLDER;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -545,4 +548,95 @@ public class FolderFiddConnectorTest {
         FolderFiddConnector fidd = new FolderFiddConnector(temp.toString());
         assertEquals("sig1", new String(fidd.getFiddMessageSignature(1, 1)));
     }
+
+    // ------------------------------------------------------------
+    // message number index
+    // ------------------------------------------------------------
+    private static final Duration WATCH_TIMEOUT = Duration.ofSeconds(10);
+
+    /** Wakes up on each folder change the index is told about, until the tail is as expected or the time is up */
+    private static List<Long> awaitTail(FolderFiddConnector fidd, List<Long> expected) throws InterruptedException {
+        List<Long> tail = fidd.getMessageNumbersTail(10);
+        WatchedMessageNumberIndex index = checkNotNull(fidd.messageNumberIndex);
+        long deadline = System.nanoTime() + WATCH_TIMEOUT.toNanos();
+        while (!expected.equals(tail) && index.awaitRefresh(Duration.ofNanos(deadline - System.nanoTime()))) {
+            tail = fidd.getMessageNumbersTail(10);
+        }
+        return tail;
+    }
+
+    @Test
+    void testMessageNumberIndexFollowsFolderChanges() throws IOException, InterruptedException {
+        createMessageFolder(1);
+        createMessageFolder(2);
+
+        try (FolderFiddConnector fidd = new FolderFiddConnector(temp)) {
+            assertEquals(List.of(2L, 1L), fidd.getMessageNumbersTail(10));
+
+            createMessageFolder(3);
+            write(temp.resolve("4"), "not a message folder");
+            Files.createDirectories(temp.resolve("not-a-number"));
+            assertEquals(List.of(3L, 2L, 1L), awaitTail(fidd, List.of(3L, 2L, 1L)));
+
+            delete(temp.resolve("1"));
+            assertEquals(List.of(3L, 2L), awaitTail(fidd, List.of(3L, 2L)));
+        }
+    }
+
+    // ------------------------------------------------------------
+    // FastFiddConnector
+    // ------------------------------------------------------------
+    @Test
+    void testGetFiddMessageChunks() throws IOException {
+        Path msg = createMessageFolder(1);
+        write(msg.resolve("fidd.message"), "abcdefghij");
+
+        try (FolderFiddConnector fidd = new FolderFiddConnector(temp);
+             InputStream in = fidd.getFiddMessageChunks(1, List.of(
+                     FastFiddConnector.Chunk.of(1, 2),
+                     FastFiddConnector.Chunk.of(7, 3),
+                     FastFiddConnector.Chunk.of(0, 1)))) {
+            assertEquals("bchija", new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    void testGetMessageNumbersAndLengthsTail() throws IOException {
+        write(createMessageFolder(1).resolve("fidd.message"), "a");
+        write(createMessageFolder(2).resolve("fidd.message"), "bb");
+        createMessageFolder(3); // no message file yet
+
+        try (FolderFiddConnector fidd = new FolderFiddConnector(temp)) {
+            List<FastFiddConnector.MessageNumberAndLength> tail = fidd.getMessageNumbersAndLengthsTail(10);
+            assertEquals(2, tail.size());
+            assertEquals(2L, tail.get(0).messageNumber());
+            assertEquals(2L, tail.get(0).messageLength());
+            assertEquals(1L, tail.get(1).messageNumber());
+            assertEquals(1L, tail.get(1).messageLength());
+        }
+    }
+
+    @Test
+    void testGetFiddMessageSignaturesPaged() throws IOException {
+        Path msg = createMessageFolder(1);
+        for (int i = 0; i < 5; i++) {
+            write(msg.resolve("fidd.message." + i + ".sign"), "sig" + i);
+        }
+
+        FolderFiddConnector fidd = new FolderFiddConnector(temp) {
+            @Override
+            protected int pageSize() { return 2; }
+        };
+        FastFiddConnector.PageResult<byte[]> page = fidd.getFiddMessageSignatures(1, 1);
+        assertEquals(2, page.items().size());
+        assertEquals("sig2", new String(page.items().get(0)));
+        assertEquals("sig3", new String(page.items().get(1)));
+        assertFalse(page.last());
+
+        page = fidd.getFiddMessageSignatures(1, 2);
+        assertEquals(1, page.items().size());
+        assertEquals("sig4", new String(page.items().get(0)));
+        assertTrue(page.last());
+        fidd.close();
+    }
 }
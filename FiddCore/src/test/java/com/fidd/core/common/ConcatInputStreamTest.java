@@ -0,0 +1,87 @@
+package com.fidd.core.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcatInputStreamTest {
+    /** Returns 0 on every other read, as a stream waiting for data might */
+    static class StallingInputStream extends FilterInputStream {
+        boolean stall = true;
+        boolean closed;
+
+        StallingInputStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            stall = !stall;
+            return stall ? 0 : super.read(b, off, Math.min(len, 2));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    void testZeroReadsDontEndAStream() throws IOException {
+        StallingInputStream first = new StallingInputStream("abcde".getBytes());
+        StallingInputStream second = new StallingInputStream("fgh".getBytes());
+
+        try (ConcatInputStream in = new ConcatInputStream(List.of(first, second))) {
+            assertArrayEquals("abcdefgh".getBytes(), in.readAllBytes());
+        }
+        assertTrue(first.closed);
+        assertTrue(second.closed);
+    }
+
+    @Test
+    void testCloseClosesUnreadStreams() throws IOException {
+        StallingInputStream first = new StallingInputStream("abc".getBytes());
+        StallingInputStream second = new StallingInputStream("def".getBytes());
+
+        ConcatInputStream in = new ConcatInputStream(List.of(first, second));
+        in.close();
+
+        assertTrue(first.closed);
+        assertTrue(second.closed);
+    }
+
+    @Test
+    void testLazyOpensStreamsWhenReached() throws IOException {
+        List<String> opened = new ArrayList<>();
+        Iterator<String> parts = List.of("ab", "cd", "ef").iterator();
+        Iterator<InputStream> streams = new Iterator<>() {
+            @Override
+            public boolean hasNext() { return parts.hasNext(); }
+
+            @Override
+            public InputStream next() {
+                String part = parts.next();
+                opened.add(part);
+                return new ByteArrayInputStream(part.getBytes());
+            }
+        };
+
+        try (ConcatInputStream in = ConcatInputStream.lazy(streams)) {
+            assertEquals('a', in.read());
+            assertEquals('b', in.read());
+            assertEquals(List.of("ab"), opened);
+            assertEquals('c', in.read());
+        }
+        // Closing doesn't open the rest
+        assertEquals(List.of("ab", "cd"), opened);
+    }
+}
@@ -2,9 +2,12 @@ package com.fidd.core.common;
 
 import com.fidd.base.BaseRepositories;
 import com.fidd.base.Repository;
+import com.fidd.connectors.FastFiddConnector;
+import com.fidd.connectors.FiddCacheConnector;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.fiddkey.FiddKey;
+import com.fidd.core.fiddkey.ImmutableSection;
 import com.fidd.core.logicalfile.LogicalFileMetadata;
 import com.fidd.core.logicalfile.LogicalFileMetadataSerializer;
 import com.fidd.core.metadata.MetadataContainer;
@@ -16,6 +19,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -217,6 +221,62 @@ public class LogicalFileMetadataUtilTest {
         );
     }
 
+    @Test
+    void testGetLogicalFileMetadata_allHeadersInOneBatch() throws Exception {
+        BaseRepositories repos = mock(BaseRepositories.class);
+        FiddCacheConnector connector = mock(FiddCacheConnector.class);
+        EncryptionAlgorithm encryption = mock(EncryptionAlgorithm.class);
+        MetadataContainerSerializer containerSerializer = mock(MetadataContainerSerializer.class);
+        LogicalFileMetadataSerializer metadataSerializer = mock(LogicalFileMetadataSerializer.class);
+
+        List<FiddKey.Section> sections = List.of(
+                ImmutableSection.builder().sectionOffset(100).sectionLength(1000).encryptionAlgorithm("AES").headerLength(3).build(),
+                ImmutableSection.builder().sectionOffset(2000).sectionLength(1000).encryptionAlgorithm("AES").headerLength(2).build());
+
+        Repository<EncryptionAlgorithm> encryptionAlgorithmRepo = mock(Repository.class);
+        when(repos.encryptionAlgorithmRepo()).thenReturn(encryptionAlgorithmRepo);
+        when(encryptionAlgorithmRepo.get("AES")).thenReturn(encryption);
+        Repository<MetadataContainerSerializer> metadataContainerFormatRepo = mock(Repository.class);
+        when(repos.metadataContainerFormatRepo()).thenReturn(metadataContainerFormatRepo);
+        when(metadataContainerFormatRepo.get("BLOBS")).thenReturn(containerSerializer);
+        Repository<LogicalFileMetadataSerializer> logicalFileMetadataFormatRepo = mock(Repository.class);
+        when(repos.logicalFileMetadataFormatRepo()).thenReturn(logicalFileMetadataFormatRepo);
+        when(logicalFileMetadataFormatRepo.get("FMT")).thenReturn(metadataSerializer);
+
+        // Each header deserializes to a container carrying its own bytes as metadata
+        when(containerSerializer.deserialize(any())).thenAnswer(invocation -> {
+            MetadataContainer container = mock(MetadataContainer.class);
+            when(container.metadataFormat()).thenReturn("FMT");
+            when(container.metadata()).thenReturn(invocation.getArgument(0));
+            return MetadataContainerAndLength.of(5, container);
+        });
+        LogicalFileMetadata first = mock(LogicalFileMetadata.class);
+        LogicalFileMetadata second = mock(LogicalFileMetadata.class);
+        when(metadataSerializer.deserialize(new byte[]{1, 2, 3})).thenReturn(first);
+        when(metadataSerializer.deserialize(new byte[]{4, 5})).thenReturn(second);
+
+        when(connector.getFiddMessageChunks(eq(1L), any(), eq(true)))
+                .thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+
+        doAnswer(invocation -> {
+            InputStream in = invocation.getArgument(1);
+            var out = invocation.getArgument(2, java.io.ByteArrayOutputStream.class);
+            out.write(in.readAllBytes());
+            return null;
+        }).when(encryption).decrypt(any(), any(), any(), anyBoolean());
+
+        List<Pair<LogicalFileMetadata, MetadataContainerAndLength>> result =
+                LogicalFileMetadataUtil.getLogicalFileMetadata(repos, connector, true, 1L, sections);
+
+        assertEquals(2, result.size());
+        assertSame(first, result.get(0).getLeft());
+        assertSame(second, result.get(1).getLeft());
+        verify(connector).getFiddMessageChunks(1L,
+                List.of(FastFiddConnector.Chunk.of(100, 3), FastFiddConnector.Chunk.of(2000, 2)), true);
+        verify(connector, never()).getFiddMessageChunk(anyLong(), anyLong(), anyLong(), anyBoolean());
+        verify(connector, never()).getFiddMessageChunk(anyLong(), anyLong(), anyLong());
+    }
+
     @Test
     void testConcat() {
         byte[] a = {1, 2};
@@ -5,12 +5,17 @@ import com.fidd.base.Repository;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256CbcEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256GcmSegmentedEncryptionAlgorithm;
 import com.fidd.core.fiddkey.FiddKey;
+import com.fidd.core.random.plain.PlainRandomGeneratorType;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.InvalidAlgorithmParameterException;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -51,12 +56,11 @@ public class LogicalFileUtilChunkTest {
         when(section.encryptionAlgorithm()).thenReturn("AES");
         when(section.encryptionKeyData()).thenReturn(new byte[]{1,2,3});
         when(section.sectionOffset()).thenReturn(100L);
-        when(section.sectionLength()).thenReturn(500L);
+        when(section.sectionLength()).thenReturn(2000L);
 
-        // Fake ciphertext offset mapping
-        when(algorithm.ciphertextPosToPlaintextPos(200L)).thenReturn(100L);
-        when(algorithm.plaintextPosToCiphertextPos(200L)).thenReturn(900L);
-        when(algorithm.plaintextLengthToCiphertextLength(20L)).thenReturn(500L);
+        // Fake ciphertext range mapping for plaintext offset fileOffset + dataOffset
+        when(algorithm.ciphertextRangeStart(250L)).thenReturn(950L);
+        when(algorithm.ciphertextRangeLength(250L, 20L)).thenReturn(500L);
 
         // Fake chunk returned by connector
         InputStream encryptedChunk = new ByteArrayInputStream(new byte[]{9,9,9});
@@ -83,7 +87,7 @@ public class LogicalFileUtilChunkTest {
         // Verify correct parameters
         verify(algorithm).getRandomAccessDecryptedStream(
                 eq(new byte[]{1,2,3}),
-                eq(200L),     // mapped ciphertext offset
+                eq(250L),     // plaintext offset
                 eq(20L),      // dataLength
                 eq(encryptedChunk)
         );
@@ -105,9 +109,8 @@ public class LogicalFileUtilChunkTest {
         when(section.sectionOffset()).thenReturn(0L);
         when(section.sectionLength()).thenReturn(10L);
 
-        when(algorithm.ciphertextPosToPlaintextPos(0L)).thenReturn(0L);
-        when(algorithm.plaintextPosToCiphertextPos(0L)).thenReturn(0L);
-        when(algorithm.plaintextLengthToCiphertextLength(1L)).thenReturn(10L);
+        when(algorithm.ciphertextRangeStart(0L)).thenReturn(0L);
+        when(algorithm.ciphertextRangeLength(0L, 1L)).thenReturn(10L);
 
         InputStream encrypted = new ByteArrayInputStream(new byte[]{1});
         when(connector.getFiddMessageChunk(5L, 0L, 10L)).thenReturn(encrypted);
@@ -128,4 +131,111 @@ public class LogicalFileUtilChunkTest {
                 eq(encrypted)
         );
     }
+
+    @Test
+    void getLogicalFileInputStreamChunk_decryptsCbcRangesWithinMessage() throws Exception {
+        BaseRepositories repos = mock(BaseRepositories.class);
+        Repository encRepo = mock(Repository.class);
+        FiddConnector connector = mock(FiddConnector.class);
+        FiddKey.Section section = mock(FiddKey.Section.class);
+        Aes256CbcEncryptionAlgorithm algorithm = new Aes256CbcEncryptionAlgorithm();
+
+        byte[] key = algorithm.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] plaintext = new byte[1000];
+        for (int i = 0; i < plaintext.length; i++) { plaintext[i] = (byte) (i * 7); }
+        byte[] ciphertext = algorithm.encrypt(key, plaintext);
+
+        // Section between random-looking gaps, so reading past it would feed the cipher garbage
+        long sectionOffset = 333;
+        byte[] message = new byte[(int) sectionOffset + ciphertext.length + 100];
+        Arrays.fill(message, (byte) 0x5A);
+        System.arraycopy(ciphertext, 0, message, (int) sectionOffset, ciphertext.length);
+
+        when(repos.encryptionAlgorithmRepo()).thenReturn(encRepo);
+        when(encRepo.get("AES-256-CBC")).thenReturn(algorithm);
+        when(section.encryptionAlgorithm()).thenReturn("AES-256-CBC");
+        when(section.encryptionKeyData()).thenReturn(key);
+        when(section.sectionOffset()).thenReturn(sectionOffset);
+        when(section.sectionLength()).thenReturn((long) ciphertext.length);
+        when(connector.getFiddMessageChunk(eq(1L), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            return new ByteArrayInputStream(message, (int) offset, (int) length);
+        });
+
+        long fileOffset = 40;
+        assertEquals(plaintext.length - fileOffset,
+                LogicalFileUtil.getLogicalFileLength(repos, connector, 1L, section, fileOffset));
+
+        for (long[] range : new long[][] { {0, 10}, {27, 100}, {500, 460}, {959, 1}, {900, 500} }) {
+            long dataOffset = range[0];
+            long dataLength = range[1];
+            int from = (int) (fileOffset + dataOffset);
+            int to = (int) Math.min(plaintext.length, from + dataLength);
+            try (InputStream chunk = LogicalFileUtil.getLogicalFileInputStreamChunk(repos, connector, 1L, section,
+                    fileOffset, dataOffset, dataLength)) {
+                assertArrayEquals(Arrays.copyOfRange(plaintext, from, to), chunk.readAllBytes(),
+                        "range " + dataOffset + "+" + dataLength);
+            }
+        }
+    }
+
+    @Test
+    void getLogicalFileInputStreamChunk_authenticatesGcmSegmentsServed() throws Exception {
+        BaseRepositories repos = mock(BaseRepositories.class);
+        Repository encRepo = mock(Repository.class);
+        FiddConnector connector = mock(FiddConnector.class);
+        FiddKey.Section section = mock(FiddKey.Section.class);
+        Aes256GcmSegmentedEncryptionAlgorithm algorithm = new Aes256GcmSegmentedEncryptionAlgorithm();
+        int segment = Aes256GcmSegmentedEncryptionAlgorithm.SEGMENT_SIZE;
+
+        byte[] key = algorithm.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] plaintext = new byte[2 * segment + 1000];
+        for (int i = 0; i < plaintext.length; i++) { plaintext[i] = (byte) (i * 7); }
+        byte[] ciphertext = algorithm.encrypt(key, plaintext);
+        assertEquals(algorithm.plaintextLengthToCiphertextLength(plaintext.length), ciphertext.length);
+
+        long sectionOffset = 333;
+        byte[] message = new byte[(int) sectionOffset + ciphertext.length + 100];
+        Arrays.fill(message, (byte) 0x5A);
+        System.arraycopy(ciphertext, 0, message, (int) sectionOffset, ciphertext.length);
+
+        when(repos.encryptionAlgorithmRepo()).thenReturn(encRepo);
+        when(encRepo.get(algorithm.name())).thenReturn(algorithm);
+        when(section.encryptionAlgorithm()).thenReturn(algorithm.name());
+        when(section.encryptionKeyData()).thenReturn(key);
+        when(section.sectionOffset()).thenReturn(sectionOffset);
+        when(section.sectionLength()).thenReturn((long) ciphertext.length);
+        when(connector.getFiddMessageChunk(eq(1L), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            return new ByteArrayInputStream(message, (int) offset, (int) length);
+        });
+
+        long fileOffset = 40;
+        assertEquals(plaintext.length - fileOffset,
+                LogicalFileUtil.getLogicalFileLength(repos, connector, 1L, section, fileOffset));
+
+        long[][] ranges = { {0, 10}, {segment - 100, 200}, {2 * segment - 40, 1000}, {2 * segment + 900, 500} };
+        for (long[] range : ranges) {
+            int from = (int) (fileOffset + range[0]);
+            int to = (int) Math.min(plaintext.length, from + range[1]);
+            try (InputStream chunk = LogicalFileUtil.getLogicalFileInputStreamChunk(repos, connector, 1L, section,
+                    fileOffset, range[0], range[1])) {
+                assertArrayEquals(Arrays.copyOfRange(plaintext, from, to), chunk.readAllBytes(),
+                        "range " + range[0] + "+" + range[1]);
+            }
+        }
+
+        // Tampering with the second segment only fails the reads that touch it
+        message[(int) sectionOffset + segment + Aes256GcmSegmentedEncryptionAlgorithm.TAG_SIZE + 5] ^= 1;
+        try (InputStream chunk = LogicalFileUtil.getLogicalFileInputStreamChunk(repos, connector, 1L, section,
+                fileOffset, 0, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(plaintext, 40, 140), chunk.readAllBytes());
+        }
+        try (InputStream chunk = LogicalFileUtil.getLogicalFileInputStreamChunk(repos, connector, 1L, section,
+                fileOffset, segment, 100)) {
+            assertThrows(IOException.class, chunk::readAllBytes);
+        }
+    }
 }
@@ -84,6 +84,7 @@ public class YamlFiddConnectionSerializerTest {
             @Override public URL url() { return null; } // Jackson will choke on null URL
             @Override public String publicKeyFormat() { return null; }
             @Override public byte[] publicKeyBytes() { return null; }
+            @Override public CacheSettings cacheSettings() { return null; }
         };
 
         RuntimeException ex = assertThrows(RuntimeException.class,
@@ -0,0 +1,54 @@
+package com.fidd.core.crc;
+
+import com.fidd.core.crc.crc32.Crc32Calculator;
+import com.fidd.core.encryption.EncryptionAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DefaultCrcCallbackTest {
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    @Test
+    void testRangesAndBuffersMatchWholeArray() {
+        byte[] expected = new Crc32Calculator().calculateCrc(DATA);
+
+        EncryptionAlgorithm.CrcCallback ranges = new Crc32Calculator().newCrcCallback();
+        ranges.write(DATA, 0, 10);
+        ranges.write(DATA, 10, DATA.length - 10);
+        assertArrayEquals(expected, ranges.getCrc());
+
+        ByteBuffer heap = ByteBuffer.wrap(DATA);
+        ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length).put(DATA).flip();
+        for (ByteBuffer buffer : new ByteBuffer[] { heap, direct }) {
+            EncryptionAlgorithm.CrcCallback callback = new Crc32Calculator().newCrcCallback();
+            callback.write(buffer.slice(0, 5));
+            buffer.position(5);
+            callback.write(buffer);
+            assertEquals(5, buffer.position(), "The buffer's position should be left alone");
+            assertArrayEquals(expected, callback.getCrc());
+        }
+    }
+
+    @Test
+    void testDefaultMethodsFallBackToWholeArrays() {
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        EncryptionAlgorithm.CrcCallback callback = new EncryptionAlgorithm.CrcCallback() {
+            @Override public void write(byte[] b) { seen.writeBytes(b); }
+            @Override public void write(int b) { seen.write(b); }
+            @Override public byte[] getCrc() { return new byte[0]; }
+        };
+
+        callback.write(DATA, 4, 5);
+        ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length).put(DATA).flip().position(10);
+        EncryptionAlgorithm.CrcCallback.writeAll(List.of(callback), direct);
+
+        assertEquals("quick" + new String(DATA, 10, DATA.length - 10), seen.toString());
+        assertEquals(10, direct.position());
+    }
+}
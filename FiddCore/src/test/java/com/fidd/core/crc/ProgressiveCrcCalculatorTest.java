@@ -1,11 +1,22 @@
 package com.fidd.core.crc;
 import com.fidd.core.crc.adler32.Adler32Calculator;
+import com.fidd.core.crc.crc32.Crc32Calculator;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -109,4 +120,108 @@ public class ProgressiveCrcCalculatorTest {
 
         assertArrayEquals(fullCrc, progressiveCrc);
     }
+
+    @Test
+    void testParallelFileChannelMatchesSerial(@TempDir Path tempDir) throws IOException {
+        Random random = new Random(42);
+        byte[] data = new byte[3 * (int) ProgressiveCrcCalculator.MIN_TASK_BYTES + 12345];
+        random.nextBytes(data);
+        Path file = tempDir.resolve("data.bin");
+        Files.write(file, data);
+        List<CrcCalculator> calculators = List.of(new Adler32Calculator(), new Crc32Calculator());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Many chunks per task, chunks spanning direct buffers, one chunk for everything
+            for (long chunkSize : new long[] { 1000, 100_000, 5_000_000, data.length + 1L }) {
+                List<byte[]> progressiveCrcs = ProgressiveCrcCalculator.calculateProgressiveCrcs(channel, chunkSize,
+                        calculators, pool);
+                for (int i = 0; i < calculators.size(); i++) {
+                    byte[] expected = ProgressiveCrcCalculator.calculateProgressiveCrc(new ByteArrayInputStream(data),
+                            chunkSize, calculators.get(i));
+                    assertArrayEquals(expected, progressiveCrcs.get(i), "chunk size " + chunkSize + ", calculator " + i);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelEmptyFile(@TempDir Path tempDir) throws IOException {
+        Path file = Files.createFile(tempDir.resolve("empty.bin"));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(0, ProgressiveCrcCalculator.calculateProgressiveCrc(channel, 5, adlerCalc,
+                    ForkJoinPool.commonPool()).length);
+        }
+    }
+
+    @Test
+    void testParallelReadFailureIsRethrown() {
+        ProgressiveCrcCalculator.RegionReader reader = (position, length, callbacks) -> {
+            if (position > 0) {
+                throw new IOException("Read failed at " + position);
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> ProgressiveCrcCalculator.calculateProgressiveCrcs(reader,
+                10 * ProgressiveCrcCalculator.MIN_TASK_BYTES, ProgressiveCrcCalculator.MIN_TASK_BYTES,
+                List.of(adlerCalc), ForkJoinPool.commonPool()));
+        assertTrue(e.getMessage().startsWith("Read failed"));
+    }
+
+    @Test
+    void testFailureWaitsForRunningReads() throws InterruptedException {
+        CountDownLatch secondReadStarted = new CountDownLatch(1);
+        AtomicBoolean secondReadFinished = new AtomicBoolean();
+        ProgressiveCrcCalculator.RegionReader reader = (position, length, callbacks) -> {
+            if (position == 0) {
+                try {
+                    secondReadStarted.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                throw new IOException("Read failed at " + position);
+            }
+            secondReadStarted.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            secondReadFinished.set(true);
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertThrows(IOException.class, () -> ProgressiveCrcCalculator.calculateProgressiveCrcs(reader,
+                    2 * ProgressiveCrcCalculator.MIN_TASK_BYTES, ProgressiveCrcCalculator.MIN_TASK_BYTES,
+                    List.of(adlerCalc), pool));
+            // The failure only surfaces once the read still running on the other worker is done
+            assertTrue(secondReadFinished.get());
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testChunkerMatchesWholeStream() throws IOException {
+        Random random = new Random(7);
+        byte[] data = new byte[100_003];
+        random.nextBytes(data);
+
+        for (long chunkSize : new long[] { 1, 4096, 10_000, data.length, data.length + 1L }) {
+            ProgressiveCrcChunker chunker = new ProgressiveCrcChunker(adlerCalc, chunkSize);
+            // Pieces unaligned with the chunks
+            for (int off = 0; off < data.length; ) {
+                int len = Math.min(random.nextInt(9000), data.length - off);
+                chunker.write(data, off, len);
+                off += len;
+            }
+            byte[] expected = ProgressiveCrcCalculator.calculateProgressiveCrc(new ByteArrayInputStream(data), chunkSize, adlerCalc);
+            assertArrayEquals(expected, chunker.getCrc(), "chunk size " + chunkSize);
+        }
+        assertEquals(0, new ProgressiveCrcChunker(adlerCalc, 5).getCrc().length);
+    }
 }
@@ -0,0 +1,74 @@
+package com.fidd.core.encryption;
+
+import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
+import com.fidd.core.random.plain.PlainRandomGeneratorType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CipherContextCacheTest {
+    @Test
+    void testContextIsPreparedOncePerKey() {
+        AtomicInteger prepared = new AtomicInteger();
+        CipherContextCache<String> cache = new CipherContextCache<>(keyData -> {
+            prepared.incrementAndGet();
+            return Arrays.toString(keyData);
+        });
+
+        byte[] key = { 1, 2, 3 };
+        String context = cache.get(key);
+        assertSame(context, cache.get(new byte[] { 1, 2, 3 }));
+        assertEquals(1, prepared.get());
+
+        // The cached entry doesn't follow changes to the caller's array
+        key[0] = 9;
+        assertEquals("[9, 2, 3]", cache.get(key));
+        assertEquals("[1, 2, 3]", cache.get(new byte[] { 1, 2, 3 }));
+        assertEquals(2, prepared.get());
+    }
+
+    @Test
+    void testConcurrentRangesOfOneSection() throws Exception {
+        for (RandomAccessEncryptionAlgorithm algorithm :
+                List.of(new Aes256CtrEncryptionAlgorithm(null), new KuznechikCtrEcbEncryptionAlgorithm(null))) {
+            byte[] keyData = algorithm.generateNewKeyData(new PlainRandomGeneratorType());
+            byte[] plaintext = new byte[64 * 1024];
+            new Random(5).nextBytes(plaintext);
+            byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    int seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 200; i++) {
+                            int offset = random.nextInt(plaintext.length);
+                            int length = random.nextInt(plaintext.length - offset + 1);
+                            assertArrayEquals(Arrays.copyOfRange(plaintext, offset, offset + length),
+                                    algorithm.randomAccessDecrypt(keyData, ciphertext, offset, length));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.fidd.core.encryption;
 
+import com.fidd.core.crc.adler32.Adler32Calculator;
+import com.fidd.core.crc.crc32.Crc32Calculator;
 import com.fidd.core.encryption.aes256.Aes256CbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256GcmSegmentedEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.ParallelSegmentCipher;
 import com.fidd.core.encryption.unencrypted.NoEncryptionAlgorithm;
 import com.fidd.core.encryption.xor.XorEncryptionAlgorithm;
 import com.fidd.core.random.plain.PlainRandomGeneratorType;
@@ -14,9 +18,11 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,9 +31,15 @@ class EncryptionAlgorithmTest {
     static Stream<Arguments> encryptionAlgorithms() {
         return Stream.of(
             Arguments.of(new Aes256CbcEncryptionAlgorithm()),
+            Arguments.of(new Aes256CbcEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
             Arguments.of(new KuznechikCbcEncryptionAlgorithm()),
+            Arguments.of(new KuznechikCbcEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
             Arguments.of(new KuznechikCtrEcbEncryptionAlgorithm()),
+            Arguments.of(new KuznechikCtrEcbEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
             Arguments.of(new Aes256CtrEncryptionAlgorithm()),
+            Arguments.of(new Aes256GcmSegmentedEncryptionAlgorithm()),
+            // Tiny segments, so that even short payloads take the parallel path
+            Arguments.of(new Aes256CtrEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
             Arguments.of(new XorEncryptionAlgorithm()),
             Arguments.of(new NoEncryptionAlgorithm()));
     }
@@ -142,4 +154,63 @@ class EncryptionAlgorithmTest {
 
         assertArrayEquals(plaintext, decryptedOut.toByteArray(), "Stream decryption should restore original data");
     }
+
+    @ParameterizedTest
+    @MethodSource("encryptionAlgorithms")
+    void testChannelEncryptDecrypt(EncryptionAlgorithm encryptionAlgorithm) {
+        byte[] key = encryptionAlgorithm.generateNewKeyData(new PlainRandomGeneratorType());
+        // Larger than a direct buffer, with an unaligned tail
+        byte[] header = "Header".getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[200_000 + 7];
+        for (int i = 0; i < body.length; i++) { body[i] = (byte) (i * 13); }
+
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        encryptionAlgorithm.encrypt(key, List.of(new ByteArrayInputStream(header), new ByteArrayInputStream(body)),
+                streamOut, null);
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        long written = encryptionAlgorithm.encrypt(key,
+                List.of(Channels.newChannel(new ByteArrayInputStream(header)), Channels.newChannel(new ByteArrayInputStream(body))),
+                Channels.newChannel(channelOut), null);
+        assertEquals(channelOut.size(), written);
+        assertArrayEquals(streamOut.toByteArray(), channelOut.toByteArray(), "Channel and stream ciphertexts should match");
+
+        ByteArrayOutputStream decryptedOut = new ByteArrayOutputStream();
+        encryptionAlgorithm.decrypt(key, Channels.newChannel(new ByteArrayInputStream(channelOut.toByteArray())),
+                Channels.newChannel(decryptedOut));
+        byte[] expected = new byte[header.length + body.length];
+        System.arraycopy(header, 0, expected, 0, header.length);
+        System.arraycopy(body, 0, expected, header.length, body.length);
+        assertArrayEquals(expected, decryptedOut.toByteArray(), "Channel decryption should restore original data");
+    }
+
+    @ParameterizedTest
+    @MethodSource("encryptionAlgorithms")
+    void testCrcCallbacksSeeTheCiphertext(EncryptionAlgorithm encryptionAlgorithm) {
+        byte[] key = encryptionAlgorithm.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] header = "Header".getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[100_000 + 3];
+        for (int i = 0; i < body.length; i++) { body[i] = (byte) (i * 7); }
+
+        List<EncryptionAlgorithm.CrcCallback> streamCrcs = List.of(new Crc32Calculator().newCrcCallback(),
+                new Adler32Calculator().newCrcCallback());
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        encryptionAlgorithm.encrypt(key, List.of(new ByteArrayInputStream(header), new ByteArrayInputStream(body)),
+                streamOut, streamCrcs);
+
+        List<EncryptionAlgorithm.CrcCallback> channelCrcs = List.of(new Crc32Calculator().newCrcCallback(),
+                new Adler32Calculator().newCrcCallback());
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        encryptionAlgorithm.encrypt(key,
+                List.of(Channels.newChannel(new ByteArrayInputStream(header)), Channels.newChannel(new ByteArrayInputStream(body))),
+                Channels.newChannel(channelOut), channelCrcs);
+
+        byte[] ciphertext = streamOut.toByteArray();
+        byte[] crc32 = new Crc32Calculator().calculateCrc(ciphertext);
+        byte[] adler32 = new Adler32Calculator().calculateCrc(ciphertext);
+        assertArrayEquals(crc32, streamCrcs.get(0).getCrc());
+        assertArrayEquals(adler32, streamCrcs.get(1).getCrc());
+        assertArrayEquals(crc32, channelCrcs.get(0).getCrc());
+        assertArrayEquals(adler32, channelCrcs.get(1).getCrc());
+    }
 }
@@ -3,6 +3,7 @@ package com.fidd.core.encryption;
 import com.fidd.core.encryption.aes256.KuznechikBase;
 import com.fidd.core.encryption.aes256.KuznechikCbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.ParallelSegmentCipher;
 import com.fidd.core.random.plain.PlainRandomGeneratorType;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.jupiter.api.Test;
@@ -11,7 +12,14 @@ import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
@@ -46,6 +54,48 @@ public class KuznechikTest {
         assertArrayEquals(plaintext, decrypted);
     }
 
+    @Test
+    public void testCtrAcrossKeystreamBatches() throws Exception {
+        KuznechikCtrEcbEncryptionAlgorithm algo = new KuznechikCtrEcbEncryptionAlgorithm(null);
+        KuznechikCtrEcbEncryptionAlgorithm parallel =
+                new KuznechikCtrEcbEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 1024, 3));
+
+        byte[] keyBytes = algo.generateNewKeyData(new PlainRandomGeneratorType());
+        // Several keystream batches and an unaligned tail
+        byte[] plaintext = new byte[3 * 4096 + 13];
+        new Random(1).nextBytes(plaintext);
+
+        // Byte-at-a-time keystream as the reference
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        try (InputStream in = algo.getDecryptedStream(keyBytes, new ByteArrayInputStream(plaintext))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                reference.write(b);
+            }
+        }
+        byte[] ciphertext = reference.toByteArray();
+
+        assertArrayEquals(ciphertext, algo.encrypt(keyBytes, plaintext));
+        assertArrayEquals(ciphertext, parallel.encrypt(keyBytes, plaintext));
+        assertArrayEquals(plaintext, parallel.decrypt(keyBytes, ciphertext));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 1000, 9000),
+                parallel.randomAccessDecrypt(keyBytes, ciphertext, 1000, 8000));
+
+        // Odd-sized reads mixed with single-byte reads
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = algo.getDecryptedStream(keyBytes, new ByteArrayInputStream(ciphertext))) {
+            byte[] buf = new byte[777];
+            int r;
+            while ((r = in.read(buf, 0, buf.length)) != -1) {
+                out.write(buf, 0, r);
+                int b = in.read();
+                if (b == -1) { break; }
+                out.write(b);
+            }
+        }
+        assertArrayEquals(plaintext, out.toByteArray());
+    }
+
     @Test
     public void testCbc() throws Exception {
         EncryptionAlgorithm algo = new KuznechikCbcEncryptionAlgorithm();
@@ -63,4 +113,26 @@ public class KuznechikTest {
         byte[] decrypted = algo.decrypt(keyBytes, ciphertext);
         assertArrayEquals(plaintext, decrypted);
     }
+
+    @Test
+    public void testCbcStreamInManyChunks() throws Exception {
+        EncryptionAlgorithm algo = new KuznechikCbcEncryptionAlgorithm();
+
+        byte[] keyBytes = algo.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] plaintext = new byte[5 * 8192 + 13];
+        new Random(2).nextBytes(plaintext);
+
+        KuznechikBase.KeyAndIv k = KuznechikBase.KeyAndIv.deserialize(keyBytes);
+        Cipher cipher = Cipher.getInstance(KUZNECHIK_CBC_NO_PADDING, "BC");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(k.key32(), KUZNECHIK), new IvParameterSpec(k.iv16()));
+        byte[] ciphertext = cipher.doFinal(plaintext);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        algo.encrypt(keyBytes, List.of(new ByteArrayInputStream(plaintext)), encrypted, null);
+        assertArrayEquals(ciphertext, encrypted.toByteArray());
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        algo.decrypt(keyBytes, new ByteArrayInputStream(ciphertext), decrypted);
+        assertArrayEquals(plaintext, decrypted.toByteArray());
+    }
 }
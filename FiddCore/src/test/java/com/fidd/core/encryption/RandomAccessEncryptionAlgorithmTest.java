@@ -1,7 +1,11 @@
 package com.fidd.core.encryption;
 
+import com.fidd.core.encryption.aes256.Aes256CbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.Aes256CtrEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256GcmSegmentedEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.KuznechikCbcEncryptionAlgorithm;
 import com.fidd.core.encryption.aes256.KuznechikCtrEcbEncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.ParallelSegmentCipher;
 import com.fidd.core.encryption.unencrypted.NoEncryptionAlgorithm;
 import com.fidd.core.encryption.xor.XorEncryptionAlgorithm;
 import com.fidd.core.random.plain.PlainRandomGeneratorType;
@@ -13,10 +17,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class RandomAccessEncryptionAlgorithmTest {
     private static byte[] deterministicPayload(int size) {
@@ -27,10 +35,25 @@ class RandomAccessEncryptionAlgorithmTest {
       return out;
     }
 
+    /** Ciphertext the algorithm needs for the range, cut short by the end of the section */
+    private static byte[] ciphertextRange(RandomAccessEncryptionAlgorithm algo, byte[] ciphertext, int offset, int length) {
+      int from = (int) algo.ciphertextRangeStart(offset);
+      int to = (int) Math.min(ciphertext.length, from + algo.ciphertextRangeLength(offset, length));
+      return Arrays.copyOfRange(ciphertext, from, to);
+    }
+
     static Stream<Arguments> randomAccessEncryptionAlgorithms() {
         return Stream.of(
+                Arguments.of(new Aes256CbcEncryptionAlgorithm()),
+                Arguments.of(new Aes256CbcEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
+                Arguments.of(new KuznechikCbcEncryptionAlgorithm()),
+                Arguments.of(new KuznechikCbcEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
                 Arguments.of(new Aes256CtrEncryptionAlgorithm()),
+                Arguments.of(new Aes256GcmSegmentedEncryptionAlgorithm()),
+                // Tiny segments, so that even short payloads take the parallel path
+                Arguments.of(new Aes256CtrEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
                 Arguments.of(new KuznechikCtrEcbEncryptionAlgorithm()),
+                Arguments.of(new KuznechikCtrEcbEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), 16, 3))),
                 Arguments.of(new XorEncryptionAlgorithm()),
                 Arguments.of(new NoEncryptionAlgorithm())
         );
@@ -72,7 +95,7 @@ class RandomAccessEncryptionAlgorithmTest {
 
         // Provide ciphertext slice via InputStream
         ByteArrayInputStream ciphertextStream =
-                new ByteArrayInputStream(Arrays.copyOfRange(ciphertext, offset, offset + length));
+                new ByteArrayInputStream(ciphertextRange(algo, ciphertext, offset, length));
         ByteArrayOutputStream plaintextOut = new ByteArrayOutputStream();
 
         // Decrypt slice
@@ -101,7 +124,7 @@ class RandomAccessEncryptionAlgorithmTest {
 
         // Provide ciphertext slice via InputStream
         ByteArrayInputStream ciphertextStream =
-                new ByteArrayInputStream(Arrays.copyOfRange(ciphertext, offset, offset + length));
+                new ByteArrayInputStream(ciphertextRange(algo, ciphertext, offset, length));
         // Decrypt slice
         InputStream plaintextOut = algo.getRandomAccessDecryptedStream(key, offset, length, ciphertextStream);
 
@@ -128,6 +151,17 @@ class RandomAccessEncryptionAlgorithmTest {
                 "Full randomAccessDecrypt should recover original plaintext");
     }
 
+    @ParameterizedTest
+    @MethodSource("randomAccessEncryptionAlgorithms")
+    void testPlaintextLengthToCiphertextLengthIsExact(RandomAccessEncryptionAlgorithm algo) {
+        // The packer lays sections out from this before encrypting them
+        byte[] key = algo.generateNewKeyData(new PlainRandomGeneratorType());
+        for (int size : new int[] { 0, 1, 15, 16, 17, 1000, 4096 }) {
+            byte[] ciphertext = algo.encrypt(key, deterministicPayload(size));
+            assertEquals(ciphertext.length, algo.plaintextLengthToCiphertextLength(size), "size " + size);
+        }
+    }
+
   @ParameterizedTest
   @MethodSource("randomAccessEncryptionAlgorithms")
   void testRandomAccessDecryptByteArrayLargeOffset(RandomAccessEncryptionAlgorithm algo) {
@@ -159,7 +193,7 @@ class RandomAccessEncryptionAlgorithmTest {
     int length = 2049;
 
     ByteArrayInputStream ciphertextStream =
-        new ByteArrayInputStream(Arrays.copyOfRange(ciphertext, offset, offset + length));
+        new ByteArrayInputStream(ciphertextRange(algo, ciphertext, offset, length));
     InputStream plaintextOut =
         algo.getRandomAccessDecryptedStream(key, offset, length, ciphertextStream);
 
@@ -171,4 +205,79 @@ class RandomAccessEncryptionAlgorithmTest {
         decryptedSlice,
         "InputStream random access decryption should match plaintext at large offset");
   }
+
+  @ParameterizedTest
+  @MethodSource("randomAccessEncryptionAlgorithms")
+  void testRandomAccessDecryptChannelLargeOffset(RandomAccessEncryptionAlgorithm algo) {
+    byte[] key = algo.generateNewKeyData(new PlainRandomGeneratorType());
+    byte[] plaintext = deterministicPayload(256 * 1024);
+    byte[] ciphertext = algo.encrypt(key, plaintext);
+
+    int offset = 96 * 1024 + 11;
+    int length = 100_003;
+
+    ByteArrayOutputStream plaintextOut = new ByteArrayOutputStream();
+    // Trailing ciphertext past the range must be left alone
+    algo.randomAccessDecrypt(key, offset, length,
+        Channels.newChannel(new ByteArrayInputStream(ciphertext, (int) algo.ciphertextRangeStart(offset),
+            ciphertext.length - (int) algo.ciphertextRangeStart(offset))),
+        Channels.newChannel(plaintextOut));
+
+    assertArrayEquals(
+        Arrays.copyOfRange(plaintext, offset, offset + length),
+        plaintextOut.toByteArray(),
+        "Channel random access decryption should match plaintext at large offset");
+  }
+
+  @ParameterizedTest
+  @MethodSource("randomAccessEncryptionAlgorithms")
+  void testRandomAccessDecryptDirectByteBuffer(RandomAccessEncryptionAlgorithm algo) {
+    byte[] key = algo.generateNewKeyData(new PlainRandomGeneratorType());
+    byte[] plaintext = deterministicPayload(64 * 1024);
+    byte[] ciphertext = algo.encrypt(key, plaintext);
+
+    int offset = 4099;
+    int length = 30_001;
+
+    byte[] ciphertextSlice = ciphertextRange(algo, ciphertext, offset, length);
+    ByteBuffer ciphertextBuffer = ByteBuffer.allocateDirect(ciphertextSlice.length);
+    ciphertextBuffer.put(ciphertextSlice).flip();
+    ByteBuffer plaintextBuffer = ByteBuffer.allocateDirect(length);
+    algo.randomAccessDecrypt(key, offset, length, ciphertextBuffer, plaintextBuffer);
+
+    assertEquals(0, ciphertextBuffer.remaining());
+    byte[] decryptedSlice = new byte[plaintextBuffer.flip().remaining()];
+    plaintextBuffer.get(decryptedSlice);
+    assertArrayEquals(
+        Arrays.copyOfRange(plaintext, offset, offset + length),
+        decryptedSlice,
+        "ByteBuffer random access decryption should match plaintext");
+  }
+
+  @ParameterizedTest
+  @MethodSource("randomAccessEncryptionAlgorithms")
+  void testRandomAccessDecryptRangesAroundTheEnd(RandomAccessEncryptionAlgorithm algo) throws IOException {
+    byte[] key = algo.generateNewKeyData(new PlainRandomGeneratorType());
+    // Lengths at and around block boundaries, so that padding takes a partial and a whole block
+    for (int size : new int[] {1, 15, 16, 17, 31, 32, 100, 8192, 8200}) {
+      byte[] plaintext = deterministicPayload(size);
+      byte[] ciphertext = algo.encrypt(key, plaintext);
+      for (int offset : new int[] {0, size / 2, Math.max(0, size - 17), Math.max(0, size - 1)}) {
+        int length = size - offset;
+        byte[] expectedSlice = Arrays.copyOfRange(plaintext, offset, size);
+
+        // The exact tail; padded algorithms also cut a range running past the end of the plaintext short
+        int[] requestedLengths = algo.paddingBlockSize() > 0 ? new int[] {length, length + 40} : new int[] {length};
+        for (int requested : requestedLengths) {
+          assertArrayEquals(expectedSlice, algo.randomAccessDecrypt(key, ciphertext, offset, requested),
+              "size " + size + " offset " + offset + " length " + requested);
+          try (InputStream in = algo.getRandomAccessDecryptedStream(key, offset, requested,
+              new ByteArrayInputStream(ciphertextRange(algo, ciphertext, offset, requested)))) {
+            assertArrayEquals(expectedSlice, in.readAllBytes(),
+                "stream, size " + size + " offset " + offset + " length " + requested);
+          }
+        }
+      }
+    }
+  }
 }
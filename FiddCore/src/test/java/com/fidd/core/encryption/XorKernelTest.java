@@ -0,0 +1,105 @@
+package com.fidd.core.encryption;
+
+import com.fidd.core.encryption.xor.XorInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class XorKernelTest {
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] reference(byte[] in, int inOff, byte[] key, long keyPos, int len) {
+        byte[] out = new byte[len];
+        for (int i = 0; i < len; i++) {
+            out[i] = (byte) (in[inOff + i] ^ key[(int) ((keyPos + i) % key.length)]);
+        }
+        return out;
+    }
+
+    @Test
+    void testXorMatchesBytewiseOnEveryPath() {
+        byte[] a = random(1000, 1);
+        byte[] b = random(1000, 2);
+        for (int len : new int[] { 0, 1, 7, 8, 9, 63, 64, 65, 200, 700 }) {
+            for (int off : new int[] { 0, 1, 3, 8, 13 }) {
+                byte[] expected = new byte[len];
+                for (int i = 0; i < len; i++) {
+                    expected[i] = (byte) (a[off + i] ^ b[2 * off + i]);
+                }
+
+                byte[] out = new byte[len + 5];
+                XorKernel.xor(a, off, b, 2 * off, out, 5, len);
+                assertArrayEquals(expected, Arrays.copyOfRange(out, 5, 5 + len), "len " + len + ", off " + off);
+
+                byte[] scalar = new byte[len];
+                XorKernel.xorWords(a, off, b, 2 * off, scalar, 0, 0, len);
+                assertArrayEquals(expected, scalar, "scalar len " + len + ", off " + off);
+
+                if (XorKernel.vectorized()) {
+                    byte[] vector = new byte[len];
+                    int done = XorKernel.xorVectors(a, off, b, 2 * off, vector, 0, len);
+                    XorKernel.xorWords(a, off, b, 2 * off, vector, 0, done, len);
+                    assertArrayEquals(expected, vector, "vector len " + len + ", off " + off);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testXorInPlace() {
+        byte[] a = random(300, 3);
+        byte[] b = random(300, 4);
+        byte[] expected = new byte[300];
+        XorKernel.xor(a, 0, b, 0, expected, 0, 300);
+
+        XorKernel.xor(a, 0, b, 0, a, 0, 300);
+        assertArrayEquals(expected, a);
+    }
+
+    @Test
+    void testXorRepeatingWrapsTheKey() {
+        byte[] in = random(5000, 5);
+        for (int keyLength : new int[] { 1, 5, 32, 33, 2000 }) {
+            byte[] key = random(keyLength, keyLength);
+            byte[] expanded = XorKernel.expandKey(key, XorKernel.EXPANDED_KEY_MIN_LENGTH);
+            assertEquals(0, expanded.length % keyLength);
+
+            for (long keyPos : new long[] { 0, 3, keyLength, 1L << 40 }) {
+                byte[] expected = reference(in, 11, key, keyPos, 4000);
+                byte[] out = new byte[4000];
+                XorKernel.xorRepeating(in, 11, key, keyPos, out, 0, 4000);
+                assertArrayEquals(expected, out, "key " + keyLength + ", pos " + keyPos);
+
+                XorKernel.xorRepeating(in, 11, expanded, keyPos, out, 0, 4000);
+                assertArrayEquals(expected, out, "expanded key " + keyLength + ", pos " + keyPos);
+            }
+        }
+        byte[] longKey = random(XorKernel.EXPANDED_KEY_MIN_LENGTH, 6);
+        assertSame(longKey, XorKernel.expandKey(longKey, XorKernel.EXPANDED_KEY_MIN_LENGTH));
+    }
+
+    @Test
+    void testXorInputStreamWithKeyLengthNotAPowerOfTwo() throws IOException {
+        byte[] in = random(100, 7);
+        byte[] key = random(5, 8);
+        byte[] expected = reference(in, 0, key, 3, in.length);
+
+        try (XorInputStream stream = new XorInputStream(new ByteArrayInputStream(in), key, 3)) {
+            byte[] out = new byte[in.length];
+            out[0] = (byte) stream.read();
+            stream.readNBytes(out, 1, in.length - 1);
+            assertArrayEquals(expected, out);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.fidd.core.encryption.aes256;
+
+import com.fidd.core.random.plain.PlainRandomGeneratorType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Aes256GcmSegmentedEncryptionAlgorithmTest {
+    private static final int SEGMENT_SIZE = 64;
+    private static final int CIPHERTEXT_SEGMENT_SIZE = SEGMENT_SIZE + Aes256GcmSegmentedEncryptionAlgorithm.TAG_SIZE;
+
+    private final Aes256GcmSegmentedEncryptionAlgorithm algorithm = new Aes256GcmSegmentedEncryptionAlgorithm(SEGMENT_SIZE);
+    private final byte[] keyData = algorithm.generateNewKeyData(new PlainRandomGeneratorType());
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    private byte[] decryptRange(byte[] ciphertext, long offset, long length) throws IOException {
+        int from = (int) Math.min(algorithm.ciphertextRangeStart(offset), ciphertext.length);
+        int to = (int) Math.min(from + algorithm.ciphertextRangeLength(offset, length), ciphertext.length);
+        try (InputStream in = algorithm.getRandomAccessDecryptedStream(keyData, offset, length,
+                new ByteArrayInputStream(Arrays.copyOfRange(ciphertext, from, to)))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testSegmentLayout() {
+        for (int size : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 5 * SEGMENT_SIZE + 7 }) {
+            byte[] plaintext = payload(size);
+            byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+
+            assertEquals(algorithm.plaintextLengthToCiphertextLength(size), ciphertext.length, "size " + size);
+            assertEquals(size, algorithm.ciphertextLengthToPlaintextLength(ciphertext.length), "size " + size);
+            assertArrayEquals(plaintext, algorithm.decrypt(keyData, ciphertext), "size " + size);
+        }
+    }
+
+    @Test
+    void testRangesAcrossSegments() throws IOException {
+        byte[] plaintext = payload(7 * SEGMENT_SIZE + 13);
+        byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+
+        for (int offset = 0; offset < plaintext.length + SEGMENT_SIZE; offset += 29) {
+            for (int length : new int[] { 0, 1, SEGMENT_SIZE, 3 * SEGMENT_SIZE + 5 }) {
+                int from = Math.min(offset, plaintext.length);
+                int to = Math.min(offset + length, plaintext.length);
+                assertArrayEquals(Arrays.copyOfRange(plaintext, from, to), decryptRange(ciphertext, offset, length),
+                        "range " + offset + "+" + length);
+            }
+        }
+    }
+
+    @Test
+    void testTamperingFailsOnlyTheSegmentsServed() throws IOException {
+        byte[] plaintext = payload(6 * SEGMENT_SIZE);
+        byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+        ciphertext[3 * CIPHERTEXT_SEGMENT_SIZE + 10] ^= 1;
+
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 0, 3 * SEGMENT_SIZE),
+                decryptRange(ciphertext, 0, 3 * SEGMENT_SIZE));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 4 * SEGMENT_SIZE, 6 * SEGMENT_SIZE),
+                decryptRange(ciphertext, 4 * SEGMENT_SIZE, 2 * SEGMENT_SIZE));
+        assertThrows(IOException.class, () -> decryptRange(ciphertext, 3 * SEGMENT_SIZE - 1, 2));
+        assertThrows(RuntimeException.class, () -> algorithm.decrypt(keyData, ciphertext));
+    }
+
+    @Test
+    void testTruncatedAndReorderedSectionsAreRejected() {
+        byte[] plaintext = payload(4 * SEGMENT_SIZE);
+        byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+
+        // Cut at a segment boundary: every remaining segment is authentic, but none is final
+        byte[] truncated = Arrays.copyOf(ciphertext, 2 * CIPHERTEXT_SEGMENT_SIZE);
+        assertThrows(RuntimeException.class, () -> algorithm.decrypt(keyData, truncated));
+
+        byte[] swapped = ciphertext.clone();
+        System.arraycopy(ciphertext, 0, swapped, CIPHERTEXT_SEGMENT_SIZE, CIPHERTEXT_SEGMENT_SIZE);
+        System.arraycopy(ciphertext, CIPHERTEXT_SEGMENT_SIZE, swapped, 0, CIPHERTEXT_SEGMENT_SIZE);
+        assertThrows(RuntimeException.class, () -> algorithm.decrypt(keyData, swapped));
+
+        byte[] extended = Arrays.copyOf(ciphertext, ciphertext.length + CIPHERTEXT_SEGMENT_SIZE);
+        System.arraycopy(ciphertext, 0, extended, ciphertext.length, CIPHERTEXT_SEGMENT_SIZE);
+        assertThrows(RuntimeException.class, () -> algorithm.decrypt(keyData, extended));
+    }
+
+    @Test
+    void testPartialDecryptReturnsAuthenticSegments() {
+        byte[] plaintext = payload(4 * SEGMENT_SIZE + 9);
+        byte[] ciphertext = algorithm.encrypt(keyData, plaintext);
+
+        // Like reading a section header: the prefix ends inside the third segment
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = algorithm.decrypt(keyData,
+                new ByteArrayInputStream(ciphertext, 0, 2 * CIPHERTEXT_SEGMENT_SIZE + 20), out, true);
+
+        assertEquals(2 * SEGMENT_SIZE, written);
+        assertArrayEquals(Arrays.copyOf(plaintext, 2 * SEGMENT_SIZE), out.toByteArray());
+    }
+}
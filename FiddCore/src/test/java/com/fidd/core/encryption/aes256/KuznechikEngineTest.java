@@ -0,0 +1,68 @@
+package com.fidd.core.encryption.aes256;
+
+import org.bouncycastle.crypto.engines.GOST3412_2015Engine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class KuznechikEngineTest {
+    @Test
+    void testStandardVector() {
+        // GOST R 34.12-2015, appendix A.1
+        byte[] key = Hex.decode("8899aabbccddeeff0011223344556677fedcba98765432100123456789abcdef");
+        byte[] plaintext = Hex.decode("1122334455667700ffeeddccbbaa9988");
+        byte[] out = new byte[16];
+
+        new KuznechikEngine(key).encryptBlock(plaintext, 0, out, 0);
+        assertArrayEquals(Hex.decode("7f679d90bebc24305a468d42b9d4edcd"), out);
+    }
+
+    @Test
+    void testMatchesBouncyCastle() {
+        Random random = new Random(7);
+        for (int k = 0; k < 8; k++) {
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            GOST3412_2015Engine reference = new GOST3412_2015Engine();
+            reference.init(true, new KeyParameter(key));
+            KuznechikEngine engine = new KuznechikEngine(key);
+
+            byte[] block = new byte[16];
+            byte[] expected = new byte[16];
+            byte[] actual = new byte[16];
+            for (int i = 0; i < 32; i++) {
+                random.nextBytes(block);
+                reference.processBlock(block, 0, expected, 0);
+                engine.encryptBlock(block, 0, actual, 0);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void testCounterBlocks() {
+        byte[] key = new byte[32];
+        new Random(3).nextBytes(key);
+        KuznechikEngine engine = new KuznechikEngine(key);
+
+        byte[] keystream = new byte[3 * 16];
+        engine.encryptCounterBlocks(0x0102030405060708L, -2L, 3, keystream, 0);
+
+        byte[] counterBlock = Hex.decode("0102030405060708fffffffffffffffe");
+        byte[] expected = new byte[16];
+        for (int i = 0; i < 3; i++) {
+            engine.encryptBlock(counterBlock, 0, expected, 0);
+            assertArrayEquals(expected, Arrays.copyOfRange(keystream, 16 * i, 16 * i + 16));
+            counterBlock[15]++;
+            if (counterBlock[15] == 0) {
+                // Only the low 64 bits count; wraps within the counter
+                for (int j = 14; j >= 8 && ++counterBlock[j] == 0; j--) { }
+            }
+        }
+    }
+}
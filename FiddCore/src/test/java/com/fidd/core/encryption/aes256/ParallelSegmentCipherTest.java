@@ -0,0 +1,177 @@
+package com.fidd.core.encryption.aes256;
+
+import com.fidd.core.encryption.EncryptionAlgorithm;
+import com.fidd.core.random.plain.PlainRandomGeneratorType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelSegmentCipherTest {
+    private static final int SEGMENT_SIZE = 64;
+
+    private final Aes256CtrEncryptionAlgorithm sequential = new Aes256CtrEncryptionAlgorithm(null);
+    private final Aes256CtrEncryptionAlgorithm parallel =
+            new Aes256CtrEncryptionAlgorithm(new ParallelSegmentCipher(new ForkJoinPool(4), SEGMENT_SIZE, 3));
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    @Test
+    void testParallelMatchesSequential() {
+        byte[] keyData = sequential.generateNewKeyData(new PlainRandomGeneratorType());
+        for (int size : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 10 * SEGMENT_SIZE + 7 }) {
+            byte[] plaintext = payload(size);
+            byte[] expected = sequential.encrypt(keyData, plaintext);
+
+            assertArrayEquals(expected, parallel.encrypt(keyData, plaintext), "size " + size);
+            assertArrayEquals(plaintext, parallel.decrypt(keyData, expected), "size " + size);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, parallel.encrypt(keyData, List.of(new ByteArrayInputStream(plaintext)), out, null));
+            assertArrayEquals(expected, out.toByteArray(), "size " + size);
+        }
+    }
+
+    @Test
+    void testCrcCallbacksSeeCiphertextInOrder() {
+        byte[] keyData = sequential.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] plaintext = payload(7 * SEGMENT_SIZE + 5);
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        EncryptionAlgorithm.CrcCallback callback = new EncryptionAlgorithm.CrcCallback() {
+            @Override public void write(byte[] b) { seen.writeBytes(b); }
+            @Override public void write(int b) { seen.write(b); }
+            @Override public byte[] getCrc() { return new byte[0]; }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Section made of several logical files
+        parallel.encrypt(keyData, List.of(new ByteArrayInputStream(plaintext, 0, 100),
+                new ByteArrayInputStream(plaintext, 100, plaintext.length - 100)), out, List.of(callback));
+
+        assertArrayEquals(sequential.encrypt(keyData, plaintext), out.toByteArray());
+        assertArrayEquals(out.toByteArray(), seen.toByteArray());
+    }
+
+    @Test
+    void testDecryptedStreams() throws IOException {
+        byte[] keyData = sequential.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] plaintext = payload(9 * SEGMENT_SIZE + 3);
+        byte[] ciphertext = sequential.encrypt(keyData, plaintext);
+
+        try (InputStream stream = parallel.getDecryptedStream(keyData, new ByteArrayInputStream(ciphertext))) {
+            assertArrayEquals(plaintext, stream.readAllBytes());
+        }
+
+        // Unaligned start, crossing several segments
+        int offset = 37;
+        int length = 5 * SEGMENT_SIZE + 11;
+        try (InputStream stream = parallel.getRandomAccessDecryptedStream(keyData, offset, length,
+                new ByteArrayInputStream(ciphertext, offset, ciphertext.length - offset))) {
+            assertArrayEquals(Arrays.copyOfRange(plaintext, offset, offset + length), stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void testParallelCbcDecryptMatchesSequential() throws IOException {
+        ParallelSegmentCipher segmentCipher = new ParallelSegmentCipher(new ForkJoinPool(4), SEGMENT_SIZE, 3);
+        List<EncryptionAlgorithm[]> pairs = List.of(
+                new EncryptionAlgorithm[] { new Aes256CbcEncryptionAlgorithm(null),
+                        new Aes256CbcEncryptionAlgorithm(segmentCipher) },
+                new EncryptionAlgorithm[] { new KuznechikCbcEncryptionAlgorithm(null),
+                        new KuznechikCbcEncryptionAlgorithm(segmentCipher) });
+        for (EncryptionAlgorithm[] pair : pairs) {
+            byte[] keyData = pair[0].generateNewKeyData(new PlainRandomGeneratorType());
+            for (int size : new int[] { 0, 15, SEGMENT_SIZE - 1, SEGMENT_SIZE, 10 * SEGMENT_SIZE + 7 }) {
+                byte[] plaintext = payload(size);
+                byte[] ciphertext = pair[0].encrypt(keyData, plaintext);
+                String message = pair[1].name() + ", size " + size;
+
+                assertArrayEquals(plaintext, pair[1].decrypt(keyData, ciphertext), message);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(size, pair[1].decrypt(keyData, new ByteArrayInputStream(ciphertext), out), message);
+                assertArrayEquals(plaintext, out.toByteArray(), message);
+
+                try (InputStream stream = pair[1].getDecryptedStream(keyData, new ByteArrayInputStream(ciphertext))) {
+                    assertArrayEquals(plaintext, stream.readAllBytes(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testParallelCbcRejectsCorruptCiphertext() {
+        Aes256CbcEncryptionAlgorithm parallelCbc =
+                new Aes256CbcEncryptionAlgorithm(new ParallelSegmentCipher(ForkJoinPool.commonPool(), SEGMENT_SIZE, 3));
+        byte[] keyData = parallelCbc.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] ciphertext = parallelCbc.encrypt(keyData, payload(5 * SEGMENT_SIZE));
+
+        byte[] truncated = Arrays.copyOf(ciphertext, ciphertext.length - 1);
+        assertThrows(RuntimeException.class, () -> parallelCbc.decrypt(keyData, truncated));
+
+        // Flipping the second-to-last block garbles the padding of the last one
+        byte[] corrupt = ciphertext.clone();
+        corrupt[corrupt.length - 17] ^= 1;
+        assertThrows(RuntimeException.class, () -> parallelCbc.decrypt(keyData,
+                new ByteArrayInputStream(corrupt), new ByteArrayOutputStream()));
+        assertThrows(IOException.class, () -> {
+            try (InputStream stream = parallelCbc.getDecryptedStream(keyData, new ByteArrayInputStream(corrupt))) {
+                stream.readAllBytes();
+            }
+        });
+    }
+
+    @Test
+    void testSegmentFailureIsPropagated() {
+        ParallelSegmentCipher segmentCipher = new ParallelSegmentCipher(ForkJoinPool.commonPool(), SEGMENT_SIZE, 2);
+        List<Long> positions = new ArrayList<>();
+        ParallelSegmentCipher.SegmentTransform failing = (position, in, inOff, out, outOff, len) -> {
+            synchronized (positions) { positions.add(position); }
+            if (position == 2 * SEGMENT_SIZE) { throw new IllegalStateException("boom"); }
+        };
+
+        assertThrows(IllegalStateException.class, () -> segmentCipher.transform(
+                new ByteArrayInputStream(new byte[5 * SEGMENT_SIZE]), new ByteArrayOutputStream(), 0, failing, null));
+    }
+
+    @Test
+    void testEncryptLeavesPlaintextsOpen() {
+        byte[] keyData = sequential.generateNewKeyData(new PlainRandomGeneratorType());
+        byte[] header = payload(SEGMENT_SIZE / 2);
+        byte[] body = payload(5 * SEGMENT_SIZE + 3);
+        List<Boolean> closed = new ArrayList<>();
+        List<InputStream> plaintexts = new ArrayList<>();
+        for (byte[] plaintext : List.of(header, body)) {
+            int index = closed.size();
+            closed.add(false);
+            plaintexts.add(new ByteArrayInputStream(plaintext) {
+                @Override public void close() { closed.set(index, true); }
+            });
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parallel.encrypt(keyData, plaintexts, out, null);
+
+        byte[] plaintext = new byte[header.length + body.length];
+        System.arraycopy(header, 0, plaintext, 0, header.length);
+        System.arraycopy(body, 0, plaintext, header.length, body.length);
+        assertArrayEquals(sequential.encrypt(keyData, plaintext), out.toByteArray());
+        // Same as the sequential loop: the streams stay with the caller
+        assertEquals(List.of(false, false), closed);
+    }
+}
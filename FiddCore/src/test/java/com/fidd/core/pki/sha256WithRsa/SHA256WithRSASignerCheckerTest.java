@@ -1,11 +1,15 @@
 package com.fidd.core.pki.sha256WithRsa;
 
+import com.fidd.core.pki.SignerChecker;
+import com.flower.crypt.PkiUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -87,4 +91,76 @@ class SHA256WithRSASignerCheckerTest {
         byte[] signature = new byte[0];
         assertThrows(RuntimeException.class, () -> signerChecker.verifySignature(data, signature, null));
     }
+
+    @Test
+    void testStreamingSignerMatchesSignData() {
+        byte[] data = "Data fed to the signer in pieces".getBytes(StandardCharsets.UTF_8);
+
+        SignerChecker.StreamingSigner signer = signerChecker.newStreamingSigner(keyPair.getPrivate());
+        signer.update(data, 0, 10);
+        signer.update(data, 10, data.length - 10);
+        byte[] signature = signer.sign();
+
+        // PKCS#1 v1.5 signatures are deterministic
+        assertArrayEquals(signerChecker.signData(data, keyPair.getPrivate()), signature);
+        assertTrue(signerChecker.verifySignature(data, signature, keyPair.getPublic()));
+    }
+
+    @Test
+    void testStreamingSignerTakesBuffersWithoutMovingThem() {
+        byte[] data = "Data fed to the signer in buffers".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer heap = ByteBuffer.wrap(data, 0, 12);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length - 12).put(data, 12, data.length - 12).flip();
+
+        SignerChecker.StreamingSigner signer = signerChecker.newStreamingSigner(keyPair.getPrivate());
+        signer.update(heap);
+        signer.update(direct);
+
+        assertEquals(0, heap.position());
+        assertEquals(0, direct.position());
+        assertArrayEquals(signerChecker.signData(data, keyPair.getPrivate()), signer.sign());
+    }
+
+    @Test
+    void testStreamingVerifierMatchesVerifySignature() {
+        byte[] data = "Data fed to the verifier in pieces".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = signerChecker.signData(data, keyPair.getPrivate());
+
+        SignerChecker.StreamingVerifier verifier = signerChecker.newStreamingVerifier(keyPair.getPublic());
+        verifier.update(data, 0, 7);
+        verifier.update(data, 7, data.length - 7);
+        assertTrue(verifier.verify(signature));
+
+        SignerChecker.StreamingVerifier tampered = signerChecker.newStreamingVerifier(keyPair.getPublic());
+        tampered.update(data, 0, data.length - 1);
+        assertFalse(tampered.verify(signature));
+    }
+
+    @Test
+    void testStreamingSignaturesInteroperateWithPkiUtil() throws Exception {
+        // Larger than any read buffer, fed in uneven pieces
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+
+        SignerChecker.StreamingSigner signer = signerChecker.newStreamingSigner(keyPair.getPrivate());
+        for (int off = 0, len = 1; off < data.length; off += len, len = len * 3 + 1) {
+            signer.update(data, off, Math.min(len, data.length - off));
+        }
+        byte[] streamingSignature = signer.sign();
+
+        // Streaming signer -> PkiUtil verification
+        assertTrue(PkiUtil.verifySignature(data, streamingSignature, keyPair.getPublic()));
+        assertTrue(PkiUtil.verifySignature(new ByteArrayInputStream(data), streamingSignature, keyPair.getPublic()));
+
+        // PkiUtil signature -> streaming verifier
+        byte[] pkiUtilSignature = PkiUtil.signDataQuick(new ByteArrayInputStream(data), keyPair.getPrivate());
+        SignerChecker.StreamingVerifier verifier = signerChecker.newStreamingVerifier(keyPair.getPublic());
+        verifier.update(data, 0, 5);
+        verifier.update(data, 5, data.length - 5);
+        assertTrue(verifier.verify(pkiUtilSignature));
+
+        // Same algorithm and padding on both sides: deterministic signatures come out the same
+        assertArrayEquals(PkiUtil.signDataQuick(data, keyPair.getPrivate()), streamingSignature);
+        assertArrayEquals(pkiUtilSignature, streamingSignature);
+    }
 }
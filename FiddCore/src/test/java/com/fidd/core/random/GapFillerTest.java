@@ -0,0 +1,54 @@
+package com.fidd.core.random;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class GapFillerTest {
+    @Test
+    void testFillIsAesCtrKeystreamOfTheSeed() throws Exception {
+        int length = 3 * GapFiller.BUFFER_SIZE + 123;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GapFiller.fill(out, length, new Random(1));
+
+        byte[] seed = new byte[GapFiller.SEED_LENGTH];
+        new Random(1).nextBytes(seed);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, 0, 32, "AES"), new IvParameterSpec(seed, 32, 16));
+        byte[] expected = cipher.doFinal(new byte[length]);
+
+        assertArrayEquals(expected, out.toByteArray());
+        assertFalse(Arrays.equals(new byte[length], out.toByteArray()));
+    }
+
+    @Test
+    void testEachFillDrawsAFreshSeed() throws Exception {
+        Random random = new Random(2);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        GapFiller.fill(first, 1000, random);
+        GapFiller.fill(second, 1000, random);
+
+        assertEquals(1000, first.size());
+        assertFalse(Arrays.equals(first.toByteArray(), second.toByteArray()));
+    }
+
+    @Test
+    void testEmptyFillDrawsNothing() throws Exception {
+        Random random = new Random(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GapFiller.fill(out, 0, random);
+
+        assertEquals(0, out.size());
+        assertEquals(new Random(3).nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,106 @@
+package com.fidd.service.wrapper;
+
+import com.fidd.base.DefaultBaseRepositories;
+import com.fidd.connectors.FiddCacheConnector;
+import com.fidd.core.common.FiddKeyLookup;
+import com.fidd.core.fiddkey.FiddKey;
+import com.fidd.core.fiddkey.ImmutableFiddKey;
+import com.fidd.core.fiddkey.ImmutableSection;
+import com.fidd.core.fiddkey.yaml.YamlFiddKeySerializer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WrapperFiddContentServiceTest {
+    private FiddCacheConnector fiddConnector;
+    private AtomicReference<Pair<X509Certificate, PrivateKey>> keyPair;
+    private WrapperFiddContentService service;
+
+    private static byte[] fiddKeyBytes() {
+        FiddKey.Section section = ImmutableSection.builder()
+                .sectionOffset(10)
+                .sectionLength(100)
+                .build();
+        FiddKey fiddKey = ImmutableFiddKey.builder()
+                .fiddFileMetadata(section)
+                .logicalFiles(List.of(section))
+                .build();
+        return new YamlFiddKeySerializer().serialize(fiddKey);
+    }
+
+    @BeforeEach
+    void setup() {
+        fiddConnector = mock(FiddCacheConnector.class);
+        keyPair = new AtomicReference<>();
+        service = new WrapperFiddContentService(new DefaultBaseRepositories(), fiddConnector, keyPair::get);
+    }
+
+    @Test
+    void testUnencryptedFiddKeyIsLoadedOnce() throws Exception {
+        when(fiddConnector.getUnencryptedFiddKey(5L)).thenReturn(fiddKeyBytes());
+
+        FiddKey first = service.loadFiddKey(5L);
+        FiddKey second = service.loadFiddKey(5L);
+
+        assertNotNull(first);
+        assertEquals(first, second);
+        verify(fiddConnector, times(1)).getUnencryptedFiddKey(5L);
+    }
+
+    @Test
+    void testMissingFiddKeyIsNotCached() throws Exception {
+        when(fiddConnector.getUnencryptedFiddKey(5L)).thenReturn(null);
+
+        assertNull(service.loadFiddKey(5L));
+        assertNull(service.loadFiddKey(5L));
+
+        verify(fiddConnector, times(2)).getUnencryptedFiddKey(5L);
+    }
+
+    @Test
+    void testKeyPairChangeInvalidatesCacheAndFootprintIsCached() throws Exception {
+        when(fiddConnector.getUnencryptedFiddKey(7L)).thenReturn(fiddKeyBytes());
+        when(fiddConnector.getFiddMessageSize(7L)).thenReturn(1000L);
+        when(fiddConnector.getFiddKeyCandidates(anyLong(), any())).thenReturn(List.of());
+
+        service.loadFiddKey(7L);
+        verify(fiddConnector, times(1)).getUnencryptedFiddKey(7L);
+
+        X509Certificate cert = mock(X509Certificate.class);
+        keyPair.set(Pair.of(cert, mock(PrivateKey.class)));
+        try (MockedStatic<FiddKeyLookup> lookupMock = mockStatic(FiddKeyLookup.class)) {
+            lookupMock.when(() -> FiddKeyLookup.createLookupFootprint(any(), any(), anyLong(), anyLong()))
+                    .thenReturn("fp");
+
+            // Key pair changed - cached FiddKey is dropped and looked up again
+            assertNotNull(service.loadFiddKey(7L));
+            verify(fiddConnector, times(2)).getUnencryptedFiddKey(7L);
+
+            // Same key pair - served from cache
+            assertNotNull(service.loadFiddKey(7L));
+            verify(fiddConnector, times(2)).getUnencryptedFiddKey(7L);
+
+            // Footprint is cached separately from the FiddKey itself
+            service.fiddKeyCache.invalidateAll();
+            assertNotNull(service.loadFiddKey(7L));
+            lookupMock.verify(() -> FiddKeyLookup.createLookupFootprint(any(), any(), anyLong(), anyLong()), times(1));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.fidd.core.encryption;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API part of XorKernel, in a source set of its own: nothing else is compiled against jdk.incubator.vector.
+ * XorKernel looks it up reflectively, and only when the module is in the boot layer.
+ */
+final class VectorXorKernel {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorXorKernel() {}
+
+    /** XORs whole vectors from the start of the range. @return bytes done; the caller finishes the tail */
+    static int xor(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            ByteVector.fromArray(SPECIES, a, aOff + i)
+                    .lanewise(VectorOperators.XOR, ByteVector.fromArray(SPECIES, b, bOff + i))
+                    .intoArray(out, outOff + i);
+        }
+        return i;
+    }
+}
@@ -72,6 +72,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.prefs.Preferences;
 
 import static com.fidd.connectors.folder.FolderFiddConstants.ENCRYPTED_EXT;
@@ -672,43 +673,54 @@ public class MainForm {
 
             // TODO: Progress Bar modal window
 
-            FiddPackManager.fiddPackNewPost(
-                    originalDirectory,
-                    packedContentDirectory,
-                    currentCert,
-                    privateKey,
-                    messageNumber,
-                    postId,
-
-                    fiddKeySerializer,
-                    metadataContainerSerializer,
-                    fiddFileMetadataSerializer,
-                    logicalFileMetadataSerializer,
-                    encryptionAlgorithm,
-                    randomGenerator,
-                    minGapSize,
-                    maxGapSize,
-
-                    includeMessageCreationTime,
-
-                    createFileAndKeySignatures,
-                    addFiddFileMetadataSignature,
-                    addLogicalFileSignatures,
-                    addLogicalFileMetadataSignatures,
-                    addLogicalFileHeaderLengthToFiddKey,
-
-                    includePublicKey,
-                    publicKeySerializer,
-                    List.of(signerChecker),
-
-                    addCrcsToFiddKey,
-                    List.of(crcCalculator),
-
-                    addProgressiveCrcs,
-                    minProgressiveCrcFileSize,
-                    ONE_MEBIBYTE,
-                    List.of(progressiveCrcCalculator)
-            );
+            // Logical files are encrypted concurrently on a pool of their own: its tasks join each other
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            ForkJoinPool packPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+            try {
+                FiddPackManager.fiddPackNewPost(
+                        originalDirectory,
+                        packedContentDirectory,
+                        currentCert,
+                        privateKey,
+                        messageNumber,
+                        postId,
+
+                        fiddKeySerializer,
+                        metadataContainerSerializer,
+                        fiddFileMetadataSerializer,
+                        logicalFileMetadataSerializer,
+                        encryptionAlgorithm,
+                        randomGenerator,
+                        minGapSize,
+                        maxGapSize,
+
+                        includeMessageCreationTime,
+
+                        createFileAndKeySignatures,
+                        addFiddFileMetadataSignature,
+                        addLogicalFileSignatures,
+                        addLogicalFileMetadataSignatures,
+                        addLogicalFileHeaderLengthToFiddKey,
+
+                        includePublicKey,
+                        publicKeySerializer,
+                        List.of(signerChecker),
+
+                        addCrcsToFiddKey,
+                        List.of(crcCalculator),
+
+                        addProgressiveCrcs,
+                        minProgressiveCrcFileSize,
+                        ONE_MEBIBYTE,
+                        List.of(progressiveCrcCalculator),
+
+                        packPool
+                );
+            } finally {
+                if (packPool != null) {
+                    packPool.shutdown();
+                }
+            }
 
             formMessageNumber(packedContentDirectoryRoot);
 
@@ -1046,31 +1058,32 @@ public class MainForm {
 
             // TODO: Progress Bar modal window ??
 
-            FolderFiddConnector connector = new FolderFiddConnector(packedContentFolder.toPath().getParent());
-            long messageNumber = Long.parseLong(packedContentFolder.toPath().getFileName().toString());
-
-            boolean throwOnValidationFailures = !ignoreValidationFailures;
-            FiddUnpackManager.fiddUnpackPost(baseRepositories,
-                    connector,
-                    messageNumber,
-
-                    fiddFile,
-                    fiddKeyFileName,
-                    fiddKeyBytes,
-                    fiddFileSignatures,
-                    fiddKeyFileSignatures,
-                    contentFolder,
-
-                    throwOnValidationFailures,
-                    validateFiddFileAndFiddKey,
-                    validateCrcsInFiddKey,
-                    validateFiddFileMetadata,
-                    validateLogicalFileMetadatas,
-                    validateLogicalFiles,
-
-                    publicKeySource,
-                    currentCert,
-                    mainFormProgressCallback);
+            try (FolderFiddConnector connector = new FolderFiddConnector(packedContentFolder.toPath().getParent())) {
+                long messageNumber = Long.parseLong(packedContentFolder.toPath().getFileName().toString());
+
+                boolean throwOnValidationFailures = !ignoreValidationFailures;
+                FiddUnpackManager.fiddUnpackPost(baseRepositories,
+                        connector,
+                        messageNumber,
+
+                        fiddFile,
+                        fiddKeyFileName,
+                        fiddKeyBytes,
+                        fiddFileSignatures,
+                        fiddKeyFileSignatures,
+                        contentFolder,
+
+                        throwOnValidationFailures,
+                        validateFiddFileAndFiddKey,
+                        validateCrcsInFiddKey,
+                        validateFiddFileMetadata,
+                        validateLogicalFileMetadatas,
+                        validateLogicalFiles,
+
+                        publicKeySource,
+                        currentCert,
+                        mainFormProgressCallback);
+            }
 
             JavaFxUtils.showMessage("Fidd Unpack Complete!");
         } catch (Exception e) {
@@ -1387,10 +1400,11 @@ public class MainForm {
         X509Certificate userCert = pair.getLeft();
         PrivateKey userPrivateKey = pair.getRight();
 
-        FolderFiddConnector connector = new FolderFiddConnector(packedContentFolder.toPath().getParent());
-        long messageNumber = Long.parseLong(packedContentFolder.toPath().getFileName().toString());
+        try (FolderFiddConnector connector = new FolderFiddConnector(packedContentFolder.toPath().getParent())) {
+            long messageNumber = Long.parseLong(packedContentFolder.toPath().getFileName().toString());
 
-        return FiddKeyUtil.loadFiddKeyBytes(baseRepositories, messageNumber, connector, userCert, userPrivateKey);
+            return FiddKeyUtil.loadFiddKeyBytes(baseRepositories, messageNumber, connector, userCert, userPrivateKey);
+        }
     }
 
     public void publishFolder() {
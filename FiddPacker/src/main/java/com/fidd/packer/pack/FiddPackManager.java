@@ -2,10 +2,13 @@ package com.fidd.packer.pack;
 
 import com.fidd.core.NamedEntry;
 import com.fidd.core.common.FiddSignature;
+import com.fidd.core.common.PositionalWritableChannel;
 import com.fidd.core.common.ProgressiveCrc;
 import com.fidd.core.crc.CrcCalculator;
 import com.fidd.core.crc.ProgressiveCrcCalculator;
+import com.fidd.core.crc.ProgressiveCrcChunker;
 import com.fidd.core.encryption.EncryptionAlgorithm;
+import com.fidd.core.encryption.RandomAccessEncryptionAlgorithm;
 import com.fidd.core.fiddfile.FiddFileMetadata;
 import com.fidd.core.fiddfile.FiddFileMetadataSerializer;
 import com.fidd.core.fiddfile.ImmutableFiddFileMetadata;
@@ -21,6 +24,8 @@ import com.fidd.core.metadata.MetadataContainer;
 import com.fidd.core.metadata.MetadataContainerSerializer;
 import com.fidd.core.pki.PublicKeySerializer;
 import com.fidd.core.pki.SignerChecker;
+import com.fidd.core.pki.SigningChannel;
+import com.fidd.core.random.GapFiller;
 import com.fidd.core.random.RandomGeneratorType;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -28,11 +33,12 @@ import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -42,6 +48,9 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.random.RandomGenerator;
 
 import static com.fidd.connectors.folder.FolderFiddConstants.DEFAULT_FIDD_SIGNATURE_EXT;
@@ -55,7 +64,7 @@ public class FiddPackManager {
     public final static String FIDD_MESSAGE_SIGNATURE_FILE_NAME_PREFIX = FIDD_MESSAGE_FILE_NAME + ".";
     public final static String FIDD_KEY_SIGNATURE_FILE_NAME_PREFIX = FIDD_KEY_FILE_NAME + ".";
 
-    private static final int IO_BUFFER_SIZE = 8192; // 8 KB buffer size
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
 
     public static FiddFileMetadata createNewPostFiddFileMetadata(
             long messageNumber,
@@ -132,6 +141,60 @@ public class FiddPackManager {
                                 long minProgressiveCrcFileSize,
                                 long progressiveCrcChunkSize,
                                 List<CrcCalculator> progressiveCrcCalculators
+    ) throws IOException {
+        fiddPackNewPost(originalDirectory, packedContentDirectory, authorsPublicKey, authorsPrivateKey,
+                messageNumber, postId, fiddKeySerializer, metadataContainerSerializer, fiddFileMetadataSerializer,
+                logicalFileMetadataSerializer, encryptionAlgorithm, randomGenerator, minGapSize, maxGapSize,
+                includeMessageCreationTime, createFileAndKeySignatures, addFiddFileMetadataSignature,
+                addLogicalFileSignatures, addLogicalFileMetadataSignatures, addLogicalFileHeaderLengthToFiddKey,
+                includePublicKey, publicKeySerializer, signerCheckers, addCrcsToFiddKey, crcCalculators,
+                addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators,
+                null);
+    }
+
+    /**
+     * @param pool encrypts logical files concurrently, each into its planned range of the Fidd File, and computes
+     *             their progressive CRCs; null to encrypt them one after another. The layout, keys and gaps are drawn
+     *             the same way either way. Tasks on it join each other, so it should be a pool of its own rather than
+     *             one whose workers are shared with unrelated work.
+     */
+    public static void fiddPackNewPost(File originalDirectory,
+                                File packedContentDirectory,
+                                @Nullable X509Certificate authorsPublicKey,
+                                @Nullable PrivateKey authorsPrivateKey,
+                                long messageNumber,
+                                String postId,
+
+                                FiddKeySerializer fiddKeySerializer,
+                                MetadataContainerSerializer metadataContainerSerializer,
+                                FiddFileMetadataSerializer fiddFileMetadataSerializer,
+                                LogicalFileMetadataSerializer logicalFileMetadataSerializer,
+                                EncryptionAlgorithm encryptionAlgorithm,
+                                RandomGeneratorType randomGenerator,
+                                long minGapSize,
+                                long maxGapSize,
+
+                                boolean includeMessageCreationTime,
+
+                                boolean createFileAndKeySignatures,
+                                boolean addFiddFileMetadataSignature,
+                                boolean addLogicalFileSignatures,
+                                boolean addLogicalFileMetadataSignatures,
+                                boolean addLogicalFileHeaderLengthToFiddKey,
+
+                                boolean includePublicKey,
+                                PublicKeySerializer publicKeySerializer,
+                                List<SignerChecker> signerCheckers,
+
+                                boolean addCrcsToFiddKey,
+                                List<CrcCalculator> crcCalculators,
+
+                                boolean addProgressiveCrcs,
+                                long minProgressiveCrcFileSize,
+                                long progressiveCrcChunkSize,
+                                List<CrcCalculator> progressiveCrcCalculators,
+
+                                @Nullable ForkJoinPool pool
     ) throws IOException {
         // Fidd Key parts will be populated as we go
         FiddKey.Section fiddFileMetadataSection = null;
@@ -174,9 +237,18 @@ public class FiddPackManager {
                 includeMessageCreationTime
         );
 
-        // 3. Form FiddFile
+        // 3. Form FiddFile; everything written to it, gaps included, is fed to the Fidd File signers as it goes
+        List<SignerChecker.StreamingSigner> fiddFileSigners = new ArrayList<>();
+        if (createFileAndKeySignatures) {
+            for (SignerChecker signerChecker : signerCheckers) {
+                fiddFileSigners.add(signerChecker.newStreamingSigner(checkNotNull(authorsPrivateKey)));
+            }
+        }
         try (FileChannel outputChannel = FileChannel.open(fiddFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-            OutputStream outputStream = Channels.newOutputStream(outputChannel);
+            WritableByteChannel signedOutputChannel = fiddFileSigners.isEmpty()
+                    ? outputChannel
+                    : new SigningChannel(outputChannel, fiddFileSigners);
+            OutputStream outputStream = Channels.newOutputStream(signedOutputChannel);
             long position = 0;
 
             // 3.1. Add first gap
@@ -189,58 +261,112 @@ public class FiddPackManager {
             // Random position in the file for FiddFile Metadata Section
             int fiddFileMetadataSectionPosition = randomGenerator.generator().nextInt(files.size()+1);
 
-            for (int i = -1; i < files.toArray().length; i++) {
-                // 3.2.1 Write Logical file
-                if (i != -1) {
-                    // 3.2.1.1 Encrypt and add LogicalFile
-                    FilePathTuple file = files.get(i);
-                    long logicalFileSectionOffset = position;
-                    byte[] logicalFileSectionKey = encryptionAlgorithm.generateNewKeyData(randomGenerator);
-
-                    LengthAndCrcs logicalFileSectionLengthAndCrc =
-                            addLogicalFileWithMetadata(originalDirectory, file.file(),
-                                    outputStream, encryptionAlgorithm, logicalFileSectionKey,
-                                    metadataContainerSerializer, logicalFileMetadataSerializer,
-                                    addLogicalFileSignatures, addLogicalFileMetadataSignatures,
-                                    signerCheckers, authorsPrivateKey,
-                                    addCrcsToFiddKey, crcCalculators,
-                                    addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators);
-                    position += logicalFileSectionLengthAndCrc.length();
-
-                    // 3.2.2.2 Form corresponding Section descriptor for FiddKey
-                    FiddKey.Section logicalFileSection = createFiddKeySection(logicalFileSectionOffset,
-                            position - logicalFileSectionOffset, encryptionAlgorithm,
-                            logicalFileSectionKey, addCrcsToFiddKey,
-                            crcCalculators, logicalFileSectionLengthAndCrc.crcs(), addLogicalFileHeaderLengthToFiddKey,
-                            logicalFileSectionLengthAndCrc.headerLength());
-                    logicalFilesSections.add(logicalFileSection);
+            // With a pool, metadata containers of all files are prepared up front, so that the length of every
+            // section is known before it's encrypted. Sections are then encrypted concurrently into their ranges,
+            // unless the Fidd File is signed: the signers have to see the sections in order, so they're written
+            // one after another
+            List<byte[]> metadataContainers = pool != null && files.size() > 1
+                    ? createLogicalFileMetadataContainers(pool, originalDirectory, files,
+                            metadataContainerSerializer, logicalFileMetadataSerializer,
+                            addLogicalFileSignatures, addLogicalFileMetadataSignatures, signerCheckers, authorsPrivateKey,
+                            addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators)
+                    : null;
+            TaskGroup<LengthAndCrcs> sectionTasks = new TaskGroup<>(pool);
+            List<Long> sectionOffsets = new ArrayList<>();
+            List<byte[]> sectionKeys = new ArrayList<>();
+
+            try {
+                for (int i = -1; i < files.toArray().length; i++) {
+                    // 3.2.1 Write Logical file
+                    if (i != -1 && metadataContainers != null && fiddFileSigners.isEmpty()) {
+                        // 3.2.1.1 Plan LogicalFile section and encrypt it on the pool; the channel's position skips over it
+                        FilePathTuple file = files.get(i);
+                        long logicalFileSectionOffset = position;
+                        byte[] logicalFileSectionKey = encryptionAlgorithm.generateNewKeyData(randomGenerator);
+                        byte[] metadataContainerBytes = metadataContainers.get(i);
+                        long logicalFileSectionLength = encryptionAlgorithm.plaintextLengthToCiphertextLength(
+                                metadataContainerBytes.length + file.file().length());
+
+                        sectionTasks.submit(() -> encryptLogicalFileSection(file.file(), metadataContainerBytes,
+                                outputChannel, logicalFileSectionOffset, logicalFileSectionLength,
+                                encryptionAlgorithm, logicalFileSectionKey, addCrcsToFiddKey, crcCalculators));
+                        sectionOffsets.add(logicalFileSectionOffset);
+                        sectionKeys.add(logicalFileSectionKey);
+                        position += logicalFileSectionLength;
+                        outputChannel.position(position);
+
+                        // 3.2.1.2 Add gap after LogicalFile Section
+                        position += appendGap(outputStream, minGapSize, maxGapSize, randomGenerator.generator());
+                    } else if (i != -1) {
+                        // 3.2.1.1 Encrypt and add LogicalFile
+                        FilePathTuple file = files.get(i);
+                        long logicalFileSectionOffset = position;
+                        byte[] logicalFileSectionKey = encryptionAlgorithm.generateNewKeyData(randomGenerator);
+
+                        LengthAndCrcs logicalFileSectionLengthAndCrc = metadataContainers != null
+                                ? encryptLogicalFile(file.file(), metadataContainers.get(i),
+                                        signedOutputChannel, encryptionAlgorithm, logicalFileSectionKey,
+                                        addCrcsToFiddKey, crcCalculators)
+                                : addLogicalFileWithMetadata(originalDirectory, file.file(),
+                                        signedOutputChannel, encryptionAlgorithm, logicalFileSectionKey,
+                                        metadataContainerSerializer, logicalFileMetadataSerializer,
+                                        addLogicalFileSignatures, addLogicalFileMetadataSignatures,
+                                        signerCheckers, authorsPrivateKey,
+                                        addCrcsToFiddKey, crcCalculators,
+                                        addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators,
+                                        pool);
+                        position += logicalFileSectionLengthAndCrc.length();
+
+                        // 3.2.2.2 Form corresponding Section descriptor for FiddKey
+                        FiddKey.Section logicalFileSection = createFiddKeySection(logicalFileSectionOffset,
+                                position - logicalFileSectionOffset, encryptionAlgorithm,
+                                logicalFileSectionKey, addCrcsToFiddKey,
+                                crcCalculators, logicalFileSectionLengthAndCrc.crcs(), addLogicalFileHeaderLengthToFiddKey,
+                                logicalFileSectionLengthAndCrc.headerLength());
+                        logicalFilesSections.add(logicalFileSection);
+
+                        // 3.2.1.2 Add gap after LogicalFile Section
+                        position += appendGap(outputStream, minGapSize, maxGapSize, randomGenerator.generator());
+                    }
 
-                    // 3.2.1.2 Add gap after LogicalFile Section
-                    position += appendGap(outputStream, minGapSize, maxGapSize, randomGenerator.generator());
+                    // 3.2.2 If we're at the right position, also write FiddFile Metadata
+                    if ((i+1) == fiddFileMetadataSectionPosition) {
+                        // 3.2.2.1 Encrypt and add FiddFileMetadata
+                        long fiddFileMetadataSectionOffset = position;
+                        byte[] fiddFileMetadataSectionKey = encryptionAlgorithm.generateNewKeyData(randomGenerator);
+
+                        LengthAndCrcs fiddFileMetadataSectionLengthAndCrc =
+                                addFiddFileMetadata(outputStream, fiddFileMetadata, fiddFileMetadataSerializer,
+                                        metadataContainerSerializer,
+                                        encryptionAlgorithm, fiddFileMetadataSectionKey, crcCalculators, addCrcsToFiddKey,
+                                        addFiddFileMetadataSignature, authorsPrivateKey, signerCheckers);
+                        position += fiddFileMetadataSectionLengthAndCrc.length();
+
+                        // 3.2.2.2 Form corresponding Section descriptor for FiddKey
+                        fiddFileMetadataSection = createFiddKeySection(fiddFileMetadataSectionOffset,
+                                position - fiddFileMetadataSectionOffset, encryptionAlgorithm,
+                                fiddFileMetadataSectionKey, addCrcsToFiddKey,
+                                crcCalculators, fiddFileMetadataSectionLengthAndCrc.crcs(), false, null);
+
+                        // 3.2.2.3 Add gap after FiddFile Metadata Section
+                        position += appendGap(outputStream, minGapSize, maxGapSize, randomGenerator.generator());
+                    }
                 }
 
-                // 3.2.2 If we're at the right position, also write FiddFile Metadata
-                if ((i+1) == fiddFileMetadataSectionPosition) {
-                    // 3.2.2.1 Encrypt and add FiddFileMetadata
-                    long fiddFileMetadataSectionOffset = position;
-                    byte[] fiddFileMetadataSectionKey = encryptionAlgorithm.generateNewKeyData(randomGenerator);
-
-                    LengthAndCrcs fiddFileMetadataSectionLengthAndCrc =
-                            addFiddFileMetadata(outputStream, fiddFileMetadata, fiddFileMetadataSerializer,
-                                    metadataContainerSerializer,
-                                    encryptionAlgorithm, fiddFileMetadataSectionKey, crcCalculators, addCrcsToFiddKey,
-                                    addFiddFileMetadataSignature, authorsPrivateKey, signerCheckers);
-                    position += fiddFileMetadataSectionLengthAndCrc.length();
-
-                    // 3.2.2.2 Form corresponding Section descriptor for FiddKey
-                    fiddFileMetadataSection = createFiddKeySection(fiddFileMetadataSectionOffset,
-                            position - fiddFileMetadataSectionOffset, encryptionAlgorithm,
-                            fiddFileMetadataSectionKey, addCrcsToFiddKey,
-                            crcCalculators, fiddFileMetadataSectionLengthAndCrc.crcs(), false, null);
-
-                    // 3.2.2.3 Add gap after FiddFile Metadata Section
-                    position += appendGap(outputStream, minGapSize, maxGapSize, randomGenerator.generator());
+                // 3.3 Form Section descriptors of LogicalFiles encrypted on the pool, in the order they were laid out
+                List<LengthAndCrcs> sectionLengthsAndCrcs = sectionTasks.joinAll();
+                for (int i = 0; i < sectionLengthsAndCrcs.size(); i++) {
+                    LengthAndCrcs logicalFileSectionLengthAndCrc = sectionLengthsAndCrcs.get(i);
+                    logicalFilesSections.add(createFiddKeySection(sectionOffsets.get(i),
+                            logicalFileSectionLengthAndCrc.length(), encryptionAlgorithm,
+                            sectionKeys.get(i), addCrcsToFiddKey,
+                            crcCalculators, logicalFileSectionLengthAndCrc.crcs(), addLogicalFileHeaderLengthToFiddKey,
+                            logicalFileSectionLengthAndCrc.headerLength()));
                 }
+            } finally {
+                // If anything failed, drop sections not started yet and wait for the running ones, before
+                // the channel is closed and the Fidd File deleted under them
+                sectionTasks.abandonAndAwait();
             }
         }
 
@@ -255,25 +381,16 @@ public class FiddPackManager {
         byte[] fiddKeyBytes = fiddKeySerializer.serialize(fiddKey);
         Files.write(fiddKeyFile.toPath(), fiddKeyBytes);
 
-        // 5. File signatures
+        // 5. File signatures: Fidd File signers have seen all of it by now, Fidd Key is still in memory
         if (createFileAndKeySignatures) {
-            // 5.1 Form Fidd file signature
             for (int i = 0; i < signerCheckers.size(); i++) {
                 SignerChecker signerChecker = signerCheckers.get(i);
 
                 File fiddFileSignature = new File(packedContentDirectory, FIDD_MESSAGE_FILE_NAME + "." + i + DEFAULT_FIDD_SIGNATURE_EXT);
                 File fiddKeyFileSignature = new File(packedContentDirectory, FIDD_KEY_FILE_NAME + "." + i + DEFAULT_FIDD_SIGNATURE_EXT);
 
-                try (FileChannel inputChannel = FileChannel.open(fiddFile.toPath(), StandardOpenOption.READ)) {
-                    InputStream inputFileStream = Channels.newInputStream(inputChannel);
-                    byte[] fiddFileSignatureBytes = signerChecker.signData(inputFileStream, authorsPrivateKey);
-                    Files.write(fiddFileSignature.toPath(), fiddFileSignatureBytes);
-                }
-                try (FileChannel inputChannel = FileChannel.open(fiddKeyFile.toPath(), StandardOpenOption.READ)) {
-                    InputStream inputFileStream = Channels.newInputStream(inputChannel);
-                    byte[] fiddKeyFileSignatureBytes = signerChecker.signData(inputFileStream, authorsPrivateKey);
-                    Files.write(fiddKeyFileSignature.toPath(), fiddKeyFileSignatureBytes);
-                }
+                Files.write(fiddFileSignature.toPath(), fiddFileSigners.get(i).sign());
+                Files.write(fiddKeyFileSignature.toPath(), signerChecker.signData(fiddKeyBytes, checkNotNull(authorsPrivateKey)));
             }
         }
     }
@@ -326,34 +443,16 @@ public class FiddPackManager {
         return minGapSize + randomGenerator.nextLong(maxGapSize - minGapSize + 1);
     }
 
+    /** Appends a gap of random size; its bytes are a keystream seeded from randomGenerator, see GapFiller */
     public static long appendGap(OutputStream outputChannelStream, long minGapSize, long maxGapSize, RandomGenerator randomGenerator) throws IOException {
         if (maxGapSize == 0) { return 0; }
         final long gapSize = randomLongBetween(minGapSize, maxGapSize, randomGenerator);
-        final int bufferSize = IO_BUFFER_SIZE;
-
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-
-        long remaining = gapSize;
-        while (remaining > 0) {
-            buffer.clear();
-
-            // Fill buffer with random bytes
-            int bytesToWrite = (int) Math.min(bufferSize, remaining);
-            byte[] randomBytes = new byte[bytesToWrite];
-            randomGenerator.nextBytes(randomBytes);
-
-            buffer.put(randomBytes);
-            buffer.flip();
-
-            outputChannelStream.write(randomBytes);
-
-            remaining -= bytesToWrite;
-        }
+        GapFiller.fill(outputChannelStream, gapSize, randomGenerator);
 
         return gapSize;
     }
 
-    private static LengthAndCrcs addLogicalFileWithMetadata(File originalDirectory, File inputFile, OutputStream outputFileStream,
+    private static LengthAndCrcs addLogicalFileWithMetadata(File originalDirectory, File inputFile, WritableByteChannel outputFileChannel,
                                                             EncryptionAlgorithm encryptionAlgorithm, byte[] keyData,
                                                             MetadataContainerSerializer metadataContainerSerializer,
                                                             LogicalFileMetadataSerializer logicalFileMetadataSerializer,
@@ -367,7 +466,33 @@ public class FiddPackManager {
                                                             boolean addProgressiveCrcs,
                                                             long minProgressiveCrcFileSize,
                                                             long progressiveCrcChunkSize,
-                                                            List<CrcCalculator> progressiveCrcCalculators
+                                                            List<CrcCalculator> progressiveCrcCalculators,
+                                                            @Nullable ForkJoinPool pool
+                                                   ) throws IOException {
+        byte[] metadataContainerBytes = createLogicalFileMetadataContainer(originalDirectory, inputFile,
+                metadataContainerSerializer, logicalFileMetadataSerializer,
+                addLogicalFileSignatures, addLogicalFileMetadataSignatures, signerCheckers, authorsPrivateKey,
+                addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators, pool);
+        return encryptLogicalFile(inputFile, metadataContainerBytes, outputFileChannel, encryptionAlgorithm, keyData,
+                addCrcsToFiddKey, crcCalculators);
+    }
+
+    /** Metadata container that goes in front of a logical file. Needs a full read of the file for signatures
+     * and progressive CRCs, but nothing from the layout of the Fidd File. Progressive CRCs are computed on pool,
+     * which is also the pool this runs on if any, so that joining them helps instead of blocking a worker. */
+    private static byte[] createLogicalFileMetadataContainer(File originalDirectory, File inputFile,
+                                                             MetadataContainerSerializer metadataContainerSerializer,
+                                                             LogicalFileMetadataSerializer logicalFileMetadataSerializer,
+                                                             boolean addLogicalFileSignatures,
+                                                             boolean addLogicalFileMetadataSignatures,
+                                                             List<SignerChecker> signerCheckers,
+                                                             @Nullable PrivateKey authorsPrivateKey,
+
+                                                             boolean addProgressiveCrcs,
+                                                             long minProgressiveCrcFileSize,
+                                                             long progressiveCrcChunkSize,
+                                                             List<CrcCalculator> progressiveCrcCalculators,
+                                                             @Nullable ForkJoinPool pool
                                                    ) throws IOException {
         // 1. Form Logical file metadata
         LogicalFileMetadata logicalFileMetadata;
@@ -388,32 +513,49 @@ public class FiddPackManager {
                 logicalFileMetadataBuilder.updatedAt(updatedAt);
             }
 
-            if (addLogicalFileSignatures) {
+            boolean progressiveCrcsWanted = addProgressiveCrcs && inputFile.length() >= minProgressiveCrcFileSize;
+            if (addLogicalFileSignatures && !signerCheckers.isEmpty()) {
+                // One read of the file feeds every signer, and the progressive CRCs too
+                List<SignerChecker.StreamingSigner> signers = new ArrayList<>();
                 for (SignerChecker signerChecker : signerCheckers) {
-                    List<FiddSignature> signatures = new ArrayList<>();
-                    try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
-                        InputStream inputFileStream = Channels.newInputStream(inputChannel);
-                        byte[] inputFileSignature = signerChecker.signData(inputFileStream, checkNotNull(authorsPrivateKey));
-
-                        signatures.add(FiddSignature.of(signerChecker.name(), inputFileSignature));
+                    signers.add(signerChecker.newStreamingSigner(checkNotNull(authorsPrivateKey)));
+                }
+                List<ProgressiveCrcChunker> chunkers = new ArrayList<>();
+                if (progressiveCrcsWanted) {
+                    for (CrcCalculator progressiveCrcCalculator : checkNotNull(progressiveCrcCalculators)) {
+                        chunkers.add(new ProgressiveCrcChunker(progressiveCrcCalculator, progressiveCrcChunkSize));
                     }
-
-                    logicalFileMetadataBuilder.authorsFileSignatures(signatures);
                 }
-            }
+                digestFile(inputFile, signers, chunkers);
 
-            if (addProgressiveCrcs && inputFile.length() >= minProgressiveCrcFileSize) {
-                List<ProgressiveCrc> progressiveCrcs = new ArrayList<>();
-                for (CrcCalculator progressiveCrcCalculator : checkNotNull(progressiveCrcCalculators)) {
-                    try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
-                        InputStream inputFileStream = Channels.newInputStream(inputChannel);
-                        byte[] progressiveCrc = ProgressiveCrcCalculator.calculateProgressiveCrc(inputFileStream, progressiveCrcChunkSize, progressiveCrcCalculator);
+                List<FiddSignature> signatures = new ArrayList<>();
+                for (int i = 0; i < signerCheckers.size(); i++) {
+                    signatures.add(FiddSignature.of(signerCheckers.get(i).name(), signers.get(i).sign()));
+                }
+                logicalFileMetadataBuilder.authorsFileSignatures(signatures);
 
-                        progressiveCrcs.add(ProgressiveCrc.of(progressiveCrcCalculator.name(), progressiveCrc, progressiveCrcChunkSize));
+                if (progressiveCrcsWanted) {
+                    List<ProgressiveCrc> progressiveCrcs = new ArrayList<>();
+                    for (int i = 0; i < progressiveCrcCalculators.size(); i++) {
+                        progressiveCrcs.add(ProgressiveCrc.of(progressiveCrcCalculators.get(i).name(),
+                                chunkers.get(i).getCrc(), progressiveCrcChunkSize));
                     }
-
                     logicalFileMetadataBuilder.progressiveCrcs(progressiveCrcs);
                 }
+            } else if (progressiveCrcsWanted) {
+                List<ProgressiveCrc> progressiveCrcs = new ArrayList<>();
+                try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+                    // Nothing else to read the file for: all calculators in one parallel pass
+                    List<byte[]> progressiveCrcBytes = ProgressiveCrcCalculator.calculateProgressiveCrcs(inputChannel,
+                            progressiveCrcChunkSize, checkNotNull(progressiveCrcCalculators),
+                            pool != null ? pool : ForkJoinPool.commonPool());
+                    for (int i = 0; i < progressiveCrcCalculators.size(); i++) {
+                        progressiveCrcs.add(ProgressiveCrc.of(progressiveCrcCalculators.get(i).name(),
+                                progressiveCrcBytes.get(i), progressiveCrcChunkSize));
+                    }
+                }
+
+                logicalFileMetadataBuilder.progressiveCrcs(progressiveCrcs);
             }
 
             logicalFileMetadata = logicalFileMetadataBuilder.build();
@@ -440,8 +582,15 @@ public class FiddPackManager {
 
             logicalFileMetadataContainer = metadataContainerBuilder.build();
         }
-        byte[] metadataContainerBytes = metadataContainerSerializer.serialize(logicalFileMetadataContainer);
+        return metadataContainerSerializer.serialize(logicalFileMetadataContainer);
+    }
 
+    /** Encrypts the metadata container followed by the file into outputFileChannel */
+    private static LengthAndCrcs encryptLogicalFile(File inputFile, byte[] metadataContainerBytes,
+                                                    WritableByteChannel outputFileChannel,
+                                                    EncryptionAlgorithm encryptionAlgorithm, byte[] keyData,
+                                                    boolean addCrcsToFiddKey,
+                                                    List<CrcCalculator> crcCalculators) throws IOException {
         // 3. Append MetadataContainer and File to Fidd File (output file)
         List<EncryptionAlgorithm.CrcCallback> crcCallbacks = null;
         if (addCrcsToFiddKey) {
@@ -453,9 +602,9 @@ public class FiddPackManager {
 
         long length;
         try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
-            InputStream inputFileStream = Channels.newInputStream(inputChannel);
             length = encryptionAlgorithm.encrypt(keyData,
-                    List.of(new ByteArrayInputStream(metadataContainerBytes), inputFileStream), outputFileStream, crcCallbacks);
+                    List.of(Channels.newChannel(new ByteArrayInputStream(metadataContainerBytes)), inputChannel),
+                    outputFileChannel, crcCallbacks);
         }
 
         List<byte[]> crcs = null;
@@ -467,7 +616,140 @@ public class FiddPackManager {
             }
         }
 
-        return LengthAndCrcs.of(length, crcs, metadataContainerBytes.length);
+        return LengthAndCrcs.of(length, crcs,
+                headerCiphertextLength(encryptionAlgorithm, metadataContainerBytes.length, length));
+    }
+
+    /** createLogicalFileMetadataContainer for each of files, on pool. @return containers in the order of files */
+    private static List<byte[]> createLogicalFileMetadataContainers(ForkJoinPool pool, File originalDirectory,
+                                                                    List<FilePathTuple> files,
+                                                                    MetadataContainerSerializer metadataContainerSerializer,
+                                                                    LogicalFileMetadataSerializer logicalFileMetadataSerializer,
+                                                                    boolean addLogicalFileSignatures,
+                                                                    boolean addLogicalFileMetadataSignatures,
+                                                                    List<SignerChecker> signerCheckers,
+                                                                    @Nullable PrivateKey authorsPrivateKey,
+
+                                                                    boolean addProgressiveCrcs,
+                                                                    long minProgressiveCrcFileSize,
+                                                                    long progressiveCrcChunkSize,
+                                                                    List<CrcCalculator> progressiveCrcCalculators
+                                                   ) throws IOException {
+        TaskGroup<byte[]> tasks = new TaskGroup<>(pool);
+        for (FilePathTuple file : files) {
+            tasks.submit(() -> createLogicalFileMetadataContainer(originalDirectory, file.file(),
+                    metadataContainerSerializer, logicalFileMetadataSerializer,
+                    addLogicalFileSignatures, addLogicalFileMetadataSignatures, signerCheckers, authorsPrivateKey,
+                    addProgressiveCrcs, minProgressiveCrcFileSize, progressiveCrcChunkSize, progressiveCrcCalculators,
+                    pool));
+        }
+        return tasks.joinAll();
+    }
+
+    /**
+     * Encrypts a logical file into the [offset, offset + sectionLength) range of outputChannel with positional
+     * writes, leaving the channel's position alone. sectionLength is planned from the plaintext length, so the
+     * file must not change size while it's packed.
+     */
+    private static LengthAndCrcs encryptLogicalFileSection(File inputFile, byte[] metadataContainerBytes,
+                                                           FileChannel outputChannel, long offset, long sectionLength,
+                                                           EncryptionAlgorithm encryptionAlgorithm, byte[] keyData,
+                                                           boolean addCrcsToFiddKey,
+                                                           List<CrcCalculator> crcCalculators) throws IOException {
+        try (PositionalWritableChannel sectionChannel = new PositionalWritableChannel(outputChannel, offset, sectionLength)) {
+            LengthAndCrcs lengthAndCrcs = encryptLogicalFile(inputFile, metadataContainerBytes, sectionChannel,
+                    encryptionAlgorithm, keyData, addCrcsToFiddKey, crcCalculators);
+            if (lengthAndCrcs.length() != sectionLength || sectionChannel.written() != sectionLength) {
+                throw new IllegalStateException("Section of " + inputFile.getAbsolutePath() + " is "
+                        + sectionChannel.written() + " bytes, planned " + sectionLength);
+            }
+            return lengthAndCrcs;
+        }
+    }
+
+    private interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Tasks submitted to a pool together. ForkJoinTask.cancel marks a running task done without stopping it, so
+     * tasks aren't cancelled: once the group is abandoned, the ones that haven't started skip their work, and
+     * abandonAndAwait waits for the ones that have.
+     */
+    private static class TaskGroup<T> {
+        private final @Nullable ForkJoinPool pool;
+        private final List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        private volatile boolean abandoned;
+
+        TaskGroup(@Nullable ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        void submit(IOCallable<T> callable) {
+            tasks.add(checkNotNull(pool).submit(() -> {
+                if (abandoned) { throw new CancellationException(); }
+                try {
+                    return callable.call();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+
+        /** Joins tasks in order, rethrowing the IOException of the first failed one; abandons the rest on failure */
+        List<T> joinAll() throws IOException {
+            List<T> results = new ArrayList<>(tasks.size());
+            boolean joined = false;
+            try {
+                for (ForkJoinTask<T> task : tasks) {
+                    results.add(task.join());
+                }
+                joined = true;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                if (!joined) { abandonAndAwait(); }
+            }
+            return results;
+        }
+
+        /** Stops tasks that haven't started from starting, and waits for the rest to finish, whichever way */
+        void abandonAndAwait() {
+            abandoned = true;
+            for (ForkJoinTask<T> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Reads inputFile once, handing every buffer to all signers and progressive CRC chunkers. The metadata
+     * container carrying their results goes in front of the file, so this pass has to finish before encryption
+     * starts; it replaces a read per signer and per progressive CRC.
+     */
+    static void digestFile(File inputFile, List<SignerChecker.StreamingSigner> signers,
+                           List<ProgressiveCrcChunker> chunkers) throws IOException {
+        try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+            while (inputChannel.read(buffer.clear()) != -1) {
+                for (SignerChecker.StreamingSigner signer : signers) {
+                    signer.update(buffer.array(), 0, buffer.position());
+                }
+                for (ProgressiveCrcChunker chunker : chunkers) {
+                    chunker.write(buffer.array(), 0, buffer.position());
+                }
+            }
+        }
+    }
+
+    /** Ciphertext at the start of a section that decrypts to the metadata container: whole blocks or
+     * authenticated segments for the modes that need them, never past the end of the section. */
+    static int headerCiphertextLength(EncryptionAlgorithm encryptionAlgorithm, int metadataContainerLength,
+                                      long sectionLength) {
+        long headerLength = encryptionAlgorithm instanceof RandomAccessEncryptionAlgorithm randomAccessAlgorithm
+                ? randomAccessAlgorithm.ciphertextRangeLength(0, metadataContainerLength)
+                : encryptionAlgorithm.plaintextLengthToCiphertextLength(metadataContainerLength);
+        return (int) Math.min(headerLength, sectionLength);
     }
 
     @Nullable
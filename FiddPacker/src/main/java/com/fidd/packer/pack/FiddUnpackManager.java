@@ -8,7 +8,7 @@ import com.fidd.core.common.LogicalFileMetadataUtil;
 import com.fidd.core.common.ProgressiveCrc;
 import com.fidd.core.common.SubFileInputStream;
 import com.fidd.core.crc.CrcCalculator;
-import com.fidd.core.crc.ProgressiveCrcCalculator;
+import com.fidd.core.crc.ProgressiveCrcChunker;
 import com.fidd.core.encryption.EncryptionAlgorithm;
 import com.fidd.core.fiddfile.FiddFileMetadata;
 import com.fidd.core.fiddkey.FiddKey;
@@ -25,16 +25,19 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
-import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.fidd.core.common.FiddFileMetadataUtil.loadFiddFileMetadata;
 import static com.fidd.core.common.LogicalFileUtil.getLogicalFileInputStream;
@@ -46,6 +49,10 @@ public class FiddUnpackManager {
     // TODO: hardcoding this to "BLOBS" for now
     final static String METADATA_CONTAINER_SERIALIZER_FORMAT = "BLOBS";
 
+    private static final int DECRYPT_BUFFER_SIZE = 64 * 1024;
+    /** Buffer of the decrypting pass when the checks run on a pool, large enough to outweigh the hand-offs */
+    private static final int PIPELINED_BUFFER_SIZE = 1024 * 1024;
+
     public interface ProgressCallback {
         void log(String log);
         void warn(String log);
@@ -266,6 +273,7 @@ public class FiddUnpackManager {
                 String logicalFileName = logicalFileMetadata.filePath();
 
                 long logicalFileMetadataLengthBytes = pair.getRight().lengthBytes();
+                List<LogicalFileCheck> checks = new ArrayList<>();
                 if (!validateLogicalFiles) {
                     progressCallback.warn("8.4 Validating LogicalFiles not requested, omitting");
                 } else {
@@ -277,20 +285,10 @@ public class FiddUnpackManager {
                     } else {
                         for (int i = 0; i < logicalFileMetadata.authorsFileSignatures().size(); i++) {
                             FiddSignature authorsFileSignature = logicalFileMetadata.authorsFileSignatures().get(i);
-
-                            try (InputStream logicalFileStream =
-                                        encryptionAlgorithm.getDecryptedStream(logicalFileSection.encryptionKeyData(),
-                                            fiddConnector.getFiddMessageChunk(messageNumber, logicalFileSection.sectionOffset(),
-                                                 logicalFileSection.sectionLength()))) {
-                                skipAll(logicalFileStream, logicalFileMetadataLengthBytes);
-
-                                try (InputStream signatureStream = new ByteArrayInputStream(authorsFileSignature.bytes())) {
-                                    validateFileSignature(i, logicalFileName, null,
-                                            logicalFileStream, signatureStream,
-                                            baseRepositories, authorsFileSignature.format(),
-                                            publicKey,
-                                            progressCallback, throwOnValidationFailure);
-                                }
+                            LogicalFileCheck check = fileSignatureCheck(i, logicalFileName, authorsFileSignature,
+                                    baseRepositories, publicKey, progressCallback, throwOnValidationFailure);
+                            if (check != null) {
+                                checks.add(check);
                             }
                         }
                     }
@@ -300,67 +298,169 @@ public class FiddUnpackManager {
                     } else {
                         for (int i = 0; i < logicalFileMetadata.progressiveCrcs().size(); i++) {
                             ProgressiveCrc progressiveCrc = logicalFileMetadata.progressiveCrcs().get(i);
-
-                            try (InputStream logicalFileStream =
-                                         encryptionAlgorithm.getDecryptedStream(logicalFileSection.encryptionKeyData(),
-                                                 fiddConnector.getFiddMessageChunk(messageNumber, logicalFileSection.sectionOffset(),
-                                                         logicalFileSection.sectionLength()))) {
-                                skipAll(logicalFileStream, logicalFileMetadataLengthBytes);
-
-                                try (InputStream progressiveCrcStream = new ByteArrayInputStream(progressiveCrc.bytes())) {
-                                    validateFileProgressiveCrc(i, logicalFileName,
-                                            logicalFileStream, progressiveCrcStream, progressiveCrc.progressiveCrcChunkSize(),
-                                            baseRepositories, progressiveCrc.format(),
-                                            progressCallback, throwOnValidationFailure);
-                                }
+                            LogicalFileCheck check = fileProgressiveCrcCheck(i, logicalFileName, progressiveCrc,
+                                    baseRepositories, progressCallback, throwOnValidationFailure);
+                            if (check != null) {
+                                checks.add(check);
                             }
                         }
                     }
                 }
 
+                File outputFile = null;
                 if (!materializeLogicalFiles) {
                     progressCallback.warn("8.5 Materializing LogicalFiles not requested, omitting");
                 } else {
                     progressCallback.log("8.5 Materializing LogicalFile \"" + logicalFileMetadata.filePath() +
                             "\" for Section #" + (logicalFileIndex+1) + " (Logical File #" + logicalFileIndex + ")");
+                    outputFile = new File(outputFolder, logicalFileMetadata.filePath());
+                    // Create containing directories if needed
+                    outputFile.getParentFile().mkdirs();
+                }
 
+                if (!checks.isEmpty() || outputFile != null) {
+                    // A single decrypting pass feeds all the checks and the output file
                     try (InputStream logicalFileStream = getLogicalFileInputStream(baseRepositories, fiddConnector,
                                          messageNumber, logicalFileSection, logicalFileMetadataLengthBytes)) {
-                        File outputFile = new File(outputFolder, logicalFileMetadata.filePath());
-                        // Create containing directories if needed
-                        outputFile.getParentFile().mkdirs();
-                        saveToFile(logicalFileStream, outputFile);
-
-                        progressCallback.log("LogicalFile materialized \"" + outputFile.getAbsolutePath() + "\"");
+                        checkAndMaterialize(logicalFileStream, checks, outputFile, logicalFileName,
+                                progressCallback, throwOnValidationFailure, checkPool());
                     }
                 }
             }
         }
     }
 
-    public static void saveToFile(InputStream logicalFileStream, File targetFile) throws IOException {
-        try (OutputStream out = new FileOutputStream(targetFile)) {
-            byte[] buffer = new byte[8192]; // 8 KB buffer
-            int bytesRead;
-            while ((bytesRead = logicalFileStream.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+    /** Signature or progressive CRC of a logical file, fed during the decrypting pass and checked at its end */
+    interface LogicalFileCheck {
+        /** e.g. "File signature #0", as it appears in the validation messages */
+        String name();
+        void update(byte[] data, int off, int len);
+        boolean passed();
+    }
+
+    private record FileSignatureCheck(String name, SignerChecker.StreamingVerifier verifier, byte[] signature)
+            implements LogicalFileCheck {
+        @Override
+        public void update(byte[] data, int off, int len) {
+            verifier.update(data, off, len);
+        }
+
+        @Override
+        public boolean passed() {
+            return verifier.verify(signature);
+        }
+    }
+
+    record FileProgressiveCrcCheck(String name, ProgressiveCrcChunker chunker, byte[] progressiveCrc)
+            implements LogicalFileCheck {
+        @Override
+        public void update(byte[] data, int off, int len) {
+            chunker.write(data, off, len);
+        }
+
+        @Override
+        public boolean passed() {
+            return Arrays.equals(progressiveCrc, chunker.getCrc());
+        }
+    }
+
+    /** Pool the checks of a logical file run on, alongside its decryption; null if there's a single core */
+    private static @Nullable ForkJoinPool checkPool() {
+        return ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Decrypts the logical file once: every buffer goes to all checks and, unless outputFile is null, to the
+     * output file. With a pool the checks - signature verifiers, progressive CRCs - run on it, each one on its
+     * own, while the next buffer is decrypted and the current one written out; see feedPipelined.
+     * Checks are reported when the pass is done. If one fails and that fails the unpack, or if
+     * the pass itself fails, the output file is removed first, so no unvalidated file is left behind.
+     * Package-private for tests.
+     */
+    static void checkAndMaterialize(InputStream logicalFileStream, List<LogicalFileCheck> checks,
+                                            @Nullable File outputFile, String logicalFileName,
+                                            ProgressCallback progressCallback, boolean throwOnValidationFailure,
+                                            @Nullable ForkJoinPool pool) throws IOException {
+        try (OutputStream out = outputFile == null ? OutputStream.nullOutputStream() : new FileOutputStream(outputFile)) {
+            if (pool != null && !checks.isEmpty()) {
+                feedPipelined(logicalFileStream, checks, out, pool);
+            } else {
+                byte[] buffer = new byte[DECRYPT_BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = logicalFileStream.read(buffer)) != -1) {
+                    for (LogicalFileCheck check : checks) {
+                        check.update(buffer, 0, bytesRead);
+                    }
+                    out.write(buffer, 0, bytesRead);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (outputFile != null) {
+                Files.deleteIfExists(outputFile.toPath());
             }
+            throw e;
+        }
+
+        List<LogicalFileCheck> failedChecks = new ArrayList<>();
+        for (LogicalFileCheck check : checks) {
+            if (check.passed()) {
+                progressCallback.log(check.name() + " validation success: " + logicalFileName);
+            } else {
+                failedChecks.add(check);
+            }
+        }
+        if (!failedChecks.isEmpty() && throwOnValidationFailure && outputFile != null) {
+            Files.deleteIfExists(outputFile.toPath());
+            progressCallback.warn("LogicalFile failed validation, removed \"" + outputFile.getAbsolutePath() + "\"");
+        }
+        for (LogicalFileCheck failedCheck : failedChecks) {
+            warnAndMaybeThrow(failedCheck.name() + " validation failed: " + logicalFileName,
+                    progressCallback, throwOnValidationFailure);
+        }
+        if (outputFile != null) {
+            progressCallback.log("LogicalFile materialized \"" + outputFile.getAbsolutePath() + "\"");
         }
     }
 
-    public static void skipAll(InputStream stream, long n) throws IOException {
-        long remaining = n;
-        while (remaining > 0) {
-            long skipped = stream.skip(remaining);
-            if (skipped <= 0) {
-                // If skip() returns 0, try reading and discarding one byte
-                if (stream.read() == -1) {
-                    throw new EOFException("Reached end of stream before skipping " + n + " bytes");
+    /**
+     * The pass of checkAndMaterialize with the checks on pool. Two buffers take turns: while every check takes
+     * one in a task of its own, and it's written to out, the next one is decrypted into the other. A check gets
+     * the next buffer only once it's done with the previous one, so it sees the data in order.
+     */
+    private static void feedPipelined(InputStream logicalFileStream, List<LogicalFileCheck> checks, OutputStream out,
+                                      ForkJoinPool pool) throws IOException {
+        byte[] reading = new byte[PIPELINED_BUFFER_SIZE];
+        byte[] checked = new byte[PIPELINED_BUFFER_SIZE];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(checks.size());
+        try {
+            int length;
+            while ((length = logicalFileStream.readNBytes(reading, 0, reading.length)) > 0) {
+                // The checks are done with the other buffer, it can take the next read
+                joinAll(tasks);
+                byte[] buffer = reading;
+                reading = checked;
+                checked = buffer;
+
+                int bufferLength = length;
+                for (LogicalFileCheck check : checks) {
+                    tasks.add(pool.submit(() -> check.update(buffer, 0, bufferLength)));
                 }
-                skipped = 1;
+                out.write(buffer, 0, bufferLength);
             }
-            remaining -= skipped;
+            joinAll(tasks);
+        } finally {
+            // Failed partway: nothing may still be reading the buffers once this returns
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    private static void joinAll(List<ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
         }
+        tasks.clear();
     }
 
     private static void validateFile(BaseRepositories baseRepositories, File dataFile, List<File> signatureFiles,
@@ -448,11 +548,45 @@ public class FiddUnpackManager {
         }
     }
 
-    private static void validateFileProgressiveCrc(int progressiveCrcNumber,
-                                              String dataFileName,
-                                              InputStream dataStream, InputStream progressiveCrcStream, long progressiveCrcChunkSize,
-                                              BaseRepositories baseRepositories, String progressiveCrcFormat,
-                                              ProgressCallback progressCallback, boolean throwOnValidationFailure) throws IOException {
+    /** @return check of a logical file signature for the decrypting pass, or null if it can't be checked; that
+     * is reported right away */
+    @Nullable
+    private static LogicalFileCheck fileSignatureCheck(int signatureNumber, String dataFileName,
+                                                       FiddSignature fileSignature, BaseRepositories baseRepositories,
+                                                       @Nullable X509Certificate publicKey,
+                                                       ProgressCallback progressCallback, boolean throwOnValidationFailure) {
+        String signatureFormat = fileSignature.format();
+        progressCallback.log("Validating file signature #" + signatureNumber + ": " + dataFileName);
+        progressCallback.log("File signature format: " + signatureFormat);
+        SignerChecker signerChecker = baseRepositories.signatureFormatRepo().get(signatureFormat);
+        if (publicKey == null) {
+            String errorMessage = "File signature #" + signatureNumber + " validation failed - PublicKey not specified. " +
+                    dataFileName;
+            if (signerChecker == null) {
+                warnAndMaybeThrow(errorMessage, progressCallback, false);
+            } else {
+                warnAndMaybeThrow(errorMessage, progressCallback, throwOnValidationFailure);
+                return null;
+            }
+        }
+
+        if (signerChecker == null) {
+            warnAndMaybeThrow("File signature #" + signatureNumber + " validation failed - signature format " +
+                    signatureFormat + " not supported. " + dataFileName,
+                    progressCallback, throwOnValidationFailure);
+            return null;
+        }
+        return new FileSignatureCheck("File signature #" + signatureNumber,
+                signerChecker.newStreamingVerifier(checkNotNull(publicKey).getPublicKey()), fileSignature.bytes());
+    }
+
+    /** @return check of a logical file progressive CRC for the decrypting pass, or null if it can't be checked;
+     * that is reported right away */
+    @Nullable
+    private static LogicalFileCheck fileProgressiveCrcCheck(int progressiveCrcNumber, String dataFileName,
+                                                            ProgressiveCrc progressiveCrc, BaseRepositories baseRepositories,
+                                                            ProgressCallback progressCallback, boolean throwOnValidationFailure) {
+        String progressiveCrcFormat = progressiveCrc.format();
         progressCallback.log("Validating file progressive CRC #" + progressiveCrcNumber + ": " + dataFileName);
         progressCallback.log("File progressive CRC format: " + progressiveCrcFormat);
         CrcCalculator crcCalculator = baseRepositories.crcCalculatorsRepo().get(progressiveCrcFormat);
@@ -460,18 +594,10 @@ public class FiddUnpackManager {
             warnAndMaybeThrow("File progressive CRC #" + progressiveCrcNumber + " validation failed - CRC format " +
                             progressiveCrcFormat + " not supported. " + dataFileName,
                     progressCallback, throwOnValidationFailure);
-        } else {
-            byte[] progressiveCrc = progressiveCrcStream.readAllBytes();
-            byte[] calcCrc = ProgressiveCrcCalculator.calculateProgressiveCrc(dataStream, progressiveCrcChunkSize, crcCalculator);
-
-            boolean validationResult = Arrays.equals(progressiveCrc, calcCrc);
-            if (validationResult) {
-                progressCallback.log("File progressive CRC #" + progressiveCrcNumber + " validation success: " + dataFileName);
-            } else {
-                warnAndMaybeThrow("File progressive CRC #" + progressiveCrcNumber + " validation failed: " + dataFileName,
-                        progressCallback, throwOnValidationFailure);
-            }
+            return null;
         }
+        return new FileProgressiveCrcCheck("File progressive CRC #" + progressiveCrcNumber,
+                new ProgressiveCrcChunker(crcCalculator, progressiveCrc.progressiveCrcChunkSize()), progressiveCrc.bytes());
     }
 
     private static void validateMetadataContainer(BaseRepositories baseRepositories,
@@ -0,0 +1,103 @@
+package com.fidd.packer.pack;
+
+import com.fidd.core.crc.ProgressiveCrcCalculator;
+import com.fidd.core.crc.ProgressiveCrcChunker;
+import com.fidd.core.crc.crc32.Crc32Calculator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FiddUnpackManagerTest {
+    private static final int CHUNK_SIZE = 10_000;
+
+    private static final byte[] DATA = new byte[100_000 + 3];
+    static {
+        new Random(1).nextBytes(DATA);
+    }
+
+    private final List<String> warnings = new ArrayList<>();
+    private final FiddUnpackManager.ProgressCallback progressCallback = new FiddUnpackManager.ProgressCallback() {
+        @Override public void log(String log) {}
+        @Override public void warn(String log) { warnings.add(log); }
+    };
+
+    private static FiddUnpackManager.LogicalFileCheck progressiveCrcCheck(byte[] progressiveCrc) {
+        Crc32Calculator crcCalculator = new Crc32Calculator();
+        return new FiddUnpackManager.FileProgressiveCrcCheck("File progressive CRC #0",
+                new ProgressiveCrcChunker(crcCalculator, CHUNK_SIZE), progressiveCrc);
+    }
+
+    private static byte[] progressiveCrc(byte[] data) throws IOException {
+        return ProgressiveCrcCalculator.calculateProgressiveCrc(new ByteArrayInputStream(data), CHUNK_SIZE, new Crc32Calculator());
+    }
+
+    @Test
+    public void testPassingChecksMaterializeTheFile(@TempDir Path dir) throws IOException {
+        File outputFile = dir.resolve("out.bin").toFile();
+
+        FiddUnpackManager.checkAndMaterialize(new ByteArrayInputStream(DATA), List.of(progressiveCrcCheck(progressiveCrc(DATA))),
+                outputFile, "out.bin", progressCallback, true, null);
+
+        assertArrayEquals(DATA, Files.readAllBytes(outputFile.toPath()));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void testFailedCheckRemovesTheFileWhenUnpackFails(@TempDir Path dir) throws IOException {
+        File outputFile = dir.resolve("out.bin").toFile();
+        byte[] otherData = DATA.clone();
+        otherData[DATA.length / 2] ^= 1;
+
+        assertThrows(RuntimeException.class, () -> FiddUnpackManager.checkAndMaterialize(new ByteArrayInputStream(DATA),
+                List.of(progressiveCrcCheck(progressiveCrc(otherData))), outputFile, "out.bin", progressCallback, true, null));
+        assertFalse(outputFile.exists());
+    }
+
+    @Test
+    public void testFailedCheckKeepsTheFileWhenUnpackGoesOn(@TempDir Path dir) throws IOException {
+        File outputFile = dir.resolve("out.bin").toFile();
+
+        FiddUnpackManager.checkAndMaterialize(new ByteArrayInputStream(DATA), List.of(progressiveCrcCheck(new byte[4])),
+                outputFile, "out.bin", progressCallback, false, null);
+
+        assertArrayEquals(DATA, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(List.of("File progressive CRC #0 validation failed: out.bin"), warnings);
+    }
+
+    @Test
+    public void testChecksOnAPoolSeeTheWholeFileInOrder(@TempDir Path dir) throws IOException {
+        File outputFile = dir.resolve("out.bin").toFile();
+        // Several pipelined buffers, the last one partial
+        byte[] data = new byte[3 * 1024 * 1024 + 5];
+        new Random(2).nextBytes(data);
+        byte[] otherData = data.clone();
+        otherData[data.length - 1] ^= 1;
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            FiddUnpackManager.checkAndMaterialize(new ByteArrayInputStream(data),
+                    List.of(progressiveCrcCheck(progressiveCrc(data)), progressiveCrcCheck(progressiveCrc(otherData))),
+                    outputFile, "out.bin", progressCallback, false, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(List.of("File progressive CRC #0 validation failed: out.bin"), warnings);
+    }
+}
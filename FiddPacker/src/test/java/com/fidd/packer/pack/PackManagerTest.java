@@ -1,17 +1,48 @@
 package com.fidd.packer.pack;
 
+import com.fidd.core.crc.ProgressiveCrcCalculator;
+import com.fidd.core.crc.ProgressiveCrcChunker;
+import com.fidd.core.crc.crc32.Crc32Calculator;
+import com.fidd.core.encryption.EncryptionAlgorithm;
+import com.fidd.core.encryption.aes256.Aes256CbcEncryptionAlgorithm;
+import com.fidd.core.fiddfile.yaml.YamlFiddFileMetadataSerializer;
+import com.fidd.core.fiddkey.yaml.YamlFiddKeySerializer;
+import com.fidd.core.logicalfile.yaml.YamlLogicalFileMetadataSerializer;
+import com.fidd.core.metadata.blobs.BlobsMetadataContainerSerializer;
+import com.fidd.core.pki.SignerChecker;
+import com.fidd.core.pki.sha256WithRsa.SHA256WithRSASignerChecker;
+import com.fidd.core.pki.x509.X509PublicKeySerializer;
+import com.fidd.core.random.RandomGeneratorType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
+import static com.fidd.connectors.folder.FolderFiddConstants.DEFAULT_FIDD_SIGNATURE_EXT;
+import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_KEY_FILE_NAME;
+import static com.fidd.connectors.folder.FolderFiddConstants.FIDD_MESSAGE_FILE_NAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PackManagerTest {
@@ -73,6 +104,134 @@ public class PackManagerTest {
         assertTrue(result.isEmpty()); // Expecting an empty list
     }
 
+    @Test
+    public void testDigestFileFeedsSignersAndProgressiveCrcs() throws Exception {
+        byte[] data = new byte[200_000 + 17];
+        new Random(1).nextBytes(data);
+        File file = new File(testDirectory, "large.bin");
+        Files.write(file.toPath(), data);
+
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair keyPair = keyGen.generateKeyPair();
+        SHA256WithRSASignerChecker signerChecker = new SHA256WithRSASignerChecker();
+        SignerChecker.StreamingSigner signer = signerChecker.newStreamingSigner(keyPair.getPrivate());
+        Crc32Calculator crcCalculator = new Crc32Calculator();
+        ProgressiveCrcChunker chunker = new ProgressiveCrcChunker(crcCalculator, 50_000);
+
+        FiddPackManager.digestFile(file, List.of(signer), List.of(chunker));
+
+        assertArrayEquals(signerChecker.signData(data, keyPair.getPrivate()), signer.sign());
+        assertArrayEquals(ProgressiveCrcCalculator.calculateProgressiveCrc(new ByteArrayInputStream(data), 50_000, crcCalculator),
+                chunker.getCrc());
+    }
+
+    @Test
+    public void testParallelPackingMatchesSequential(@TempDir Path sequentialDir, @TempDir Path parallelDir) throws Exception {
+        byte[] data = new byte[100_000 + 5];
+        new Random(2).nextBytes(data);
+        Files.write(new File(testDirectory, "large.bin").toPath(), data);
+
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair keyPair = keyGen.generateKeyPair();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            pack(sequentialDir.toFile(), keyPair, false, null);
+            pack(parallelDir.toFile(), keyPair, false, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        // Same draws in the same order: the planned layout has to come out byte for byte the same
+        for (String name : List.of(FIDD_MESSAGE_FILE_NAME, FIDD_KEY_FILE_NAME)) {
+            assertArrayEquals(Files.readAllBytes(sequentialDir.resolve(name)), Files.readAllBytes(parallelDir.resolve(name)), name);
+        }
+    }
+
+    @Test
+    public void testFiddFileAndKeySignedWhileWritten(@TempDir Path packedDir) throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair keyPair = keyGen.generateKeyPair();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            pack(packedDir.toFile(), keyPair, true, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        SHA256WithRSASignerChecker signerChecker = new SHA256WithRSASignerChecker();
+        for (String name : List.of(FIDD_MESSAGE_FILE_NAME, FIDD_KEY_FILE_NAME)) {
+            byte[] expected = signerChecker.signData(Files.readAllBytes(packedDir.resolve(name)), keyPair.getPrivate());
+            assertArrayEquals(expected, Files.readAllBytes(packedDir.resolve(name + ".0" + DEFAULT_FIDD_SIGNATURE_EXT)), name);
+        }
+    }
+
+    @Test
+    public void testFailedPackingWaitsForRunningSections(@TempDir Path packedDir) throws Exception {
+        for (int i = 0; i < 4; i++) {
+            Files.writeString(new File(testDirectory, "more" + i + ".txt").toPath(), "More content " + i);
+        }
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        KeyPair keyPair = keyGen.generateKeyPair();
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        EncryptionAlgorithm failingAlgorithm = new Aes256CbcEncryptionAlgorithm() {
+            @Override
+            public long encrypt(byte[] keyData, List<ReadableByteChannel> plaintexts, WritableByteChannel ciphertext,
+                                @Nullable List<CrcCallback> ciphertextCrcCallbacks) {
+                running.incrementAndGet();
+                try {
+                    if (calls.getAndIncrement() == 1) { throw new IllegalStateException("Failed section"); }
+                    Thread.sleep(200);
+                    return super.encrypt(keyData, plaintexts, ciphertext, ciphertextCrcCallbacks);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertThrows(IllegalStateException.class,
+                    () -> pack(packedDir.toFile(), keyPair, false, pool, failingAlgorithm));
+            // Nothing is left writing to the Fidd File once packing has failed
+            assertEquals(0, running.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void pack(File packedContentDirectory, KeyPair keyPair, boolean createFileAndKeySignatures,
+                      @Nullable ForkJoinPool pool) throws IOException {
+        pack(packedContentDirectory, keyPair, createFileAndKeySignatures, pool, new Aes256CbcEncryptionAlgorithm());
+    }
+
+    private void pack(File packedContentDirectory, KeyPair keyPair, boolean createFileAndKeySignatures,
+                      @Nullable ForkJoinPool pool, EncryptionAlgorithm encryptionAlgorithm) throws IOException {
+        Random random = new Random(3);
+        RandomGeneratorType randomGeneratorType = new RandomGeneratorType() {
+            @Override public RandomGenerator generator() { return random; }
+            @Override public String name() { return "Seeded"; }
+        };
+        FiddPackManager.fiddPackNewPost(testDirectory, packedContentDirectory, null, keyPair.getPrivate(),
+                1, "post", new YamlFiddKeySerializer(), new BlobsMetadataContainerSerializer(),
+                new YamlFiddFileMetadataSerializer(), new YamlLogicalFileMetadataSerializer(),
+                encryptionAlgorithm, randomGeneratorType, 0, 1000,
+                false, createFileAndKeySignatures, true, true, true, true,
+                false, new X509PublicKeySerializer(), List.of(new SHA256WithRSASignerChecker()),
+                true, List.of(new Crc32Calculator()),
+                true, 0, 10_000, List.of(new Crc32Calculator()),
+                pool);
+    }
+
     @AfterEach
     public void tearDown() throws IOException {
         // Delete the test directory and its contents
@@ -52,8 +52,12 @@ public class FiddConnectionAddDialog extends VBox {
 
     @Nullable Stage stage;
     @Nullable volatile FiddConnection returnFiddConnection = null;
+    /** Not editable in the dialog, kept as is when editing a connection */
+    final @Nullable FiddConnection.CacheSettings cacheSettings;
 
     public FiddConnectionAddDialog(@Nullable FiddConnection fiddConnectionToEdit) {
+        this.cacheSettings = fiddConnectionToEdit == null ? null : fiddConnectionToEdit.cacheSettings();
+
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("FiddConnectionAddDialog.fxml"));
         fxmlLoader.setRoot(this);
         fxmlLoader.setController(this);
@@ -160,7 +164,7 @@ public class FiddConnectionAddDialog extends VBox {
                     publicKeySerializer.deserialize(certBytes);
                 }
 
-                returnFiddConnection = FiddConnection.of(connectorType, name, url, certType, certBytes);
+                returnFiddConnection = FiddConnection.of(connectorType, name, url, certType, certBytes, cacheSettings);
                 checkNotNull(stage).close();
             }
         } catch (Exception e) {
@@ -4,6 +4,9 @@ import com.fidd.base.BaseRepositories;
 import com.fidd.base.DefaultBaseRepositories;
 import com.fidd.connectors.FiddConnector;
 import com.fidd.connectors.FiddConnectorFactory;
+import com.fidd.connectors.cache.disk.DiskCacheConnector;
+import com.fidd.connectors.cache.ram.RamCacheConnector;
+import com.fidd.connectors.cache.readahead.ReadAheadCacheConnector;
 import com.fidd.core.connection.FiddConnection;
 import com.fidd.core.connection.FiddConnectionList;
 import com.fidd.core.connection.yaml.YamlFiddConnectionListSerializer;
@@ -46,6 +49,7 @@ import javax.annotation.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -55,6 +59,8 @@ import java.nio.file.Files;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.Preferences;
 
 import static com.fidd.connectors.folder.FolderFiddConstants.ENCRYPTED_EXT;
@@ -124,6 +130,8 @@ public class MainForm {
 
     @Nullable TabKeyProvider keyProvider;
     @Nullable ObservableList<FiddConnection> fiddConnections;
+    /** Connectors behind the services in fiddContentServiceCache, closed when their service is removed */
+    final Map<String, FiddConnector> fiddConnectors = new ConcurrentHashMap<>();
     @Nullable public KeySupplier keySupplier;
 
     public MainForm() {
@@ -241,16 +249,59 @@ public class MainForm {
         mainTabPane.getSelectionModel().select(tab);
     }
 
-    FiddContentService getFiddContentServiceForConnection(FiddConnection fiddConnection) {
+    FiddContentService getFiddContentServiceForConnection(FiddConnection fiddConnection, FiddConnector fiddConnector) {
+        FiddConnection.CacheSettings cacheSettings = fiddConnection.cacheSettings();
+        if (cacheSettings != null && cacheSettings.diskCacheDirectory() != null) {
+            fiddConnector = DiskCacheConnector.of(fiddConnector, fiddConnection.url(), cacheSettings);
+        }
+        return new WrapperFiddContentService(BASE_REPOSITORIES,
+                new ReadAheadCacheConnector(RamCacheConnector.of(fiddConnector, cacheSettings)), keySupplier);
+    }
+
+    protected void addFiddContentService(FiddConnection fiddConnection) {
         FiddConnectorFactory fiddConnectorFactory = BASE_REPOSITORIES.fiddConnectorFactoryRepo().get(fiddConnection.connectorType());
         FiddConnector fiddConnector = checkNotNull(fiddConnectorFactory).createConnector(fiddConnection.url());
-        return new WrapperFiddContentService(BASE_REPOSITORIES, fiddConnector, keySupplier);
+        if (checkNotNull(fiddContentServiceCache).addServiceIfAbsent(fiddConnection.name(),
+                getFiddContentServiceForConnection(fiddConnection, fiddConnector))) {
+            fiddConnectors.put(fiddConnection.name(), fiddConnector);
+        } else {
+            closeFiddConnector(fiddConnector);
+        }
+    }
+
+    protected void removeFiddContentService(String fiddConnectionName) {
+        checkNotNull(fiddContentServiceCache).removeService(fiddConnectionName);
+        FiddConnector fiddConnector = fiddConnectors.remove(fiddConnectionName);
+        if (fiddConnector != null) {
+            closeFiddConnector(fiddConnector);
+        }
+    }
+
+    protected void clearFiddContentServices() {
+        checkNotNull(fiddContentServiceCache).clear();
+        for (String fiddConnectionName : List.copyOf(fiddConnectors.keySet())) {
+            FiddConnector fiddConnector = fiddConnectors.remove(fiddConnectionName);
+            if (fiddConnector != null) {
+                closeFiddConnector(fiddConnector);
+            }
+        }
+    }
+
+    /** Folder connectors hold a watch service and open message files */
+    static void closeFiddConnector(FiddConnector fiddConnector) {
+        if (fiddConnector instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing Fidd connector: ", e);
+            }
+        }
     }
 
     protected void addFiddConnection(FiddConnection fiddConnection) {
         Platform.runLater(() -> {
             checkNotNull(fiddConnections).add(fiddConnection);
-            checkNotNull(fiddContentServiceCache).addServiceIfAbsent(fiddConnection.name(), getFiddContentServiceForConnection(fiddConnection));
+            addFiddContentService(fiddConnection);
             checkNotNull(fiddConnectionTableView).refresh();
         });
     }
@@ -289,7 +340,7 @@ public class MainForm {
             if (selectedFiddConnection != null) {
                 checkNotNull(fiddConnections).remove(selectedFiddConnection);
                 checkNotNull(fiddConnectionTableView).refresh();
-                checkNotNull(fiddContentServiceCache).removeService(selectedFiddConnection.name());
+                removeFiddContentService(selectedFiddConnection.name());
             }
         } catch (Exception e) {
             Alert alert = new Alert(Alert.AlertType.ERROR, "Error Removing Fidd connection: " + e, ButtonType.OK);
@@ -319,8 +370,8 @@ public class MainForm {
                                     FiddConnection oldFiddConnection = checkNotNull(fiddConnections).remove(selectedIndex);
                                     checkNotNull(fiddConnections).add(selectedIndex, fiddConnection);
 
-                                    checkNotNull(fiddContentServiceCache).removeService(oldFiddConnection.name());
-                                    checkNotNull(fiddContentServiceCache).addServiceIfAbsent(fiddConnection.name(), getFiddContentServiceForConnection(fiddConnection));
+                                    removeFiddContentService(oldFiddConnection.name());
+                                    addFiddContentService(fiddConnection);
 
                                     checkNotNull(fiddConnectionTableView).refresh();
                                 }
@@ -536,9 +587,9 @@ public class MainForm {
                 checkNotNull(fiddConnections).addAll(fiddConnectionList.fiddConnectionList());
                 checkNotNull(fiddConnectionTableView).refresh();
 
-                checkNotNull(fiddContentServiceCache).clear();
+                clearFiddContentServices();
                 for (FiddConnection fiddConnection : fiddConnectionList.fiddConnectionList()) {
-                    checkNotNull(fiddContentServiceCache).addServiceIfAbsent(fiddConnection.name(), getFiddContentServiceForConnection(fiddConnection));
+                    addFiddContentService(fiddConnection);
                 }
             }
         } catch (Exception e) {
@@ -16,6 +16,7 @@ import javax.activation.MimetypesFileTypeMap;
 import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -68,6 +69,16 @@ public class DownloadCustomApi implements DownloadApi {
         return mimeTypesMap.getContentType(filePath);
     }
 
+    /** Response body that FiddContentService decrypts into the response channel, through its own buffers */
+    protected static FileInfo.BodyWriter chunkWriter(FiddContentService fiddService, long messageNumber,
+                                                     LogicalFileInfo logicalFileInfo, long offset, long length) {
+        return out -> {
+            if (fiddService.readLogicalFileChunk(messageNumber, logicalFileInfo, offset, length, out) < 0) {
+                throw new IOException("LogicalFile not available: " + logicalFileInfo.metadata().filePath());
+            }
+        };
+    }
+
     @Override
     public Future<ApiResponse<FileInfo>> readLogicalFile(String fiddId, Long messageNumber, String logicalFilePath, @Nullable String range,
                                                             @Nullable String _list, @Nullable List<String> filterIn, @Nullable List<String> filterOut,
@@ -97,23 +108,28 @@ public class DownloadCustomApi implements DownloadApi {
                 return Future.failedFuture(new HttpException(404));
             }
 
-            long fileLengthEncrypted = logicalFileInfo.section().sectionLength() - logicalFileInfo.fileOffset();
             EncryptionAlgorithm encryptionAlgorithm = baseRepositories.encryptionAlgorithmRepo().get(logicalFileInfo.section().encryptionAlgorithm());
             if (encryptionAlgorithm == null) {
                 return Future.failedFuture(new HttpException(501));
             }
-            long fileLength = checkNotNull(encryptionAlgorithm).plaintextLengthToCiphertextLength(fileLengthEncrypted);
+            // Padded algorithms (CBC) only know the plaintext length after decrypting the last block
+            long fileLength = fiddService.getLogicalFileLength(messageNumber, logicalFileInfo);
 
             boolean headersGotRange = !StringUtils.isBlank(range);
             if (!headersGotRange) {
                 // Get full file content
 
-                InputStream responseFileStream = fiddService.readLogicalFile(messageNumber, logicalFileInfo);
-                if (responseFileStream == null) {
-                    return Future.failedFuture(new HttpException(404));
+                FileInfo responseFileInfo;
+                if (encryptionAlgorithm instanceof RandomAccessEncryptionAlgorithm) {
+                    // Decrypted straight into the response, with no stream in between
+                    responseFileInfo = new FileInfo(chunkWriter(fiddService, messageNumber, logicalFileInfo, 0, fileLength));
+                } else {
+                    InputStream responseFileStream = fiddService.readLogicalFile(messageNumber, logicalFileInfo);
+                    if (responseFileStream == null) {
+                        return Future.failedFuture(new HttpException(404));
+                    }
+                    responseFileInfo = new FileInfo(responseFileStream);
                 }
-
-                FileInfo responseFileInfo = new FileInfo(responseFileStream);
                 responseFileInfo.setContentLength(Long.toString(fileLength));
                 String contentType = getContentType(logicalFilePath);
                 if (contentType != null) {
@@ -148,12 +164,8 @@ public class DownloadCustomApi implements DownloadApi {
                 }
 
                 long contentLength = endPos - startPos + 1;
-                InputStream responseFileStream = fiddService.readLogicalFileChunk(messageNumber, logicalFileInfo, startPos, contentLength);
-                if (responseFileStream == null) {
-                    return Future.failedFuture(new HttpException(404));
-                }
-
-                FileInfo responseFileInfo = new FileInfo(responseFileStream);
+                FileInfo responseFileInfo = new FileInfo(chunkWriter(fiddService, messageNumber, logicalFileInfo,
+                        startPos, contentLength));
                 responseFileInfo.setContentRange("bytes " + startPos + "-" + endPos + "/" + fileLength);
                 responseFileInfo.setAcceptRanges("bytes");
                 responseFileInfo.setContentLength(Long.toString(contentLength));
@@ -1,7 +1,9 @@
 package com.fidd.view.rest.controller;
 
+import io.netty.buffer.Unpooled;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.ext.web.openapi.RouterBuilder;
 import io.vertx.ext.web.validation.RequestParameter;
@@ -14,9 +16,10 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -28,12 +31,42 @@ import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 
 public class DownloadCustomApiHandler extends DownloadApiHandler {
     private static final Logger logger = LoggerFactory.getLogger(DownloadCustomApiHandler.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
 
     protected static void addHeader(MultiMap headers, String header, @Nullable String value) {
         if (value == null) { return; }
         headers.add(header, value);
     }
 
+    /**
+     * The response as a channel, for FiddContentService's channel reads. Writes are queued by Netty while the
+     * writer reuses its buffer, so each one is copied into a Buffer of its own.
+     */
+    protected static class ResponseChannel implements WritableByteChannel {
+        private final HttpServerResponse response;
+
+        public ResponseChannel(HttpServerResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            response.write(Buffer.buffer(Unpooled.copiedBuffer(src)));
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !response.ended() && !response.closed();
+        }
+
+        /** The response is ended by the handler */
+        @Override
+        public void close() {}
+    }
+
     private final DownloadApi api;
 
     public DownloadCustomApiHandler(DownloadApi api) {
@@ -119,20 +152,24 @@ public class DownloadCustomApiHandler extends DownloadApiHandler {
                             promise -> {
                                 routingContext.response().setChunked(true);
 
+                                FileInfo.BodyWriter bodyWriter = fileInfo.getBodyWriter();
                                 InputStream in = fileInfo.getInputStream();
-                                if (in != null) {
-                                    try (in) {
-                                        byte[] buffer = new byte[8192];
-                                        int read;
-                                        while ((read = in.read(buffer)) != -1) {
-                                            routingContext.response().write(Buffer.buffer(Arrays.copyOf(buffer, read)));
+                                try {
+                                    if (bodyWriter != null) {
+                                        bodyWriter.writeTo(new ResponseChannel(routingContext.response()));
+                                    } else if (in != null) {
+                                        try (in) {
+                                            // One buffer per response: each chunk is copied into the queued Buffer
+                                            byte[] chunk = new byte[CHUNK_SIZE];
+                                            int read;
+                                            while ((read = in.readNBytes(chunk, 0, chunk.length)) > 0) {
+                                                routingContext.response().write(Buffer.buffer().appendBytes(chunk, 0, read));
+                                            }
                                         }
-                                        promise.complete();
-                                    } catch (Exception e) {
-                                        promise.fail(e);
                                     }
-                                } else {
                                     promise.complete();
+                                } catch (Exception e) {
+                                    promise.fail(e);
                                 }
                             }, ar -> {
                                 if (ar.succeeded()) {
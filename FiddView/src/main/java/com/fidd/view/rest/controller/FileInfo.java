@@ -1,10 +1,19 @@
 package com.fidd.view.rest.controller;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 public class FileInfo {
+    /** Writes the response body straight to a channel, for content that can be read without a stream */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(WritableByteChannel out) throws IOException;
+    }
+
     protected @Nullable final InputStream inputStream;
+    protected @Nullable final BodyWriter bodyWriter;
     protected @Nullable String acceptRanges;
     protected @Nullable String contentLength;
     protected @Nullable String contentDisposition;
@@ -13,12 +22,22 @@ public class FileInfo {
 
     public FileInfo(@Nullable InputStream inputStream) {
         this.inputStream = inputStream;
+        this.bodyWriter = null;
+    }
+
+    public FileInfo(BodyWriter bodyWriter) {
+        this.inputStream = null;
+        this.bodyWriter = bodyWriter;
     }
 
     public @Nullable InputStream getInputStream() {
         return inputStream;
     }
 
+    public @Nullable BodyWriter getBodyWriter() {
+        return bodyWriter;
+    }
+
     public @Nullable String getAcceptRanges() { return acceptRanges; }
 
     public void setAcceptRanges(String acceptRanges) {